@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rampart.benchmarks;
+
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.OMNamespace;
+import org.apache.axiom.om.OMXMLBuilderFactory;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axis2.Constants;
+import org.apache.axis2.client.Options;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.context.ServiceContext;
+import org.apache.axis2.context.ServiceGroupContext;
+import org.apache.axis2.description.AxisMessage;
+import org.apache.axis2.description.AxisOperation;
+import org.apache.axis2.description.AxisService;
+import org.apache.axis2.description.AxisServiceGroup;
+import org.apache.axis2.description.InOutAxisOperation;
+import org.apache.axis2.description.OutInAxisOperation;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.axis2.wsdl.WSDLConstants;
+import org.apache.neethi.Policy;
+import org.apache.neethi.PolicyEngine;
+import org.apache.rampart.RampartMessageData;
+import org.apache.rampart.policy.model.CryptoConfig;
+import org.apache.rampart.policy.model.RampartConfig;
+
+import javax.xml.namespace.QName;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Builds the message contexts the benchmarks work on, in the same way as the
+ * <code>MessageBuilderTestBase</code> of the test suite, but sharing one configuration context
+ * and service between all messages like a running client or server does.
+ */
+class BenchmarkSupport {
+
+    static final String POLICY_DIR = "test-resources/policy/";
+
+    static final String MESSAGE = "test-resources/policy/soapmessage.xml";
+
+    static final String KEYSTORE = "keys/benchmark.jks";
+
+    private static final String MERLIN_FILE = "org.apache.ws.security.crypto.merlin.file";
+
+    private static final String PAYLOAD_NS = "http://ws.apache.org/rampart/benchmarks";
+
+    private final ServiceContext serviceContext;
+
+    private final AxisOperation outInOperation;
+
+    private final AxisOperation inOutOperation;
+
+    BenchmarkSupport() throws Exception {
+        AxisConfiguration axisConfiguration = new AxisConfiguration();
+        AxisService axisService = new AxisService("BenchmarkService");
+        axisConfiguration.addService(axisService);
+        AxisServiceGroup axisServiceGroup = new AxisServiceGroup();
+        axisConfiguration.addServiceGroup(axisServiceGroup);
+        axisServiceGroup.addService(axisService);
+
+        ConfigurationContext configContext = new ConfigurationContext(axisConfiguration);
+        ServiceGroupContext gCtx = configContext.createServiceGroupContext(axisServiceGroup);
+        serviceContext = gCtx.getServiceContext(axisService);
+
+        outInOperation = new OutInAxisOperation(new QName("http://rampart.org", "test"));
+        inOutOperation = new InOutAxisOperation(new QName("http://rampart.org", "test"));
+        for (AxisOperation operation : new AxisOperation[] {outInOperation, inOutOperation}) {
+            AxisMessage msg = new AxisMessage();
+            operation.addMessage(msg, WSDLConstants.MESSAGE_LABEL_OUT_VALUE);
+            operation.addMessage(msg, WSDLConstants.MESSAGE_LABEL_IN_VALUE);
+        }
+    }
+
+    /**
+     * Returns a message context of the client, when the message is sent, or of the service,
+     * when it is received over HTTPS. The envelope is fully built, so that parsing the message
+     * is not measured.
+     * @param message The serialized SOAP envelope
+     * @param serverSide Whether the message context is one of the service
+     * @param policy The policy of the message
+     * @return The message context
+     */
+    MessageContext createMessageContext(byte[] message, boolean serverSide, Policy policy)
+            throws Exception {
+
+        MessageContext ctx = new MessageContext();
+        ctx.setConfigurationContext(serviceContext.getConfigurationContext());
+        ctx.setServiceContext(serviceContext);
+        ctx.setAxisService(serviceContext.getAxisService());
+
+        AxisOperation operation = serverSide ? inOutOperation : outInOperation;
+        ctx.setAxisOperation(operation);
+        ctx.setAxisMessage(operation.getMessage(WSDLConstants.MESSAGE_LABEL_IN_VALUE));
+        ctx.setServerSide(serverSide);
+        if (serverSide) {
+            ctx.setIncomingTransportName(Constants.TRANSPORT_HTTPS);
+        }
+
+        Options options = new Options();
+        options.setAction("urn:testOperation");
+        ctx.setOptions(options);
+        ctx.setProperty(RampartMessageData.KEY_RAMPART_POLICY, policy);
+
+        SOAPEnvelope envelope = OMXMLBuilderFactory.createSOAPModelBuilder(
+                new ByteArrayInputStream(message), null).getSOAPEnvelope();
+        envelope.build();
+        ctx.setEnvelope(envelope);
+        return ctx;
+    }
+
+    /**
+     * Loads a policy of the test suite, with the password callback handler and keystore of
+     * the benchmarks in place of those of the tests.
+     * @param name The file name of the policy
+     * @return The policy
+     */
+    static Policy loadPolicy(String name) throws Exception {
+        OMElement policyElement = OMXMLBuilderFactory.createOMBuilder(
+                getResource(POLICY_DIR + name)).getDocumentElement();
+
+        List<OMElement> elements = new ArrayList<OMElement>();
+        for (Iterator it = policyElement.getDescendants(false); it.hasNext();) {
+            Object node = it.next();
+            if (node instanceof OMElement) {
+                elements.add((OMElement) node);
+            }
+        }
+
+        for (OMElement element : elements) {
+            if (!RampartConfig.NS.equals(element.getNamespaceURI())) {
+                continue;
+            }
+            if (RampartConfig.PW_CB_CLASS_LN.equals(element.getLocalName())) {
+                element.setText(PasswordCallbackHandler.class.getName());
+            } else if (CryptoConfig.PROPERTY_LN.equals(element.getLocalName())
+                    && MERLIN_FILE.equals(element.getAttributeValue(
+                            new QName(CryptoConfig.PROPERTY_NAME_ATTR)))) {
+                element.setText(KEYSTORE);
+            }
+        }
+        return PolicyEngine.getPolicy(policyElement);
+    }
+
+    /**
+     * Returns the message of the test suite with a body that is grown to about the given
+     * number of bytes.
+     * @param payloadSize The size of the payload in bytes
+     * @return The serialized SOAP envelope
+     */
+    static byte[] createMessage(int payloadSize) throws Exception {
+        SOAPEnvelope envelope = OMXMLBuilderFactory.createSOAPModelBuilder(
+                getResource(MESSAGE), null).getSOAPEnvelope();
+
+        OMFactory factory = OMAbstractFactory.getOMFactory();
+        OMNamespace ns = factory.createOMNamespace(PAYLOAD_NS, "bm");
+        OMElement payload = factory.createOMElement("payload", ns, envelope.getBody());
+
+        // Each item is serialized to 64 bytes
+        String text = "0123456789abcdef0123456789abcdef0123456789abc";
+        for (int size = 0; size < payloadSize; size += 64) {
+            factory.createOMElement("item", ns, payload).setText(text);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        envelope.serialize(out);
+        return out.toByteArray();
+    }
+
+    /**
+     * Serializes the envelope of the message context.
+     * @param ctx The message context
+     * @return The serialized SOAP envelope
+     */
+    static byte[] serialize(MessageContext ctx) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ctx.getEnvelope().serialize(out);
+        return out.toByteArray();
+    }
+
+    private static InputStream getResource(String name) {
+        InputStream in = BenchmarkSupport.class.getClassLoader().getResourceAsStream(name);
+        if (in == null) {
+            throw new IllegalArgumentException("Resource not found: " + name);
+        }
+        return in;
+    }
+}
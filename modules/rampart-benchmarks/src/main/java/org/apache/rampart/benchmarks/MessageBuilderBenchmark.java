@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rampart.benchmarks;
+
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axis2.context.MessageContext;
+import org.apache.neethi.Policy;
+import org.apache.rampart.MessageBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures securing an outgoing request with {@link MessageBuilder#build(MessageContext)},
+ * which is what the outflow handler of Rampart does for every message.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class MessageBuilderBenchmark {
+
+    @Param({"rampart-transport-binding.xml", "rampart-symm-binding-1.xml",
+            "rampart-asymm-binding-1.xml"})
+    public String policyFile;
+
+    @Param({"1024", "16384", "262144"})
+    public int payloadSize;
+
+    private BenchmarkSupport support;
+
+    private Policy policy;
+
+    private byte[] message;
+
+    private MessageContext msgCtx;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        support = new BenchmarkSupport();
+        policy = BenchmarkSupport.loadPolicy(policyFile);
+        message = BenchmarkSupport.createMessage(payloadSize);
+    }
+
+    @Setup(Level.Invocation)
+    public void createMessageContext() throws Exception {
+        msgCtx = support.createMessageContext(message, false, policy);
+    }
+
+    @Benchmark
+    public SOAPEnvelope build() throws Exception {
+        new MessageBuilder().build(msgCtx);
+        return msgCtx.getEnvelope();
+    }
+}
@@ -58,4 +58,26 @@ public abstract class AbstractUniqueMessageAttributeCache implements UniqueMessa
     {
         return maximumLifeTimeOfNonce;
     }
+
+    /**
+     * Atomically checks whether the value already exists in the cache for the given user name
+     * and adds it if it does not. Use this instead of {@link #valueExistsInCache(String, String)}
+     * followed by {@link #addToCache(String, String)}, which lets two concurrent messages
+     * carrying the same value both pass the check.
+     * <p>
+     * This implementation holds the monitor of this cache. Implementations which can do this
+     * without a cache wide lock should override this method.
+     * @param id - Nonce or sequence id value of the newly received message.
+     * @param userName - User name parameter value of the UserName token.
+     * @return Returns true if the value was added. False if it was already received for given user name.
+     */
+    public synchronized boolean addToCacheIfAbsent(String id, String userName)
+    {
+        if (valueExistsInCache(id, userName)) {
+            return false;
+        }
+
+        addToCache(id, userName);
+        return true;
+    }
 }
@@ -0,0 +1,294 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rampart;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A UniqueMessageAttributeCache for high message rates. Values are spread over a fixed number of
+ * independently locked segments, so concurrent messages only contend when they hash to the same
+ * segment. Within a segment values are also recorded in time buckets in arrival order; expired
+ * values are evicted a whole bucket at a time from the oldest end, so eviction costs are
+ * proportional to the number of expired values rather than to the size of the cache.
+ * <p>
+ * A value is considered present until its life time has elapsed, independent of when the bucket
+ * holding it is evicted.
+ */
+public class ConcurrentNonceCache extends AbstractUniqueMessageAttributeCache {
+
+    /**
+     * Default number of segments.
+     */
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+    /**
+     * Number of time buckets a life time is divided into.
+     */
+    private static final int BUCKETS_PER_LIFE_TIME = 60;
+
+    /**
+     * Smallest time span covered by a bucket, in milliseconds.
+     */
+    private static final long MIN_BUCKET_SPAN = 100;
+
+    private static class Nonce
+    {
+        final String nonceValue;
+        final String userName;
+        final int hash;
+
+        Nonce(String nonce, String user)
+        {
+            this.nonceValue = nonce;
+            this.userName = user;
+            this.hash = user.hashCode() * 13 + nonce.hashCode() * 7;
+        }
+
+        @Override
+        public boolean equals(Object another)
+        {
+            if (another == this) {
+                return true;
+            }
+
+            if (!(another instanceof Nonce)) {
+                return false;
+            }
+
+            Nonce otherNonce = (Nonce) another;
+            return this.hash == otherNonce.hash && this.userName.equals(otherNonce.userName)
+                    && this.nonceValue.equals(otherNonce.nonceValue);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return hash;
+        }
+    }
+
+    /**
+     * Values added to a segment during one time span.
+     */
+    private static class Bucket
+    {
+        final long startTime;
+        final long endTime;
+        final List<Nonce> nonces = new ArrayList<Nonce>();
+
+        Bucket(long startTime, long span)
+        {
+            this.startTime = startTime;
+            this.endTime = startTime + span;
+        }
+    }
+
+    private final class Segment
+    {
+        final ReentrantLock lock = new ReentrantLock();
+
+        /**
+         * Maps each value to the time it was added.
+         */
+        final Map<Nonce, Long> nonces = new HashMap<Nonce, Long>();
+
+        final ArrayDeque<Bucket> buckets = new ArrayDeque<Bucket>();
+
+        /**
+         * Must be called with the lock held.
+         */
+        boolean exists(Nonce nonce, long now)
+        {
+            evictStaleNonceIds(now);
+            Long addedTime = nonces.get(nonce);
+            return addedTime != null && !isExpired(addedTime.longValue(), now);
+        }
+
+        /**
+         * Must be called with the lock held.
+         */
+        void add(Nonce nonce, long now)
+        {
+            nonces.put(nonce, Long.valueOf(now));
+
+            Bucket current = buckets.peekLast();
+            if (current == null || current.endTime <= now) {
+                current = new Bucket(now, getBucketSpan());
+                buckets.addLast(current);
+            }
+            current.nonces.add(nonce);
+        }
+
+        /**
+         * Drops whole buckets whose newest possible value has outlived the life time.
+         */
+        void evictStaleNonceIds(long now)
+        {
+            Bucket oldest;
+            while ((oldest = buckets.peekFirst()) != null && isExpired(oldest.endTime, now)) {
+                buckets.pollFirst();
+                for (Nonce nonce : oldest.nonces) {
+                    Long addedTime = nonces.get(nonce);
+                    // The value may have been added again after it expired, and is then
+                    // recorded in a newer bucket as well
+                    if (addedTime != null && addedTime.longValue() < oldest.endTime) {
+                        nonces.remove(nonce);
+                    }
+                }
+            }
+        }
+
+        int size()
+        {
+            return nonces.size();
+        }
+
+        void clear()
+        {
+            nonces.clear();
+            buckets.clear();
+        }
+    }
+
+    private final Segment[] segments;
+
+    public ConcurrentNonceCache()
+    {
+        this(60 * 5, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    public ConcurrentNonceCache(int maxLifeTime)
+    {
+        this(maxLifeTime, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    /**
+     * @param maxLifeTime Maximum life time in seconds.
+     * @param concurrencyLevel Expected number of threads using the cache concurrently. Rounded up
+     * to a power of two.
+     */
+    public ConcurrentNonceCache(int maxLifeTime, int concurrencyLevel)
+    {
+        super(maxLifeTime);
+
+        int segmentCount = 1;
+        while (segmentCount < concurrencyLevel) {
+            segmentCount <<= 1;
+        }
+
+        segments = new Segment[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    public void addToCache(String id, String userName) {
+
+        Nonce nonce = new Nonce(id, userName);
+        Segment segment = segmentFor(nonce);
+        long now = System.currentTimeMillis();
+
+        segment.lock.lock();
+        try {
+            segment.add(nonce, now);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public boolean valueExistsInCache(String id, String userName) {
+
+        Nonce nonce = new Nonce(id, userName);
+        Segment segment = segmentFor(nonce);
+        long now = System.currentTimeMillis();
+
+        segment.lock.lock();
+        try {
+            return segment.exists(nonce, now);
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean addToCacheIfAbsent(String id, String userName) {
+
+        Nonce nonce = new Nonce(id, userName);
+        Segment segment = segmentFor(nonce);
+        long now = System.currentTimeMillis();
+
+        segment.lock.lock();
+        try {
+            if (segment.exists(nonce, now)) {
+                return false;
+            }
+            segment.add(nonce, now);
+            return true;
+        } finally {
+            segment.lock.unlock();
+        }
+    }
+
+    public void clearCache() {
+
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                segment.clear();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of values currently held, including expired values that are not yet
+     * evicted.
+     * @return Number of values in the cache.
+     */
+    public int size() {
+
+        int size = 0;
+        for (Segment segment : segments) {
+            segment.lock.lock();
+            try {
+                size += segment.size();
+            } finally {
+                segment.lock.unlock();
+            }
+        }
+        return size;
+    }
+
+    private Segment segmentFor(Nonce nonce) {
+        int h = nonce.hash;
+        h ^= (h >>> 16);
+        return segments[h & (segments.length - 1)];
+    }
+
+    private boolean isExpired(long addedTime, long now) {
+        return now - addedTime > getMaximumLifeTimeOfAnAttribute() * 1000L;
+    }
+
+    private long getBucketSpan() {
+        return Math.max(MIN_BUCKET_SPAN, getMaximumLifeTimeOfAnAttribute() * 1000L / BUCKETS_PER_LIFE_TIME);
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rampart;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.util.Arrays;
+
+/**
+ * A UniqueMessageAttributeCache that only keeps 64 bit fingerprints of the cached values, in
+ * open addressing tables of primitive longs. No objects are allocated per value, so the cache can
+ * absorb a high message rate without adding to garbage collection work.
+ * <p>
+ * Values are held in two generations. A new generation is started once the current one is a
+ * maximum life time old, and the generation before it is then dropped as a whole. A value is
+ * therefore remembered for at least the maximum life time and at most twice that.
+ * <p>
+ * Distinct values with the same fingerprint are treated as the same value. With 64 bit
+ * fingerprints this is negligible for the number of values held in a replay cache.
+ * <p>
+ * A generation holds at most a maximum number of values, so a flood of messages cannot grow
+ * the cache without bound. Once the current generation is full, the next generation is started
+ * early and the oldest one dropped, so new values are still accepted. The values of the dropped
+ * generation are then forgotten before their life time is over, so the maximum should be sized
+ * from the life time and the expected rate of values.
+ */
+public class FingerprintCache extends AbstractUniqueMessageAttributeCache {
+
+    private static Log log = LogFactory.getLog(FingerprintCache.class);
+
+    /**
+     * Default maximum number of values held per generation.
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 1 << 18;
+
+    /**
+     * Largest maximum number of values held per generation.
+     */
+    public static final int MAX_ENTRIES_LIMIT = 1 << 28;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final int maxEntries;
+
+    private final int maxCapacity;
+
+    private long[] current = new long[INITIAL_CAPACITY];
+
+    private int currentSize;
+
+    private long[] previous = new long[INITIAL_CAPACITY];
+
+    private int previousSize;
+
+    private long generationStart = System.currentTimeMillis();
+
+    public FingerprintCache() {
+        this(60 * 5);
+    }
+
+    public FingerprintCache(int maxLifeTime) {
+        this(maxLifeTime, DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * @param maxLifeTime Maximum life time of a value in seconds.
+     * @param maxEntries Maximum number of values held per generation.
+     */
+    public FingerprintCache(int maxLifeTime, int maxEntries) {
+        super(maxLifeTime);
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("maxEntries must be positive");
+        }
+        this.maxEntries = Math.min(maxEntries, MAX_ENTRIES_LIMIT);
+
+        // Tables are kept at most half full
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < maxEntries * 2L) {
+            capacity <<= 1;
+        }
+        this.maxCapacity = capacity;
+    }
+
+    public void addToCache(String id, String userName) {
+        addToCacheIfAbsent(fingerprint(id, userName));
+    }
+
+    public boolean valueExistsInCache(String id, String userName) {
+        return valueExistsInCache(fingerprint(id, userName));
+    }
+
+    @Override
+    public boolean addToCacheIfAbsent(String id, String userName) {
+        return addToCacheIfAbsent(fingerprint(id, userName));
+    }
+
+    public synchronized void clearCache() {
+        Arrays.fill(current, 0);
+        Arrays.fill(previous, 0);
+        currentSize = 0;
+        previousSize = 0;
+        generationStart = System.currentTimeMillis();
+    }
+
+    /**
+     * Checks whether the given fingerprint is in the cache.
+     * @param fingerprint The fingerprint of the value.
+     * @return true if the fingerprint is cached.
+     */
+    public synchronized boolean valueExistsInCache(long fingerprint) {
+
+        fingerprint = fingerprint == 0 ? 1 : fingerprint;
+        expire(System.currentTimeMillis());
+
+        return contains(current, fingerprint) || contains(previous, fingerprint);
+    }
+
+    /**
+     * Atomically adds the given fingerprint to the cache if it is not already there.
+     * @param fingerprint The fingerprint of the value.
+     * @return true if the fingerprint was added, false if it was already cached.
+     */
+    public synchronized boolean addToCacheIfAbsent(long fingerprint) {
+
+        fingerprint = fingerprint == 0 ? 1 : fingerprint;
+        expire(System.currentTimeMillis());
+
+        if (contains(current, fingerprint) || contains(previous, fingerprint)) {
+            return false;
+        }
+
+        if (currentSize >= maxEntries) {
+            log.warn("Replay cache generation is full with " + currentSize
+                    + " values, dropping the oldest generation before its life time is over");
+            roll(System.currentTimeMillis(), true);
+        }
+
+        if ((currentSize + 1) * 2 > current.length && current.length < maxCapacity) {
+            current = rehash(current, current.length * 2);
+        }
+        insert(current, fingerprint);
+        currentSize++;
+
+        return true;
+    }
+
+    /**
+     * @return The number of fingerprints currently held, including some that may have expired.
+     */
+    public synchronized int size() {
+        return currentSize + previousSize;
+    }
+
+    private void expire(long now) {
+
+        long lifeTime = getMaximumLifeTimeOfAnAttribute() * 1000L;
+        long age = now - generationStart;
+
+        if (age < lifeTime) {
+            return;
+        }
+
+        roll(now, age < 2 * lifeTime);
+    }
+
+    /**
+     * Starts a new generation, dropping the previous one.
+     * @param keepCurrent Whether the current generation becomes the previous one, or is dropped
+     *                    as well.
+     */
+    private void roll(long now, boolean keepCurrent) {
+
+        // Reuse the dropped generation's table for the new generation
+        long[] table = previous;
+        Arrays.fill(table, 0);
+
+        if (keepCurrent) {
+            previous = current;
+            previousSize = currentSize;
+        } else {
+            Arrays.fill(current, 0);
+            previous = current;
+            previousSize = 0;
+        }
+
+        current = table;
+        currentSize = 0;
+        generationStart = now;
+    }
+
+    private static boolean contains(long[] table, long fingerprint) {
+
+        int mask = table.length - 1;
+        for (int i = index(fingerprint, mask); ; i = (i + 1) & mask) {
+            long value = table[i];
+            if (value == fingerprint) {
+                return true;
+            }
+            if (value == 0) {
+                return false;
+            }
+        }
+    }
+
+    private static void insert(long[] table, long fingerprint) {
+
+        int mask = table.length - 1;
+        int i = index(fingerprint, mask);
+        while (table[i] != 0) {
+            i = (i + 1) & mask;
+        }
+        table[i] = fingerprint;
+    }
+
+    private static long[] rehash(long[] table, int capacity) {
+
+        long[] newTable = new long[capacity];
+        for (long value : table) {
+            if (value != 0) {
+                insert(newTable, value);
+            }
+        }
+        return newTable;
+    }
+
+    private static int index(long fingerprint, int mask) {
+        return (int) (fingerprint ^ (fingerprint >>> 32)) & mask;
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the user name and the value. Zero is never returned.
+     */
+    static long fingerprint(String id, String userName) {
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < userName.length(); i++) {
+            hash ^= userName.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        // Separate the user name from the value
+        hash ^= 0xffff;
+        hash *= 0x100000001b3L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+
+        return hash == 0 ? 1 : hash;
+    }
+}
@@ -0,0 +1,290 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rampart;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * A UniqueMessageAttributeCache backed by a memory mapped file, so that all JVMs on a host that
+ * point to the same file share one replay cache. This lets a cluster of Rampart nodes behind a
+ * load balancer on one host detect a nonce replayed to a different node.
+ * <p>
+ * The file holds a fixed size open addressing table of 64 bit fingerprints of the user name and
+ * nonce value together with the time they were added. The table is divided into stripes; a value
+ * is only ever probed for and inserted within its own stripe, in a single pass holding that
+ * stripe's lock. Expired slots are reused in place, so there is no separate eviction. If a stripe
+ * is full of live values the oldest one is overwritten, therefore the capacity should comfortably
+ * exceed the number of nonces received within one nonce life time.
+ * <p>
+ * Stripes are locked with a file region lock, which serializes access across processes, and a
+ * JVM wide lock, since region locks can not be used to serialize threads of one JVM.
+ * <p>
+ * Values are not recorded per service: all services using the same file share one nonce space.
+ * <p>
+ * Supported properties:
+ * <ul>
+ * <li><code>file</code> - path of the shared file. Defaults to
+ * <code>rampart-nonce-cache.dat</code> in the temporary directory.</li>
+ * <li><code>capacity</code> - number of slots, used when the file is created. Defaults to
+ * 1048576 (a 16MB file).</li>
+ * </ul>
+ */
+public class MappedFileNonceCache extends AbstractUniqueMessageAttributeCache {
+
+    private static Log log = LogFactory.getLog(MappedFileNonceCache.class);
+
+    public static final String FILE_PROPERTY = "file";
+
+    public static final String CAPACITY_PROPERTY = "capacity";
+
+    public static final String DEFAULT_FILE_NAME = "rampart-nonce-cache.dat";
+
+    public static final int DEFAULT_CAPACITY = 1 << 20;
+
+    private static final int MAGIC = 0x52414D4E;
+
+    private static final int HEADER_SIZE = 16;
+
+    private static final int SLOT_SIZE = 16;
+
+    private static final int SLOTS_PER_STRIPE = 64;
+
+    private static final int STRIPE_SIZE = SLOT_SIZE * SLOTS_PER_STRIPE;
+
+    /**
+     * Tables opened by this JVM, by canonical file path. A file must only be mapped once per JVM
+     * so that all instances share the same stripe locks.
+     */
+    private static final Map<String, SharedTable> tables = new HashMap<String, SharedTable>();
+
+    private static class SharedTable {
+
+        final String path;
+        final FileChannel channel;
+        final MappedByteBuffer buffer;
+        final int stripeCount;
+        final ReentrantLock[] locks;
+
+        SharedTable(File file, int capacity) throws IOException {
+
+            this.path = file.getPath();
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            this.channel = raf.getChannel();
+
+            int stripes;
+            FileLock headerLock = channel.lock(0, HEADER_SIZE, false);
+            try {
+                MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+                if (header.getInt(0) == MAGIC) {
+                    // Use the layout of the existing file, whatever the configured capacity
+                    stripes = header.getInt(4);
+                } else {
+                    stripes = 1;
+                    while (stripes * SLOTS_PER_STRIPE < capacity) {
+                        stripes <<= 1;
+                    }
+                    raf.setLength(HEADER_SIZE + (long) stripes * STRIPE_SIZE);
+                    header.putInt(4, stripes);
+                    header.putInt(0, MAGIC);
+                    header.force();
+                }
+            } finally {
+                headerLock.release();
+            }
+
+            this.stripeCount = stripes;
+            this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, HEADER_SIZE,
+                    (long) stripes * STRIPE_SIZE);
+            this.locks = new ReentrantLock[stripes];
+            for (int i = 0; i < stripes; i++) {
+                locks[i] = new ReentrantLock();
+            }
+        }
+
+        /**
+         * Looks for a live entry with the given fingerprint and, if <code>insert</code> is set and
+         * none is found, records one.
+         * @return true if a live entry was found.
+         */
+        boolean probe(long fingerprint, long now, long lifeTime, boolean insert) throws IOException {
+
+            int stripe = (int) (fingerprint ^ (fingerprint >>> 32)) & (stripeCount - 1);
+            int stripeOffset = stripe * STRIPE_SIZE;
+            int start = (int) (fingerprint >>> 58);
+
+            ReentrantLock lock = locks[stripe];
+            lock.lock();
+            try {
+                FileLock fileLock = channel.lock(HEADER_SIZE + stripeOffset, STRIPE_SIZE, false);
+                try {
+                    int freeSlot = -1;
+                    int oldestSlot = -1;
+                    long oldestTime = Long.MAX_VALUE;
+
+                    for (int i = 0; i < SLOTS_PER_STRIPE; i++) {
+                        int slot = stripeOffset + ((start + i) & (SLOTS_PER_STRIPE - 1)) * SLOT_SIZE;
+                        long slotFingerprint = buffer.getLong(slot);
+
+                        if (slotFingerprint == 0) {
+                            // Slots are never emptied, so the value can not be further on
+                            if (freeSlot < 0) {
+                                freeSlot = slot;
+                            }
+                            break;
+                        }
+
+                        long addedTime = buffer.getLong(slot + 8);
+                        boolean expired = now - addedTime > lifeTime;
+
+                        if (slotFingerprint == fingerprint && !expired) {
+                            return true;
+                        }
+
+                        if (expired && freeSlot < 0) {
+                            freeSlot = slot;
+                        }
+                        if (addedTime < oldestTime) {
+                            oldestTime = addedTime;
+                            oldestSlot = slot;
+                        }
+                    }
+
+                    if (insert) {
+                        if (freeSlot < 0) {
+                            log.warn("Nonce cache " + path + " is full, evicting a live nonce. " +
+                                    "Increase the capacity of the cache.");
+                            freeSlot = oldestSlot;
+                        }
+                        buffer.putLong(freeSlot + 8, now);
+                        buffer.putLong(freeSlot, fingerprint);
+                    }
+
+                    return false;
+                } finally {
+                    fileLock.release();
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        void clear() throws IOException {
+
+            for (int stripe = 0; stripe < stripeCount; stripe++) {
+                int stripeOffset = stripe * STRIPE_SIZE;
+                locks[stripe].lock();
+                try {
+                    FileLock fileLock = channel.lock(HEADER_SIZE + stripeOffset, STRIPE_SIZE, false);
+                    try {
+                        for (int i = 0; i < STRIPE_SIZE; i += 8) {
+                            buffer.putLong(stripeOffset + i, 0);
+                        }
+                    } finally {
+                        fileLock.release();
+                    }
+                } finally {
+                    locks[stripe].unlock();
+                }
+            }
+        }
+    }
+
+    private final SharedTable table;
+
+    public MappedFileNonceCache() throws IOException
+    {
+        this(new Properties());
+    }
+
+    public MappedFileNonceCache(Properties properties) throws IOException
+    {
+        super();
+
+        String fileName = properties.getProperty(FILE_PROPERTY);
+        File file = fileName != null ? new File(fileName)
+                : new File(new File(System.getProperty("java.io.tmpdir")), DEFAULT_FILE_NAME);
+
+        String capacity = properties.getProperty(CAPACITY_PROPERTY);
+
+        this.table = getTable(file, capacity != null ? Integer.parseInt(capacity) : DEFAULT_CAPACITY);
+    }
+
+    private static SharedTable getTable(File file, int capacity) throws IOException {
+
+        String path = file.getCanonicalPath();
+        synchronized (tables) {
+            SharedTable table = tables.get(path);
+            if (table == null) {
+                if (log.isDebugEnabled()) {
+                    log.debug("Mapping nonce cache file " + path);
+                }
+                table = new SharedTable(file, capacity);
+                tables.put(path, table);
+            }
+            return table;
+        }
+    }
+
+    public void addToCache(String id, String userName) {
+        addToCacheIfAbsent(id, userName);
+    }
+
+    public boolean valueExistsInCache(String id, String userName) {
+
+        try {
+            return table.probe(FingerprintCache.fingerprint(id, userName), System.currentTimeMillis(),
+                    getMaximumLifeTimeOfAnAttribute() * 1000L, false);
+        } catch (IOException e) {
+            // Fail closed, an unverifiable nonce is treated as repeating
+            log.error("Unable to read nonce cache " + table.path, e);
+            return true;
+        }
+    }
+
+    @Override
+    public boolean addToCacheIfAbsent(String id, String userName) {
+
+        try {
+            return !table.probe(FingerprintCache.fingerprint(id, userName), System.currentTimeMillis(),
+                    getMaximumLifeTimeOfAnAttribute() * 1000L, true);
+        } catch (IOException e) {
+            // Fail closed, an unverifiable nonce is treated as repeating
+            log.error("Unable to update nonce cache " + table.path, e);
+            return false;
+        }
+    }
+
+    public void clearCache() {
+
+        try {
+            table.clear();
+        } catch (IOException e) {
+            log.error("Unable to clear nonce cache " + table.path, e);
+        }
+    }
+}
@@ -33,6 +33,8 @@ import org.apache.rahas.TrustUtil;
 import org.apache.rampart.builder.AsymmetricBindingBuilder;
 import org.apache.rampart.builder.SymmetricBindingBuilder;
 import org.apache.rampart.builder.TransportBindingBuilder;
+import org.apache.rampart.metrics.RampartMetrics;
+import org.apache.rampart.metrics.RampartMetricsFactory;
 import org.apache.rampart.policy.RampartPolicyData;
 import org.apache.rampart.policy.model.OptimizePartsConfig;
 import org.apache.rampart.util.Axis2Util;
@@ -62,18 +64,19 @@ public class MessageBuilder {
         
         
         RampartPolicyData rpd = rmd.getPolicyData();
+        // Messages that need no security header are sent as they are, without converting the
+        // envelope
         if(rpd == null || isSecurityValidationFault(msgCtx) || 
                 !RampartUtil.isSecHeaderRequired(rpd, rmd.isInitiator(),false)) {
-            
-            Document doc = rmd.getDocument();
-            WSSecHeader secHeader = rmd.getSecHeader();
-            
-            if ( secHeader != null && secHeader.isEmpty(doc) ) {
-                secHeader.removeSecurityHeader(doc);
-            }
-            
             return;
         }
+
+        RampartMetrics metrics = RampartMetricsFactory.getMetrics();
+        long t0 = metrics.isEnabled() ? System.nanoTime() : 0;
+
+        rmd.buildDocument();
+
+        long t1 = metrics.isEnabled() ? System.nanoTime() : 0;
         
         //Copy the RECV_RESULTS if available
         if(!rmd.isInitiator()) {
@@ -110,7 +113,7 @@ public class MessageBuilder {
                 }
                 
                 //set payload to a cancel request
-                String ctxIdKey = RampartUtil.getContextIdentifierKey(msgCtx);
+                String ctxIdKey = RampartUtil.getContextIdentifierKey(rmd);
                 String tokenId = (String)RampartUtil.getContextMap(msgCtx).get(ctxIdKey);
                 
                 if(tokenId != null && RampartUtil.isTokenValid(rmd, tokenId)) {
@@ -134,6 +137,8 @@ public class MessageBuilder {
             }
         }
         
+       long t2 = metrics.isEnabled() ? System.nanoTime() : 0;
+
        if(rpd.isTransportBinding()) {
            log.debug("Building transport binding");
            TransportBindingBuilder building = new TransportBindingBuilder();
@@ -146,6 +151,15 @@ public class MessageBuilder {
             AsymmetricBindingBuilder builder = new AsymmetricBindingBuilder();
             builder.build(rmd);
         }
+
+       if (metrics.isEnabled()) {
+           String service = RampartUtil.getServiceName(msgCtx);
+           String binding = RampartUtil.getBindingName(rpd);
+           metrics.recordTime(service, binding, RampartMetrics.Phase.DOM_CONVERSION, t1 - t0);
+           metrics.recordTime(service, binding, RampartMetrics.Phase.BINDING_BUILD,
+                   System.nanoTime() - t2);
+           RampartUtil.recordTokenStoreSize(msgCtx);
+       }
        
        //TODO remove following check, we don't need this check here as we do a check to see whether 
        // security header required 
@@ -164,7 +178,8 @@ public class MessageBuilder {
         	msgCtx.setProperty(Constants.Configuration.ENABLE_MTOM, Constants.VALUE_TRUE);
         	OptimizePartsConfig config= rpd.getOptimizePartsConfig();
         	if(config != null){
-        		MessageOptimizer.optimize(msgCtx.getEnvelope(), config.getExpressions(), config.getNamespaces());
+        		MessageOptimizer.optimize(msgCtx.getEnvelope(), config.getExpressions(), config.getNamespaces(),
+        		        rpd.getXPathCache());
         	}
         }
         
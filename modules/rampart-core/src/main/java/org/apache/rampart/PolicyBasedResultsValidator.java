@@ -16,14 +16,17 @@
 
 package org.apache.rampart;
 
+import org.apache.axiom.om.OMElement;
 import org.apache.axiom.soap.SOAPEnvelope;
-import org.apache.axiom.om.xpath.AXIOMXPath;
-import org.apache.axiom.om.OMNamespace;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.rampart.policy.RampartPolicyData;
 import org.apache.rampart.policy.SupportingPolicyData;
+import org.apache.rampart.policy.model.CryptoConfig;
+import org.apache.rampart.policy.model.RampartConfig;
+import org.apache.rampart.util.CertificateTrustCache;
 import org.apache.rampart.util.RampartUtil;
+import org.apache.rampart.util.XPathCache;
 import org.apache.ws.secpolicy.SPConstants;
 import org.apache.ws.secpolicy.model.*;
 import org.apache.ws.security.*;
@@ -31,6 +34,7 @@ import org.apache.ws.security.components.crypto.Crypto;
 import org.apache.ws.security.components.crypto.CryptoType;
 import org.apache.ws.security.message.token.Timestamp;
 import org.apache.ws.security.util.WSSecurityUtil;
+import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
@@ -46,6 +50,10 @@ public class PolicyBasedResultsValidator implements ExtendedPolicyValidatorCallb
     
     private static Log log = LogFactory.getLog(PolicyBasedResultsValidator.class);
 
+    // Decisions of a trust check overridden by a subclass are not cached
+    private final boolean trustCheckOverridden = CertificateTrustCache.isOverridden(
+            getClass(), PolicyBasedResultsValidator.class, "isCertificateTrusted");
+
     public void validate(ValidatorData data, Vector results)
     throws RampartException {
         List<WSSecurityEngineResult> resultsList = new ArrayList<WSSecurityEngineResult>(results);
@@ -459,38 +467,19 @@ public class PolicyBasedResultsValidator implements ExtendedPolicyValidatorCallb
         
         RampartPolicyData rpd = rmd.getPolicyData();
 
-        // build the list of encrypted nodes based on the dataRefs xpath expressions
         SOAPEnvelope envelope = rmd.getMsgContext().getEnvelope();
-        Set namespaces = RampartUtil.findAllPrefixNamespaces(envelope,
-                                                             rpd.getDeclaredNamespaces());
-
-        Map decryptedElements = new HashMap();
-        for (Object encrRef : encrRefs) {
-            WSDataRef dataRef = (WSDataRef) encrRef;
-
-            if (dataRef == null || dataRef.getXpath() == null) {
-                continue;
-            }
-
-            try {
-                XPath xp = new AXIOMXPath(dataRef.getXpath());
-
-                for (Object namespaceObject : namespaces) {
-                    OMNamespace tmpNs = (OMNamespace) namespaceObject;
-                    xp.addNamespace(tmpNs.getPrefix(), tmpNs.getNamespaceURI());
-                }
-
-                for (Object o : xp.selectNodes(envelope)) {
-                    decryptedElements.put(o, dataRef.isContent());
-                }
-
+        Map<String, String> namespaces = RampartUtil.getPrefixNamespaces(envelope,
+                                                                rpd.getDeclaredNamespaces());
 
-            } catch (JaxenException e) {
-                // This has to be changed to propagate an instance of a RampartException up
-                throw new RampartException("An error occurred while searching for decrypted elements.", e);
-            }
+        // The elements decrypted by WSS4J are nodes of the processed document, the policy
+        // expressions are evaluated against that document to find them by identity
+        OMElement document = getProcessedDocumentElement(rmd);
+        Map<String, String> documentNamespaces = document == null || document == envelope ? namespaces :
+                RampartUtil.getPrefixNamespaces(document, rpd.getDeclaredNamespaces());
+        Map<Object, Boolean> protectedElements = getProtectedElements(encrRefs);
 
-        }
+        // built from the dataRefs xpath expressions if the protected elements do not match
+        Map decryptedElements = null;
 
         //Check for encrypted body
         if(rpd.isEncryptBody()&& !rpd.isEncryptBodyOptional()) {
@@ -520,23 +509,25 @@ public class PolicyBasedResultsValidator implements ExtendedPolicyValidatorCallb
 
             // it is not a header or body part... verify encrypted xpath elements
             String xpath = encryptedPart.getXpath();
-            boolean found = false;
+            boolean content = !"Element".equals(encryptedPart.getEncModifier());
             try {
-                XPath xp = new AXIOMXPath(xpath);
-
-                for (Object namespaceObject : namespaces) {
-                    OMNamespace tmpNs = (OMNamespace) namespaceObject;
-                    xp.addNamespace(tmpNs.getPrefix(), tmpNs.getNamespaceURI());
+                boolean found = false;
+                if (document != null && !protectedElements.isEmpty()) {
+                    XPath xp = rpd.getXPathCache().getXPath(xpath, documentNamespaces);
+                    found = isDecrypted(xp.selectNodes(document), protectedElements, content);
                 }
 
-                for (Object o : xp.selectNodes(envelope)) {
-                    Object result = decryptedElements.get(o);
-                    if (result != null &&
-                            ("Element".equals(encryptedPart.getEncModifier())
-                                    ^ (Boolean) result)) {
-                        found = true;
-                        break;
+                // A decrypted header is inserted through DOM, while XPath sees the header
+                // blocks of the processed SOAP header, which are not the same objects. Such
+                // elements, and those of a document replaced by the envelope, are only found
+                // through the dataRefs xpath
+                if (!found) {
+                    if (decryptedElements == null) {
+                        decryptedElements = getDecryptedElements(encrRefs, envelope, namespaces,
+                                rpd.getXPathCache());
                     }
+                    XPath xp = rpd.getXPathCache().getXPath(xpath, namespaces);
+                    found = isDecrypted(xp.selectNodes(envelope), decryptedElements, content);
                 }
 
                 if (!found) {
@@ -553,6 +544,67 @@ public class PolicyBasedResultsValidator implements ExtendedPolicyValidatorCallb
         }
         
     }
+
+    /**
+     * Returns the document element of the document processed by WSS4J, if it can be searched
+     * with the XPath expressions of the policy.
+     */
+    private static OMElement getProcessedDocumentElement(RampartMessageData rmd) {
+        Document doc = rmd.getDocument();
+        if (doc != null && doc.getDocumentElement() instanceof OMElement) {
+            return (OMElement) doc.getDocumentElement();
+        }
+        return null;
+    }
+
+    /**
+     * Returns the elements protected by the given references, by identity, with whether
+     * their content was encrypted.
+     */
+    private static Map<Object, Boolean> getProtectedElements(List encrRefs) {
+        Map<Object, Boolean> protectedElements = new IdentityHashMap<Object, Boolean>();
+        for (Object encrRef : encrRefs) {
+            WSDataRef dataRef = (WSDataRef) encrRef;
+            if (dataRef != null && dataRef.getProtectedElement() != null) {
+                protectedElements.put(dataRef.getProtectedElement(), dataRef.isContent());
+            }
+        }
+        return protectedElements;
+    }
+
+    /**
+     * Returns the nodes of the envelope selected by the xpath expressions of the given
+     * references, with whether their content was encrypted.
+     */
+    private static Map getDecryptedElements(List encrRefs, SOAPEnvelope envelope,
+            Map<String, String> namespaces, XPathCache xpathCache) throws JaxenException {
+
+        Map decryptedElements = new HashMap();
+        for (Object encrRef : encrRefs) {
+            WSDataRef dataRef = (WSDataRef) encrRef;
+
+            if (dataRef == null || dataRef.getXpath() == null) {
+                continue;
+            }
+
+            XPath xp = xpathCache.getXPath(dataRef.getXpath(), namespaces);
+
+            for (Object o : xp.selectNodes(envelope)) {
+                decryptedElements.put(o, dataRef.isContent());
+            }
+        }
+        return decryptedElements;
+    }
+
+    private static boolean isDecrypted(List nodes, Map decryptedElements, boolean content) {
+        for (Object o : nodes) {
+            Boolean result = (Boolean) decryptedElements.get(o);
+            if (result != null && result.booleanValue() == content) {
+                return true;
+            }
+        }
+        return false;
+    }
     
     public void validateRequiredElements(ValidatorData data) throws RampartException {
         
@@ -564,7 +616,8 @@ public class PolicyBasedResultsValidator implements ExtendedPolicyValidatorCallb
 
         for (String expression : rpd.getRequiredElements()) {
 
-            if (!RampartUtil.checkRequiredElements(envelope, rpd.getDeclaredNamespaces(), expression)) {
+            if (!RampartUtil.checkRequiredElements(envelope, rpd.getDeclaredNamespaces(), expression,
+                    rpd.getXPathCache())) {
                 throw new RampartException("requiredElementsMissing", new String[]{expression});
             }
         }
@@ -724,6 +777,11 @@ public class PolicyBasedResultsValidator implements ExtendedPolicyValidatorCallb
      * 2. Search the keystore for a connection to the transmitted certificate
      * (that is, search for certificate(s) of the issuer of the transmitted certificate
      * 3. Verify the trust path for those certificates found because the search for the issuer might be fooled by a phony DN (String!)
+     * <p>
+     * Certificates found to be trusted by a cached signature crypto are remembered in the
+     * {@link CertificateTrustCache}, so {@link #isCertificateTrusted} is not called again for
+     * them until the decision expires. Nothing is cached if a subclass overrides
+     * {@link #isCertificateTrusted}.
      *
      * @param cert the certificate that should be validated against the keystore
      * @param rmd To get signature keystore information.
@@ -737,9 +795,8 @@ public class PolicyBasedResultsValidator implements ExtendedPolicyValidatorCallb
             return false;
         }
 
-        Crypto crypto = RampartUtil.getSignatureCrypto(
-                    rmd.getPolicyData().getRampartConfig(),
-                    rmd.getCustomClassLoader());
+        RampartConfig rampartConfig = rmd.getPolicyData().getRampartConfig();
+        Crypto crypto = RampartUtil.getSignatureCrypto(rampartConfig, rmd.getCustomClassLoader());
 
 
         // TODO removing this with WSS4J 1.6 migration. We do not have a way to get alias
@@ -749,7 +806,22 @@ public class PolicyBasedResultsValidator implements ExtendedPolicyValidatorCallb
         // TODO this validation we are doing in SignatureProcessor.handleToken (WSS4J) So why we need to do again ?
         // investigate
 
-        return isCertificateTrusted(cert, crypto);
+        // Decisions are only cached for a crypto that is itself cached, a crypto created for
+        // every message would never be looked up again
+        CryptoConfig cryptoConfig = rampartConfig == null ? null : rampartConfig.getSigCryptoConfig();
+        boolean cacheable = !trustCheckOverridden && cryptoConfig != null
+                && RampartUtil.isCryptoCached(cryptoConfig);
+
+        CertificateTrustCache trustCache = CertificateTrustCache.getInstance();
+        if (cacheable && trustCache.isTrusted(cert, crypto)) {
+            return true;
+        }
+
+        boolean trusted = isCertificateTrusted(cert, crypto);
+        if (trusted && cacheable) {
+            trustCache.setTrusted(cert, crypto, RampartUtil.getCryptoCacheRefreshMillis(cryptoConfig));
+        }
+        return trusted;
 
     }
 
@@ -20,17 +20,43 @@ import org.apache.axis2.AxisFault;
 import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.description.AxisDescription;
 import org.apache.axis2.description.AxisModule;
+import org.apache.axis2.description.Parameter;
 import org.apache.axis2.modules.Module;
 import org.apache.neethi.Assertion;
 import org.apache.neethi.Policy;
+import org.apache.rahas.TokenRequestDispatcher;
+import org.apache.rahas.client.ServiceClientPool;
+import org.apache.rahas.impl.util.SigningExecutor;
+import org.apache.rampart.metrics.RampartMetrics;
+import org.apache.rampart.metrics.RampartMetricsFactory;
 import org.apache.rampart.policy.model.RampartConfig;
 import org.apache.ws.secpolicy.SP11Constants;
 import org.apache.ws.secpolicy.SP12Constants;
 
 public class Rampart implements Module /* , ModulePolicyExtension */  {
 
+    /**
+     * Module parameter naming the {@link RampartMetrics} implementation to record the
+     * timings and counters of the security processing with.
+     */
+    public static final String METRICS_CLASS = "metricsClass";
+
     public void init(ConfigurationContext configContext, AxisModule module)
             throws AxisFault {
+
+        Parameter param = module.getParameter(METRICS_CLASS);
+        if (param != null && param.getValue() != null) {
+            String metricsClass = param.getValue().toString().trim();
+            // The module is initialized for every configuration context, which share the metrics
+            if (!RampartMetricsFactory.getMetrics().getClass().getName().equals(metricsClass)) {
+                try {
+                    RampartMetricsFactory.setMetrics(RampartMetricsFactory.createMetrics(
+                            metricsClass, module.getModuleClassLoader()));
+                } catch (RampartException e) {
+                    throw AxisFault.makeFault(e);
+                }
+            }
+        }
     }
 
     public void engageNotify(AxisDescription axisDescription) throws AxisFault {
@@ -39,7 +65,9 @@ public class Rampart implements Module /* , ModulePolicyExtension */  {
     }
 
     public void shutdown(ConfigurationContext configurationContext) throws AxisFault {
-        // at the moment, nothing needs to be done ..
+        ServiceClientPool.shutdown(configurationContext);
+        TokenRequestDispatcher.shutdown();
+        SigningExecutor.shutdown();
     }
 
 //    public PolicyExtension getPolicyExtension() {
@@ -26,6 +26,8 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.rahas.Token;
 import org.apache.rahas.TokenStorage;
+import org.apache.rampart.metrics.RampartMetrics;
+import org.apache.rampart.metrics.RampartMetricsFactory;
 import org.apache.rampart.policy.RampartPolicyData;
 import org.apache.rampart.policy.model.KerberosConfig;
 import org.apache.rampart.policy.model.RampartConfig;
@@ -46,6 +48,7 @@ import org.apache.ws.security.WSSecurityEngineResult;
 import org.apache.ws.security.WSSecurityException;
 import org.apache.ws.security.WSUsernameTokenPrincipal;
 import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.message.token.Timestamp;
 import org.apache.ws.security.validate.KerberosTokenDecoder;
 import org.apache.ws.security.validate.KerberosTokenValidator;
 
@@ -66,11 +69,14 @@ public class RampartEngine {
 	private static Log log = LogFactory.getLog(RampartEngine.class);
 	private static Log tlog = LogFactory.getLog(RampartConstants.TIME_LOG);
     private static ServiceNonceCache serviceNonceCache = new ServiceNonceCache();
+    private static ServiceMessageReplayCache serviceMessageReplayCache = new ServiceMessageReplayCache();
 
 	public List<WSSecurityEngineResult> process(MessageContext msgCtx) throws WSSPolicyException,
 	RampartException, WSSecurityException, AxisFault {
 
 		boolean dotDebug = tlog.isDebugEnabled();
+		RampartMetrics metrics = RampartMetricsFactory.getMetrics();
+		boolean timed = dotDebug || metrics.isEnabled();
 		
 		log.debug("Enter process(MessageContext msgCtx)");
 
@@ -88,19 +94,45 @@ public class RampartEngine {
         }
 
 
-        //TODO these checks have to be done before the convertion to avoid unnecessary convertion to LLOM -> DOOM
         // If the message is a security fault or no security
-        // header required by the policy
+        // header required by the policy, the envelope is not converted at all
         if(isSecurityFault(rmd) || !RampartUtil.isSecHeaderRequired(rpd,rmd.isInitiator(),true)) {
-			SOAPEnvelope env = Axis2Util.getSOAPEnvelopeFromDOMDocument(rmd.getDocument(), true);
-
-			//Convert back to llom since the inflow cannot use llom
-			msgCtx.setEnvelope(env);
-			Axis2Util.useDOOM(false);
             log.debug("Return process MessageContext msgCtx)");
             return null;
 		}
 
+		SOAPHeader header = rmd.getMsgContext().getEnvelope().getHeader();
+		if(header == null) {
+		    throw new RampartException("missingSOAPHeader");
+		}
+		
+        ArrayList headerBlocks = header.getHeaderBlocksWithNSURI(WSConstants.WSSE_NS);
+		SOAPHeaderBlock secHeader = null;
+		//Issue is axiom - a returned collection must not be null
+		if(headerBlocks != null) {
+    		Iterator headerBlocksIterator = headerBlocks.iterator();
+    		while (headerBlocksIterator.hasNext()) {
+    			SOAPHeaderBlock elem = (SOAPHeaderBlock) headerBlocksIterator.next();
+    			if(elem.getLocalName().equals(WSConstants.WSSE_LN)) {
+    				secHeader = elem;
+    				break;
+    			}
+    		}
+		}
+		
+		if(secHeader == null) {
+		    throw new RampartException("missingSecurityHeader");
+		}
+
+		String actorValue = secHeader.getRole();
+
+		// WSS4J has work to do, so convert the envelope
+		long tDoc = timed ? System.nanoTime() : 0;
+		rmd.buildDocument();
+		if (timed) {
+			tDoc = System.nanoTime() - tDoc;
+		}
+
 
 		List<WSSecurityEngineResult> results;
 
@@ -193,32 +225,9 @@ public class RampartEngine {
 
         ValidatorData data = new ValidatorData(rmd);
 
-		SOAPHeader header = rmd.getMsgContext().getEnvelope().getHeader();
-		if(header == null) {
-		    throw new RampartException("missingSOAPHeader");
-		}
-		
-        ArrayList headerBlocks = header.getHeaderBlocksWithNSURI(WSConstants.WSSE_NS);
-		SOAPHeaderBlock secHeader = null;
-		//Issue is axiom - a returned collection must not be null
-		if(headerBlocks != null) {
-    		Iterator headerBlocksIterator = headerBlocks.iterator();
-    		while (headerBlocksIterator.hasNext()) {
-    			SOAPHeaderBlock elem = (SOAPHeaderBlock) headerBlocksIterator.next();
-    			if(elem.getLocalName().equals(WSConstants.WSSE_LN)) {
-    				secHeader = elem;
-    				break;
-    			}
-    		}
-		}
-		
-		if(secHeader == null) {
-		    throw new RampartException("missingSecurityHeader");
-		}
-		
 		long t0=0, t1=0, t2=0, t3=0;
-		if(dotDebug){
-			t0 = System.currentTimeMillis();
+		if(timed){
+			t0 = System.nanoTime();
 		}
 
 		//wss4j does not allow username tokens with no password per default, see https://issues.apache.org/jira/browse/WSS-420
@@ -234,8 +243,6 @@ public class RampartEngine {
 		    }
 		}
 		
-		String actorValue = secHeader.getRole();
-
 		Crypto signatureCrypto = RampartUtil.getSignatureCrypto(rpd.getRampartConfig(), 
         		msgCtx.getAxisService().getClassLoader());
         TokenCallbackHandler tokenCallbackHandler = new TokenCallbackHandler(rmd.getTokenStorage(), RampartUtil.getPasswordCB(rmd));
@@ -268,8 +275,8 @@ public class RampartEngine {
 									msgCtx.getAxisService().getClassLoader()));
 		}
 
-		if(dotDebug){
-			t1 = System.currentTimeMillis();
+		if(timed){
+			t1 = System.nanoTime();
 		}
 
                 //Store symm tokens
@@ -279,6 +286,9 @@ public class RampartEngine {
 		
 		//Store username in MessageContext property
 
+        Timestamp timestamp = null;
+        List<byte[]> signatureValues = new ArrayList<byte[]>();
+
         if (results != null) {
             for (int j = 0; j < results.size(); j++) {
                 WSSecurityEngineResult wser = (WSSecurityEngineResult) results.get(j);
@@ -340,13 +350,21 @@ public class RampartEngine {
 
                         String serviceEndpointName = msgCtx.getAxisService().getEndpointName();
 
-                        boolean valueRepeating = serviceNonceCache.isNonceRepeatingForService(serviceEndpointName, username, userNameTokenPrincipal.getNonce());
+                        boolean valueRepeating = serviceNonceCache.checkAndAddNonceForService(serviceEndpointName, username,
+                                userNameTokenPrincipal.getNonce(), nonceLifeTimeInSeconds,
+                                rpd.getRampartConfig() != null ? rpd.getRampartConfig().getNonceCacheConfig() : null,
+                                msgCtx.getAxisService().getClassLoader());
 
                         if (valueRepeating){
                             throw new RampartException("repeatingNonceValue", new Object[]{ userNameTokenPrincipal.getNonce(), username} );
                         }
 
-                        serviceNonceCache.addNonceForService(serviceEndpointName, username, userNameTokenPrincipal.getNonce(), nonceLifeTimeInSeconds);
+                        if (metrics.isEnabled()) {
+                            int size = serviceNonceCache.getNonceCacheSize(serviceEndpointName);
+                            if (size >= 0) {
+                                metrics.recordNonceCacheSize(RampartUtil.getServiceName(msgCtx), size);
+                            }
+                        }
                     }
                 } else if (WSConstants.SIGN == actInt) {
                     X509Certificate cert = (X509Certificate) wser.get(WSSecurityEngineResult.TAG_X509_CERTIFICATE);
@@ -361,14 +379,41 @@ public class RampartEngine {
                     }
 
                     msgCtx.setProperty(RampartMessageData.X509_CERT, cert);
+
+                    byte[] signatureValue = (byte[]) wser.get(WSSecurityEngineResult.TAG_SIGNATURE_VALUE);
+                    if (signatureValue != null) {
+                        signatureValues.add(signatureValue);
+                    }
+                } else if (WSConstants.TS == actInt) {
+                    timestamp = (Timestamp) wser.get(WSSecurityEngineResult.TAG_TIMESTAMP);
                 }
             }
         }
 
-		SOAPEnvelope env = Axis2Util.getSOAPEnvelopeFromDOMDocument(rmd.getDocument(), true);
+        if (rpd.getRampartConfig() != null && rpd.getRampartConfig().isMessageReplayDetection()
+                && timestamp != null && timestamp.getCreated() != null && !signatureValues.isEmpty()) {
+            // A signed message can not legitimately repeat its timestamp and signature. It only has
+            // to be remembered for as long as its timestamp would be accepted.
+            int lifeTimeInSeconds = RampartUtil.getTimeToLive(rmd) + RampartUtil.getTimestampMaxSkew(rmd);
 
-		if(dotDebug){
-			t2 = System.currentTimeMillis();
+            boolean messageRepeating = serviceMessageReplayCache.checkAndAddMessageForService(
+                    msgCtx.getAxisService().getEndpointName(), timestamp.getCreated().getTime(),
+                    signatureValues, lifeTimeInSeconds,
+                    RampartUtil.getMessageReplayCacheSize(rmd, lifeTimeInSeconds));
+
+            if (messageRepeating) {
+                throw new RampartException("repeatingMessage",
+                        new Object[]{ timestamp.getCreated() });
+            }
+        }
+
+		long tEnv = timed ? System.nanoTime() : 0;
+
+		SOAPEnvelope env = getSOAPEnvelope(rmd);
+
+		if(timed){
+			t2 = System.nanoTime();
+			tDoc += t2 - tEnv;
 		}
 
 		//Convert back to llom since the inflow cannot use DOOM
@@ -387,17 +432,40 @@ public class RampartEngine {
         }
 
 
+		if(timed){
+			t3 = System.nanoTime();
+		}
+
 		if(dotDebug){
-			t3 = System.currentTimeMillis();
-			tlog.debug("processHeader by WSSecurityEngine took : " + (t1 - t0) +
-					", DOOM conversion took :" + (t2 - t1) +
-					", PolicyBasedResultsValidattor took " + (t3 - t2));
+			tlog.debug("processHeader by WSSecurityEngine took : " + (t1 - t0) / 1000000 +
+					", DOOM conversion took :" + tDoc / 1000000 +
+					(Boolean.TRUE.equals(msgCtx.getProperty(RampartMessageData.DOM_ENVELOPE))
+							? " (parsed as DOM)" : "") +
+					", PolicyBasedResultsValidattor took " + (t3 - t2) / 1000000);
+		}
+
+		if (metrics.isEnabled()) {
+			String service = RampartUtil.getServiceName(msgCtx);
+			String binding = RampartUtil.getBindingName(rpd);
+			metrics.recordTime(service, binding, RampartMetrics.Phase.SECURITY_PROCESSING, t1 - t0);
+			metrics.recordTime(service, binding, RampartMetrics.Phase.DOM_CONVERSION, tDoc);
+			metrics.recordTime(service, binding, RampartMetrics.Phase.RESULTS_VALIDATION, t3 - t2);
+			RampartUtil.recordTokenStoreSize(msgCtx);
 		}
 
 		log.debug("Return process(MessageContext msgCtx)");
 		return results;
 	}
 	
+	// Envelopes parsed directly into a DOM-capable model are used by the inflow as is,
+	// all others are converted back to llom
+	private SOAPEnvelope getSOAPEnvelope(RampartMessageData rmd) throws WSSecurityException {
+		if (Boolean.TRUE.equals(rmd.getMsgContext().getProperty(RampartMessageData.DOM_ENVELOPE))) {
+			return Axis2Util.getSOAPEnvelope(rmd.getDocument());
+		}
+		return Axis2Util.getSOAPEnvelopeFromDOMDocument(rmd.getDocument(), true);
+	}
+
 	// Check whether this a soap fault because of failure in processing the security header 
 	//and if so, we don't expect the security header
 	//
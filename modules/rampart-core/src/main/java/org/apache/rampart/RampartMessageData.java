@@ -26,22 +26,29 @@ import org.apache.axis2.description.Parameter;
 import org.apache.axis2.engine.AxisConfiguration;
 import org.apache.axis2.util.PolicyUtil;
 import org.apache.axis2.wsdl.WSDLConstants;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
 import org.apache.neethi.Assertion;
 import org.apache.neethi.Policy;
 import org.apache.neethi.PolicyComponent;
 import org.apache.neethi.PolicyEngine;
+import org.apache.rahas.IndexedTokenStore;
 import org.apache.rahas.RahasConstants;
 import org.apache.rahas.SimpleTokenStore;
 import org.apache.rahas.TokenStorage;
 import org.apache.rampart.handler.RampartUsernameTokenValidator;
 import org.apache.rampart.handler.WSSHandlerConstants;
+import org.apache.rampart.metrics.RampartMetrics;
+import org.apache.rampart.metrics.RampartMetricsFactory;
 import org.apache.rampart.policy.RampartPolicyBuilder;
+import org.apache.rampart.policy.RampartPolicyCache;
 import org.apache.rampart.policy.RampartPolicyData;
 import org.apache.rampart.policy.model.RampartConfig;
 import org.apache.rampart.saml.SAMLAssertionHandler;
 import org.apache.rampart.saml.SAMLAssertionHandlerFactory;
 import org.apache.rampart.util.Axis2Util;
 import org.apache.rampart.util.RampartUtil;
+import org.apache.rampart.util.TokenRefresher;
 import org.apache.ws.secpolicy.SP11Constants;
 import org.apache.ws.secpolicy.SP12Constants;
 import org.apache.ws.secpolicy.WSSPolicyException;
@@ -65,6 +72,8 @@ import java.util.Collection;
 import java.util.List;
 
 public class RampartMessageData {
+
+    private static Log tlog = LogFactory.getLog(RampartConstants.TIME_LOG);
     
     /**
      * Axis2 parameter name to be used in the client's axis2 xml
@@ -115,6 +124,17 @@ public class RampartMessageData {
     
     public final static String SCT_ID = "sctID";
 
+    /**
+     * Key to hold the id of the secure conversation context chosen for the message exchange
+     */
+    public final static String SCT_CONTEXT_KEY = "sctContextKey";
+
+    /**
+     * Key to flag an incoming envelope that was parsed directly into a DOM-capable Axiom
+     * model, and which the inflow uses as is after security processing
+     */
+    public final static String DOM_ENVELOPE = "rampartDOMEnvelope";
+
     public final static String X509_CERT ="X509Certificate";
     
     private MessageContext msgContext = null;
@@ -214,8 +234,8 @@ public class RampartMessageData {
                 if ( this.servicePolicy == null ) {
                     this.servicePolicy = (Policy)msgCtx.getProperty(KEY_RAMPART_IN_POLICY);
                 } else {
-                    this.servicePolicy = this.servicePolicy.merge((Policy)msgCtx
-                            .getProperty(KEY_RAMPART_IN_POLICY));
+                    this.servicePolicy = RampartPolicyCache.getMergedPolicy(this.servicePolicy,
+                            (Policy)msgCtx.getProperty(KEY_RAMPART_IN_POLICY));
                 }
                 
             // If we are OUT flow or OUT_FAULT flow and the KEY_RAMPART_OUT_POLICY is set , we set 
@@ -226,8 +246,8 @@ public class RampartMessageData {
                 if (this.servicePolicy == null) {
                     this.servicePolicy = (Policy)msgCtx.getProperty(KEY_RAMPART_OUT_POLICY);
                 } else {
-                    this.servicePolicy = this.servicePolicy.merge((Policy)msgCtx
-                            .getProperty(KEY_RAMPART_OUT_POLICY));
+                    this.servicePolicy = RampartPolicyCache.getMergedPolicy(this.servicePolicy,
+                            (Policy)msgCtx.getProperty(KEY_RAMPART_OUT_POLICY));
                 }
             }
             
@@ -262,10 +282,17 @@ public class RampartMessageData {
             }
             
             if(this.servicePolicy != null){
-                List<Assertion> it = this.servicePolicy.getAlternatives().next();
+                //Obtain the policy data compiled from the first policy alternative
+                RampartMetrics metrics = RampartMetricsFactory.getMetrics();
+                long t0 = metrics.isEnabled() ? System.nanoTime() : 0;
+
+                this.policyData = RampartPolicyCache.getPolicyData(this.servicePolicy);
 
-                //Process policy and build policy data
-                this.policyData = RampartPolicyBuilder.build(it);
+                if (metrics.isEnabled()) {
+                    metrics.recordTime(RampartUtil.getServiceName(msgCtx),
+                            RampartUtil.getBindingName(this.policyData),
+                            RampartMetrics.Phase.POLICY_COMPILATION, System.nanoTime() - t0);
+                }
 
                 //Set the version
                 setWSSecurityVersions(this.policyData.getWebServiceSecurityPolicyNS());
@@ -274,14 +301,6 @@ public class RampartMessageData {
             
             if(this.policyData != null) {
 
-                // Get the SOAP envelope as document, then create a security
-                // header and insert into the document (Envelope)
-                // WE SHOULD ONLY DO THE CONVERTION IF THERE IS AN APPLICABLE POLICY
-                this.document = Axis2Util.getDocumentFromSOAPEnvelope(msgCtx.getEnvelope(), true);
-                msgCtx.setEnvelope((SOAPEnvelope)this.document.getDocumentElement());
-
-                this.soapConstants = WSSecurityUtil.getSOAPConstants(this.document.getDocumentElement());
-
                 // Update the Rampart Config if RampartConfigCallbackHandler is present in the
                 // RampartConfig
                 
@@ -372,17 +391,10 @@ public class RampartMessageData {
                 this.customClassLoader = axisService.getClassLoader(); 
             } 
             
-            if(this.sender && this.policyData != null) {
-                this.secHeader = new WSSecHeader();
-                secHeader.insertSecurityHeader(this.document);
-            }
-            
         } catch (AxisFault e) {
             throw new RampartException("errorInExtractingMsgProps", e);
         } catch (WSSPolicyException e) {
             throw new RampartException("errorInExtractingMsgProps", e);
-        } catch (WSSecurityException e) {
-            throw new RampartException("errorInExtractingMsgProps", e);
         }
         
     }
@@ -443,7 +455,46 @@ public class RampartMessageData {
     }
 
     /**
-     * @return Returns the document.
+     * Gets the SOAP envelope as document, and inserts the security header into the document of
+     * an outgoing message. This is the costly part of preparing a message for WSS4J, so it is
+     * only done once the message is known to need security processing. The document is not
+     * available before.
+     * @throws RampartException If the envelope can not be converted
+     */
+    public void buildDocument() throws RampartException {
+
+        // WE SHOULD ONLY DO THE CONVERTION IF THERE IS AN APPLICABLE POLICY
+        if (this.document != null || this.policyData == null) {
+            return;
+        }
+
+        try {
+            long t0 = tlog.isDebugEnabled() ? System.currentTimeMillis() : 0;
+
+            this.document = Axis2Util.getDocumentFromSOAPEnvelope(msgContext.getEnvelope(), true);
+
+            if (tlog.isDebugEnabled()) {
+                tlog.debug("Envelope to DOM conversion took : " + (System.currentTimeMillis() - t0) +
+                        (Boolean.TRUE.equals(msgContext.getProperty(DOM_ENVELOPE)) ? " (parsed as DOM)" : ""));
+            }
+            msgContext.setEnvelope((SOAPEnvelope)this.document.getDocumentElement());
+
+            this.soapConstants = WSSecurityUtil.getSOAPConstants(this.document.getDocumentElement());
+
+            if(this.sender) {
+                this.secHeader = new WSSecHeader();
+                secHeader.insertSecurityHeader(this.document);
+            }
+        } catch (AxisFault e) {
+            throw new RampartException("errorInExtractingMsgProps", e);
+        } catch (WSSecurityException e) {
+            throw new RampartException("errorInExtractingMsgProps", e);
+        }
+    }
+
+    /**
+     * @return Returns the document, or <code>null</code> if it was not built yet.
+     * @see #buildDocument()
      */
     public Document getDocument() {
         return document;
@@ -582,8 +633,13 @@ public class RampartMessageData {
         String id = null;
         
         if(this.isInitiator) {
-            String contextIdentifierKey = RampartUtil.getContextIdentifierKey(this.msgContext);
+            String contextIdentifierKey = RampartUtil.getContextIdentifierKey(this);
             id = (String) RampartUtil.getContextMap(this.msgContext).get(contextIdentifierKey);
+            if (id != null) {
+                // Keep the token refreshed while it is in use
+                TokenRefresher.getInstance(this.msgContext.getConfigurationContext()).touch(
+                        RampartUtil.getSecConvRefreshKey(this));
+            }
         } else {
             //get the sec context id from the req msg ctx
             List<WSHandlerResult> results = (List<WSHandlerResult>)this.msgContext.getProperty(WSHandlerConstants.RECV_RESULTS);
@@ -617,7 +673,7 @@ public class RampartMessageData {
      * @param secConvTokenId The secConvTokenId to set.
      */
     public void setSecConvTokenId(String secConvTokenId) {
-        String contextIdentifierKey = RampartUtil.getContextIdentifierKey(this.msgContext);
+        String contextIdentifierKey = RampartUtil.getContextIdentifierKey(this);
         RampartUtil.getContextMap(this.msgContext).put(
                                                     contextIdentifierKey,
                                                     secConvTokenId);
@@ -659,6 +715,27 @@ public class RampartMessageData {
                             "Cannot create instance of token storage: "
                                     + storageClass, e);
                 }
+                String capacity = this.policyData.getRampartConfig().getTokenStoreCapacity();
+                if (capacity != null && this.tokenStorage instanceof IndexedTokenStore) {
+                    try {
+                        ((IndexedTokenStore) this.tokenStorage).setMaxTokens(
+                                Integer.parseInt(capacity));
+                    } catch (NumberFormatException e) {
+                        throw new RampartException("invalidTokenStoreCapacity",
+                                new String[]{capacity}, e);
+                    }
+                }
+                String evictionPolicy = this.policyData.getRampartConfig()
+                        .getTokenStoreEvictionPolicy();
+                if (evictionPolicy != null && this.tokenStorage instanceof IndexedTokenStore) {
+                    try {
+                        ((IndexedTokenStore) this.tokenStorage).setEvictionPolicy(
+                                IndexedTokenStore.EvictionPolicy.valueOf(evictionPolicy));
+                    } catch (IllegalArgumentException e) {
+                        throw new RampartException("invalidTokenStoreEvictionPolicy",
+                                new String[]{evictionPolicy}, e);
+                    }
+                }
             } else {
                 this.tokenStorage = new SimpleTokenStore();
                 
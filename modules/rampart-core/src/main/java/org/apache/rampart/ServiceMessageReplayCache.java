@@ -0,0 +1,95 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rampart;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * This class holds, per service, the signed messages received within the timestamp validity
+ * period. A message is identified by its timestamp creation time together with its signature
+ * values, which together can not legitimately repeat. Only fingerprints of these are kept, in a
+ * {@link FingerprintCache}.
+ */
+public class ServiceMessageReplayCache {
+
+    private ConcurrentMap<String, FingerprintCache> mapServiceReplayCache = new ConcurrentHashMap<String, FingerprintCache>();
+
+    /**
+     * This method will atomically check whether the message is repeating for the given service
+     * and record it if it is not, remembering at most
+     * {@link FingerprintCache#DEFAULT_MAX_ENTRIES} messages per life time.
+     * @param service The service url.
+     * @param created Creation time of the message timestamp in milliseconds.
+     * @param signatureValues Signature values of the message.
+     * @param lifeTime Period, in seconds, within which the message timestamp is accepted.
+     * @return true if the message is repeating else false.
+     */
+    public boolean checkAndAddMessageForService(String service, long created, List<byte[]> signatureValues,
+            int lifeTime) {
+        return checkAndAddMessageForService(service, created, signatureValues, lifeTime,
+                FingerprintCache.DEFAULT_MAX_ENTRIES);
+    }
+
+    /**
+     * This method will atomically check whether the message is repeating for the given service
+     * and record it if it is not.
+     * @param service The service url.
+     * @param created Creation time of the message timestamp in milliseconds.
+     * @param signatureValues Signature values of the message.
+     * @param lifeTime Period, in seconds, within which the message timestamp is accepted.
+     * @param maxEntries Number of messages remembered per life time, i.e. the life time times
+     *                   the expected message rate. Older messages are forgotten early beyond it.
+     * @return true if the message is repeating else false.
+     */
+    public boolean checkAndAddMessageForService(String service, long created, List<byte[]> signatureValues,
+            int lifeTime, int maxEntries) {
+
+        String key = service == null ? "" : service;
+
+        FingerprintCache replayCache = this.mapServiceReplayCache.get(key);
+        if (replayCache == null) {
+            FingerprintCache newCache = new FingerprintCache(lifeTime, maxEntries);
+            replayCache = this.mapServiceReplayCache.putIfAbsent(key, newCache);
+            if (replayCache == null) {
+                replayCache = newCache;
+            }
+        }
+
+        return !replayCache.addToCacheIfAbsent(fingerprint(created, signatureValues));
+    }
+
+    /**
+     * 64 bit FNV-1a hash of the creation time and the signature values.
+     */
+    private static long fingerprint(long created, List<byte[]> signatureValues) {
+
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < 64; i += 8) {
+            hash ^= (created >>> i) & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        for (byte[] signatureValue : signatureValues) {
+            for (byte b : signatureValue) {
+                hash ^= b & 0xff;
+                hash *= 0x100000001b3L;
+            }
+        }
+
+        return hash;
+    }
+}
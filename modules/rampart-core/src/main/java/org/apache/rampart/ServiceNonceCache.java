@@ -15,16 +15,21 @@
  */
 package org.apache.rampart;
 
-import java.util.Collections;
-import java.util.HashMap;
-import java.util.Map;
+import org.apache.rampart.policy.model.NonceCacheConfig;
+import org.apache.ws.security.util.Loader;
+
+import java.lang.reflect.Constructor;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
- * This class holds nonce information per service.
+ * This class holds nonce information per service. Unless a {@link NonceCacheConfig} names another
+ * provider, each service gets an in memory {@link ConcurrentNonceCache}.
  */
 public class ServiceNonceCache {
 
-    private Map<String, UniqueMessageAttributeCache> mapServiceNonceCache = Collections.synchronizedMap(new HashMap<String, UniqueMessageAttributeCache>());
+    private ConcurrentMap<String, UniqueMessageAttributeCache> mapServiceNonceCache = new ConcurrentHashMap<String, UniqueMessageAttributeCache>();
 
     /**
      * This method will add a nonce value for a given service.
@@ -35,15 +40,7 @@ public class ServiceNonceCache {
      */
     public void addNonceForService(String service, String userName, String nonceValue, int nonceLifeTime) {
 
-        UniqueMessageAttributeCache nonceCache;
-        if (this.mapServiceNonceCache.containsKey(service)) {
-            nonceCache = this.mapServiceNonceCache.get(service);
-        } else {
-            nonceCache = new NonceCache(nonceLifeTime);
-            this.mapServiceNonceCache.put(service, nonceCache);
-        }
-                
-        nonceCache.addToCache(nonceValue, userName);
+        getNonceCache(service, nonceLifeTime).addToCache(nonceValue, userName);
     }
 
     /**
@@ -55,15 +52,141 @@ public class ServiceNonceCache {
      */
     public boolean isNonceRepeatingForService(String service, String userName, String nonceValue){
 
-        if (this.mapServiceNonceCache.containsKey(service)) {
+        UniqueMessageAttributeCache nonceCache = this.mapServiceNonceCache.get(getKey(service));
+        if (nonceCache != null) {
+            return nonceCache.valueExistsInCache(nonceValue, userName);
+        }
+
+        return false;
+
+    }
 
-            UniqueMessageAttributeCache nonceCache = this.mapServiceNonceCache.get(service);
-            return nonceCache.valueExistsInCache(nonceValue, userName);           
+    /**
+     * This method will atomically check whether the nonce value is repeating for the given service
+     * and record it if it is not.
+     * @param service The service url.
+     * @param userName User name.
+     * @param nonceValue Nonce value.
+     * @param nonceLifeTime Maximum life span of a nonce value.
+     * @return true if nonce value is repeating else false.
+     */
+    public boolean checkAndAddNonceForService(String service, String userName, String nonceValue, int nonceLifeTime) {
 
+        return !addToCacheIfAbsent(getNonceCache(service, nonceLifeTime), nonceValue, userName);
+    }
+
+    /**
+     * This method will atomically check whether the nonce value is repeating for the given service
+     * and record it if it is not, using the replay cache described by the given configuration
+     * when the service is first seen.
+     * @param service The service url.
+     * @param userName User name.
+     * @param nonceValue Nonce value.
+     * @param nonceLifeTime Maximum life span of a nonce value.
+     * @param nonceCacheConfig Replay cache configuration. May be null.
+     * @param classLoader Class loader to load the configured provider with.
+     * @return true if nonce value is repeating else false.
+     * @throws RampartException If the configured replay cache can not be created.
+     */
+    public boolean checkAndAddNonceForService(String service, String userName, String nonceValue, int nonceLifeTime,
+            NonceCacheConfig nonceCacheConfig, ClassLoader classLoader) throws RampartException {
+
+        UniqueMessageAttributeCache nonceCache = this.mapServiceNonceCache.get(getKey(service));
+        if (nonceCache == null) {
+            nonceCache = putIfAbsent(service, createNonceCache(nonceCacheConfig, classLoader, nonceLifeTime));
         }
 
-        return false;
+        return !addToCacheIfAbsent(nonceCache, nonceValue, userName);
+    }
+
+    /**
+     * Returns the number of nonce values held for the given service.
+     * @param service The service url.
+     * @return The number of nonce values, or -1 if the nonce cache of the service cannot tell.
+     */
+    public int getNonceCacheSize(String service) {
+
+        UniqueMessageAttributeCache nonceCache = this.mapServiceNonceCache.get(getKey(service));
+        if (nonceCache instanceof ConcurrentNonceCache) {
+            return ((ConcurrentNonceCache) nonceCache).size();
+        }
+
+        return nonceCache == null ? 0 : -1;
+    }
+
+    /**
+     * Checks and adds the value atomically. Caches which do not extend
+     * AbstractUniqueMessageAttributeCache are locked while checking and adding.
+     */
+    private static boolean addToCacheIfAbsent(UniqueMessageAttributeCache nonceCache, String id,
+            String userName) {
+
+        if (nonceCache instanceof AbstractUniqueMessageAttributeCache) {
+            return ((AbstractUniqueMessageAttributeCache) nonceCache).addToCacheIfAbsent(id, userName);
+        }
+
+        synchronized (nonceCache) {
+            if (nonceCache.valueExistsInCache(id, userName)) {
+                return false;
+            }
+            nonceCache.addToCache(id, userName);
+            return true;
+        }
+    }
+
+    private UniqueMessageAttributeCache getNonceCache(String service, int nonceLifeTime) {
+
+        UniqueMessageAttributeCache nonceCache = this.mapServiceNonceCache.get(getKey(service));
+        if (nonceCache == null) {
+            nonceCache = putIfAbsent(service, new ConcurrentNonceCache(nonceLifeTime));
+        }
+
+        return nonceCache;
+    }
+
+    private UniqueMessageAttributeCache putIfAbsent(String service, UniqueMessageAttributeCache newCache) {
+
+        UniqueMessageAttributeCache nonceCache = this.mapServiceNonceCache.putIfAbsent(getKey(service), newCache);
+        return nonceCache != null ? nonceCache : newCache;
+    }
+
+    private static UniqueMessageAttributeCache createNonceCache(NonceCacheConfig nonceCacheConfig,
+            ClassLoader classLoader, int nonceLifeTime) throws RampartException {
+
+        if (nonceCacheConfig == null || nonceCacheConfig.getProvider() == null) {
+            return new ConcurrentNonceCache(nonceLifeTime);
+        }
+
+        String providerClass = nonceCacheConfig.getProvider();
+        Class cacheClass;
+        try {
+            cacheClass = Loader.loadClass(classLoader, providerClass);
+        } catch (ClassNotFoundException e) {
+            throw new RampartException("cannotLoadNonceCacheClass",
+                    new String[]{providerClass}, e);
+        }
+
+        UniqueMessageAttributeCache nonceCache;
+        try {
+            Constructor constructor;
+            try {
+                constructor = cacheClass.getConstructor(Properties.class);
+                nonceCache = (UniqueMessageAttributeCache) constructor.newInstance(nonceCacheConfig.getProp());
+            } catch (NoSuchMethodException e) {
+                nonceCache = (UniqueMessageAttributeCache) cacheClass.newInstance();
+            }
+        } catch (java.lang.Exception e) {
+            throw new RampartException("cannotCreateNonceCacheInstance",
+                    new String[]{providerClass}, e);
+        }
+
+        nonceCache.setMaximumLifeTimeOfAnAttribute(nonceLifeTime);
+        return nonceCache;
+    }
 
+    private static String getKey(String service) {
+        // A service may not have an endpoint name
+        return service == null ? "" : service;
     }
 
 }
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rampart;
+
+/**
+ * Marker interface for the classes configured in the Rampart Configuration that keep no state
+ * between calls and are thread safe, such as password callback handlers, policy validator
+ * callback handlers and Rampart config callback handlers.
+ * <p>
+ * Rampart creates an instance of such a class once per service and shares it between messages.
+ * Instances of other classes are still created for every message.
+ */
+public interface SharedHandler {
+
+}
@@ -17,6 +17,7 @@
 package org.apache.rampart;
 
 import org.apache.rahas.EncryptedKeyToken;
+import org.apache.rahas.ExtendedTokenStorage;
 import org.apache.rahas.Token;
 import org.apache.rahas.TokenStorage;
 import org.apache.rahas.TrustException;
@@ -72,6 +73,17 @@ public class TokenCallbackHandler implements CallbackHandler {
                 } else if (pc.getUsage() == WSPasswordCallback.SECRET_KEY){
                 	try {
 
+                        if (this.store instanceof ExtendedTokenStorage) {
+                            Token tok = ((ExtendedTokenStorage) this.store).getTokenBySHA1(id);
+                            if (tok != null) {
+                                pc.setKey(tok.getSecret());
+                                pc.setCustomToken((Element)tok.getToken());
+
+                                tokenIdentifier = tok.getId();
+                            }
+                            continue;
+                        }
+
                         String[] tokenIdentifiers = this.store.getTokenIdentifiers();
             			Token tok;
 
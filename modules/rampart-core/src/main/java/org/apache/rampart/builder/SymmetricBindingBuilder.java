@@ -855,8 +855,7 @@ public class SymmetricBindingBuilder extends BindingBuilder {
                         msgContext.setProperty(RampartMessageData.SCT_ID, secConvTokenId);
                         
                         //remove from the local map of contexts
-                        String contextIdentifierKey = RampartUtil.getContextIdentifierKey(msgContext);
-                        RampartUtil.getContextMap(msgContext).remove(contextIdentifierKey);
+                        RampartUtil.removeContextIdentifiers(rmd);
                     } catch (TrustException e) {
                         throw new RampartException("errorExtractingToken");
                     }
@@ -713,8 +713,7 @@ public class TransportBindingBuilder extends BindingBuilder {
                     msgContext.setProperty(RampartMessageData.SCT_ID, secConvTokenId);
                     
                     //remove from the local map of contexts
-                    String contextIdentifierKey = RampartUtil.getContextIdentifierKey(msgContext);
-                    RampartUtil.getContextMap(msgContext).remove(contextIdentifierKey);
+                    RampartUtil.removeContextIdentifiers(rmd);
                 } catch (TrustException e) {
                     throw new RampartException("errorExtractingToken",e);
                 }
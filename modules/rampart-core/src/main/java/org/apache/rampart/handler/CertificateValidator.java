@@ -16,6 +16,9 @@
 
 package org.apache.rampart.handler;
 
+import org.apache.rampart.policy.model.CryptoConfig;
+import org.apache.rampart.util.CertificateTrustCache;
+import org.apache.rampart.util.RampartUtil;
 import org.apache.ws.security.WSSecurityException;
 import org.apache.ws.security.components.crypto.Crypto;
 import org.apache.ws.security.validate.SignatureTrustValidator;
@@ -27,6 +30,10 @@ import java.security.cert.X509Certificate;
  */
 public class CertificateValidator extends SignatureTrustValidator {
 
+    // Decisions of an overridden trust check are not cached
+    private final boolean trustCheckOverridden = CertificateTrustCache.isOverridden(
+            getClass(), SignatureTrustValidator.class, "verifyTrustInCert");
+
     CertificateValidator() {
 
     }
@@ -39,7 +46,34 @@ public class CertificateValidator extends SignatureTrustValidator {
      * @throws WSSecurityException If an error occurred while trying to access Crypto and Certificate properties.
      */
     boolean validateCertificate(X509Certificate certificate, Crypto signatureCrypto) throws WSSecurityException {
-        return verifyTrustInCert(certificate, signatureCrypto, false);
+        return validateCertificate(certificate, signatureCrypto, null);
+    }
+
+    /**
+     * Checks the validity of the given certificate. Certificates found to be valid by a cached
+     * crypto are remembered in the {@link CertificateTrustCache}.
+     * @param certificate Certificate to be validated.
+     * @param signatureCrypto Signature crypto instance.
+     * @param cryptoConfig Configuration of the signature crypto, or <code>null</code> if unknown.
+     * @return true if certificate used in signature is valid. False if it is not valid.
+     * @throws WSSecurityException If an error occurred while trying to access Crypto and Certificate properties.
+     */
+    boolean validateCertificate(X509Certificate certificate, Crypto signatureCrypto,
+                                CryptoConfig cryptoConfig) throws WSSecurityException {
+        boolean cacheable = !trustCheckOverridden && cryptoConfig != null
+                && RampartUtil.isCryptoCached(cryptoConfig);
+
+        CertificateTrustCache trustCache = CertificateTrustCache.getInstance();
+        if (cacheable && trustCache.isTrusted(certificate, signatureCrypto)) {
+            return true;
+        }
+
+        boolean trusted = verifyTrustInCert(certificate, signatureCrypto, false);
+        if (trusted && cacheable) {
+            trustCache.setTrusted(certificate, signatureCrypto,
+                    RampartUtil.getCryptoCacheRefreshMillis(cryptoConfig));
+        }
+        return trusted;
     }
 
 }
@@ -0,0 +1,98 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rampart.handler;
+
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMXMLBuilderFactory;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axiom.soap.SOAPModelBuilder;
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.Constants;
+import org.apache.axis2.builder.BuilderUtil;
+import org.apache.axis2.builder.SOAPBuilder;
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.description.AxisDescription;
+import org.apache.axis2.description.AxisModule;
+import org.apache.rampart.RampartMessageData;
+
+import java.io.InputStream;
+
+/**
+ * SOAP message builder that parses incoming messages directly into a DOM-capable Axiom model,
+ * so that Rampart processes the security header on the tree built by the transport and the
+ * inflow uses that tree as is afterwards. This avoids converting the envelope to DOM and back
+ * for every secured message.
+ * <p>
+ * The builder replaces the default SOAP builders in the <code>messageBuilders</code> section
+ * of the axis2.xml:
+ * <pre>
+ * &lt;messageBuilder contentType="text/xml" class="org.apache.rampart.handler.DOMSOAPBuilder"/&gt;
+ * &lt;messageBuilder contentType="application/soap+xml" class="org.apache.rampart.handler.DOMSOAPBuilder"/&gt;
+ * </pre>
+ * Messages of services that do not engage Rampart are built as usual.
+ */
+public class DOMSOAPBuilder extends SOAPBuilder {
+
+    private static final String RAMPART_MODULE = "rampart";
+
+    public OMElement processDocument(InputStream inputStream, String contentType,
+                                     MessageContext messageContext) throws AxisFault {
+
+        if (!isRampartEngaged(messageContext)) {
+            return super.processDocument(inputStream, contentType, messageContext);
+        }
+
+        String charSetEncoding = (String) messageContext
+                .getProperty(Constants.Configuration.CHARACTER_SET_ENCODING);
+        SOAPModelBuilder builder = OMXMLBuilderFactory.createSOAPModelBuilder(
+                OMAbstractFactory.getMetaFactory(OMAbstractFactory.FEATURE_DOM),
+                inputStream, charSetEncoding);
+        messageContext.setProperty(Constants.BUILDER, builder);
+        SOAPEnvelope envelope = builder.getSOAPEnvelope();
+        BuilderUtil.validateSOAPVersion(BuilderUtil.getEnvelopeNamespace(contentType), envelope);
+        BuilderUtil.validateCharSetEncoding(charSetEncoding,
+                builder.getDocument().getCharsetEncoding(),
+                envelope.getNamespace().getNamespaceURI());
+
+        messageContext.setProperty(RampartMessageData.DOM_ENVELOPE, Boolean.TRUE);
+        return envelope;
+    }
+
+    // The service is only known at this point for responses; requests are dispatched after
+    // they are built, so they are parsed as DOM whenever the builder is configured
+    private boolean isRampartEngaged(MessageContext messageContext) {
+        AxisDescription description = messageContext.getAxisOperation();
+        if (description == null) {
+            description = messageContext.getAxisService();
+        }
+        if (description == null || messageContext.getConfigurationContext() == null) {
+            return true;
+        }
+        AxisModule module = messageContext.getConfigurationContext().getAxisConfiguration()
+                .getModule(RAMPART_MODULE);
+        if (module == null) {
+            return false;
+        }
+        for (; description != null; description = description.getParent()) {
+            if (description.isEngaged(module)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -32,6 +32,7 @@ import org.apache.commons.logging.LogFactory;
 import org.apache.rampart.RampartConstants;
 import org.apache.rampart.RampartEngine;
 import org.apache.rampart.RampartException;
+import org.apache.rampart.util.RampartUtil;
 import org.apache.ws.secpolicy.WSSPolicyException;
 import org.apache.ws.security.WSConstants;
 import org.apache.ws.security.WSSecurityEngineResult;
@@ -72,7 +73,10 @@ public class RampartReceiver implements Handler {
 
     public void flowComplete(MessageContext msgContext)
     {
-    	
+        // The response completes the message exchange of the client
+        if (!msgContext.isServerSide()) {
+            RampartUtil.releaseContextIdentifierKey(msgContext);
+        }
     }
 
     public InvocationResponse invoke(MessageContext msgContext) throws AxisFault {
@@ -21,11 +21,13 @@ import org.apache.axis2.context.MessageContext;
 import org.apache.axis2.description.HandlerDescription;
 import org.apache.axis2.description.Parameter;
 import org.apache.axis2.engine.Handler;
+import org.apache.axis2.wsdl.WSDLConstants;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.rampart.MessageBuilder;
 import org.apache.rampart.RampartConstants;
 import org.apache.rampart.RampartException;
+import org.apache.rampart.util.RampartUtil;
 import org.apache.ws.secpolicy.WSSPolicyException;
 import org.apache.ws.security.WSSecurityException;
 
@@ -87,6 +89,13 @@ public class RampartSender implements Handler {
 
     public void flowComplete(MessageContext msgContext)
     {
+        // Release the secure conversation context unless a response is to be processed with it
+        if (!msgContext.isServerSide() && (msgContext.getFailureReason() != null
+                || msgContext.getAxisOperation() == null
+                || msgContext.getAxisOperation().getAxisSpecificMEPConstant()
+                        == WSDLConstants.MEP_CONSTANT_OUT_ONLY)) {
+            RampartUtil.releaseContextIdentifierKey(msgContext);
+        }
     }
     
     public HandlerDescription getHandlerDesc() {
@@ -0,0 +1,153 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rampart.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock free histogram of times in nanoseconds.
+ * <p>
+ * Each power of two is split into {@link #SUB_BUCKETS} buckets of equal width, so that the
+ * percentiles are accurate to within an eighth of their value whatever their magnitude, with
+ * a fixed number of counters. Recording increments a counter with a single atomic operation;
+ * the percentiles are read from a snapshot of the counters that may miss concurrent updates.
+ */
+public class Histogram implements HistogramMBean {
+
+    private static final int SUB_BUCKET_BITS = 3;
+
+    static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    // Values below SUB_BUCKETS have a bucket each, after that each power of two has SUB_BUCKETS
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final AtomicLong count = new AtomicLong();
+
+    private final AtomicLong total = new AtomicLong();
+
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Records a time.
+     * @param nanos The time in nanoseconds, negative times are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+
+        counts.incrementAndGet(getBucket(value));
+        count.incrementAndGet();
+        total.addAndGet(value);
+
+        long current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                break;
+            }
+        }
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : toMicros(total.get()) / n;
+    }
+
+    public double getMax() {
+        return toMicros(max.get());
+    }
+
+    public double get50thPercentile() {
+        return toMicros(getPercentile(0.50));
+    }
+
+    public double get90thPercentile() {
+        return toMicros(getPercentile(0.90));
+    }
+
+    public double get99thPercentile() {
+        return toMicros(getPercentile(0.99));
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKETS; i++) {
+            counts.set(i, 0);
+        }
+        count.set(0);
+        total.set(0);
+        max.set(0);
+    }
+
+    /**
+     * Returns the upper bound of the bucket holding the given fraction of the recorded times.
+     * @param fraction The fraction, between 0 and 1
+     * @return The time in nanoseconds, or 0 if nothing was recorded
+     */
+    long getPercentile(double fraction) {
+        long[] snapshot = new long[BUCKETS];
+        long n = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            n += snapshot[i];
+        }
+        if (n == 0) {
+            return 0;
+        }
+
+        long rank = (long) Math.ceil(fraction * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= rank && snapshot[i] > 0) {
+                // The bucket is never reported above the largest recorded time
+                return Math.min(getUpperBound(i), max.get());
+            }
+        }
+        return max.get();
+    }
+
+    static int getBucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) (value >>> shift) & (SUB_BUCKETS - 1);
+        return (shift + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long getUpperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowerBound = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << shift;
+        return lowerBound + (1L << shift) - 1;
+    }
+
+    private static double toMicros(long nanos) {
+        return nanos / 1000.0;
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rampart.metrics;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * {@link RampartMetrics} that keeps a {@link Histogram} per service, binding and phase and
+ * {@link ServiceCounters} per service, and exposes them as MBeans named
+ * <pre>
+ * org.apache.rampart:type=Timer,service=&lt;service&gt;,binding=&lt;binding&gt;,phase=&lt;phase&gt;
+ * org.apache.rampart:type=Counters,service=&lt;service&gt;
+ * </pre>
+ * The MBeans are registered when a service is first seen. Recording does not take locks.
+ */
+public class HistogramRampartMetrics implements RampartMetrics {
+
+    private static Log log = LogFactory.getLog(HistogramRampartMetrics.class);
+
+    public static final String DOMAIN = "org.apache.rampart";
+
+    private final MBeanServer mbeanServer;
+
+    private final ConcurrentMap<String, Histogram> histograms =
+            new ConcurrentHashMap<String, Histogram>();
+
+    private final ConcurrentMap<String, ServiceCounters> counters =
+            new ConcurrentHashMap<String, ServiceCounters>();
+
+    private final Queue<ObjectName> registered = new ConcurrentLinkedQueue<ObjectName>();
+
+    /**
+     * Creates metrics exposed through the platform MBean server.
+     */
+    public HistogramRampartMetrics() {
+        this(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    /**
+     * @param mbeanServer The MBean server to expose the metrics through, may be
+     *                    <code>null</code> to keep them unexposed
+     */
+    public HistogramRampartMetrics(MBeanServer mbeanServer) {
+        this.mbeanServer = mbeanServer;
+    }
+
+    public boolean isEnabled() {
+        return true;
+    }
+
+    public void recordTime(String service, String binding, Phase phase, long nanos) {
+        getHistogram(service, binding, phase).record(nanos);
+    }
+
+    public void recordTokenStoreSize(String service, int size) {
+        getServiceCounters(service).setTokenStoreSize(size);
+    }
+
+    public void recordNonceCacheSize(String service, int size) {
+        getServiceCounters(service).setNonceCacheSize(size);
+    }
+
+    public void recordSTSCall(String service) {
+        getServiceCounters(service).incrementSTSCalls();
+    }
+
+    /**
+     * @param service The name of the service
+     * @param binding The binding
+     * @param phase The phase
+     * @return The histogram of the times of the phase
+     */
+    public Histogram getHistogram(String service, String binding, Phase phase) {
+        String key = service + '\n' + binding + '\n' + phase;
+        Histogram histogram = histograms.get(key);
+        if (histogram == null) {
+            Histogram created = new Histogram();
+            histogram = histograms.putIfAbsent(key, created);
+            if (histogram == null) {
+                histogram = created;
+                register(histogram, "type=Timer,service=" + quote(service) +
+                        ",binding=" + binding + ",phase=" + phase.name().toLowerCase(Locale.ENGLISH));
+            }
+        }
+        return histogram;
+    }
+
+    /**
+     * @param service The name of the service
+     * @return The counters of the service
+     */
+    public ServiceCounters getServiceCounters(String service) {
+        String key = String.valueOf(service);
+        ServiceCounters serviceCounters = counters.get(key);
+        if (serviceCounters == null) {
+            ServiceCounters created = new ServiceCounters();
+            serviceCounters = counters.putIfAbsent(key, created);
+            if (serviceCounters == null) {
+                serviceCounters = created;
+                register(serviceCounters, "type=Counters,service=" + quote(service));
+            }
+        }
+        return serviceCounters;
+    }
+
+    /**
+     * Unregisters all MBeans registered by this instance.
+     */
+    public void unregister() {
+        for (ObjectName name : registered) {
+            try {
+                mbeanServer.unregisterMBean(name);
+            } catch (JMException e) {
+                log.debug("Cannot unregister " + name, e);
+            }
+        }
+        registered.clear();
+    }
+
+    private void register(Object mbean, String properties) {
+        if (mbeanServer == null) {
+            return;
+        }
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":" + properties);
+            try {
+                mbeanServer.registerMBean(mbean, name);
+            } catch (InstanceAlreadyExistsException e) {
+                // Left behind by metrics that were replaced, e.g. when the module is reloaded
+                mbeanServer.unregisterMBean(name);
+                mbeanServer.registerMBean(mbean, name);
+            }
+            registered.add(name);
+        } catch (JMException e) {
+            log.warn("Cannot register Rampart metrics " + properties, e);
+        }
+    }
+
+    private static String quote(String value) {
+        return ObjectName.quote(String.valueOf(value));
+    }
+}
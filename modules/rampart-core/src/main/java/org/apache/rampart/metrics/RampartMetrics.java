@@ -0,0 +1,96 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rampart.metrics;
+
+/**
+ * Receives the timings and counters of the security processing of Rampart. Timings are
+ * recorded per service and binding, counters per service.
+ * <p>
+ * Implementations are called for every message by many threads at once, so recording must be
+ * cheap and thread safe. Rampart only measures the phases when {@link #isEnabled()} returns
+ * <code>true</code>. The implementation in use is set through {@link RampartMetricsFactory},
+ * or with the <code>metricsClass</code> parameter of the rampart module.
+ */
+public interface RampartMetrics {
+
+    /**
+     * The timed phases of processing a message.
+     */
+    public enum Phase {
+
+        /** Compiling the effective policy into <code>RampartPolicyData</code> */
+        POLICY_COMPILATION,
+
+        /** Converting the envelope to DOM, and back for incoming messages */
+        DOM_CONVERSION,
+
+        /** Processing the security header of an incoming message with WSS4J */
+        SECURITY_PROCESSING,
+
+        /** Validating the results of an incoming message against the policy */
+        RESULTS_VALIDATION,
+
+        /** Building the security header of an outgoing message for its binding */
+        BINDING_BUILD
+    }
+
+    /** Binding name of policies with a transport binding */
+    public static final String TRANSPORT_BINDING = "transport";
+
+    /** Binding name of policies with a symmetric binding */
+    public static final String SYMMETRIC_BINDING = "symmetric";
+
+    /** Binding name of policies with an asymmetric binding */
+    public static final String ASYMMETRIC_BINDING = "asymmetric";
+
+    /**
+     * @return Whether the phases of messages are to be timed at all
+     */
+    public boolean isEnabled();
+
+    /**
+     * Records the time a phase of a message took.
+     * @param service The name of the service
+     * @param binding The binding of the policy of the message
+     * @param phase The phase
+     * @param nanos The time taken in nanoseconds
+     */
+    public void recordTime(String service, String binding, Phase phase, long nanos);
+
+    /**
+     * Records the number of tokens in the token store used by a service.
+     * @param service The name of the service
+     * @param size The number of tokens
+     */
+    public void recordTokenStoreSize(String service, int size);
+
+    /**
+     * Records the number of nonces remembered for a service.
+     * @param service The name of the service
+     * @param size The number of nonces
+     */
+    public void recordNonceCacheSize(String service, int size);
+
+    /**
+     * Records a token request to an STS made for messages of a service.
+     * @param service The name of the service
+     */
+    public void recordSTSCall(String service);
+}
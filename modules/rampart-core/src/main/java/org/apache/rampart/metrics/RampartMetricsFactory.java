@@ -0,0 +1,78 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rampart.metrics;
+
+import org.apache.rampart.RampartException;
+import org.apache.ws.security.util.Loader;
+
+/**
+ * Holds the {@link RampartMetrics} used by Rampart, which is a {@link NoOpRampartMetrics}
+ * unless another one is set.
+ */
+public class RampartMetricsFactory {
+
+    private static volatile RampartMetrics metrics = new NoOpRampartMetrics();
+
+    /**
+     * @return The metrics in use
+     */
+    public static RampartMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Sets the metrics to use. Metrics of a {@link HistogramRampartMetrics} that is replaced
+     * are unregistered from JMX.
+     * @param newMetrics The metrics, or <code>null</code> to record nothing
+     */
+    public static void setMetrics(RampartMetrics newMetrics) {
+        RampartMetrics oldMetrics = metrics;
+        metrics = newMetrics == null ? new NoOpRampartMetrics() : newMetrics;
+
+        if (oldMetrics != metrics && oldMetrics instanceof HistogramRampartMetrics) {
+            ((HistogramRampartMetrics) oldMetrics).unregister();
+        }
+    }
+
+    /**
+     * Creates metrics of the given class, which must have a public default constructor.
+     * @param metricsClass The name of a class implementing {@link RampartMetrics}
+     * @param classLoader The class loader to load the class with
+     * @return The metrics
+     * @throws RampartException If the class cannot be loaded or instantiated
+     */
+    public static RampartMetrics createMetrics(String metricsClass, ClassLoader classLoader)
+            throws RampartException {
+
+        Class clazz;
+        try {
+            clazz = Loader.loadClass(classLoader, metricsClass);
+        } catch (ClassNotFoundException e) {
+            throw new RampartException("cannotLoadMetricsClass", new String[]{metricsClass}, e);
+        }
+
+        try {
+            return (RampartMetrics) clazz.newInstance();
+        } catch (Exception e) {
+            throw new RampartException("cannotCreateMetricsInstance",
+                    new String[]{metricsClass}, e);
+        }
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rampart.metrics;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of a service kept by {@link HistogramRampartMetrics}.
+ */
+public class ServiceCounters implements ServiceCountersMBean {
+
+    private volatile int tokenStoreSize = -1;
+
+    private volatile int nonceCacheSize = -1;
+
+    private final AtomicLong stsCalls = new AtomicLong();
+
+    public int getTokenStoreSize() {
+        return tokenStoreSize;
+    }
+
+    public void setTokenStoreSize(int tokenStoreSize) {
+        this.tokenStoreSize = tokenStoreSize;
+    }
+
+    public int getNonceCacheSize() {
+        return nonceCacheSize;
+    }
+
+    public void setNonceCacheSize(int nonceCacheSize) {
+        this.nonceCacheSize = nonceCacheSize;
+    }
+
+    public long getSTSCalls() {
+        return stsCalls.get();
+    }
+
+    public void incrementSTSCalls() {
+        stsCalls.incrementAndGet();
+    }
+}
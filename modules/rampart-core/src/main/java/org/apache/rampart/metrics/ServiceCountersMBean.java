@@ -0,0 +1,41 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rampart.metrics;
+
+/**
+ * JMX view of the {@link ServiceCounters} of a service.
+ */
+public interface ServiceCountersMBean {
+
+    /**
+     * @return The last recorded number of tokens in the token store, or -1 if none was recorded
+     */
+    public int getTokenStoreSize();
+
+    /**
+     * @return The last recorded number of nonces in the nonce cache, or -1 if none was recorded
+     */
+    public int getNonceCacheSize();
+
+    /**
+     * @return The number of token requests made to an STS
+     */
+    public long getSTSCalls();
+}
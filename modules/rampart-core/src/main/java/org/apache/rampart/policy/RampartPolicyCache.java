@@ -0,0 +1,134 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rampart.policy;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.neethi.Assertion;
+import org.apache.neethi.Policy;
+import org.apache.ws.secpolicy.WSSPolicyException;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * Holds compiled {@link RampartPolicyData} blocks against the <code>Policy</code> they
+ * were built from, so that the Neethi assertion tree of a service is walked once
+ * instead of once per message.
+ * <p>
+ * Axis2 returns the same effective <code>Policy</code> instance for an AxisDescription
+ * until a policy is attached to or detached from it, at which point a new instance is
+ * calculated. <code>Policy</code> does not override <code>equals</code>, so entries are
+ * keyed on instance identity and held weakly: re-attaching a policy naturally retires
+ * the old entry. The flow specific <code>rampartInPolicy</code>/<code>rampartOutPolicy</code>
+ * properties are merged through {@link #getMergedPolicy(Policy, Policy)} so that the
+ * merged policy, and therefore the compiled data, is also stable per flow.
+ * <p>
+ * Callers always receive a {@link RampartPolicyData#copy() copy} of the cached block,
+ * since parts of it are filled in while a message is secured.
+ */
+public class RampartPolicyCache {
+
+    private static Log log = LogFactory.getLog(RampartPolicyCache.class);
+
+    private static final Map<Policy, RampartPolicyData> compiledPolicies =
+            Collections.synchronizedMap(new WeakHashMap<Policy, RampartPolicyData>());
+
+    private static final Map<Policy, Map<Policy, Policy>> mergedPolicies =
+            Collections.synchronizedMap(new WeakHashMap<Policy, Map<Policy, Policy>>());
+
+    /**
+     * Returns the policy data compiled from the first alternative of the given policy.
+     * The returned instance is private to the caller.
+     *
+     * @param policy The effective policy
+     * @return A copy of the compiled policy data block
+     * @throws WSSPolicyException If the policy cannot be compiled
+     */
+    public static RampartPolicyData getPolicyData(Policy policy) throws WSSPolicyException {
+
+        RampartPolicyData rpd = compiledPolicies.get(policy);
+
+        if (rpd == null) {
+            List<Assertion> it = policy.getAlternatives().next();
+            rpd = RampartPolicyBuilder.build(it);
+
+            if (log.isDebugEnabled()) {
+                log.debug("Compiled policy data for policy " + policy.getId());
+            }
+
+            // Two threads may compile the same policy at once, both results are equivalent
+            compiledPolicies.put(policy, rpd);
+        }
+
+        return rpd.copy();
+    }
+
+    /**
+     * Returns the merge of <code>policy</code> and <code>flowPolicy</code>. The same
+     * instance is returned for the same pair of policies so that it can be used as a
+     * key for {@link #getPolicyData(Policy)}.
+     *
+     * @param policy The policy set with the <code>rampartPolicy</code> property
+     * @param flowPolicy The flow specific policy to merge into it
+     * @return The merged policy
+     */
+    public static Policy getMergedPolicy(Policy policy, Policy flowPolicy) {
+
+        Map<Policy, Policy> merges;
+        synchronized (mergedPolicies) {
+            merges = mergedPolicies.get(policy);
+            if (merges == null) {
+                merges = new WeakHashMap<Policy, Policy>();
+                mergedPolicies.put(policy, merges);
+            }
+        }
+
+        synchronized (merges) {
+            Policy merged = merges.get(flowPolicy);
+            if (merged == null) {
+                merged = policy.merge(flowPolicy);
+                merges.put(flowPolicy, merged);
+            }
+            return merged;
+        }
+    }
+
+    /**
+     * Drops any compiled data held for the given policy. Only needed when a
+     * <code>Policy</code> instance is modified in place after it has been used.
+     *
+     * @param policy The policy to forget
+     */
+    public static void invalidate(Policy policy) {
+        compiledPolicies.remove(policy);
+        mergedPolicies.remove(policy);
+    }
+
+    /**
+     * Drops all compiled policy data.
+     */
+    public static void clear() {
+        compiledPolicies.clear();
+        mergedPolicies.clear();
+    }
+}
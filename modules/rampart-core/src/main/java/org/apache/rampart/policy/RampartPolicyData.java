@@ -21,6 +21,7 @@ import org.apache.neethi.Policy;
 import org.apache.rampart.RampartException;
 import org.apache.rampart.policy.model.OptimizePartsConfig;
 import org.apache.rampart.policy.model.RampartConfig;
+import org.apache.rampart.util.XPathCache;
 import org.apache.ws.secpolicy.SPConstants;
 import org.apache.ws.secpolicy.WSSPolicyException;
 import org.apache.ws.secpolicy.model.AlgorithmSuite;
@@ -36,7 +37,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 
-public class RampartPolicyData {
+public class RampartPolicyData implements Cloneable {
 
     /*
      * Global settings for overall security processing
@@ -127,6 +128,11 @@ public class RampartPolicyData {
 
     private HashMap<String, String> declaredNamespaces = new HashMap<String, String>();
 
+    /*
+     * Compiled XPath expressions of this policy, shared by all copies
+     */
+    private XPathCache xpathCache = new XPathCache();
+
     /*
      * Holds the supporting tokens elements
      */
@@ -964,6 +970,39 @@ public class RampartPolicyData {
     public OptimizePartsConfig getOptimizePartsConfig(){
     	return rampartConfig.getOptimizeParts();
     }
+
+    /**
+     * @return The compiled XPath expressions of this policy
+     */
+    public XPathCache getXPathCache() {
+        return xpathCache;
+    }
+
+    /**
+     * Returns a copy of this policy data block for use by a single message.
+     * The compiled policy state is shared with this instance, while the parts
+     * that are filled in while securing a message (signed parts, supporting
+     * policy data and supporting token ids) are private to the copy.
+     *
+     * @return A copy of this policy data block
+     */
+    public RampartPolicyData copy() {
+        RampartPolicyData copy;
+        try {
+            copy = (RampartPolicyData) super.clone();
+        } catch (CloneNotSupportedException e) {
+            throw new IllegalStateException(e);
+        }
+
+        copy.signedParts = new ArrayList<WSEncryptionPart>(this.signedParts);
+        copy.supportingPolicyData = new ArrayList<SupportingPolicyData>(this.supportingPolicyData);
+        copy.supportingTokensIdMap = null;
+        copy.signedSupportingTokensIdMap = null;
+        copy.endorsingSupportingTokensIdMap = null;
+        copy.signedEndorsingSupportingTokensIdMap = null;
+
+        return copy;
+    }
    
      
 }
@@ -23,6 +23,7 @@ import org.apache.neethi.AssertionBuilderFactory;
 import org.apache.neethi.builders.AssertionBuilder;
 import org.apache.rampart.policy.model.CryptoConfig;
 import org.apache.rampart.policy.model.KerberosConfig;
+import org.apache.rampart.policy.model.NonceCacheConfig;
 import org.apache.rampart.policy.model.OptimizePartsConfig;
 import org.apache.rampart.policy.model.RampartConfig;
 import org.apache.rampart.policy.model.SSLConfig;
@@ -150,12 +151,45 @@ public class RampartConfigBuilder implements AssertionBuilder<OMElement> {
         if (childElement != null) {
             rampartConfig.setNonceLifeTime(childElement.getText().trim());
         }
+
+        childElement = element.getFirstChildWithName(new QName(
+                RampartConfig.NS, RampartConfig.NONCE_CACHE_LN));
+        if (childElement != null) {
+            NonceCacheConfig nonceCacheConfig = (NonceCacheConfig)new NonceCacheConfigBuilder().
+                                      build(childElement,
+                                      factory);
+            rampartConfig.setNonceCacheConfig(nonceCacheConfig);
+        }
         
+        childElement = element.getFirstChildWithName(new QName(
+                RampartConfig.NS, RampartConfig.ISSUED_TOKEN_REFRESH_MARGIN_LN));
+        if (childElement != null) {
+            rampartConfig.setIssuedTokenRefreshMargin(childElement.getText().trim());
+        }
+
+        childElement = element.getFirstChildWithName(new QName(
+                RampartConfig.NS, RampartConfig.SEC_CONV_CONTEXT_POOL_SIZE_LN));
+        if (childElement != null) {
+            rampartConfig.setSecConvContextPoolSize(childElement.getText().trim());
+        }
+
         childElement = element.getFirstChildWithName(new QName(
                 RampartConfig.NS, RampartConfig.TOKEN_STORE_CLASS_LN));
         if (childElement != null) {
             rampartConfig.setTokenStoreClass(childElement.getText().trim());
         }
+
+        childElement = element.getFirstChildWithName(new QName(
+                RampartConfig.NS, RampartConfig.TOKEN_STORE_CAPACITY_LN));
+        if (childElement != null) {
+            rampartConfig.setTokenStoreCapacity(childElement.getText().trim());
+        }
+
+        childElement = element.getFirstChildWithName(new QName(
+                RampartConfig.NS, RampartConfig.TOKEN_STORE_EVICTION_POLICY_LN));
+        if (childElement != null) {
+            rampartConfig.setTokenStoreEvictionPolicy(childElement.getText().trim());
+        }
         
 		childElement = element.getFirstChildWithName(new QName(
                 RampartConfig.NS, RampartConfig.OPTIMISE_PARTS));
@@ -171,6 +205,18 @@ public class RampartConfigBuilder implements AssertionBuilder<OMElement> {
             rampartConfig.setTimeStampStrict(childElement.getText().trim());
         }
 
+        childElement = element.getFirstChildWithName(new QName(
+                RampartConfig.NS, RampartConfig.MESSAGE_REPLAY_DETECTION_LN));
+        if (childElement != null) {
+            rampartConfig.setMessageReplayDetection(childElement.getText().trim());
+        }
+
+        childElement = element.getFirstChildWithName(new QName(
+                RampartConfig.NS, RampartConfig.MESSAGE_REPLAY_RATE_LN));
+        if (childElement != null) {
+            rampartConfig.setMessageReplayRate(childElement.getText().trim());
+        }
+
         return rampartConfig;
     }
 
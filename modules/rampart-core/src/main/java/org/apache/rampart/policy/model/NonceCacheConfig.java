@@ -0,0 +1,133 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rampart.policy.model;
+
+import org.apache.neethi.Assertion;
+import org.apache.neethi.Constants;
+import org.apache.neethi.PolicyComponent;
+
+import javax.xml.namespace.QName;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamWriter;
+
+import java.util.Iterator;
+import java.util.Properties;
+
+/**
+ * Policy model bean to capture the replay cache used to detect repeated nonce values.
+ * The provider must implement <code>org.apache.rampart.UniqueMessageAttributeCache</code>
+ * and have a public constructor taking a <code>java.util.Properties</code> or a public
+ * default constructor.
+ *
+ * Example:
+<pre>
+&lt;ramp:nonceCache provider="org.apache.rampart.MappedFileNonceCache"&gt;
+    &lt;ramp:property name="file"&gt;/var/run/rampart/nonces.dat&lt;/ramp:property&gt;
+    &lt;ramp:property name="capacity"&gt;1048576&lt;/ramp:property&gt;
+&lt;/ramp:nonceCache&gt;
+</pre>
+ */
+public class NonceCacheConfig implements Assertion {
+
+    public final static String NONCE_CACHE_LN = RampartConfig.NONCE_CACHE_LN;
+    public final static String PROVIDER_ATTR = "provider";
+    public final static String PROPERTY_LN = "property";
+    public final static String PROPERTY_NAME_ATTR = "name";
+
+    private String provider;
+
+    private Properties prop = new Properties();
+
+    public String getProvider() {
+        return provider;
+    }
+
+    public void setProvider(String provider) {
+        this.provider = provider;
+    }
+
+    public Properties getProp() {
+        return prop;
+    }
+
+    public void setProp(Properties prop) {
+        this.prop = prop;
+    }
+
+    public QName getName() {
+        return new QName(RampartConfig.NS, NONCE_CACHE_LN);
+    }
+
+    public boolean isOptional() {
+        return false;
+    }
+
+    public boolean isIgnorable() {
+        return false;
+    }
+
+    public PolicyComponent normalize() {
+        return this;
+    }
+
+    public void serialize(XMLStreamWriter writer) throws XMLStreamException {
+        String prefix = writer.getPrefix(RampartConfig.NS);
+
+        if (prefix == null) {
+            prefix = RampartConfig.NS;
+            writer.setPrefix(prefix, RampartConfig.NS);
+        }
+
+        writer.writeStartElement(prefix, NONCE_CACHE_LN, RampartConfig.NS);
+
+        if (getProvider() != null) {
+            writer.writeAttribute(PROVIDER_ATTR, getProvider());
+        }
+
+        String key;
+        String value;
+
+        for (Iterator iterator = prop.keySet().iterator(); iterator.hasNext();) {
+            key = (String) iterator.next();
+            value = prop.getProperty(key);
+            writer.writeStartElement(RampartConfig.NS, PROPERTY_LN);
+
+            writer.writeAttribute(PROPERTY_NAME_ATTR, key);
+
+            writer.writeCharacters(value);
+            writer.writeEndElement();
+        }
+
+        writer.writeEndElement();
+    }
+
+    public boolean equal(PolicyComponent policyComponent) {
+        if (!(policyComponent instanceof NonceCacheConfig)) {
+            return false;
+        }
+        NonceCacheConfig other = (NonceCacheConfig) policyComponent;
+        return (provider == null ? other.provider == null : provider.equals(other.provider))
+                && prop.equals(other.prop);
+    }
+
+    public short getType() {
+        return Constants.TYPE_ASSERTION;
+    }
+
+}
@@ -38,8 +38,17 @@ import javax.xml.stream.XMLStreamWriter;
  *  &lt;ramp:timestampPrecisionInMilliseconds&gt;true&lt;/timestampPrecisionInMilliseconds&gt;
  *  &lt;ramp:timestampTTL&gt;300&lt;/ramp:timestampTTL&gt;
  *  &lt;ramp:timestampMaxSkew&gt;0&lt;/ramp:timestampMaxSkew&gt;
+ *  &lt;ramp:messageReplayDetection&gt;true&lt;/ramp:messageReplayDetection&gt;
+ *  &lt;ramp:messageReplayRate&gt;1000&lt;/ramp:messageReplayRate&gt;
  *  &lt;ramp:tokenStoreClass&gt;org.apache.rahas.StorageImpl&lt;/ramp:tokenStoreClass&gt;
+ *  &lt;ramp:tokenStoreCapacity&gt;100000&lt;/ramp:tokenStoreCapacity&gt;
+ *  &lt;ramp:tokenStoreEvictionPolicy&gt;EARLIEST_EXPIRY&lt;/ramp:tokenStoreEvictionPolicy&gt;
  *  &lt;ramp:nonceLifeTime&gt;org.apache.rahas.StorageImpl&lt;/ramp:nonceLifeTime&gt;
+ *  &lt;ramp:nonceCache provider=&quot;org.apache.rampart.MappedFileNonceCache&quot;&gt;
+ *  &lt;ramp:property name=&quot;file&quot;&gt;/path/to/nonces.dat&lt;/ramp:property&gt;
+ *  &lt;/ramp:nonceCache&gt;
+ *  &lt;ramp:issuedTokenRefreshMargin&gt;60&lt;/ramp:issuedTokenRefreshMargin&gt;
+ *  &lt;ramp:secConvContextPoolSize&gt;4&lt;/ramp:secConvContextPoolSize&gt;
  *  
  *  &lt;ramp:signatureCrypto&gt;
  *  &lt;ramp:crypto provider=&quot;org.apache.ws.security.components.crypto.Merlin&quot;&gt;
@@ -70,6 +79,10 @@ public class RampartConfig implements Assertion {
 
     public static final int DEFAULT_NONCE_LIFE_TIME = 60 * 5; // Default life time of a nonce is 5 minutes
 
+    public static final int DEFAULT_ISSUED_TOKEN_REFRESH_MARGIN = 60;
+
+    public static final int DEFAULT_MESSAGE_REPLAY_RATE = 1000;
+
     public final static String NS = "http://ws.apache.org/rampart/policy";
 
     public final static String PREFIX = "rampart";
@@ -106,9 +119,23 @@ public class RampartConfig implements Assertion {
 
     public final static String TOKEN_STORE_CLASS_LN = "tokenStoreClass";
 
+    public final static String TOKEN_STORE_CAPACITY_LN = "tokenStoreCapacity";
+
+    public final static String TOKEN_STORE_EVICTION_POLICY_LN = "tokenStoreEvictionPolicy";
+
     public final static String TIMESTAMP_STRICT_LN = "timestampStrict";
 
+    public final static String MESSAGE_REPLAY_DETECTION_LN = "messageReplayDetection";
+
+    public final static String MESSAGE_REPLAY_RATE_LN = "messageReplayRate";
+
+    public final static String ISSUED_TOKEN_REFRESH_MARGIN_LN = "issuedTokenRefreshMargin";
+
+    public final static String SEC_CONV_CONTEXT_POOL_SIZE_LN = "secConvContextPoolSize";
+
     public final static String NONCE_LIFE_TIME = "nonceLifeTime";
+
+    public final static String NONCE_CACHE_LN = "nonceCache";
     
     public final static String OPTIMISE_PARTS = "optimizeParts";
 
@@ -149,7 +176,17 @@ public class RampartConfig implements Assertion {
 
     private String tokenStoreClass;
 
+    private String tokenStoreCapacity;
+
+    private String tokenStoreEvictionPolicy;
+
     private String nonceLifeTime = Integer.toString(DEFAULT_NONCE_LIFE_TIME);
+
+    private NonceCacheConfig nonceCacheConfig;
+
+    private String issuedTokenRefreshMargin;
+
+    private String secConvContextPoolSize;
     
     private SSLConfig sslConfig;
     
@@ -165,6 +202,12 @@ public class RampartConfig implements Assertion {
     
     /*To set timeStampStrict in WSSConfig through rampartConfig - default value is false*/
     private boolean timeStampStrict = false;
+
+    /*Whether signed messages with a timestamp are checked for replays - default value is false*/
+    private boolean messageReplayDetection = false;
+
+    /*Expected number of signed messages per second, sizing the replay cache*/
+    private String messageReplayRate;
     
     public SSLConfig getSSLConfig() {
         return sslConfig;
@@ -190,6 +233,42 @@ public class RampartConfig implements Assertion {
         this.tokenStoreClass = tokenStoreClass;
     }
 
+    /**
+     * @return Returns the maximum number of tokens held by a bounded token store, or
+     *         <code>null</code> to use the default of the store.
+     */
+    public String getTokenStoreCapacity() {
+        return tokenStoreCapacity;
+    }
+
+    /**
+     * @param tokenStoreCapacity
+     *            The maximum number of tokens held by a bounded token store such as
+     *            <code>org.apache.rahas.IndexedTokenStore</code>.
+     */
+    public void setTokenStoreCapacity(String tokenStoreCapacity) {
+        this.tokenStoreCapacity = tokenStoreCapacity;
+    }
+
+    /**
+     * @return Returns what a bounded token store does when a token is added while it is full,
+     *         or <code>null</code> to use the default of the store.
+     */
+    public String getTokenStoreEvictionPolicy() {
+        return tokenStoreEvictionPolicy;
+    }
+
+    /**
+     * @param tokenStoreEvictionPolicy
+     *            What a bounded token store such as <code>org.apache.rahas.IndexedTokenStore</code>
+     *            does when a token is added while it is full: <code>EARLIEST_EXPIRY</code> to
+     *            evict the token which expires first, or <code>REJECT</code> to reject the new
+     *            token.
+     */
+    public void setTokenStoreEvictionPolicy(String tokenStoreEvictionPolicy) {
+        this.tokenStoreEvictionPolicy = tokenStoreEvictionPolicy;
+    }
+
     /**
      * @return Returns the life time of a nonce in seconds.
      */
@@ -205,6 +284,56 @@ public class RampartConfig implements Assertion {
         this.nonceLifeTime = nonceLife;
     }
 
+    /**
+     * @return Returns the replay cache configuration, or <code>null</code> if the
+     *         default in memory cache is to be used.
+     */
+    public NonceCacheConfig getNonceCacheConfig() {
+        return nonceCacheConfig;
+    }
+
+    /**
+     * @param nonceCacheConfig
+     *            The replay cache configuration to set.
+     */
+    public void setNonceCacheConfig(NonceCacheConfig nonceCacheConfig) {
+        this.nonceCacheConfig = nonceCacheConfig;
+    }
+
+    /**
+     * @return Returns the time in seconds before its expiry an issued token is no longer
+     *         reused, or <code>null</code> if the default is to be used.
+     */
+    public String getIssuedTokenRefreshMargin() {
+        return issuedTokenRefreshMargin;
+    }
+
+    /**
+     * @param issuedTokenRefreshMargin
+     *            The time in seconds before its expiry an issued token is no longer reused.
+     */
+    public void setIssuedTokenRefreshMargin(String issuedTokenRefreshMargin) {
+        this.issuedTokenRefreshMargin = issuedTokenRefreshMargin;
+    }
+
+    /**
+     * @return Returns the number of secure conversation contexts a client keeps per endpoint and
+     *         caller, or <code>null</code> if a single context is shared by all messages to a
+     *         service.
+     */
+    public String getSecConvContextPoolSize() {
+        return secConvContextPoolSize;
+    }
+
+    /**
+     * @param secConvContextPoolSize
+     *            The number of secure conversation contexts a client keeps per endpoint and
+     *            caller. <code>0</code> shares a single context between all messages to a service.
+     */
+    public void setSecConvContextPoolSize(String secConvContextPoolSize) {
+        this.secConvContextPoolSize = secConvContextPoolSize;
+    }
+
     public CryptoConfig getDecCryptoConfig() {
         return decCryptoConfig;
     }
@@ -367,17 +496,57 @@ public class RampartConfig implements Assertion {
         writer.writeCharacters(Boolean.toString(isTimeStampStrict()));
         writer.writeEndElement();
 
+        if (isMessageReplayDetection()) {
+            writer.writeStartElement(NS, MESSAGE_REPLAY_DETECTION_LN);
+            writer.writeCharacters(Boolean.toString(isMessageReplayDetection()));
+            writer.writeEndElement();
+        }
+
+        if (getMessageReplayRate() != null) {
+            writer.writeStartElement(NS, MESSAGE_REPLAY_RATE_LN);
+            writer.writeCharacters(getMessageReplayRate());
+            writer.writeEndElement();
+        }
+
         if (getTokenStoreClass() != null) {
             writer.writeStartElement(NS, TOKEN_STORE_CLASS_LN);
             writer.writeCharacters(getTokenStoreClass());
             writer.writeEndElement();
         }
 
+        if (getTokenStoreCapacity() != null) {
+            writer.writeStartElement(NS, TOKEN_STORE_CAPACITY_LN);
+            writer.writeCharacters(getTokenStoreCapacity());
+            writer.writeEndElement();
+        }
+
+        if (getTokenStoreEvictionPolicy() != null) {
+            writer.writeStartElement(NS, TOKEN_STORE_EVICTION_POLICY_LN);
+            writer.writeCharacters(getTokenStoreEvictionPolicy());
+            writer.writeEndElement();
+        }
+
         if (getNonceLifeTime() != null) {
             writer.writeStartElement(NS, NONCE_LIFE_TIME);
             writer.writeCharacters(getNonceLifeTime());
             writer.writeEndElement();
         }
+
+        if (nonceCacheConfig != null) {
+            nonceCacheConfig.serialize(writer);
+        }
+
+        if (getIssuedTokenRefreshMargin() != null) {
+            writer.writeStartElement(NS, ISSUED_TOKEN_REFRESH_MARGIN_LN);
+            writer.writeCharacters(getIssuedTokenRefreshMargin());
+            writer.writeEndElement();
+        }
+
+        if (getSecConvContextPoolSize() != null) {
+            writer.writeStartElement(NS, SEC_CONV_CONTEXT_POOL_SIZE_LN);
+            writer.writeCharacters(getSecConvContextPoolSize());
+            writer.writeEndElement();
+        }
         
         if (encrCryptoConfig != null) {
             writer.writeStartElement(NS, ENCR_CRYPTO_LN);
@@ -505,5 +674,30 @@ public class RampartConfig implements Assertion {
     public void setTimeStampStrict(String timeStampStrict) {
         this.timeStampStrict = Boolean.valueOf(timeStampStrict);
     }
+
+    /**
+     * @return Returns true if a signed message with a timestamp is rejected when the same
+     *         timestamp and signature were already received within the timestamp validity period.
+     */
+    public boolean isMessageReplayDetection() {
+        return messageReplayDetection;
+    }
+
+    public void setMessageReplayDetection(String messageReplayDetection) {
+        this.messageReplayDetection = Boolean.valueOf(messageReplayDetection);
+    }
+
+    /**
+     * @return Returns the expected number of signed messages per second, or <code>null</code>
+     *         to use {@link #DEFAULT_MESSAGE_REPLAY_RATE}. The replay cache remembers this many
+     *         messages per second of the timestamp validity period.
+     */
+    public String getMessageReplayRate() {
+        return messageReplayRate;
+    }
+
+    public void setMessageReplayRate(String messageReplayRate) {
+        this.messageReplayRate = messageReplayRate;
+    }
     
 }
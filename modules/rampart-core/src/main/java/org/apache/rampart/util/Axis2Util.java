@@ -201,57 +201,8 @@ public class Axis2Util {
             try {
                 //Get processed headers
                 SOAPEnvelope env = (SOAPEnvelope)doc.getDocumentElement(); 
-                ArrayList processedHeaderQNames = new ArrayList();
-                SOAPHeader soapHeader = env.getHeader();
-                
-                if(soapHeader != null) {
-                    Iterator headerBlocs = soapHeader.getChildElements();
-                    while (headerBlocs.hasNext()) {
-                    	
-                    	OMElement element = (OMElement)headerBlocs.next();
-                    	SOAPHeaderBlock header = null;
-                    	
-                    	if (element instanceof SOAPHeaderBlock) {
-                            header = (SOAPHeaderBlock) element;
-                            
-                        // If a header block is not an instance of SOAPHeaderBlock, it means that
-                        // it is a header we have added in rampart eg. EncryptedHeader and should
-                        // be converted to SOAPHeaderBlock for processing
-                    	} else {
-                    		header = soapHeader.addHeaderBlock(element.getLocalName(), element.getNamespace());
-                    		Iterator attrIter = element.getAllAttributes();
-                    		while (attrIter.hasNext()) {
-                    			OMAttribute attr = (OMAttribute)attrIter.next();
-                    			header.addAttribute(attr.getLocalName(), attr.getAttributeValue(), attr.getNamespace());
-                    		}
-                    		Iterator nsIter  = element.getAllDeclaredNamespaces();
-                    		while (nsIter.hasNext()) {
-                    			OMNamespace ns =  (OMNamespace) nsIter.next();
-                    			header.declareNamespace(ns);
-                    		}
-                    		// retrieve all child nodes (including any text nodes)
-                    		// and re-attach to header block
-                    		Iterator children = element.getChildren();
-                    		while (children.hasNext()) {
-                    			OMNode child = (OMNode)children.next();
-                    			children.remove();
-                    			header.addChild(child);
-                    		}
-                    		
-                    		headerBlocs.remove();
-                    		
-                    		soapHeader.build();
-                    		
-                    		header.setProcessed();
-                    		
-                    	}
-                    	
-                        if(header.isProcessed()) {
-                            processedHeaderQNames.add(element.getQName());
-                        }
-                    }
-                
-                }
+                ArrayList processedHeaderQNames = toSOAPHeaderBlocks(env.getHeader());
+
                 XMLStreamReader reader = ((OMElement) doc.getDocumentElement())
                         .getXMLStreamReader();
                 SOAPModelBuilder stAXSOAPModelBuilder = OMXMLBuilderFactory.createStAXSOAPModelBuilder(
@@ -289,6 +240,78 @@ public class Axis2Util {
             }
         }
     }
+
+    /**
+     * Returns the envelope of a DOM document that was parsed directly into a DOM-capable
+     * Axiom model, so that it can be used by the inflow as is instead of being converted back.
+     * Headers added while processing the security header, such as decrypted headers, are
+     * converted to header blocks.
+     * @param doc - The dom document that contains a SOAP message
+     * @return The SOAP envelope of the document
+     */
+    public static SOAPEnvelope getSOAPEnvelope(Document doc) {
+        SOAPEnvelope env = (SOAPEnvelope) doc.getDocumentElement();
+        toSOAPHeaderBlocks(env.getHeader());
+        return env;
+    }
+
+    /**
+     * Converts the header elements that are not header blocks to header blocks.
+     * @param soapHeader The SOAP header, may be null
+     * @return The names of the processed header blocks
+     */
+    private static ArrayList toSOAPHeaderBlocks(SOAPHeader soapHeader) {
+        ArrayList processedHeaderQNames = new ArrayList();
+        if(soapHeader != null) {
+            Iterator headerBlocs = soapHeader.getChildElements();
+            while (headerBlocs.hasNext()) {
+            	
+            	OMElement element = (OMElement)headerBlocs.next();
+            	SOAPHeaderBlock header = null;
+            	
+            	if (element instanceof SOAPHeaderBlock) {
+                    header = (SOAPHeaderBlock) element;
+                    
+                // If a header block is not an instance of SOAPHeaderBlock, it means that
+                // it is a header we have added in rampart eg. EncryptedHeader and should
+                // be converted to SOAPHeaderBlock for processing
+            	} else {
+            		header = soapHeader.addHeaderBlock(element.getLocalName(), element.getNamespace());
+            		Iterator attrIter = element.getAllAttributes();
+            		while (attrIter.hasNext()) {
+            			OMAttribute attr = (OMAttribute)attrIter.next();
+            			header.addAttribute(attr.getLocalName(), attr.getAttributeValue(), attr.getNamespace());
+            		}
+            		Iterator nsIter  = element.getAllDeclaredNamespaces();
+            		while (nsIter.hasNext()) {
+            			OMNamespace ns =  (OMNamespace) nsIter.next();
+            			header.declareNamespace(ns);
+            		}
+            		// retrieve all child nodes (including any text nodes)
+            		// and re-attach to header block
+            		Iterator children = element.getChildren();
+            		while (children.hasNext()) {
+            			OMNode child = (OMNode)children.next();
+            			children.remove();
+            			header.addChild(child);
+            		}
+            		
+            		headerBlocs.remove();
+            		
+            		soapHeader.build();
+            		
+            		header.setProcessed();
+            		
+            	}
+            	
+                if(header.isProcessed()) {
+                    processedHeaderQNames.add(element.getQName());
+                }
+            }
+        
+        }
+        return processedHeaderQNames;
+    }
 	
 	
 	/**
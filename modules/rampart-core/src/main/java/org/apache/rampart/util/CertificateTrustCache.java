@@ -0,0 +1,214 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rampart.util;
+
+import org.apache.ws.security.components.crypto.Crypto;
+
+import java.lang.ref.WeakReference;
+import java.lang.reflect.Method;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.cert.CertificateEncodingException;
+import java.security.cert.X509Certificate;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Remembers the certificates found to be trusted by a <code>Crypto</code>, so that the
+ * keystore lookups and the certification path validation are not repeated for every message
+ * signed with the same certificate.
+ * <p>
+ * A decision is cached by the SHA-256 fingerprint of the certificate and the
+ * <code>Crypto</code> instance, so a <code>Crypto</code> created again, e.g. when its cache
+ * refresh interval elapses, starts without cached decisions. The <code>Crypto</code> is only
+ * weakly referenced, the decisions of a <code>Crypto</code> that is no longer used are dropped.
+ * A decision expires when the certificate does, and at the latest after the given time to live.
+ * Only positive decisions are cached.
+ * <p>
+ * Callers should only cache the decisions of a <code>Crypto</code> which is itself cached, and
+ * not those of a trust check overridden by a subclass, see {@link #isOverridden}.
+ */
+public class CertificateTrustCache {
+
+    /**
+     * Time to live in milliseconds of a decision if the caller does not give a shorter one.
+     */
+    public static final long DEFAULT_TTL = 5 * 60 * 1000;
+
+    /**
+     * Upper bound of cached decisions; expired decisions are dropped when it is reached, and
+     * the cache starts over if that is not enough.
+     */
+    private static final int MAX_ENTRIES = 1024;
+
+    private static final CertificateTrustCache instance = new CertificateTrustCache();
+
+    private final ConcurrentMap<Key, Long> decisions = new ConcurrentHashMap<Key, Long>();
+
+    /**
+     * @return The cache shared by the validators of Rampart
+     */
+    public static CertificateTrustCache getInstance() {
+        return instance;
+    }
+
+    /**
+     * Tells whether the certificate was found to be trusted by the given crypto.
+     * @param cert The certificate
+     * @param crypto The crypto the certificate was validated against
+     * @return true if a decision that has not expired is cached
+     */
+    public boolean isTrusted(X509Certificate cert, Crypto crypto) {
+        Key key = getKey(cert, crypto);
+        if (key == null) {
+            return false;
+        }
+
+        Long expiry = decisions.get(key);
+        if (expiry == null) {
+            return false;
+        }
+        if (expiry.longValue() <= System.currentTimeMillis()) {
+            decisions.remove(key, expiry);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Remembers that the certificate is trusted by the given crypto.
+     * @param cert The certificate
+     * @param crypto The crypto the certificate was validated against
+     * @param ttl The time to live of the decision in milliseconds, or a value that is not
+     *            positive for the {@link #DEFAULT_TTL}
+     */
+    public void setTrusted(X509Certificate cert, Crypto crypto, long ttl) {
+        Key key = getKey(cert, crypto);
+        if (key == null) {
+            return;
+        }
+
+        long now = System.currentTimeMillis();
+        long expiry = Math.min(now + (ttl > 0 ? Math.min(ttl, DEFAULT_TTL) : DEFAULT_TTL),
+                cert.getNotAfter().getTime());
+        if (expiry <= now) {
+            return;
+        }
+
+        if (decisions.size() >= MAX_ENTRIES) {
+            removeExpired(now);
+            if (decisions.size() >= MAX_ENTRIES) {
+                decisions.clear();
+            }
+        }
+        decisions.put(key, Long.valueOf(expiry));
+    }
+
+    /**
+     * Drops all cached decisions.
+     */
+    public void clear() {
+        decisions.clear();
+    }
+
+    int size() {
+        return decisions.size();
+    }
+
+    /**
+     * Tells whether a method of the given base class is overridden by a class. The decisions of
+     * a trust check overridden by a custom validator are not to be cached, as the validator
+     * may not decide the same way every time.
+     * @param type The class of the validator
+     * @param base The class which declares the trust check
+     * @param methodName The name of the trust check method, any overload of which counts
+     * @return true if a class between the given class and the base class declares the method
+     */
+    public static boolean isOverridden(Class<?> type, Class<?> base, String methodName) {
+        for (Class<?> c = type; c != null && c != base; c = c.getSuperclass()) {
+            for (Method method : c.getDeclaredMethods()) {
+                if (method.getName().equals(methodName)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void removeExpired(long now) {
+        for (Iterator<Map.Entry<Key, Long>> it = decisions.entrySet().iterator(); it.hasNext();) {
+            Map.Entry<Key, Long> entry = it.next();
+            if (entry.getValue().longValue() <= now || entry.getKey().crypto.get() == null) {
+                it.remove();
+            }
+        }
+    }
+
+    private static Key getKey(X509Certificate cert, Crypto crypto) {
+        if (cert == null || crypto == null) {
+            return null;
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return new Key(digest.digest(cert.getEncoded()), crypto);
+        } catch (NoSuchAlgorithmException e) {
+            return null;
+        } catch (CertificateEncodingException e) {
+            return null;
+        }
+    }
+
+    private static class Key {
+
+        private final byte[] fingerprint;
+
+        // Compared by identity, a Crypto is not comparable otherwise
+        private final WeakReference<Crypto> crypto;
+
+        private final int hashCode;
+
+        Key(byte[] fingerprint, Crypto crypto) {
+            this.fingerprint = fingerprint;
+            this.crypto = new WeakReference<Crypto>(crypto);
+            this.hashCode = Arrays.hashCode(fingerprint) * 31
+                    + System.identityHashCode(crypto);
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            if (other == this) {
+                return true;
+            }
+            Crypto referent = crypto.get();
+            return referent != null && referent == other.crypto.get()
+                    && MessageDigest.isEqual(fingerprint, other.fingerprint);
+        }
+    }
+}
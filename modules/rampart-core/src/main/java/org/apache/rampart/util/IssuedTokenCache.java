@@ -0,0 +1,223 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rampart.util;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.rahas.Token;
+import org.apache.rahas.TokenStorage;
+import org.apache.rahas.TrustException;
+import org.apache.rampart.RampartException;
+import org.apache.ws.security.util.Base64;
+
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Client side cache of issued tokens, so that a token obtained from an STS is used for all
+ * messages to the same service until it is about to expire.
+ * <p>
+ * Tokens are cached by issuer address, service address, RST template and client identity. The
+ * tokens themselves are kept in the {@link TokenStorage}; this cache only remembers which token
+ * was issued for which key. A token is reused while it is issued or renewed and expires later
+ * than the refresh margin from now. Tokens without a lifetime are not reused.
+ * <p>
+ * Concurrent requests for the same key are coalesced, only one of them calls the STS while
+ * the others wait for its token.
+ */
+public class IssuedTokenCache {
+
+    private static Log log = LogFactory.getLog(IssuedTokenCache.class);
+
+    public static final String ISSUED_TOKEN_CACHE_KEY = "org.apache.rampart.IssuedTokenCache";
+
+    /**
+     * Obtains a new token from the STS.
+     */
+    public interface TokenRequester {
+        /**
+         * @return The identifier of the new token in the token storage
+         * @throws RampartException
+         */
+        String requestToken() throws RampartException;
+    }
+
+    private static class Entry {
+        final ReentrantLock lock = new ReentrantLock();
+        volatile String tokenId;
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    private static final Map<OMElement, String> templateDigests = new WeakHashMap<OMElement, String>();
+
+    /**
+     * Returns the issued token cache of the given configuration context, creating it if needed.
+     * @param configContext The configuration context
+     * @return The issued token cache
+     */
+    public static IssuedTokenCache getInstance(ConfigurationContext configContext) {
+        synchronized (configContext) {
+            IssuedTokenCache cache = (IssuedTokenCache) configContext.getProperty(ISSUED_TOKEN_CACHE_KEY);
+            if (cache == null) {
+                cache = new IssuedTokenCache();
+                configContext.setProperty(ISSUED_TOKEN_CACHE_KEY, cache);
+            }
+            return cache;
+        }
+    }
+
+    /**
+     * Returns the identifier of a valid token for the given key, requesting a new token if the
+     * cached one can not be used any longer.
+     * @param key Key created with {@link #createKey(String, String, OMElement, String)}
+     * @param storage The token storage holding the tokens
+     * @param refreshMargin Time in milliseconds before expiry a token is no longer used
+     * @param requester Obtains a new token
+     * @return The identifier of the token
+     * @throws RampartException
+     */
+    public String getToken(String key, TokenStorage storage, long refreshMargin,
+            TokenRequester requester) throws RampartException {
+
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            Entry newEntry = new Entry();
+            entry = entries.putIfAbsent(key, newEntry);
+            if (entry == null) {
+                entry = newEntry;
+            }
+        }
+
+        String id = entry.tokenId;
+        if (isUsable(id, storage, refreshMargin)) {
+            return id;
+        }
+
+        entry.lock.lock();
+        try {
+            // Another thread may have obtained a token meanwhile
+            id = entry.tokenId;
+            if (isUsable(id, storage, refreshMargin)) {
+                return id;
+            }
+
+            id = requester.requestToken();
+            entry.tokenId = id;
+            if (log.isDebugEnabled()) {
+                log.debug("Cached issued token " + id);
+            }
+            return id;
+        } finally {
+            entry.lock.unlock();
+        }
+    }
+
+    /**
+     * Replaces the token cached for the given key, unless it has already been replaced.
+     * @param key The key
+     * @param oldId The identifier of the token to replace
+     * @param newId The identifier of the new token
+     */
+    public void replace(String key, String oldId, String newId) {
+
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.lock.lock();
+            try {
+                if (oldId.equals(entry.tokenId)) {
+                    entry.tokenId = newId;
+                }
+            } finally {
+                entry.lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Removes the token cached for the given key.
+     * @param key The key
+     */
+    public void remove(String key) {
+        entries.remove(key);
+    }
+
+    /**
+     * Creates a cache key.
+     * @param issuerAddress Address of the STS
+     * @param serviceAddress Address of the service the token is for
+     * @param rstTemplate RST template of the issued token assertion, may be <code>null</code>
+     * @param identity The identity of the client, may be <code>null</code>
+     * @return The key
+     * @throws RampartException
+     */
+    public static String createKey(String issuerAddress, String serviceAddress,
+            OMElement rstTemplate, String identity) throws RampartException {
+        return issuerAddress + "|" + serviceAddress + "|" + getDigest(rstTemplate) + "|" + identity;
+    }
+
+    private static boolean isUsable(String id, TokenStorage storage, long refreshMargin)
+            throws RampartException {
+
+        if (id == null) {
+            return false;
+        }
+
+        Token token;
+        try {
+            token = storage.getToken(id);
+        } catch (TrustException e) {
+            throw new RampartException("errorInRetrievingTokenId", new String[]{id}, e);
+        }
+
+        return token != null
+                && (token.getState() == Token.ISSUED || token.getState() == Token.RENEWED)
+                && token.getExpires() != null
+                && token.getExpires().getTime() - refreshMargin > System.currentTimeMillis();
+    }
+
+    private static String getDigest(OMElement rstTemplate) throws RampartException {
+
+        if (rstTemplate == null) {
+            return "";
+        }
+
+        synchronized (templateDigests) {
+            String digest = templateDigests.get(rstTemplate);
+            if (digest == null) {
+                try {
+                    MessageDigest sha = MessageDigest.getInstance("SHA-1");
+                    digest = Base64.encode(sha.digest(rstTemplate.toString().getBytes("UTF-8")));
+                } catch (NoSuchAlgorithmException e) {
+                    throw new RampartException("noSHA1availabe", e);
+                } catch (UnsupportedEncodingException e) {
+                    throw new RampartException("noSHA1availabe", e);
+                }
+                templateDigests.put(rstTemplate, digest);
+            }
+            return digest;
+        }
+    }
+}
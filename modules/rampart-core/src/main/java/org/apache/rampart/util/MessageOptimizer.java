@@ -18,15 +18,14 @@ package org.apache.rampart.util;
 
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMText;
-import org.apache.axiom.om.xpath.AXIOMXPath;
 import org.apache.axiom.soap.SOAPEnvelope;
 import org.apache.rampart.RampartException;
 import org.apache.ws.security.WSConstants;
 import org.apache.ws.security.WSSecurityException;
 import org.jaxen.JaxenException;
-import org.jaxen.SimpleNamespaceContext;
 import org.jaxen.XPath;
 
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -39,25 +38,35 @@ public class MessageOptimizer {
 	
 	private static final String CIPHER_ELEMENT = "//xenc:EncryptedData/xenc:CipherData/xenc:CipherValue";
 
+	private static final XPathCache xpathCache = new XPathCache();
+
 	public static void optimize(SOAPEnvelope env, List<String> expressions, Map namespaces) throws RampartException {
-		
-		SimpleNamespaceContext nsCtx = new SimpleNamespaceContext();
-		nsCtx.addNamespace(WSConstants.ENC_PREFIX,WSConstants.ENC_NS);
-		nsCtx.addNamespace(WSConstants.SIG_PREFIX,WSConstants.SIG_NS);
-		nsCtx.addNamespace(WSConstants.WSSE_PREFIX,WSConstants.WSSE_NS);
-		nsCtx.addNamespace(WSConstants.WSU_PREFIX,WSConstants.WSU_NS);
+		optimize(env, expressions, namespaces, xpathCache);
+	}
+
+	/**
+	 * Mark the Base64 text values selected by the given expressions as optimized
+	 * @param env
+	 * @param expressions XPath expressions of the elements to optimize
+	 * @param namespaces Namespaces by prefix used in the expressions
+	 * @param xpathCache Cache of the compiled expressions
+	 * @throws RampartException
+	 */
+	public static void optimize(SOAPEnvelope env, List<String> expressions, Map namespaces,
+	                            XPathCache xpathCache) throws RampartException {
+
+		Map<String, String> nsMap = getDefaultNamespaces();
 
 		Iterator keys = namespaces.keySet().iterator();
 		while(keys.hasNext()){
 			String strPrefix =  (String)keys.next();
 			String strNS = (String)namespaces.get(strPrefix);
-			nsCtx.addNamespace(strPrefix,strNS);
+			nsMap.put(strPrefix,strNS);
 		}
 
 		try {
             for (String exp : expressions) {
-                XPath xp = new AXIOMXPath(exp);
-                xp.setNamespaceContext(nsCtx);
+                XPath xp = xpathCache.getXPath(exp, nsMap);
                 List list = xp.selectNodes(env);
                 for (Object aList : list) {
                     OMElement element = (OMElement) aList;
@@ -103,16 +112,7 @@ public class MessageOptimizer {
 
 	private static List findElements(OMElement elem, String expression) throws WSSecurityException {
 		try {
-			XPath xp = new AXIOMXPath(expression);
-
-			//Set namespaces
-			SimpleNamespaceContext nsCtx = new SimpleNamespaceContext();
-			nsCtx.addNamespace(WSConstants.ENC_PREFIX,WSConstants.ENC_NS);
-			nsCtx.addNamespace(WSConstants.SIG_PREFIX,WSConstants.SIG_NS);
-			nsCtx.addNamespace(WSConstants.WSSE_PREFIX,WSConstants.WSSE_NS);
-			nsCtx.addNamespace(WSConstants.WSU_PREFIX,WSConstants.WSU_NS);
-
-			xp.setNamespaceContext(nsCtx);
+			XPath xp = xpathCache.getXPath(expression, getDefaultNamespaces());
 
 			return xp.selectNodes(elem);
 
@@ -122,6 +122,13 @@ public class MessageOptimizer {
 
 	}
 
+	private static Map<String, String> getDefaultNamespaces() {
+		Map<String, String> namespaces = new HashMap<String, String>();
+		namespaces.put(WSConstants.ENC_PREFIX,WSConstants.ENC_NS);
+		namespaces.put(WSConstants.SIG_PREFIX,WSConstants.SIG_NS);
+		namespaces.put(WSConstants.WSSE_PREFIX,WSConstants.WSSE_NS);
+		namespaces.put(WSConstants.WSU_PREFIX,WSConstants.WSU_NS);
+		return namespaces;
+	}
 
-
-}
\ No newline at end of file
+}
@@ -21,11 +21,11 @@ import org.apache.axiom.om.OMAttribute;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMFactory;
 import org.apache.axiom.om.OMNamespace;
-import org.apache.axiom.om.xpath.AXIOMXPath;
 import org.apache.axiom.soap.*;
 import org.apache.axis2.AxisFault;
 import org.apache.axis2.addressing.AddressingConstants;
 import org.apache.axis2.client.Options;
+import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.context.MessageContext;
 import org.apache.axis2.dataretrieval.DRConstants;
 import org.apache.axis2.dataretrieval.client.MexClient;
@@ -42,17 +42,24 @@ import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.neethi.Policy;
 import org.apache.neethi.PolicyEngine;
+import org.apache.rahas.ExtendedTokenStorage;
 import org.apache.rahas.RahasConstants;
 import org.apache.rahas.Token;
+import org.apache.rahas.TokenStorage;
 import org.apache.rahas.TrustException;
 import org.apache.rahas.TrustUtil;
 import org.apache.rahas.client.STSClient;
+import org.apache.rahas.client.ServiceClientPool;
+import org.apache.rahas.impl.util.KeyGenerationUtil;
+import org.apache.rampart.FingerprintCache;
 import org.apache.rampart.PolicyBasedResultsValidator;
 import org.apache.rampart.PolicyValidatorCallbackHandler;
 import org.apache.rampart.RampartConfigCallbackHandler;
 import org.apache.rampart.RampartConstants;
 import org.apache.rampart.RampartException;
 import org.apache.rampart.RampartMessageData;
+import org.apache.rampart.metrics.RampartMetrics;
+import org.apache.rampart.metrics.RampartMetricsFactory;
 import org.apache.rampart.policy.RampartPolicyData;
 import org.apache.rampart.policy.SupportingPolicyData;
 import org.apache.rampart.policy.model.CryptoConfig;
@@ -75,7 +82,6 @@ import org.apache.ws.security.handler.WSHandlerConstants;
 import org.apache.ws.security.handler.WSHandlerResult;
 import org.apache.ws.security.message.WSSecBase;
 import org.apache.ws.security.message.WSSecEncryptedKey;
-import org.apache.ws.security.util.Loader;
 import org.apache.ws.security.util.WSSecurityUtil;
 import org.apache.ws.security.validate.KerberosTokenDecoder;
 import org.apache.xml.security.utils.Constants;
@@ -103,6 +109,13 @@ public class RampartUtil {
 
     private static Map<String, CachedCrypto> cryptoStore = new ConcurrentHashMap<String, CachedCrypto>();
 
+    // Compiled expressions of the overloads which are not given the cache of a policy
+    private static final XPathCache sharedXPathCache = new XPathCache();
+
+
+    private static final PolicyValidatorCallbackHandler DEFAULT_POLICY_VALIDATOR =
+            new PolicyBasedResultsValidator();
+
     private static class CachedCrypto {
         private Crypto crypto;
         private long creationTime;
@@ -134,7 +147,7 @@ public class RampartUtil {
         if (rpd.getRampartConfig() != null && rpd.getRampartConfig().getPwCbClass() != null) {
             
             String cbHandlerClass = rpd.getRampartConfig().getPwCbClass();
-            ClassLoader classLoader = msgContext.getAxisService().getClassLoader();
+            AxisService service = msgContext.getAxisService();
 
             if (log.isDebugEnabled()) {
                 log.debug("loading class : " + cbHandlerClass);
@@ -142,13 +155,13 @@ public class RampartUtil {
 
             Class cbClass;
             try {
-                cbClass = Loader.loadClass(classLoader, cbHandlerClass);
+                cbClass = ServiceHandlerCache.loadClass(service, cbHandlerClass);
             } catch (ClassNotFoundException e) {
                 throw new RampartException("cannotLoadPWCBClass", 
                         new String[]{cbHandlerClass}, e);
             }
             try {
-                cbHandler = (CallbackHandler) cbClass.newInstance();
+                cbHandler = (CallbackHandler) ServiceHandlerCache.getInstance(service, cbClass);
             } catch (java.lang.Exception e) {
                 throw new RampartException("cannotCreatePWCBInstance",
                         new String[]{cbHandlerClass}, e);
@@ -206,16 +219,17 @@ public class RampartUtil {
             log.debug(String.format("Loading Kerberos token decoder class '%s' using class loader of service '%s'", kerberosTokenDecoderClass, service.getName()));
         }
         
-        ClassLoader classLoader = service.getClassLoader();
         Class krbTokenDecoderClass;
         try {
-            krbTokenDecoderClass = Loader.loadClass(classLoader, kerberosTokenDecoderClass);
+            krbTokenDecoderClass = ServiceHandlerCache.loadClass(service, kerberosTokenDecoderClass);
         } 
         catch (ClassNotFoundException e) {
             throw new RampartException("cannotLoadKrbTokenDecoderClass", 
                     new String[] { kerberosTokenDecoderClass }, e);
         }
         
+        // Kerberos token decoders keep the state of the token being decoded, so only the class
+        // is cached and every message gets its own decoder
         try {
             kerberosTokenDecoder = (KerberosTokenDecoder) krbTokenDecoderClass.newInstance();
         } catch (java.lang.Exception e) {
@@ -241,7 +255,7 @@ public class RampartUtil {
         if (rpd.getRampartConfig() != null && rpd.getRampartConfig().getPolicyValidatorCbClass() != null) {
             
             String cbHandlerClass = rpd.getRampartConfig().getPolicyValidatorCbClass();
-            ClassLoader classLoader = msgContext.getAxisService().getClassLoader();
+            AxisService service = msgContext.getAxisService();
 
             if (log.isDebugEnabled()) {
                 log.debug("loading class : " + cbHandlerClass);
@@ -249,20 +263,20 @@ public class RampartUtil {
 
             Class cbClass;
             try {
-                cbClass = Loader.loadClass(classLoader, cbHandlerClass);
+                cbClass = ServiceHandlerCache.loadClass(service, cbHandlerClass);
             } catch (ClassNotFoundException e) { 
                 throw new RampartException("cannotLoadPolicyValidatorCbClass", 
                         new String[]{cbHandlerClass}, e);
             }
             try {
-                cbHandler = (PolicyValidatorCallbackHandler) cbClass.newInstance();
+                cbHandler = (PolicyValidatorCallbackHandler) ServiceHandlerCache.getInstance(service, cbClass);
             } catch (java.lang.Exception e) {
                 throw new RampartException("cannotCreatePolicyValidatorCallbackInstance",
                         new String[]{cbHandlerClass}, e);
             }
             
-        } else { // Initialise default PolicyValidatorCallbackHandler...
-            cbHandler = new PolicyBasedResultsValidator();
+        } else { // Use the default PolicyValidatorCallbackHandler, which keeps no state
+            cbHandler = DEFAULT_POLICY_VALIDATOR;
         }
         
         return cbHandler;
@@ -276,7 +290,7 @@ public class RampartUtil {
        if (rpd.getRampartConfig() != null && rpd.getRampartConfig().getRampartConfigCbClass() != null) {
            
            String cbHandlerClass = rpd.getRampartConfig().getRampartConfigCbClass();
-           ClassLoader classLoader = msgContext.getAxisService().getClassLoader();
+           AxisService service = msgContext.getAxisService();
 
            if (log.isDebugEnabled()) {
                log.debug("loading class : " + cbHandlerClass);
@@ -284,13 +298,13 @@ public class RampartUtil {
 
            Class cbClass;
            try {
-               cbClass = Loader.loadClass(classLoader, cbHandlerClass);
+               cbClass = ServiceHandlerCache.loadClass(service, cbHandlerClass);
            } catch (ClassNotFoundException e) {
                throw new RampartException("cannotLoadRampartConfigCallbackClass", 
                        new String[]{cbHandlerClass}, e);
            }
            try {
-               rampartConfigCB = (RampartConfigCallbackHandler) cbClass.newInstance();
+               rampartConfigCB = (RampartConfigCallbackHandler) ServiceHandlerCache.getInstance(service, cbClass);
            } catch (java.lang.Exception e) {
                throw new RampartException("cannotCreateRampartConfigCallbackInstance",
                        new String[]{cbHandlerClass}, e);
@@ -368,22 +382,12 @@ public class RampartUtil {
             Properties prop = cryptoConfig.getProp();
             prop.put(CRYPTO_PROVIDER, provider);
 
-            String cryptoKey = null;
-            String interval = null;
-            if (cryptoConfig.isCacheEnabled()) {
-                if (cryptoConfig.getCryptoKey() != null) {
-                    cryptoKey = prop.getProperty(cryptoConfig.getCryptoKey());
-                    interval = cryptoConfig.getCacheRefreshInterval();
-                }
-                else if(provider.equals(RampartConstants.MERLIN_CRYPTO_IMPL)){
-                    cryptoKey = cryptoConfig.getProp().getProperty(RampartConstants.MERLIN_CRYPTO_IMPL_CACHE_KEY);
-                }
-            }
-
+            String cryptoKey = getCryptoCacheKey(cryptoConfig);
+            String interval = getCryptoCacheRefreshInterval(cryptoConfig);
 
             if (cryptoKey != null) {
                 // Crypto caching is enabled
-                crypto = retrieveCryptoFromCache(cryptoKey.trim() + "#" + provider.trim(), interval);
+                crypto = retrieveCryptoFromCache(cryptoKey, interval);
             }
 
             if (crypto == null) {
@@ -392,7 +396,7 @@ public class RampartUtil {
 
                 if (cryptoKey != null) {
                     // Crypto caching is enabled - cache the Crypto object
-                    cacheCrypto(cryptoKey.trim() + "#" + provider.trim(), crypto);
+                    cacheCrypto(cryptoKey, crypto);
                 }
             }
         } else {
@@ -435,22 +439,12 @@ public class RampartUtil {
             }
             Properties prop = cryptoConfig.getProp();
             prop.put(CRYPTO_PROVIDER, provider);
-            String cryptoKey = null;
-            String interval = null;
-
-            if (cryptoConfig.isCacheEnabled()) {
-                if (cryptoConfig.getCryptoKey() != null) {
-                    cryptoKey = prop.getProperty(cryptoConfig.getCryptoKey());
-                    interval = cryptoConfig.getCacheRefreshInterval();
-                }
-                else if(provider.equals(RampartConstants.MERLIN_CRYPTO_IMPL)){
-                    cryptoKey = cryptoConfig.getProp().getProperty(RampartConstants.MERLIN_CRYPTO_IMPL_CACHE_KEY);
-                }
-            }
+            String cryptoKey = getCryptoCacheKey(cryptoConfig);
+            String interval = getCryptoCacheRefreshInterval(cryptoConfig);
 
             if (cryptoKey != null) {
                 // cache enabled
-                crypto = retrieveCryptoFromCache(cryptoKey.trim() + "#" + provider.trim(), interval);
+                crypto = retrieveCryptoFromCache(cryptoKey, interval);
             }
 
             if (crypto == null) {
@@ -458,12 +452,57 @@ public class RampartUtil {
                 crypto = createCrypto(prop, loader);
                 if (cryptoKey != null) {
                     // cache enabled - let's cache
-                    cacheCrypto(cryptoKey.trim() + "#" + provider.trim(), crypto);
+                    cacheCrypto(cryptoKey, crypto);
                 }
             }
         }
         return crypto;
     }
+
+    /**
+     * Tells whether the <code>Crypto</code> of the given configuration is cached, in which
+     * case the same instance is returned until the cache refresh interval elapses.
+     * @param cryptoConfig The crypto configuration
+     * @return true if the <code>Crypto</code> instance is cached
+     */
+    public static boolean isCryptoCached(CryptoConfig cryptoConfig) {
+        return getCryptoCacheKey(cryptoConfig) != null;
+    }
+
+    /**
+     * Returns the time after which a cached <code>Crypto</code> of the given configuration
+     * is created again.
+     * @param cryptoConfig The crypto configuration
+     * @return The interval in milliseconds, or -1 if the instance is not refreshed or not cached
+     */
+    public static long getCryptoCacheRefreshMillis(CryptoConfig cryptoConfig) {
+        String interval = getCryptoCacheRefreshInterval(cryptoConfig);
+        return interval == null || !isCryptoCached(cryptoConfig) ? -1 : Long.parseLong(interval.trim());
+    }
+
+    private static String getCryptoCacheKey(CryptoConfig cryptoConfig) {
+        if (!cryptoConfig.isCacheEnabled()) {
+            return null;
+        }
+
+        String provider = cryptoConfig.getProvider();
+        String cryptoKey = null;
+        if (cryptoConfig.getCryptoKey() != null) {
+            cryptoKey = cryptoConfig.getProp().getProperty(cryptoConfig.getCryptoKey());
+        }
+        else if(provider.equals(RampartConstants.MERLIN_CRYPTO_IMPL)){
+            cryptoKey = cryptoConfig.getProp().getProperty(RampartConstants.MERLIN_CRYPTO_IMPL_CACHE_KEY);
+        }
+        return cryptoKey == null ? null : cryptoKey.trim() + "#" + provider.trim();
+    }
+
+    private static String getCryptoCacheRefreshInterval(CryptoConfig cryptoConfig) {
+        // The refresh interval only applies to a crypto cached by its cryptoKey
+        if (cryptoConfig.isCacheEnabled() && cryptoConfig.getCryptoKey() != null) {
+            return cryptoConfig.getCacheRefreshInterval();
+        }
+        return null;
+    }
     
     
     /**
@@ -650,6 +689,29 @@ public class RampartUtil {
         }
     }
 
+    /**
+     * Returns the number of signed messages the replay cache remembers for the given life time,
+     * i.e. the life time times the expected message rate configured in the RampartConfig.
+     * @param messageData The message data holding the RampartConfig.
+     * @param lifeTime Period, in seconds, within which a message timestamp is accepted.
+     * @return The maximum number of messages remembered per life time.
+     */
+    public static int getMessageReplayCacheSize(RampartMessageData messageData, int lifeTime) {
+
+        int rate = RampartConfig.DEFAULT_MESSAGE_REPLAY_RATE;
+        RampartConfig rampartConfig = messageData.getPolicyData().getRampartConfig();
+        if (rampartConfig != null && rampartConfig.getMessageReplayRate() != null) {
+            try {
+                rate = Integer.parseInt(rampartConfig.getMessageReplayRate());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid message replay rate " + rampartConfig.getMessageReplayRate()
+                        + ", using " + rate);
+            }
+        }
+        long size = (long) Math.max(lifeTime, 1) * Math.max(rate, 1);
+        return (int) Math.min(size, FingerprintCache.MAX_ENTRIES_LIMIT);
+    }
+
     /**
      * Obtain a security context token.
      * @param rmd
@@ -698,14 +760,38 @@ public class RampartUtil {
             stsPolicy = rmd.getPolicyData().getIssuerPolicy();
         }
         
+        // Refresh the token in the context map ahead of its expiry
+        final Hashtable contextMap = getContextMap(rmd.getMsgContext());
+        final String contextIdentifierKey = getContextIdentifierKey(rmd);
+        TokenRefresher.TokenHolder holder = new TokenRefresher.TokenHolder() {
+            public void tokenRefreshed(String oldId, String newId) {
+                synchronized (contextMap) {
+                    if (oldId.equals(contextMap.get(contextIdentifierKey))) {
+                        contextMap.put(contextIdentifierKey, newId);
+                    }
+                }
+            }
+        };
+
         String id = getToken(rmd, rstTemplate,
-                issuerEprAddress, action, stsPolicy);
+                issuerEprAddress, action, stsPolicy,
+                getSecConvRefreshKey(rmd), holder);
 
         if (log.isDebugEnabled()) {
             log.debug("SecureConversationToken obtained: id=" + id);
         }
         return id;
     }
+
+    /**
+     * Returns the key under which the security context token of the given message is
+     * refreshed by the {@link TokenRefresher}.
+     * @param rmd
+     * @return The refresh key
+     */
+    public static String getSecConvRefreshKey(RampartMessageData rmd) {
+        return "sct|" + getContextIdentifierKey(rmd);
+    }
     
 
     /**
@@ -715,33 +801,61 @@ public class RampartUtil {
      * @return The identifier of the issued token
      * @throws RampartException
      */
-    public static String getIssuedToken(RampartMessageData rmd,
-            IssuedToken issuedToken) throws RampartException {
+    public static String getIssuedToken(final RampartMessageData rmd,
+            final IssuedToken issuedToken) throws RampartException {
 
         try {
             
             //TODO : Provide the overriding mechanism to provide a custom way of 
             //obtaining a token
             
-            String action = TrustUtil.getActionValue(rmd.getWstVersion(),
+            final String action = TrustUtil.getActionValue(rmd.getWstVersion(),
                     RahasConstants.RST_ACTION_ISSUE);
 
             // Get sts epr
-            String issuerEprAddress = RampartUtil.processIssuerAddress(issuedToken
+            final String issuerEprAddress = RampartUtil.processIssuerAddress(issuedToken
                     .getIssuerEpr());
 
-            OMElement rstTemplate = issuedToken.getRstTemplate();
+            final OMElement rstTemplate = issuedToken.getRstTemplate();
 
-            // Get STS policy
-            Policy stsPolicy = (Policy)rmd.getMsgContext().getProperty(RampartMessageData.RAMPART_STS_POLICY);
-            
-            if( stsPolicy == null && issuedToken.getIssuerMex() != null) {
-                stsPolicy = RampartUtil.getPolicyFromMetadataRef(issuedToken.getIssuerMex());
-                RampartUtil.addRampartConfig(rmd, stsPolicy);
+            MessageContext msgContext = rmd.getMsgContext();
+            if (msgContext.getProperty(RampartMessageData.KEY_CUSTOM_ISSUED_TOKEN) != null) {
+                return (String) msgContext.getProperty(RampartMessageData.KEY_CUSTOM_ISSUED_TOKEN);
             }
 
-            String id = getToken(rmd, rstTemplate, issuerEprAddress, action,
-                    stsPolicy);
+            // Reuse a token obtained for an earlier message, if it is still valid
+            RampartConfig rampartConfig = rmd.getPolicyData().getRampartConfig();
+            String identity = msgContext.getOptions().getUserName() + "|"
+                    + (rampartConfig != null ? rampartConfig.getUser() : null);
+            final String key = IssuedTokenCache.createKey(issuerEprAddress,
+                    msgContext.getOptions().getTo().getAddress(), rstTemplate, identity);
+
+            final IssuedTokenCache cache = IssuedTokenCache.getInstance(msgContext.getConfigurationContext());
+            String id = cache.getToken(key,
+                    rmd.getTokenStorage(), getIssuedTokenRefreshMargin(rampartConfig) * 1000L,
+                    new IssuedTokenCache.TokenRequester() {
+                        public String requestToken() throws RampartException {
+
+                            // Get STS policy
+                            Policy stsPolicy = (Policy)rmd.getMsgContext().getProperty(RampartMessageData.RAMPART_STS_POLICY);
+
+                            if( stsPolicy == null && issuedToken.getIssuerMex() != null) {
+                                stsPolicy = RampartUtil.getPolicyFromMetadataRef(issuedToken.getIssuerMex());
+                                RampartUtil.addRampartConfig(rmd, stsPolicy);
+                            }
+
+                            // Refresh the cached token ahead of its expiry
+                            TokenRefresher.TokenHolder holder = new TokenRefresher.TokenHolder() {
+                                public void tokenRefreshed(String oldId, String newId) {
+                                    cache.replace(key, oldId, newId);
+                                }
+                            };
+
+                            return getToken(rmd, rstTemplate, issuerEprAddress, action,
+                                    stsPolicy, "issued|" + key, holder);
+                        }
+                    });
+            TokenRefresher.getInstance(msgContext.getConfigurationContext()).touch("issued|" + key);
 
             if (log.isDebugEnabled()) {
                 log.debug("Issued token obtained: id=" + id);
@@ -752,6 +866,19 @@ public class RampartUtil {
         } 
     }
     
+    private static int getIssuedTokenRefreshMargin(RampartConfig rampartConfig) {
+
+        if (rampartConfig != null && rampartConfig.getIssuedTokenRefreshMargin() != null) {
+            try {
+                return Integer.parseInt(rampartConfig.getIssuedTokenRefreshMargin());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid value for issuedTokenRefreshMargin in rampart configuration, " +
+                        "using the default", e);
+            }
+        }
+        return RampartConfig.DEFAULT_ISSUED_TOKEN_REFRESH_MARGIN;
+    }
+
     /**
      * Request a token.
      * @param rmd
@@ -764,6 +891,25 @@ public class RampartUtil {
      */
     public static String getToken(RampartMessageData rmd, OMElement rstTemplate,
             String issuerEpr, String action, Policy issuerPolicy) throws RampartException {
+        return getToken(rmd, rstTemplate, issuerEpr, action, issuerPolicy, null, null);
+    }
+
+    /**
+     * Request a token and, if a token holder is given, have the {@link TokenRefresher}
+     * obtain its replacement in the background ahead of its expiry.
+     * @param rmd
+     * @param rstTemplate
+     * @param issuerEpr
+     * @param action
+     * @param issuerPolicy
+     * @param refreshKey Key through which messages find the token
+     * @param holder Receives the replacement token, may be <code>null</code>
+     * @return Return the identifier of the obtained token
+     * @throws RampartException
+     */
+    private static String getToken(RampartMessageData rmd, OMElement rstTemplate,
+            String issuerEpr, String action, Policy issuerPolicy,
+            String refreshKey, TokenRefresher.TokenHolder holder) throws RampartException {
 
         try {
             //First check whether the user has provided the token
@@ -778,6 +924,8 @@ public class RampartUtil {
                 
                 STSClient client = new STSClient(rmd.getMsgContext()
                         .getConfigurationContext());
+                client.setServiceClientPool(ServiceClientPool.getInstance(
+                        rmd.getMsgContext().getConfigurationContext()));
                 // Set request action
                 client.setAction(action);
                 
@@ -831,16 +979,18 @@ public class RampartUtil {
                 
                 
                 //Make the request
-                org.apache.rahas.Token rst = 
-                    client.requestSecurityToken(servicePolicy, 
-                                                issuerEpr,
-                                                issuerPolicy, 
-                                                servceEprAddress);
-                
-                //Add the token to token storage
-                rst.setState(Token.ISSUED);
-                rmd.getTokenStorage().add(rst);
+                STSTokenSource source = new STSTokenSource(client, servicePolicy,
+                        issuerEpr, issuerPolicy, servceEprAddress, rmd.getTokenStorage(),
+                        getServiceName(msgContext));
+                org.apache.rahas.Token rst = source.requestToken();
                 Axis2Util.useDOOM(true);
+
+                if (holder != null) {
+                    TokenRefresher.getInstance(msgContext.getConfigurationContext()).schedule(
+                            refreshKey, rst,
+                            2 * getIssuedTokenRefreshMargin(rmd.getPolicyData().getRampartConfig()) * 1000L,
+                            source, holder);
+                }
                 return rst.getId();
             }
         } catch (Exception e) {
@@ -848,6 +998,48 @@ public class RampartUtil {
         }
     }
 
+    /**
+     * Requests tokens from an STS with a configured client, and adds them to the token storage.
+     */
+    private static class STSTokenSource implements TokenRefresher.TokenSource {
+
+        private final STSClient client;
+        private final Policy servicePolicy;
+        private final String issuerEpr;
+        private final Policy issuerPolicy;
+        private final String serviceEprAddress;
+        private final TokenStorage storage;
+        private final String service;
+
+        STSTokenSource(STSClient client, Policy servicePolicy, String issuerEpr,
+                Policy issuerPolicy, String serviceEprAddress, TokenStorage storage,
+                String service) {
+            this.client = client;
+            this.servicePolicy = servicePolicy;
+            this.issuerEpr = issuerEpr;
+            this.issuerPolicy = issuerPolicy;
+            this.serviceEprAddress = serviceEprAddress;
+            this.storage = storage;
+            this.service = service;
+        }
+
+        public org.apache.rahas.Token requestToken() throws TrustException {
+
+            RampartMetricsFactory.getMetrics().recordSTSCall(service);
+
+            org.apache.rahas.Token rst =
+                client.requestSecurityToken(servicePolicy,
+                                            issuerEpr,
+                                            issuerPolicy,
+                                            serviceEprAddress);
+
+            //Add the token to token storage
+            rst.setState(org.apache.rahas.Token.ISSUED);
+            storage.add(rst);
+            return rst;
+        }
+    }
+
     public static String getSoapBodyId(SOAPEnvelope env) {
         return addWsuIdToElement(env.getBody());
     }
@@ -951,9 +1143,10 @@ public class RampartUtil {
 		List<WSEncryptionPart> encryptedPartsElements = getPartsAndElements(false, envelope,
 				rpd.isEncryptBody() && !rpd.isEncryptBodyOptional(), rpd
 						.getEncryptedParts(), rpd.getEncryptedElements(), rpd
-						.getDeclaredNamespaces());
+						.getDeclaredNamespaces(), rpd.getXPathCache());
 		return getContentEncryptedElements(encryptedPartsElements, envelope,
-				rpd.getContentEncryptedElements(), rpd.getDeclaredNamespaces());
+				rpd.getContentEncryptedElements(), rpd.getDeclaredNamespaces(),
+				rpd.getXPathCache());
 	}
 
 	public static List<WSEncryptionPart> getSignedParts(RampartMessageData rmd) {
@@ -974,7 +1167,7 @@ public class RampartUtil {
 
 		return getPartsAndElements(true, envelope, rpd.isSignBody()
 				&& !rpd.isSignBodyOptional(), rpd.getSignedParts(), rpd
-				.getSignedElements(), rpd.getDeclaredNamespaces());
+				.getSignedElements(), rpd.getDeclaredNamespaces(), rpd.getXPathCache());
 	}
 
 	public static List<WSEncryptionPart> getSupportingEncryptedParts(RampartMessageData rmd,
@@ -982,7 +1175,7 @@ public class RampartUtil {
 		SOAPEnvelope envelope = rmd.getMsgContext().getEnvelope();
 		return getPartsAndElements(false, envelope, rpd.isEncryptBody()
 				&& !rpd.isEncryptBodyOptional(), rpd.getEncryptedParts(), rpd
-				.getEncryptedElements(), rpd.getDeclaredNamespaces());
+				.getEncryptedElements(), rpd.getDeclaredNamespaces(), rpd.getXPathCache());
 	}
 
 	public static List<WSEncryptionPart> getSupportingSignedParts(RampartMessageData rmd,
@@ -990,7 +1183,7 @@ public class RampartUtil {
 		SOAPEnvelope envelope = rmd.getMsgContext().getEnvelope();
 		return getPartsAndElements(true, envelope, rpd.isSignBody()
 				&& !rpd.isSignBodyOptional(), rpd.getSignedParts(), rpd
-				.getSignedElements(), rpd.getDeclaredNamespaces());
+				.getSignedElements(), rpd.getDeclaredNamespaces(), rpd.getXPathCache());
 	}
     
     public static Set findAllPrefixNamespaces(OMElement currentElement, HashMap decNamespacess)
@@ -1035,6 +1228,71 @@ public class RampartUtil {
         }
     }
     
+    /**
+     * Returns the namespaces by prefix to evaluate policy XPath expressions with, without
+     * walking the message up front. A prefix is resolved, when an expression uses it, from the
+     * namespaces declared in the policy, the default namespaces, the namespaces in scope of the
+     * given element and only then from the namespaces declared anywhere below the element.
+     * @param currentElement Element the expressions are evaluated against
+     * @param decNamespaces Namespaces declared in the policy
+     * @return Namespace URIs by prefix
+     */
+    public static Map<String, String> getPrefixNamespaces(OMElement currentElement, HashMap decNamespaces) {
+        return new PrefixNamespaces(currentElement, decNamespaces);
+    }
+
+    private static class PrefixNamespaces extends AbstractMap<String, String> {
+
+        private final OMElement element;
+
+        private final Map<String, String> resolved = new HashMap<String, String>();
+
+        private Map<String, String> declared;
+
+        PrefixNamespaces(OMElement element, HashMap decNamespaces) {
+            this.element = element;
+            this.resolved.put(WSConstants.ENC_PREFIX, WSConstants.ENC_NS);
+            this.resolved.put(WSConstants.SIG_PREFIX, WSConstants.SIG_NS);
+            this.resolved.put(WSConstants.WSSE_PREFIX, WSConstants.WSSE_NS);
+            this.resolved.put(WSConstants.WSU_PREFIX, WSConstants.WSU_NS);
+            if (decNamespaces != null) {
+                this.resolved.putAll(decNamespaces);
+            }
+        }
+
+        public String get(Object key) {
+            String prefix = (String) key;
+            if (resolved.containsKey(prefix)) {
+                return resolved.get(prefix);
+            }
+
+            OMNamespace ns = element.findNamespaceURI(prefix);
+            String namespaceURI = ns != null ? ns.getNamespaceURI() : getDeclared().get(prefix);
+            resolved.put(prefix, namespaceURI);
+            return namespaceURI;
+        }
+
+        public Set<Entry<String, String>> entrySet() {
+            Map<String, String> all = new HashMap<String, String>(getDeclared());
+            for (Entry<String, String> entry : resolved.entrySet()) {
+                if (entry.getValue() != null) {
+                    all.put(entry.getKey(), entry.getValue());
+                }
+            }
+            return all.entrySet();
+        }
+
+        // Only walks the element when a prefix is not known otherwise
+        private Map<String, String> getDeclared() {
+            if (declared == null) {
+                Set<OMNamespace> namespaces = new HashSet<OMNamespace>();
+                findPrefixNamespaces(element, namespaces);
+                declared = XPathCache.toMap(namespaces);
+            }
+            return declared;
+        }
+    }
+
     private static List getDefaultPrefixNamespaces(OMFactory factory)
     {
     	List<OMNamespace> namespaces = new ArrayList<OMNamespace>();
@@ -1051,17 +1309,23 @@ public class RampartUtil {
     
     public static List<WSEncryptionPart> getContentEncryptedElements (List<WSEncryptionPart> encryptedPartsElements,
                                                  SOAPEnvelope envelope,List<String> elements, HashMap decNamespaces ) {
-        
-        Set namespaces = findAllPrefixNamespaces(envelope, decNamespaces);
+        return getContentEncryptedElements(encryptedPartsElements, envelope, elements,
+                decNamespaces, sharedXPathCache);
+    }
+
+    public static List<WSEncryptionPart> getContentEncryptedElements (List<WSEncryptionPart> encryptedPartsElements,
+                                                 SOAPEnvelope envelope,List<String> elements, HashMap decNamespaces,
+                                                 XPathCache xpathCache) {
+
+        if (elements.isEmpty()) {
+            return encryptedPartsElements;
+        }
+
+        Map<String, String> namespaces = getPrefixNamespaces(envelope, decNamespaces);
 
         for (String expression : elements) {
             try {
-                XPath xp = new AXIOMXPath(expression);
-
-                for (Object objectNamespace : namespaces) {
-                    OMNamespace tmpNs = (OMNamespace) objectNamespace;
-                    xp.addNamespace(tmpNs.getPrefix(), tmpNs.getNamespaceURI());
-                }
+                XPath xp = xpathCache.getXPath(expression, namespaces);
 
                 List selectedNodes = xp.selectNodes(envelope);
 
@@ -1145,6 +1409,13 @@ public class RampartUtil {
     public static List<WSEncryptionPart> getPartsAndElements(boolean sign, SOAPEnvelope envelope, boolean includeBody,
                                                              List<WSEncryptionPart> parts, List<String> elements,
                                                              HashMap decNamespaces) {
+        return getPartsAndElements(sign, envelope, includeBody, parts, elements, decNamespaces,
+                sharedXPathCache);
+    }
+
+    public static List<WSEncryptionPart> getPartsAndElements(boolean sign, SOAPEnvelope envelope, boolean includeBody,
+                                                             List<WSEncryptionPart> parts, List<String> elements,
+                                                             HashMap decNamespaces, XPathCache xpathCache) {
 
         List<OMElement> found = new ArrayList<OMElement>();
         List<WSEncryptionPart> result = new ArrayList<WSEncryptionPart>();
@@ -1223,16 +1494,15 @@ public class RampartUtil {
         // ?? Search for 'Elements' here
         
         // decide what exactly is going to be used - only the default namespaces, or the list of all declared namespaces in the message !
-        Set namespaces = findAllPrefixNamespaces(envelope, decNamespaces);
+        if (elements.isEmpty()) {
+            return result;
+        }
+
+        Map<String, String> namespaces = getPrefixNamespaces(envelope, decNamespaces);
 
         for (String expression : elements) {
             try {
-                XPath xp = new AXIOMXPath(expression);
-
-                for (Object objectNamespace : namespaces) {
-                    OMNamespace tmpNs = (OMNamespace) objectNamespace;
-                    xp.addNamespace(tmpNs.getPrefix(), tmpNs.getNamespaceURI());
-                }
+                XPath xp = xpathCache.getXPath(expression, namespaces);
 
                 List selectedNodes = xp.selectNodes(envelope);
 
@@ -1275,19 +1545,27 @@ public class RampartUtil {
      * @return
      */
     public static boolean checkRequiredElements(SOAPEnvelope envelope, HashMap decNamespaces, String expression) {
+        return checkRequiredElements(envelope, decNamespaces, expression, sharedXPathCache);
+    }
+
+    /**
+     * Get a element for SOAP 
+     * @param envelope   SOAP Envelope of which we should check required elements
+     * @param decNamespaces  Declared namespaces in RequiredElements assertion
+     * @param expression  XPATH expression of required elements
+     * @param xpathCache  Cache of the compiled expressions
+     * @return
+     */
+    public static boolean checkRequiredElements(SOAPEnvelope envelope, HashMap decNamespaces, String expression,
+                                                XPathCache xpathCache) {
 
         // The XPath expression must be evaluated against the SOAP header
         // http://docs.oasis-open.org/ws-sx/ws-securitypolicy/200702/ws-securitypolicy-1.2-spec-os.html#_Toc161826519
         SOAPHeader header = envelope.getHeader();
-        Set namespaces = findAllPrefixNamespaces(header, decNamespaces);
+        Map<String, String> namespaces = getPrefixNamespaces(header, decNamespaces);
 
         try {
-            XPath xp = new AXIOMXPath(expression);
-
-            for (Object namespace : namespaces) {
-                OMNamespace tmpNs = (OMNamespace) namespace;
-                xp.addNamespace(tmpNs.getPrefix(), tmpNs.getNamespaceURI());
-            }
+            XPath xp = xpathCache.getXPath(expression, namespaces);
 
             List selectedNodes = xp.selectNodes(header);
 
@@ -1304,21 +1582,28 @@ public class RampartUtil {
     }
     
     
+    /**
+     * Returns a new key generator for the given symmetric encryption algorithm, seeded from the
+     * shared random number generators of {@link KeyGenerationUtil}.
+     * @param symEncrAlgo The symmetric encryption algorithm URI
+     * @return The key generator, or <code>null</code> if the algorithm is not supported
+     * @throws WSSecurityException
+     */
     public static KeyGenerator getEncryptionKeyGenerator(String symEncrAlgo) throws WSSecurityException {
         KeyGenerator keyGen;
         try {
-            /*
-             * Assume AES as default, so initialize it
-             */
-            keyGen = KeyGenerator.getInstance("AES");
             if (symEncrAlgo.equalsIgnoreCase(WSConstants.TRIPLE_DES)) {
                 keyGen = KeyGenerator.getInstance("DESede");
+                keyGen.init(KeyGenerationUtil.getSecureRandom());
             } else if (symEncrAlgo.equalsIgnoreCase(WSConstants.AES_128)) {
-                keyGen.init(128);
+                keyGen = KeyGenerator.getInstance("AES");
+                keyGen.init(128, KeyGenerationUtil.getSecureRandom());
             } else if (symEncrAlgo.equalsIgnoreCase(WSConstants.AES_192)) {
-                keyGen.init(192);
+                keyGen = KeyGenerator.getInstance("AES");
+                keyGen.init(192, KeyGenerationUtil.getSecureRandom());
             } else if (symEncrAlgo.equalsIgnoreCase(WSConstants.AES_256)) {
-                keyGen.init(256);
+                keyGen = KeyGenerator.getInstance("AES");
+                keyGen.init(256, KeyGenerationUtil.getSecureRandom());
             } else {
                 return null;
             }
@@ -1337,6 +1622,114 @@ public class RampartUtil {
     public static String getContextIdentifierKey(MessageContext msgContext) {
         return msgContext.getAxisService().getName();
     }
+
+    /**
+     * Creates the id to hold the context identifier of the message exchange, taking the
+     * secure conversation context pool size of the rampart configuration into account.
+     * <p>
+     * Without a pool size, or with a pool size of <code>0</code>, all messages to a service
+     * share a single context. Otherwise contexts are kept per service, endpoint and caller,
+     * and each message exchange checks out one of the given number of contexts from the
+     * {@link SecConvContextPool}, until it is released with
+     * {@link #releaseContextIdentifierKey(MessageContext)}. The id is chosen once per message
+     * exchange, so that the response and a cancel request use the context of the request.
+     * @param rmd
+     * @return Id to hold the context identifier in the message context
+     */
+    public static String getContextIdentifierKey(RampartMessageData rmd) {
+
+        MessageContext msgContext = rmd.getMsgContext();
+
+        String key = (String) msgContext.getProperty(RampartMessageData.SCT_CONTEXT_KEY);
+        if (key != null) {
+            return key;
+        }
+
+        RampartConfig rampartConfig = rmd.getPolicyData() != null ?
+                rmd.getPolicyData().getRampartConfig() : null;
+        int poolSize = getSecConvContextPoolSize(rampartConfig);
+        if (poolSize <= 0) {
+            return getContextIdentifierKey(msgContext);
+        }
+
+        Options options = msgContext.getOptions();
+        String endpoint = options.getTo() != null ? options.getTo().getAddress() : null;
+
+        key = SecConvContextPool.getInstance(msgContext.getConfigurationContext()).checkout(
+                getContextIdentifierKey(msgContext) + "|" + endpoint + "|"
+                        + options.getUserName() + "|" + rampartConfig.getUser(), poolSize);
+
+        if (msgContext.getOperationContext() != null) {
+            msgContext.getOperationContext().setProperty(RampartMessageData.SCT_CONTEXT_KEY, key);
+        } else {
+            msgContext.setProperty(RampartMessageData.SCT_CONTEXT_KEY, key);
+        }
+        return key;
+    }
+
+    /**
+     * Releases the secure conversation context checked out by the message exchange of the
+     * given message, if any. A context of an evicted pool is dropped.
+     * @param msgContext
+     */
+    public static void releaseContextIdentifierKey(MessageContext msgContext) {
+
+        String key = (String) msgContext.getProperty(RampartMessageData.SCT_CONTEXT_KEY);
+        if (key == null) {
+            return;
+        }
+        // Contexts are shared by exchanges, so each exchange releases its context only once
+        if (msgContext.getOperationContext() != null) {
+            msgContext.getOperationContext().removeProperty(RampartMessageData.SCT_CONTEXT_KEY);
+        }
+        msgContext.removeProperty(RampartMessageData.SCT_CONTEXT_KEY);
+
+        ConfigurationContext configContext = msgContext.getConfigurationContext();
+        if (!SecConvContextPool.getInstance(configContext).release(key)) {
+            removeContext(configContext, key);
+        }
+    }
+
+    /**
+     * Removes the secure conversation context of the message exchange of the given message,
+     * e.g. once it is cancelled. With pooled contexts, all the contexts of the pool are removed.
+     * @param rmd
+     */
+    public static void removeContextIdentifiers(RampartMessageData rmd) {
+
+        MessageContext msgContext = rmd.getMsgContext();
+        String key = getContextIdentifierKey(rmd);
+        if (msgContext.getProperty(RampartMessageData.SCT_CONTEXT_KEY) == null) {
+            getContextMap(msgContext).remove(key);
+            return;
+        }
+        ConfigurationContext configContext = msgContext.getConfigurationContext();
+        for (String poolKey : SecConvContextPool.getInstance(configContext).evict(key)) {
+            removeContext(configContext, poolKey);
+        }
+    }
+
+    private static void removeContext(ConfigurationContext configContext, String key) {
+        Hashtable contextMap = (Hashtable) configContext.getProperty(
+                ConversationConstants.KEY_CONTEXT_MAP);
+        if (contextMap != null) {
+            contextMap.remove(key);
+        }
+        TokenRefresher.getInstance(configContext).cancel("sct|" + key);
+    }
+
+    private static int getSecConvContextPoolSize(RampartConfig rampartConfig) {
+
+        if (rampartConfig != null && rampartConfig.getSecConvContextPoolSize() != null) {
+            try {
+                return Integer.parseInt(rampartConfig.getSecConvContextPoolSize());
+            } catch (NumberFormatException e) {
+                log.warn("Invalid value for secConvContextPoolSize in rampart configuration, " +
+                        "using a single context", e);
+            }
+        }
+        return 0;
+    }
     
     
     /**
@@ -1625,6 +2018,48 @@ public class RampartUtil {
         return retElem;
     }
     
+    /**
+     * Returns the name of the service of a message, by which the metrics of the message are
+     * recorded.
+     * @param msgCtx The message context
+     * @return The name of the service, or <code>null</code> if the service is not known
+     */
+    public static String getServiceName(MessageContext msgCtx) {
+        AxisService service = msgCtx.getAxisService();
+        return service == null ? null : service.getName();
+    }
+
+    /**
+     * Returns the binding of a policy, by which the metrics of its messages are recorded.
+     * @param rpd The policy data
+     * @return One of the binding names of {@link RampartMetrics}
+     */
+    public static String getBindingName(RampartPolicyData rpd) {
+        if (rpd.isTransportBinding()) {
+            return RampartMetrics.TRANSPORT_BINDING;
+        } else if (rpd.isSymmetricBinding()) {
+            return RampartMetrics.SYMMETRIC_BINDING;
+        }
+        return RampartMetrics.ASYMMETRIC_BINDING;
+    }
+
+    /**
+     * Records the number of tokens in the token store of the configuration context of a
+     * message, if there is one and it can tell without listing its tokens.
+     * @param msgCtx The message context
+     */
+    public static void recordTokenStoreSize(MessageContext msgCtx) {
+        RampartMetrics metrics = RampartMetricsFactory.getMetrics();
+        if (metrics.isEnabled() && msgCtx.getConfigurationContext() != null) {
+            Object store = msgCtx.getConfigurationContext().getProperty(
+                    TokenStorage.TOKEN_STORAGE_KEY);
+            if (store instanceof ExtendedTokenStorage) {
+                metrics.recordTokenStoreSize(getServiceName(msgCtx),
+                        ((ExtendedTokenStorage) store).size());
+            }
+        }
+    }
+
     /**
      * Method to check whether security header is required in incoming message
      * @param rpd 
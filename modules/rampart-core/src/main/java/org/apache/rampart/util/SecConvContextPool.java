@@ -0,0 +1,195 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rampart.util;
+
+import org.apache.axis2.context.ConfigurationContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Hands out the secure conversation contexts a client keeps per endpoint and caller, so that
+ * concurrent message exchanges are spread over several contexts.
+ * <p>
+ * A message exchange checks out a slot of the pool of its endpoint and caller, and releases it
+ * once the exchange is complete. A free slot is preferred; once all the slots of a pool are
+ * checked out, the exchange shares the slot used by the fewest exchanges. A pool therefore never
+ * holds more contexts than its size, and no context is issued for a single exchange and dropped
+ * afterwards without being cancelled. When the size of a pool changes, the slots beyond the new
+ * size are no longer handed out and their contexts are left to expire.
+ * <p>
+ * The contexts of a pool are named by the key of the pool followed by the generation of the pool
+ * and the number of their slot, so that the contexts of an evicted pool are never handed out
+ * again.
+ * <p>
+ * All the operations hold the lock of this object. They run once per message exchange and only
+ * update a few entries, next to the signing and the round trip of the exchange, so the lock is
+ * not contended in practice. A lock free checkout would have to update the free slots, the
+ * number of exchanges per slot and the pool generation together, for no measurable gain.
+ */
+public class SecConvContextPool {
+
+    public static final String SEC_CONV_CONTEXT_POOL_KEY = "org.apache.rampart.SecConvContextPool";
+
+    private static class Pool {
+        final String key;
+        final int generation;
+        final LinkedList<Integer> free = new LinkedList<Integer>();
+        int size;
+        int allocated;
+        // Number of exchanges using each allocated slot
+        int[] leases = new int[0];
+
+        Pool(String key, int size, int generation) {
+            this.key = key;
+            this.size = size;
+            this.generation = generation;
+        }
+
+        String getKey(int slot) {
+            return key + "|" + generation + "|" + slot;
+        }
+
+        int checkout() {
+
+            for (Iterator<Integer> it = free.iterator(); it.hasNext();) {
+                int slot = it.next();
+                if (slot < size) {
+                    it.remove();
+                    return slot;
+                }
+            }
+
+            if (allocated < size) {
+                if (leases.length <= allocated) {
+                    leases = Arrays.copyOf(leases, size);
+                }
+                return allocated++;
+            }
+
+            // All the slots are in use, share the least used one
+            int slot = 0;
+            for (int i = 1; i < size; i++) {
+                if (leases[i] < leases[slot]) {
+                    slot = i;
+                }
+            }
+            return slot;
+        }
+    }
+
+    private final Map<String, Pool> pools = new HashMap<String, Pool>();
+
+    // Pool of each checked out context
+    private final Map<String, Pool> leases = new HashMap<String, Pool>();
+
+    /**
+     * Returns the context pool of the given configuration context, creating it if needed.
+     * @param configContext The configuration context
+     * @return The context pool
+     */
+    public static SecConvContextPool getInstance(ConfigurationContext configContext) {
+        synchronized (configContext) {
+            SecConvContextPool pool =
+                    (SecConvContextPool) configContext.getProperty(SEC_CONV_CONTEXT_POOL_KEY);
+            if (pool == null) {
+                pool = new SecConvContextPool();
+                configContext.setProperty(SEC_CONV_CONTEXT_POOL_KEY, pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Checks out a context of the given pool.
+     * @param poolKey The key of the pool, i.e. of the endpoint and caller
+     * @param size The number of contexts kept in the pool
+     * @return The key of the context, to be released once with {@link #release(String)}
+     */
+    public synchronized String checkout(String poolKey, int size) {
+
+        Pool pool = pools.get(poolKey);
+        if (pool == null) {
+            pool = new Pool(poolKey, size, 0);
+            pools.put(poolKey, pool);
+        } else {
+            pool.size = size;
+        }
+
+        int slot = pool.checkout();
+        pool.leases[slot]++;
+
+        String key = pool.getKey(slot);
+        leases.put(key, pool);
+        return key;
+    }
+
+    /**
+     * Releases a context checked out with {@link #checkout(String, int)}. Releasing a context
+     * which is not checked out has no effect.
+     * @param key The key of the context
+     * @return <code>false</code> if the context belongs to an evicted pool and is to be dropped
+     */
+    public synchronized boolean release(String key) {
+
+        Pool pool = leases.get(key);
+        if (pool == null) {
+            return true;
+        }
+        int slot = Integer.parseInt(key.substring(key.lastIndexOf('|') + 1));
+        if (--pool.leases[slot] > 0) {
+            return true;
+        }
+        leases.remove(key);
+        if (pools.get(pool.key) != pool) {
+            return false;
+        }
+        pool.free.addFirst(slot);
+        return true;
+    }
+
+    /**
+     * Removes the pool the given context belongs to. The contexts which are checked out are
+     * dropped when they are released.
+     * @param key The key of a context of the pool
+     * @return The keys of all the contexts of the pool, including those which are checked out,
+     *         or only the given key if it does not belong to a pool
+     */
+    public synchronized List<String> evict(String key) {
+
+        List<String> keys = new ArrayList<String>();
+        Pool pool = leases.get(key);
+        if (pool == null || pools.get(pool.key) != pool) {
+            keys.add(key);
+            return keys;
+        }
+
+        pools.put(pool.key, new Pool(pool.key, pool.size, pool.generation + 1));
+        for (int i = 0; i < pool.allocated; i++) {
+            keys.add(pool.getKey(i));
+        }
+        return keys;
+    }
+}
@@ -0,0 +1,124 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.apache.rampart.util;
+
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.description.AxisService;
+import org.apache.axis2.description.Parameter;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.rampart.SharedHandler;
+import org.apache.ws.security.util.Loader;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Holds the handler classes configured in the Rampart Configuration per service, so that they
+ * are not looked up through the class loader of the service for every message, as well as the
+ * instances of the classes that are {@link SharedHandler}s.
+ * <p>
+ * Entries are kept in a transient parameter of the service, so that looking them up takes no
+ * lock, and are dropped along with the service when it is undeployed.
+ */
+public class ServiceHandlerCache {
+
+    private static Log log = LogFactory.getLog(ServiceHandlerCache.class);
+
+    public static final String SERVICE_HANDLER_CACHE_PARAM = "org.apache.rampart.ServiceHandlerCache";
+
+    private static class ServiceEntry {
+        final ConcurrentMap<String, Class> classes = new ConcurrentHashMap<String, Class>();
+        final ConcurrentMap<Class, Object> instances = new ConcurrentHashMap<Class, Object>();
+    }
+
+    private ServiceHandlerCache() {
+    }
+
+    /**
+     * Loads a handler class with the class loader of the given service.
+     * @param service The service
+     * @param className The name of the class
+     * @return The class
+     * @throws ClassNotFoundException If the class can not be loaded
+     */
+    public static Class loadClass(AxisService service, String className)
+            throws ClassNotFoundException {
+
+        ServiceEntry entry = getEntry(service);
+        Class handlerClass = entry.classes.get(className);
+        if (handlerClass == null) {
+            handlerClass = Loader.loadClass(service.getClassLoader(), className);
+            entry.classes.put(className, handlerClass);
+        }
+        return handlerClass;
+    }
+
+    /**
+     * Returns the shared instance of the given class for the service if it is a
+     * {@link SharedHandler}, or else a new instance.
+     * @param service The service
+     * @param handlerClass The class loaded through {@link #loadClass(AxisService, String)}
+     * @return The handler instance
+     * @throws InstantiationException If the class can not be instantiated
+     * @throws IllegalAccessException If the constructor is not accessible
+     */
+    public static Object getInstance(AxisService service, Class handlerClass)
+            throws InstantiationException, IllegalAccessException {
+
+        if (!SharedHandler.class.isAssignableFrom(handlerClass)) {
+            return handlerClass.newInstance();
+        }
+
+        ServiceEntry entry = getEntry(service);
+        Object handler = entry.instances.get(handlerClass);
+        if (handler == null) {
+            handler = handlerClass.newInstance();
+            Object existing = entry.instances.putIfAbsent(handlerClass, handler);
+            if (existing != null) {
+                handler = existing;
+            }
+        }
+        return handler;
+    }
+
+    private static ServiceEntry getEntry(AxisService service) {
+        ServiceEntry entry = getEntryParameter(service);
+        if (entry != null) {
+            return entry;
+        }
+        synchronized (service) {
+            entry = getEntryParameter(service);
+            if (entry == null) {
+                entry = new ServiceEntry();
+                Parameter parameter = new Parameter(SERVICE_HANDLER_CACHE_PARAM, entry);
+                parameter.setTransient(true);
+                try {
+                    service.addParameter(parameter);
+                } catch (AxisFault e) {
+                    // The handlers are then looked up for every message
+                    log.debug("Unable to cache the handlers of service " + service.getName(), e);
+                }
+            }
+            return entry;
+        }
+    }
+
+    private static ServiceEntry getEntryParameter(AxisService service) {
+        Parameter parameter = service.getParameter(SERVICE_HANDLER_CACHE_PARAM);
+        return parameter != null ? (ServiceEntry) parameter.getValue() : null;
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rampart.util;
+
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.rahas.Token;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Obtains replacements for tokens issued to the client ahead of their expiry, in the background,
+ * so that messages do not have to wait for an STS round trip when a token expires.
+ * <p>
+ * A token is scheduled for refresh under the key through which messages find it, for example the
+ * security context of a service. When the refresh time comes, a new token is obtained from the
+ * token's {@link TokenSource} and handed to its {@link TokenHolder}, which replaces the token for
+ * subsequent messages. The new token is in turn scheduled for refresh.
+ * <p>
+ * Tokens are only refreshed while they are in use: a token which has not been {@link #touch(String)
+ * touched} by a message since it was obtained is left to expire, and the next message obtains a
+ * new token itself.
+ */
+public class TokenRefresher {
+
+    private static Log log = LogFactory.getLog(TokenRefresher.class);
+
+    public static final String TOKEN_REFRESHER_KEY = "org.apache.rampart.TokenRefresher";
+
+    /**
+     * Obtains a new token.
+     */
+    public interface TokenSource {
+        /**
+         * @return The new token, already added to the token storage
+         * @throws Exception
+         */
+        Token requestToken() throws Exception;
+    }
+
+    /**
+     * Holds the token used by messages.
+     */
+    public interface TokenHolder {
+        /**
+         * Replaces the token used by messages, unless it has already been replaced by another one.
+         * @param oldId The identifier of the token which was refreshed
+         * @param newId The identifier of the new token
+         */
+        void tokenRefreshed(String oldId, String newId);
+    }
+
+    private static ScheduledExecutorService scheduler;
+
+    private static class Entry {
+        volatile boolean used;
+        volatile ScheduledFuture<?> future;
+    }
+
+    private final ConcurrentMap<String, Entry> entries = new ConcurrentHashMap<String, Entry>();
+
+    /**
+     * Returns the token refresher of the given configuration context, creating it if needed.
+     * @param configContext The configuration context
+     * @return The token refresher
+     */
+    public static TokenRefresher getInstance(ConfigurationContext configContext) {
+        synchronized (configContext) {
+            TokenRefresher refresher = (TokenRefresher) configContext.getProperty(TOKEN_REFRESHER_KEY);
+            if (refresher == null) {
+                refresher = new TokenRefresher();
+                configContext.setProperty(TOKEN_REFRESHER_KEY, refresher);
+            }
+            return refresher;
+        }
+    }
+
+    /**
+     * Schedules the refresh of the given token, replacing any refresh scheduled under the key.
+     * Tokens without an expiry time are not refreshed.
+     * @param key The key through which messages find the token
+     * @param token The token
+     * @param leadTime Time in milliseconds before expiry the token is to be refreshed
+     * @param source Obtains the new token
+     * @param holder Receives the new token
+     */
+    public void schedule(final String key, final Token token, final long leadTime,
+            final TokenSource source, final TokenHolder holder) {
+
+        if (token.getExpires() == null) {
+            return;
+        }
+
+        final Entry entry = new Entry();
+        Entry previous = entries.put(key, entry);
+        if (previous != null && previous.future != null) {
+            previous.future.cancel(false);
+        }
+
+        long delay = Math.max(0, token.getExpires().getTime() - leadTime - System.currentTimeMillis());
+
+        entry.future = getScheduler().schedule(new Runnable() {
+            public void run() {
+                refresh(key, entry, token.getId(), leadTime, source, holder);
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+
+        if (log.isDebugEnabled()) {
+            log.debug("Token " + token.getId() + " will be refreshed in " + delay + "ms");
+        }
+    }
+
+    /**
+     * Records that a message used the token of the given key.
+     * @param key The key
+     */
+    public void touch(String key) {
+        Entry entry = entries.get(key);
+        if (entry != null) {
+            entry.used = true;
+        }
+    }
+
+    /**
+     * Cancels the refresh of the token of the given key.
+     * @param key The key
+     */
+    public void cancel(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null && entry.future != null) {
+            entry.future.cancel(false);
+        }
+    }
+
+    private void refresh(String key, Entry entry, String tokenId, long leadTime,
+            TokenSource source, TokenHolder holder) {
+
+        if (entries.get(key) != entry) {
+            return;
+        }
+
+        if (!entry.used) {
+            if (log.isDebugEnabled()) {
+                log.debug("Token " + tokenId + " is not in use, it will not be refreshed");
+            }
+            entries.remove(key, entry);
+            return;
+        }
+
+        Token newToken;
+        try {
+            newToken = source.requestToken();
+        } catch (Exception e) {
+            // The next message will request a token itself
+            log.warn("Unable to refresh token " + tokenId, e);
+            entries.remove(key, entry);
+            return;
+        }
+
+        holder.tokenRefreshed(tokenId, newToken.getId());
+        if (log.isDebugEnabled()) {
+            log.debug("Token " + tokenId + " refreshed by token " + newToken.getId());
+        }
+
+        if (entries.get(key) == entry) {
+            schedule(key, newToken, leadTime, source, holder);
+        }
+    }
+
+    private static synchronized ScheduledExecutorService getScheduler() {
+        if (scheduler == null) {
+            scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "rampart-token-refresher");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return scheduler;
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rampart.util;
+
+import org.apache.axiom.om.OMNamespace;
+import org.apache.axiom.om.xpath.AXIOMXPath;
+import org.jaxen.JaxenException;
+import org.jaxen.SimpleNamespaceContext;
+import org.jaxen.XPath;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Holds compiled XPath expressions, so that the expressions of the SignedElements,
+ * EncryptedElements, ContentEncryptedElements and RequiredElements assertions and of the
+ * MTOM optimize parts are parsed once and then only evaluated.
+ * <p>
+ * An expression is compiled against the namespaces bound to the prefixes it uses, which is
+ * also what it is cached by. Namespaces the expression does not refer to, such as the
+ * generated prefixes of a message, do not cause it to be compiled again. The compiled
+ * expressions are not modified once cached and may be evaluated concurrently.
+ */
+public class XPathCache {
+
+    /**
+     * Upper bound of cached expressions; the cache starts over when it is reached, which
+     * only happens when expressions come from the messages themselves.
+     */
+    private static final int MAX_ENTRIES = 512;
+
+    // A prefix is a name that is followed by a single colon, "::" follows axis names
+    private static final Pattern PREFIX = Pattern.compile(
+            "(?<![\\w.:-])([A-Za-z_][\\w.-]*):(?!:)");
+
+    private final ConcurrentMap<String, String[]> prefixes =
+            new ConcurrentHashMap<String, String[]>();
+
+    private final ConcurrentMap<String, XPath> xpaths = new ConcurrentHashMap<String, XPath>();
+
+    /**
+     * Returns the compiled expression for the given namespaces.
+     * @param expression The XPath expression
+     * @param namespaces Namespace URIs by prefix that may be used by the expression
+     * @return The compiled expression, which must not be modified
+     * @throws JaxenException If the expression is not valid
+     */
+    public XPath getXPath(String expression, Map<String, String> namespaces)
+            throws JaxenException {
+
+        String[] usedPrefixes = getPrefixes(expression);
+
+        StringBuilder key = new StringBuilder(expression);
+        for (String prefix : usedPrefixes) {
+            key.append('\n').append(prefix).append('=').append(namespaces.get(prefix));
+        }
+
+        XPath xp = xpaths.get(key.toString());
+        if (xp == null) {
+            SimpleNamespaceContext nsCtx = new SimpleNamespaceContext();
+            for (String prefix : usedPrefixes) {
+                String namespaceURI = namespaces.get(prefix);
+                if (namespaceURI != null) {
+                    nsCtx.addNamespace(prefix, namespaceURI);
+                }
+            }
+
+            xp = new AXIOMXPath(expression);
+            xp.setNamespaceContext(nsCtx);
+
+            if (xpaths.size() >= MAX_ENTRIES) {
+                xpaths.clear();
+            }
+            xpaths.put(key.toString(), xp);
+        }
+        return xp;
+    }
+
+    /**
+     * Returns the compiled expression for the given namespaces.
+     * @param expression The XPath expression
+     * @param namespaces The <code>OMNamespace</code>s that may be used by the expression
+     * @return The compiled expression, which must not be modified
+     * @throws JaxenException If the expression is not valid
+     */
+    public XPath getXPath(String expression, Collection namespaces) throws JaxenException {
+        return getXPath(expression, toMap(namespaces));
+    }
+
+    /**
+     * Returns the namespace URIs by prefix of the given <code>OMNamespace</code>s. Where a
+     * prefix is bound more than once the last binding is used.
+     * @param namespaces <code>OMNamespace</code>s
+     * @return Namespace URIs by prefix
+     */
+    public static Map<String, String> toMap(Collection namespaces) {
+        Map<String, String> map = new HashMap<String, String>();
+        for (Object namespace : namespaces) {
+            OMNamespace ns = (OMNamespace) namespace;
+            map.put(ns.getPrefix(), ns.getNamespaceURI());
+        }
+        return map;
+    }
+
+    private String[] getPrefixes(String expression) {
+        String[] result = prefixes.get(expression);
+        if (result == null) {
+            List<String> found = new ArrayList<String>();
+            Matcher matcher = PREFIX.matcher(expression);
+            while (matcher.find()) {
+                if (!found.contains(matcher.group(1))) {
+                    found.add(matcher.group(1));
+                }
+            }
+            result = found.toArray(new String[found.size()]);
+
+            if (prefixes.size() >= MAX_ENTRIES) {
+                prefixes.clear();
+            }
+            prefixes.put(expression, result);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rampart.metrics;
+
+import junit.framework.TestCase;
+
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.ObjectName;
+
+public class HistogramTest extends TestCase {
+
+    public void testBuckets() {
+        for (long value : new long[] {0, 1, 7, 8, 15, 16, 1000, 123456789, Long.MAX_VALUE / 4}) {
+            int bucket = Histogram.getBucket(value);
+            long upperBound = Histogram.getUpperBound(bucket);
+            assertTrue(value <= upperBound);
+            assertTrue(upperBound - value <= value / Histogram.SUB_BUCKETS);
+            if (bucket > 0) {
+                assertTrue(value > Histogram.getUpperBound(bucket - 1));
+            }
+        }
+    }
+
+    public void testPercentiles() {
+        Histogram histogram = new Histogram();
+        assertEquals(0, histogram.getPercentile(0.5));
+
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(1000, histogram.getCount());
+        assertEquals(500.5, histogram.getMean(), 0.001);
+        assertEquals(1000.0, histogram.getMax(), 0.001);
+        assertEquals(500.0, histogram.get50thPercentile(), 500.0 / Histogram.SUB_BUCKETS);
+        assertEquals(990.0, histogram.get99thPercentile(), 990.0 / Histogram.SUB_BUCKETS);
+
+        histogram.reset();
+        assertEquals(0, histogram.getCount());
+        assertEquals(0.0, histogram.getMax(), 0);
+    }
+
+    public void testExposedThroughJMX() throws Exception {
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        HistogramRampartMetrics metrics = new HistogramRampartMetrics(server);
+
+        metrics.recordTime("Test:Service", RampartMetrics.SYMMETRIC_BINDING,
+                RampartMetrics.Phase.SECURITY_PROCESSING, 2000000);
+        metrics.recordSTSCall("Test:Service");
+        metrics.recordNonceCacheSize("Test:Service", 3);
+
+        ObjectName timer = new ObjectName(HistogramRampartMetrics.DOMAIN
+                + ":type=Timer,service=" + ObjectName.quote("Test:Service")
+                + ",binding=symmetric,phase=security_processing");
+        assertEquals(Long.valueOf(1), server.getAttribute(timer, "Count"));
+        assertEquals(2000.0, (Double) server.getAttribute(timer, "Max"), 0.001);
+
+        ObjectName counters = new ObjectName(HistogramRampartMetrics.DOMAIN
+                + ":type=Counters,service=" + ObjectName.quote("Test:Service"));
+        assertEquals(Long.valueOf(1), server.getAttribute(counters, "STSCalls"));
+        assertEquals(Integer.valueOf(3), server.getAttribute(counters, "NonceCacheSize"));
+        assertEquals(Integer.valueOf(-1), server.getAttribute(counters, "TokenStoreSize"));
+
+        metrics.unregister();
+        assertFalse(server.isRegistered(timer));
+        assertFalse(server.isRegistered(counters));
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rampart.util;
+
+import junit.framework.TestCase;
+
+import org.apache.rampart.PolicyBasedResultsValidator;
+import org.apache.rampart.RampartException;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.Merlin;
+
+import java.io.InputStream;
+import java.lang.ref.WeakReference;
+import java.security.cert.CertificateFactory;
+import java.security.cert.X509Certificate;
+
+public class CertificateTrustCacheTest extends TestCase {
+
+    private X509Certificate cert;
+
+    protected void setUp() throws Exception {
+        InputStream in = getClass().getResourceAsStream("certificate.pem");
+        try {
+            cert = (X509Certificate) CertificateFactory.getInstance("X.509")
+                    .generateCertificate(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    public void testTrustedPerCrypto() throws Exception {
+        CertificateTrustCache cache = new CertificateTrustCache();
+        Crypto crypto = new Merlin();
+
+        assertFalse(cache.isTrusted(cert, crypto));
+        cache.setTrusted(cert, crypto, -1);
+        assertTrue(cache.isTrusted(cert, crypto));
+
+        // A crypto created again has to validate the certificate again
+        assertFalse(cache.isTrusted(cert, new Merlin()));
+        assertFalse(cache.isTrusted(null, crypto));
+    }
+
+    public void testExpiry() throws Exception {
+        CertificateTrustCache cache = new CertificateTrustCache();
+        Crypto crypto = new Merlin();
+
+        cache.setTrusted(cert, crypto, 1);
+        Thread.sleep(20);
+        assertFalse(cache.isTrusted(cert, crypto));
+        assertEquals(0, cache.size());
+    }
+
+    public void testClear() throws Exception {
+        CertificateTrustCache cache = new CertificateTrustCache();
+        Crypto crypto = new Merlin();
+
+        cache.setTrusted(cert, crypto, CertificateTrustCache.DEFAULT_TTL);
+        cache.clear();
+        assertFalse(cache.isTrusted(cert, crypto));
+    }
+
+    public void testCryptoIsNotRetained() throws Exception {
+        CertificateTrustCache cache = new CertificateTrustCache();
+        Crypto crypto = new Merlin();
+        cache.setTrusted(cert, crypto, CertificateTrustCache.DEFAULT_TTL);
+
+        WeakReference<Crypto> reference = new WeakReference<Crypto>(crypto);
+        crypto = null;
+        for (int i = 0; i < 20 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertNull("The crypto must not be retained by the cache", reference.get());
+    }
+
+    public void testIsOverridden() throws Exception {
+        PolicyBasedResultsValidator validator = new PolicyBasedResultsValidator() {
+        };
+        assertFalse(CertificateTrustCache.isOverridden(validator.getClass(),
+                PolicyBasedResultsValidator.class, "isCertificateTrusted"));
+
+        PolicyBasedResultsValidator custom = new PolicyBasedResultsValidator() {
+            protected boolean isCertificateTrusted(X509Certificate cert, Crypto crypto)
+                    throws RampartException {
+                return true;
+            }
+        };
+        assertTrue(CertificateTrustCache.isOverridden(custom.getClass(),
+                PolicyBasedResultsValidator.class, "isCertificateTrusted"));
+    }
+}
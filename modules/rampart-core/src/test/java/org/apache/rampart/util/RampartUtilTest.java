@@ -22,6 +22,13 @@ import junit.framework.TestCase;
 
 import org.apache.axiom.om.OMXMLBuilderFactory;
 import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.ws.security.WSConstants;
+
+import javax.crypto.KeyGenerator;
+
+import java.io.ByteArrayInputStream;
+import java.util.HashMap;
+import java.util.Map;
 
 public class RampartUtilTest extends TestCase {
     public void testIsSecurityFaultSOAP11() {
@@ -36,6 +43,39 @@ public class RampartUtilTest extends TestCase {
         assertTrue(RampartUtil.isSecurityFault(env.getBody().getFault()));
     }
 
+    public void testGetEncryptionKeyGenerator() throws Exception {
+        KeyGenerator keyGen = RampartUtil.getEncryptionKeyGenerator(WSConstants.AES_256);
+        assertEquals(32, keyGen.generateKey().getEncoded().length);
+        // Callers may initialize their generator, so each call returns a new one
+        assertNotSame(keyGen, RampartUtil.getEncryptionKeyGenerator(WSConstants.AES_256));
+        assertNull(RampartUtil.getEncryptionKeyGenerator("urn:unknown"));
+    }
+
+    public void testGetPrefixNamespaces() throws Exception {
+        String message = "<soapenv:Envelope xmlns:soapenv='http://schemas.xmlsoap.org/soap/envelope/'"
+                + " xmlns:env='urn:envelope'><soapenv:Header/><soapenv:Body>"
+                + "<b:Echo xmlns:b='urn:body'><b:Text>text</b:Text></b:Echo>"
+                + "</soapenv:Body></soapenv:Envelope>";
+        SOAPEnvelope env = OMXMLBuilderFactory.createSOAPModelBuilder(
+                new ByteArrayInputStream(message.getBytes("UTF-8")), null).getSOAPEnvelope();
+
+        HashMap<String, String> declared = new HashMap<String, String>();
+        declared.put("pol", "urn:policy");
+        declared.put("b", "urn:policy-body");
+
+        Map<String, String> namespaces = RampartUtil.getPrefixNamespaces(env, declared);
+        assertEquals("urn:policy", namespaces.get("pol"));
+        assertEquals("urn:envelope", namespaces.get("env"));
+        assertEquals(WSConstants.WSU_NS, namespaces.get(WSConstants.WSU_PREFIX));
+        // The policy binding of a prefix is used, so the body is not read
+        assertEquals("urn:policy-body", namespaces.get("b"));
+        assertFalse(env.getBody().isComplete());
+
+        namespaces = RampartUtil.getPrefixNamespaces(env, new HashMap<String, String>());
+        assertEquals("urn:body", namespaces.get("b"));
+        assertNull(namespaces.get("unknown"));
+    }
+
     public void testIsSecurityFaultSOAP11Invalid() {
         SOAPEnvelope env = OMXMLBuilderFactory.createSOAPModelBuilder(
                 RampartUtilTest.class.getResourceAsStream("soap11-invalid-fault.xml"), null).getSOAPEnvelope();
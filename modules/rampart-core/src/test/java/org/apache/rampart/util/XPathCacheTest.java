@@ -0,0 +1,63 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.rampart.util;
+
+import junit.framework.TestCase;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.util.AXIOMUtil;
+import org.jaxen.XPath;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+public class XPathCacheTest extends TestCase {
+
+    private static final String EXPRESSION = "//ns1:Header/child::ns1:Token";
+
+    public void testCompiledOncePerNamespaceBinding() throws Exception {
+        XPathCache cache = new XPathCache();
+
+        Map<String, String> namespaces = new HashMap<String, String>();
+        namespaces.put("ns1", "urn:test");
+        XPath xp = cache.getXPath(EXPRESSION, namespaces);
+
+        // Prefixes the expression does not use do not matter
+        namespaces.put("axis2ns1", "urn:other");
+        assertSame(xp, cache.getXPath(EXPRESSION, namespaces));
+
+        namespaces.put("ns1", "urn:other");
+        assertNotSame(xp, cache.getXPath(EXPRESSION, namespaces));
+    }
+
+    public void testEvaluate() throws Exception {
+        OMElement element = AXIOMUtil.stringToOM(
+                "<a:Root xmlns:a='urn:test'><a:Header><a:Token/><a:Token/></a:Header></a:Root>");
+
+        Map<String, String> namespaces = new HashMap<String, String>();
+        namespaces.put("ns1", "urn:test");
+
+        XPathCache cache = new XPathCache();
+        List nodes = cache.getXPath(EXPRESSION, namespaces).selectNodes(element);
+        assertEquals(2, nodes.size());
+        nodes = cache.getXPath(EXPRESSION, namespaces).selectNodes(element);
+        assertEquals(2, nodes.size());
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rahas;
+
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.OMFactory;
+import org.apache.axiom.om.OMNamespace;
+
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.message.token.Reference;
+
+import junit.framework.TestCase;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.xml.namespace.QName;
+
+public class IndexedTokenStoreTest extends TestCase {
+
+    public void testAddAndUpdate() throws Exception {
+        IndexedTokenStore store = new IndexedTokenStore();
+
+        Token token = getTestToken("id-1", new Date(System.currentTimeMillis() + 10000));
+        store.add(token);
+        try {
+            store.add(getTestToken("id-1", new Date()));
+            fail("Adding an existing token must throw an exception");
+        } catch (TrustException e) {
+            assertEquals("Incorrect exception message",
+                         TrustException.getMessage("tokenAlreadyExists", new String[]{"id-1"}), e.getMessage());
+        }
+
+        try {
+            store.update(getTestToken("id-2", new Date()));
+            fail("An exception must be thrown at this point : noTokenToUpdate");
+        } catch (TrustException e) {
+            assertEquals("Incorrect exception message",
+                         TrustException.getMessage("noTokenToUpdate", new String[]{"id-2"}), e.getMessage());
+        }
+
+        token.setState(Token.RENEWED);
+        store.update(token);
+        assertEquals(1, store.getRenewedTokens().length);
+        assertEquals(1, store.getTokenIdentifiers().length);
+    }
+
+    public void testExpiredTokensAreEvicted() throws Exception {
+        IndexedTokenStore store = new IndexedTokenStore(100, IndexedTokenStore.EvictionPolicy.EARLIEST_EXPIRY, 0);
+
+        store.add(getTestToken("id-1", new Date(System.currentTimeMillis() - 1000)));
+        store.add(getTestToken("id-2", new Date(System.currentTimeMillis() + 60000)));
+        store.add(getTestToken("id-3", null));
+
+        Token cancelled = getTestToken("id-4", new Date(System.currentTimeMillis() + 60000));
+        store.add(cancelled);
+        cancelled.setState(Token.CANCELLED);
+        store.update(cancelled);
+
+        store.evictExpiredTokens();
+
+        assertNull(store.getToken("id-1"));
+        assertNotNull(store.getToken("id-2"));
+        assertNotNull(store.getToken("id-3"));
+        assertNull(store.getToken("id-4"));
+        assertEquals(2, store.size());
+    }
+
+    public void testRenewedTokenIsKept() throws Exception {
+        IndexedTokenStore store = new IndexedTokenStore(100, IndexedTokenStore.EvictionPolicy.EARLIEST_EXPIRY, 0);
+
+        Token token = getTestToken("id-1", new Date(System.currentTimeMillis() - 1000));
+        store.add(token);
+        token.setExpires(new Date(System.currentTimeMillis() + 60000));
+        token.setState(Token.RENEWED);
+
+        store.evictExpiredTokens();
+
+        assertSame(token, store.getToken("id-1"));
+    }
+
+    public void testCapacity() throws Exception {
+        IndexedTokenStore store = new IndexedTokenStore(2, IndexedTokenStore.EvictionPolicy.EARLIEST_EXPIRY,
+                IndexedTokenStore.DEFAULT_RETENTION_PERIOD);
+
+        store.add(getTestToken("id-1", new Date(System.currentTimeMillis() + 20000)));
+        store.add(getTestToken("id-2", new Date(System.currentTimeMillis() + 10000)));
+        store.add(getTestToken("id-3", new Date(System.currentTimeMillis() + 30000)));
+
+        assertEquals(2, store.size());
+        assertNull("Token expiring first must be evicted", store.getToken("id-2"));
+        assertNotNull(store.getToken("id-1"));
+        assertNotNull(store.getToken("id-3"));
+
+        IndexedTokenStore rejecting = new IndexedTokenStore(1, IndexedTokenStore.EvictionPolicy.REJECT,
+                IndexedTokenStore.DEFAULT_RETENTION_PERIOD);
+        rejecting.add(getTestToken("id-1", new Date(System.currentTimeMillis() + 10000)));
+        try {
+            rejecting.add(getTestToken("id-2", new Date(System.currentTimeMillis() + 10000)));
+            fail("Adding a token to a full store must throw an exception");
+        } catch (TrustException e) {
+            assertEquals("Incorrect exception message",
+                         TrustException.getMessage("tokenStoreFull", new String[]{"id-2"}), e.getMessage());
+        }
+    }
+
+    public void testCapacityUnderConcurrentAdds() throws Exception {
+        final IndexedTokenStore store = new IndexedTokenStore(IndexedTokenStore.DEFAULT_MAX_TOKENS,
+                IndexedTokenStore.EvictionPolicy.REJECT, IndexedTokenStore.DEFAULT_RETENTION_PERIOD);
+        store.setMaxTokens(50);
+        assertEquals(50, store.getMaxTokens());
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger added = new AtomicInteger();
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            final int thread = i;
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        for (int j = 0; j < 20; j++) {
+                            store.add(getTestToken("id-" + thread + "-" + j,
+                                    new Date(System.currentTimeMillis() + 60000)));
+                            added.incrementAndGet();
+                        }
+                    } catch (Exception e) {
+                        // The store is full
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        start.countDown();
+        for (int i = 0; i < threads.length; i++) {
+            threads[i].join();
+        }
+
+        assertEquals(50, added.get());
+        assertEquals(50, store.size());
+    }
+
+    public void testSecondaryIndexes() throws Exception {
+        IndexedTokenStore store = new IndexedTokenStore();
+
+        OMFactory factory = OMAbstractFactory.getOMFactory();
+        OMElement str = factory.createOMElement(new QName(WSConstants.WSSE_NS, "SecurityTokenReference"));
+        OMElement reference = factory.createOMElement(Reference.TOKEN, str);
+        reference.addAttribute("URI", "#ref-1", null);
+
+        Token token = getTestToken("id-1", new Date(System.currentTimeMillis() + 10000));
+        token.setAttachedReference(str);
+        store.add(token);
+
+        EncryptedKeyToken encryptedKeyToken = new EncryptedKeyToken("id-2", new Date(),
+                new Date(System.currentTimeMillis() + 10000));
+        encryptedKeyToken.setSHA1("c2hhMQ==");
+        store.add(encryptedKeyToken);
+
+        assertSame(token, store.getToken("ref-1"));
+        assertSame(encryptedKeyToken, store.getTokenBySHA1("c2hhMQ=="));
+        assertNull(store.getTokenBySHA1("b3RoZXI="));
+
+        store.removeToken("id-1");
+        store.removeToken("id-2");
+        assertNull(store.getToken("ref-1"));
+        assertNull(store.getTokenBySHA1("c2hhMQ=="));
+    }
+
+    public void testSerialize() throws Exception {
+
+        OMFactory factory = OMAbstractFactory.getOMFactory();
+        OMNamespace ns1 = factory.createOMNamespace("bar", "x");
+        OMElement elt11 = factory.createOMElement("foo1", ns1);
+
+        Token t = new Token("#1232122", elt11, new Date(), new Date(System.currentTimeMillis() + 10000));
+
+        IndexedTokenStore store = new IndexedTokenStore();
+        store.add(t);
+
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(baos);
+
+        out.writeObject(store);
+
+        ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(baos.toByteArray()));
+        IndexedTokenStore store2 = (IndexedTokenStore)in.readObject();
+
+        assertEquals(store.getToken("#1232122").getId(), store2.getToken("#1232122").getId());
+        assertEquals(store.getToken("#1232122").getCreated(), store2.getToken("#1232122").getCreated());
+    }
+
+    private Token getTestToken(String tokenId, Date expiry)
+        throws TrustException {
+        OMFactory factory = OMAbstractFactory.getMetaFactory(OMAbstractFactory.FEATURE_DOM).getOMFactory();
+        OMElement tokenEle = factory.createOMElement("testToken", "", "");
+        Token token = new Token(tokenId, tokenEle, new Date(), expiry);
+        token.setState(Token.ISSUED);
+        token.setSecret("Top secret!".getBytes());
+        return token;
+    }
+}
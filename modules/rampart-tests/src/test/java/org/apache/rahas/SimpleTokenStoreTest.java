@@ -21,6 +21,9 @@ import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMFactory;
 import org.apache.axiom.om.OMNamespace;
 
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.message.token.Reference;
+
 import junit.framework.TestCase;
 
 import java.io.ByteArrayInputStream;
@@ -29,6 +32,8 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.Date;
 
+import javax.xml.namespace.QName;
+
 public class SimpleTokenStoreTest extends TestCase {
 
     public void testAdd() {
@@ -136,6 +141,33 @@ public class SimpleTokenStoreTest extends TestCase {
         }
     }
 
+    public void testSecondaryIndexes() throws Exception {
+        SimpleTokenStore store = new SimpleTokenStore();
+
+        OMFactory factory = OMAbstractFactory.getOMFactory();
+        OMElement str = factory.createOMElement(new QName(WSConstants.WSSE_NS, "SecurityTokenReference"));
+        OMElement reference = factory.createOMElement(Reference.TOKEN, str);
+        reference.addAttribute("URI", "#ref-1", null);
+
+        Token token = getTestToken("id-1", new Date(System.currentTimeMillis() + 10000));
+        token.setAttachedReference(str);
+        store.add(token);
+
+        EncryptedKeyToken encryptedKeyToken = new EncryptedKeyToken("id-2", new Date(),
+                new Date(System.currentTimeMillis() + 10000));
+        encryptedKeyToken.setSHA1("c2hhMQ==");
+        store.add(encryptedKeyToken);
+
+        assertSame(token, store.getToken("ref-1"));
+        assertSame(encryptedKeyToken, store.getTokenBySHA1("c2hhMQ=="));
+        assertNull(store.getTokenBySHA1("b3RoZXI="));
+
+        store.removeToken("id-1");
+        store.removeToken("id-2");
+        assertNull(store.getToken("ref-1"));
+        assertNull(store.getTokenBySHA1("c2hhMQ=="));
+    }
+
     private Token getTestToken(String tokenId)
         throws TrustException {
         return getTestToken(tokenId, new Date());
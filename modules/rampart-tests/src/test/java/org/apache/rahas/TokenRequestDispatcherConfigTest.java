@@ -18,6 +18,11 @@ package org.apache.rahas;
 
 import junit.framework.TestCase;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileWriter;
+
 public class TokenRequestDispatcherConfigTest extends TestCase {
 
     public TokenRequestDispatcherConfigTest() {
@@ -77,4 +82,41 @@ public class TokenRequestDispatcherConfigTest extends TestCase {
                             TempIssuer.class.getName() }), e.getMessage());
         }
     }
+
+    /**
+     * Testing that a config file is only parsed again when it is modified
+     */
+    public void testConfigFileIsCached() throws Exception {
+        File file = File.createTempFile("dispatcher", ".xml");
+        file.deleteOnExit();
+        copy(new File("test-resources/trust/dispatcher.config.xml"), file);
+
+        TokenRequestDispatcherConfig config = TokenRequestDispatcherConfig.load(file.getPath());
+        assertSame(config, TokenRequestDispatcherConfig.load(file.getPath()));
+
+        copy(new File("test-resources/trust/dispatcher.config.xml"), file);
+        FileWriter writer = new FileWriter(file, true);
+        writer.write("\n");
+        writer.close();
+        file.setLastModified(file.lastModified() + 2000);
+
+        TokenRequestDispatcherConfig reloaded = TokenRequestDispatcherConfig.load(file.getPath());
+        assertNotSame(config, reloaded);
+        assertEquals("org.apache.rahas.TempIssuer", reloaded.getDefaultIssuerName());
+    }
+
+    private void copy(File from, File to) throws Exception {
+        FileInputStream in = new FileInputStream(from);
+        FileOutputStream out = new FileOutputStream(to);
+        try {
+            byte[] buf = new byte[4096];
+            int len;
+            while ((len = in.read(buf)) != -1) {
+                out.write(buf, 0, len);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
 }
@@ -0,0 +1,97 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rampart;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class ConcurrentNonceCacheTest extends TestCase {
+
+    public void testValueExistsInCache() throws Exception {
+
+        AbstractUniqueMessageAttributeCache cache = new ConcurrentNonceCache();
+
+        cache.addToCache("j8EqKYJ/CxOZfN8CySMm0g==", "apache");
+        cache.addToCache("j8EqKYJ/CxOdfN8CySMm0g==", "apache");
+
+        assertTrue(cache.valueExistsInCache("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+        assertFalse(cache.valueExistsInCache("j8EqKYJ/CxOZfN8CySMm0g==", "axis"));
+        assertFalse(cache.valueExistsInCache("p8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+    }
+
+    public void testAddToCacheIfAbsent() throws Exception {
+
+        AbstractUniqueMessageAttributeCache cache = new ConcurrentNonceCache();
+
+        assertTrue(cache.addToCacheIfAbsent("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+        assertFalse("Repeated nonce must be rejected",
+                cache.addToCacheIfAbsent("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+        assertTrue(cache.addToCacheIfAbsent("j8EqKYJ/CxOZfN8CySMm0g==", "axis"));
+    }
+
+    public void testValueExpiration() throws Exception {
+
+        ConcurrentNonceCache cache = new ConcurrentNonceCache(1);
+
+        cache.addToCache("j8EqKYJ/CxOZfN8CySMm0g==", "apache");
+        cache.addToCache("q8EqKYJ/CxOhfN8CySMm0g==", "apache");
+        assertTrue(cache.valueExistsInCache("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+
+        Thread.sleep(2 * 1000);
+
+        assertFalse(cache.valueExistsInCache("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+        assertTrue("Expired nonce must be accepted again",
+                cache.addToCacheIfAbsent("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+        assertTrue(cache.valueExistsInCache("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+
+        cache.clearCache();
+        assertEquals(0, cache.size());
+    }
+
+    public void testConcurrentReplayIsDetected() throws Exception {
+
+        final AbstractUniqueMessageAttributeCache cache = new ConcurrentNonceCache();
+        final AtomicInteger accepted = new AtomicInteger();
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < 1000; j++) {
+                        if (cache.addToCacheIfAbsent("nonce" + j, "apache")) {
+                            accepted.incrementAndGet();
+                        }
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals("Each nonce must be accepted exactly once", 1000, accepted.get());
+    }
+}
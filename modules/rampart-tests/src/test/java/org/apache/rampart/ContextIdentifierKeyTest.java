@@ -0,0 +1,129 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rampart;
+
+import org.apache.axis2.addressing.EndpointReference;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.rampart.util.RampartUtil;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class ContextIdentifierKeyTest extends MessageBuilderTestBase {
+
+    private static final String POLICY = "test-resources/policy/rampart-transport-binding.xml";
+
+    private ConfigurationContext configContext;
+
+    protected void setUp() throws Exception {
+        super.setUp();
+        configContext = new ConfigurationContext(new AxisConfiguration());
+    }
+
+    public void testSharedContext() throws Exception {
+        RampartMessageData rmd = getMessageData(null);
+
+        assertEquals("TestService", RampartUtil.getContextIdentifierKey(rmd));
+    }
+
+    public void testPooledContexts() throws Exception {
+        Set<String> keys = new HashSet<String>();
+        for (int i = 0; i < 4; i++) {
+            RampartMessageData rmd = getMessageData("2");
+            String key = RampartUtil.getContextIdentifierKey(rmd);
+
+            assertTrue(key, key.startsWith("TestService|http://localhost/TestService|alice|"));
+            // The context is chosen once per message exchange
+            assertEquals(key, RampartUtil.getContextIdentifierKey(rmd));
+            keys.add(key);
+            RampartUtil.releaseContextIdentifierKey(rmd.getMsgContext());
+        }
+        // Released contexts are reused
+        assertEquals(1, keys.size());
+    }
+
+    public void testConcurrentExchangesDoNotShareContexts() throws Exception {
+        RampartMessageData first = getMessageData("2");
+        RampartMessageData second = getMessageData("2");
+        String firstKey = RampartUtil.getContextIdentifierKey(first);
+        String secondKey = RampartUtil.getContextIdentifierKey(second);
+
+        assertFalse(firstKey.equals(secondKey));
+
+        RampartUtil.releaseContextIdentifierKey(second.getMsgContext());
+        assertEquals(secondKey, RampartUtil.getContextIdentifierKey(getMessageData("2")));
+    }
+
+    public void testExhaustedPoolSharesContexts() throws Exception {
+        RampartMessageData first = getMessageData("2");
+        RampartMessageData second = getMessageData("2");
+        String firstKey = RampartUtil.getContextIdentifierKey(first);
+        String secondKey = RampartUtil.getContextIdentifierKey(second);
+        RampartUtil.releaseContextIdentifierKey(second.getMsgContext());
+        second = getMessageData("2");
+        assertEquals(secondKey, RampartUtil.getContextIdentifierKey(second));
+
+        // No context is issued beyond the pool size, the least used one is shared
+        RampartMessageData third = getMessageData("2");
+        RampartMessageData fourth = getMessageData("2");
+        String thirdKey = RampartUtil.getContextIdentifierKey(third);
+        String fourthKey = RampartUtil.getContextIdentifierKey(fourth);
+        assertEquals(firstKey, thirdKey);
+        assertEquals(secondKey, fourthKey);
+
+        // The shared context is kept once released, even if released twice
+        RampartUtil.getContextMap(third.getMsgContext()).put(thirdKey, "sct-1");
+        RampartUtil.releaseContextIdentifierKey(third.getMsgContext());
+        RampartUtil.releaseContextIdentifierKey(third.getMsgContext());
+        assertEquals("sct-1", RampartUtil.getContextMap(third.getMsgContext()).get(thirdKey));
+
+        // The first context is now the least used one
+        assertEquals(firstKey, RampartUtil.getContextIdentifierKey(getMessageData("2")));
+    }
+
+    public void testCancelRemovesAllPooledContexts() throws Exception {
+        RampartMessageData first = getMessageData("2");
+        RampartMessageData second = getMessageData("2");
+        String firstKey = RampartUtil.getContextIdentifierKey(first);
+        String secondKey = RampartUtil.getContextIdentifierKey(second);
+        RampartUtil.getContextMap(first.getMsgContext()).put(firstKey, "sct-1");
+        RampartUtil.getContextMap(first.getMsgContext()).put(secondKey, "sct-2");
+        RampartUtil.releaseContextIdentifierKey(second.getMsgContext());
+
+        RampartUtil.removeContextIdentifiers(first);
+
+        assertTrue(RampartUtil.getContextMap(first.getMsgContext()).isEmpty());
+        // Contexts of the evicted pool are not handed out again
+        String key = RampartUtil.getContextIdentifierKey(getMessageData("2"));
+        assertFalse(key.equals(firstKey));
+        assertFalse(key.equals(secondKey));
+    }
+
+    private RampartMessageData getMessageData(String poolSize) throws Exception {
+        MessageContext ctx = getMsgCtx();
+        ctx.setConfigurationContext(configContext);
+        ctx.getOptions().setTo(new EndpointReference("http://localhost/TestService"));
+        ctx.getOptions().setUserName("alice");
+        ctx.setProperty(RampartMessageData.KEY_RAMPART_POLICY, loadPolicy(POLICY));
+
+        RampartMessageData rmd = new RampartMessageData(ctx, true);
+        rmd.getPolicyData().getRampartConfig().setSecConvContextPoolSize(poolSize);
+        return rmd;
+    }
+}
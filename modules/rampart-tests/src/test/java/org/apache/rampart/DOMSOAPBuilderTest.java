@@ -0,0 +1,56 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rampart;
+
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axis2.context.MessageContext;
+import org.apache.rampart.handler.DOMSOAPBuilder;
+import org.apache.rampart.util.Axis2Util;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+import java.io.FileInputStream;
+
+public class DOMSOAPBuilderTest extends MessageBuilderTestBase {
+
+    private static final String MESSAGE = "test-resources/policy/soapmessage.xml";
+
+    public void testEnvelopeParsedAsDOM() throws Exception {
+        MessageContext ctx = new MessageContext();
+
+        SOAPEnvelope env = (SOAPEnvelope) new DOMSOAPBuilder().processDocument(
+                new FileInputStream(MESSAGE), "text/xml", ctx);
+
+        assertTrue(env instanceof Element);
+        assertEquals(Boolean.TRUE, ctx.getProperty(RampartMessageData.DOM_ENVELOPE));
+
+        // The document is the one built by the transport, and the inflow gets the same envelope
+        Document doc = Axis2Util.getDocumentFromSOAPEnvelope(env, true);
+        assertSame(env, doc.getDocumentElement());
+        assertSame(env, Axis2Util.getSOAPEnvelope(doc));
+    }
+
+    public void testRampartNotEngaged() throws Exception {
+        MessageContext ctx = getMsgCtx();
+
+        SOAPEnvelope env = (SOAPEnvelope) new DOMSOAPBuilder().processDocument(
+                new FileInputStream(MESSAGE), "text/xml", ctx);
+
+        assertFalse(env instanceof Element);
+        assertNull(ctx.getProperty(RampartMessageData.DOM_ENVELOPE));
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rampart;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class FingerprintCacheTest extends TestCase {
+
+    public void testAddToCacheIfAbsent() throws Exception {
+
+        AbstractUniqueMessageAttributeCache cache = new FingerprintCache();
+
+        assertTrue(cache.addToCacheIfAbsent("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+        assertFalse("Repeated value must be rejected",
+                cache.addToCacheIfAbsent("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+        assertTrue(cache.valueExistsInCache("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+        assertFalse(cache.valueExistsInCache("j8EqKYJ/CxOZfN8CySMm0g==", "axis"));
+    }
+
+    public void testGrowth() throws Exception {
+
+        FingerprintCache cache = new FingerprintCache();
+
+        for (long i = 1; i <= 10000; i++) {
+            assertTrue(cache.addToCacheIfAbsent(i * 0x9E3779B97F4A7C15L));
+        }
+        assertEquals(10000, cache.size());
+        for (long i = 1; i <= 10000; i++) {
+            assertTrue(cache.valueExistsInCache(i * 0x9E3779B97F4A7C15L));
+        }
+    }
+
+    public void testFullGenerationRolls() throws Exception {
+
+        FingerprintCache cache = new FingerprintCache(300, 100);
+
+        for (long i = 1; i <= 100; i++) {
+            assertTrue(cache.addToCacheIfAbsent(i * 0x9E3779B97F4A7C15L));
+        }
+        assertTrue("Fresh values must be accepted once a generation is full",
+                cache.addToCacheIfAbsent(101 * 0x9E3779B97F4A7C15L));
+        assertFalse("The full generation must still be remembered",
+                cache.addToCacheIfAbsent(0x9E3779B97F4A7C15L));
+        assertEquals(101, cache.size());
+
+        for (long i = 102; i <= 201; i++) {
+            assertTrue(cache.addToCacheIfAbsent(i * 0x9E3779B97F4A7C15L));
+        }
+        assertFalse("The oldest generation is dropped early",
+                cache.valueExistsInCache(0x9E3779B97F4A7C15L));
+        assertFalse(cache.addToCacheIfAbsent(150 * 0x9E3779B97F4A7C15L));
+        assertFalse(cache.addToCacheIfAbsent(201 * 0x9E3779B97F4A7C15L));
+    }
+
+    public void testValueExpiration() throws Exception {
+
+        FingerprintCache cache = new FingerprintCache(1);
+
+        cache.addToCache("j8EqKYJ/CxOZfN8CySMm0g==", "apache");
+        assertTrue(cache.valueExistsInCache("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+
+        Thread.sleep(2500);
+
+        assertFalse(cache.valueExistsInCache("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+        assertTrue("Expired value must be accepted again",
+                cache.addToCacheIfAbsent("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+
+        cache.clearCache();
+        assertEquals(0, cache.size());
+    }
+
+    public void testServiceMessageReplayCache() throws Exception {
+
+        ServiceMessageReplayCache replayCache = new ServiceMessageReplayCache();
+        long created = System.currentTimeMillis();
+
+        List<byte[]> signatureValues = new ArrayList<byte[]>();
+        signatureValues.add(new byte[] {1, 2, 3, 4});
+
+        List<byte[]> otherSignatureValues = new ArrayList<byte[]>();
+        otherSignatureValues.add(new byte[] {1, 2, 3, 5});
+
+        assertFalse(replayCache.checkAndAddMessageForService("service1", created, signatureValues, 300));
+        assertTrue("Replayed message must be detected",
+                replayCache.checkAndAddMessageForService("service1", created, signatureValues, 300));
+        assertFalse(replayCache.checkAndAddMessageForService("service1", created, otherSignatureValues, 300));
+        assertFalse(replayCache.checkAndAddMessageForService("service1", created + 1, signatureValues, 300));
+        assertFalse(replayCache.checkAndAddMessageForService("service2", created, signatureValues, 300));
+    }
+
+    public void testServiceMessageReplayCacheSize() throws Exception {
+
+        ServiceMessageReplayCache replayCache = new ServiceMessageReplayCache();
+        long created = System.currentTimeMillis();
+
+        for (int i = 0; i < 1000; i++) {
+            List<byte[]> signatureValues = new ArrayList<byte[]>();
+            signatureValues.add(new byte[] {(byte) (i >> 8), (byte) i});
+            assertFalse("Fresh messages must be accepted beyond the cache size",
+                    replayCache.checkAndAddMessageForService("service1", created, signatureValues, 300, 10));
+        }
+    }
+}
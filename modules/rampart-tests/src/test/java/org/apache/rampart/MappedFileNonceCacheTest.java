@@ -0,0 +1,107 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rampart;
+
+import java.io.File;
+import java.util.Properties;
+
+import org.apache.rampart.policy.model.NonceCacheConfig;
+
+import junit.framework.TestCase;
+
+public class MappedFileNonceCacheTest extends TestCase {
+
+    private File file;
+
+    protected void setUp() throws Exception {
+        file = File.createTempFile("rampart-nonce", ".dat");
+        file.delete();
+        file.deleteOnExit();
+    }
+
+    public void testReplayAcrossInstances() throws Exception {
+
+        AbstractUniqueMessageAttributeCache first = new MappedFileNonceCache(getProperties());
+        AbstractUniqueMessageAttributeCache second = new MappedFileNonceCache(getProperties());
+
+        assertTrue(first.addToCacheIfAbsent("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+        assertFalse("Nonce recorded by another instance must be detected",
+                second.addToCacheIfAbsent("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+        assertTrue(second.valueExistsInCache("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+        assertFalse(second.valueExistsInCache("j8EqKYJ/CxOZfN8CySMm0g==", "axis"));
+
+        second.clearCache();
+        assertFalse(first.valueExistsInCache("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+    }
+
+    public void testValueExpiration() throws Exception {
+
+        AbstractUniqueMessageAttributeCache cache = new MappedFileNonceCache(getProperties());
+        cache.setMaximumLifeTimeOfAnAttribute(1);
+
+        cache.addToCache("j8EqKYJ/CxOZfN8CySMm0g==", "apache");
+        assertTrue(cache.valueExistsInCache("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+
+        Thread.sleep(2 * 1000);
+
+        assertFalse(cache.valueExistsInCache("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+        assertTrue("Expired nonce must be accepted again",
+                cache.addToCacheIfAbsent("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+    }
+
+    public void testServiceNonceCacheUsesConfiguredProvider() throws Exception {
+
+        NonceCacheConfig config = new NonceCacheConfig();
+        config.setProvider(MappedFileNonceCache.class.getName());
+        config.setProp(getProperties());
+
+        ServiceNonceCache serviceNonceCache = new ServiceNonceCache();
+        ClassLoader classLoader = getClass().getClassLoader();
+
+        assertFalse(serviceNonceCache.checkAndAddNonceForService("service1", "apache",
+                "j8EqKYJ/CxOZfN8CySMm0g==", 300, config, classLoader));
+        assertTrue(serviceNonceCache.checkAndAddNonceForService("service1", "apache",
+                "j8EqKYJ/CxOZfN8CySMm0g==", 300, config, classLoader));
+        assertTrue("Nonce recorded in the shared file must be detected",
+                new MappedFileNonceCache(getProperties()).valueExistsInCache("j8EqKYJ/CxOZfN8CySMm0g==", "apache"));
+    }
+
+    public void testNonceCacheConfigEquality() throws Exception {
+
+        NonceCacheConfig config = new NonceCacheConfig();
+        config.setProvider(MappedFileNonceCache.class.getName());
+        config.setProp(getProperties());
+
+        NonceCacheConfig same = new NonceCacheConfig();
+        same.setProvider(MappedFileNonceCache.class.getName());
+        same.setProp(getProperties());
+
+        assertTrue(config.equal(same));
+        assertSame(config, config.normalize());
+        assertFalse(config.isOptional());
+        assertFalse(config.isIgnorable());
+
+        same.getProp().setProperty(MappedFileNonceCache.CAPACITY_PROPERTY, "8192");
+        assertFalse(config.equal(same));
+        assertFalse(config.equal(new NonceCacheConfig()));
+    }
+
+    private Properties getProperties() {
+        Properties properties = new Properties();
+        properties.setProperty(MappedFileNonceCache.FILE_PROPERTY, file.getPath());
+        properties.setProperty(MappedFileNonceCache.CAPACITY_PROPERTY, "4096");
+        return properties;
+    }
+}
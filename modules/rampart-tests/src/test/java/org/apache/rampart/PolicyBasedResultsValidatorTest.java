@@ -0,0 +1,142 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rampart;
+
+import org.apache.axis2.context.MessageContext;
+import org.apache.rampart.util.Axis2Util;
+import org.apache.rampart.util.RampartUtil;
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSEncryptionPart;
+import org.apache.ws.security.WSPasswordCallback;
+import org.apache.ws.security.WSSecurityEngine;
+import org.apache.ws.security.WSSecurityEngineResult;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.CryptoFactory;
+import org.apache.ws.security.message.WSSecEncrypt;
+import org.apache.ws.security.message.WSSecHeader;
+import org.w3c.dom.Document;
+
+import javax.security.auth.callback.Callback;
+import javax.security.auth.callback.CallbackHandler;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Checks that the elements required by EncryptedElements and ContentEncryptedElements are
+ * found among the elements decrypted by WSS4J.
+ */
+public class PolicyBasedResultsValidatorTest extends MessageBuilderTestBase {
+
+    private static final String POLICY = "test-resources/policy/rampart-transport-binding.xml";
+
+    private static final String BANK_NS = "http://localhost:8081/axis/services/BankPort";
+
+    private static final String WSA_NS = "http://schemas.xmlsoap.org/ws/2004/08/addressing";
+
+    private static final String BODY_ELEMENT = "/soapenv:Envelope/soapenv:Body/*[local-name()='getBalance']";
+
+    private static final String HEADER_ELEMENT = "/soapenv:Envelope/soapenv:Header/wsa:MessageID";
+
+    private static final String UNENCRYPTED_ELEMENT = "/soapenv:Envelope/soapenv:Body/multiRef";
+
+    public void testElementEncryptedBody() throws Exception {
+        validate(new WSEncryptionPart("getBalance", BANK_NS, "Element"), BODY_ELEMENT, "Element");
+    }
+
+    public void testContentEncryptedBody() throws Exception {
+        validate(new WSEncryptionPart("getBalance", BANK_NS, "Content"), BODY_ELEMENT, "Content");
+    }
+
+    public void testElementEncryptionIsNotContentEncryption() throws Exception {
+        try {
+            validate(new WSEncryptionPart("getBalance", BANK_NS, "Element"), BODY_ELEMENT, "Content");
+            fail("Content encryption is required");
+        } catch (RampartException e) {
+            assertEquals(RampartException.getMessage("encryptedPartMissing", new String[]{BODY_ELEMENT}),
+                    e.getMessage());
+        }
+    }
+
+    public void testEncryptedHeader() throws Exception {
+        validate(new WSEncryptionPart("MessageID", WSA_NS, "Header"), HEADER_ELEMENT, "Element");
+    }
+
+    public void testUnencryptedElement() throws Exception {
+        try {
+            validate(new WSEncryptionPart("getBalance", BANK_NS, "Element"), UNENCRYPTED_ELEMENT, "Element");
+            fail("The element is not encrypted");
+        } catch (RampartException e) {
+            assertEquals(RampartException.getMessage("encryptedPartMissing", new String[]{UNENCRYPTED_ELEMENT}),
+                    e.getMessage());
+        }
+    }
+
+    /**
+     * Encrypts the given part of a message, decrypts it the way the inflow does, and validates
+     * the results against a required element.
+     */
+    private void validate(WSEncryptionPart encrypted, String xpath, String modifier) throws Exception {
+
+        MessageContext ctx = getMsgCtx();
+        ctx.setProperty(RampartMessageData.KEY_RAMPART_POLICY, loadPolicy(POLICY));
+        RampartMessageData rmd = new RampartMessageData(ctx, false);
+        rmd.buildDocument();
+        Document doc = rmd.getDocument();
+
+        Crypto crypto = getCrypto();
+
+        WSSecHeader secHeader = new WSSecHeader();
+        secHeader.insertSecurityHeader(doc);
+        WSSecEncrypt encrypt = new WSSecEncrypt();
+        encrypt.setUserInfo("bob");
+        encrypt.setKeyIdentifierType(WSConstants.ISSUER_SERIAL);
+        List<WSEncryptionPart> parts = new ArrayList<WSEncryptionPart>();
+        parts.add(encrypted);
+        encrypt.setParts(parts);
+        encrypt.build(doc, crypto, secHeader);
+
+        List<WSSecurityEngineResult> results = new WSSecurityEngine().processSecurityHeader(
+                doc, null, new CallbackHandler() {
+                    public void handle(Callback[] callbacks) {
+                        ((WSPasswordCallback) callbacks[0]).setPassword("password");
+                    }
+                }, crypto);
+
+        // The validator sees the envelope converted back from the processed document
+        ctx.setEnvelope(Axis2Util.getSOAPEnvelopeFromDOMDocument(doc, true));
+
+        List<WSEncryptionPart> required = new ArrayList<WSEncryptionPart>();
+        required.add(RampartUtil.createEncryptionPart(encrypted.getName(), null, null, modifier, xpath));
+
+        new PolicyBasedResultsValidator().validateEncryptedParts(new ValidatorData(rmd), required, results);
+    }
+
+    private Crypto getCrypto() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("org.apache.ws.security.crypto.provider",
+                "org.apache.ws.security.components.crypto.Merlin");
+        properties.setProperty("org.apache.ws.security.crypto.merlin.keystore.type", "JKS");
+        properties.setProperty("org.apache.ws.security.crypto.merlin.file", "test-resources/keys/interop2.jks");
+        properties.setProperty("org.apache.ws.security.crypto.merlin.keystore.password", "password");
+        return CryptoFactory.getInstance(properties);
+    }
+}
@@ -30,6 +30,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 
+import javax.xml.namespace.QName;
+
 @RunWith(JUnit4.class)
 public class RampartEngineTest extends MessageBuilderTestBase {
     /**
@@ -60,6 +62,50 @@ public class RampartEngineTest extends MessageBuilderTestBase {
         runRampartEngine(getMsgCtx12(), "test-resources/policy/rampart-asymm-binding-6-3des-r15.xml");
     }
 
+    /**
+     * Tests that a response that needs no security processing is neither converted to DOM nor
+     * processed.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testMessageWithoutSecurityHeaderRequired() throws Exception {
+        MessageContext ctx = getMsgCtx();
+
+        // The username token is only sent to the recipient
+        Policy policy = loadPolicy("test-resources/policy/rampart-plaintext-password.xml");
+        ctx.setProperty(RampartMessageData.KEY_RAMPART_POLICY, policy);
+
+        SOAPEnvelope env = ctx.getEnvelope();
+
+        RampartEngine engine = new RampartEngine();
+        assertNull(engine.process(ctx));
+        assertSame(env, ctx.getEnvelope());
+    }
+
+    /**
+     * Tests that an outgoing response that needs no security header is sent as it is.
+     *
+     * @throws Exception
+     */
+    @Test
+    public void testOutgoingMessageWithoutSecurityHeaderRequired() throws Exception {
+        MessageContext ctx = getMsgCtx();
+        ctx.setServerSide(true);
+
+        Policy policy = loadPolicy("test-resources/policy/rampart-plaintext-password.xml");
+        ctx.setProperty(RampartMessageData.KEY_RAMPART_POLICY, policy);
+
+        SOAPEnvelope env = ctx.getEnvelope();
+
+        MessageBuilder builder = new MessageBuilder();
+        builder.build(ctx);
+
+        assertSame(env, ctx.getEnvelope());
+        assertNull(env.getHeader().getFirstChildWithName(
+                new QName(WSConstants.WSSE_NS, WSConstants.WSSE_LN)));
+    }
+
     private void runRampartEngine(MessageContext ctx, String policyXml) throws Exception {
         Policy policy = loadPolicy(policyXml);
 
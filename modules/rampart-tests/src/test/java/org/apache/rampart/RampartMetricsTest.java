@@ -0,0 +1,91 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rampart;
+
+import org.apache.axis2.context.MessageContext;
+import org.apache.rahas.IndexedTokenStore;
+import org.apache.rahas.SimpleTokenStore;
+import org.apache.rahas.Token;
+import org.apache.rahas.TokenStorage;
+import org.apache.rampart.metrics.HistogramRampartMetrics;
+import org.apache.rampart.metrics.NoOpRampartMetrics;
+import org.apache.rampart.metrics.RampartMetrics;
+import org.apache.rampart.metrics.RampartMetricsFactory;
+import org.apache.rampart.util.RampartUtil;
+
+import java.util.Date;
+
+public class RampartMetricsTest extends MessageBuilderTestBase {
+
+    private HistogramRampartMetrics metrics;
+
+    protected void setUp() throws Exception {
+        metrics = new HistogramRampartMetrics(null);
+        RampartMetricsFactory.setMetrics(metrics);
+    }
+
+    protected void tearDown() throws Exception {
+        RampartMetricsFactory.setMetrics(null);
+    }
+
+    public void testOutboundPhasesRecorded() throws Exception {
+        MessageContext ctx = getMsgCtx();
+        ctx.setProperty(RampartMessageData.KEY_RAMPART_POLICY,
+                loadPolicy("test-resources/policy/rampart-transport-binding.xml"));
+
+        new MessageBuilder().build(ctx);
+
+        String service = ctx.getAxisService().getName();
+        for (RampartMetrics.Phase phase : new RampartMetrics.Phase[] {
+                RampartMetrics.Phase.POLICY_COMPILATION,
+                RampartMetrics.Phase.DOM_CONVERSION,
+                RampartMetrics.Phase.BINDING_BUILD}) {
+            assertEquals(phase.name(), 1, metrics.getHistogram(service,
+                    RampartMetrics.TRANSPORT_BINDING, phase).getCount());
+        }
+        assertEquals(0, metrics.getHistogram(service, RampartMetrics.TRANSPORT_BINDING,
+                RampartMetrics.Phase.SECURITY_PROCESSING).getCount());
+    }
+
+    public void testSimpleTokenStoreSize() throws Exception {
+        assertTokenStoreSize(new SimpleTokenStore());
+    }
+
+    public void testIndexedTokenStoreSize() throws Exception {
+        assertTokenStoreSize(new IndexedTokenStore());
+    }
+
+    private void assertTokenStoreSize(TokenStorage store) throws Exception {
+        Date now = new Date();
+        for (int i = 0; i < 3; i++) {
+            store.add(new Token("token-" + i, now, new Date(now.getTime() + 300000)));
+        }
+
+        MessageContext ctx = getMsgCtx();
+        ctx.getConfigurationContext().setProperty(TokenStorage.TOKEN_STORAGE_KEY, store);
+        RampartUtil.recordTokenStoreSize(ctx);
+
+        assertEquals(3, metrics.getServiceCounters(ctx.getAxisService().getName())
+                .getTokenStoreSize());
+    }
+
+    public void testNoOpByDefault() {
+        RampartMetricsFactory.setMetrics(null);
+        assertTrue(RampartMetricsFactory.getMetrics() instanceof NoOpRampartMetrics);
+        assertFalse(RampartMetricsFactory.getMetrics().isEnabled());
+    }
+}
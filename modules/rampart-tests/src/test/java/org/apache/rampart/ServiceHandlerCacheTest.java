@@ -0,0 +1,90 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rampart;
+
+import org.apache.axis2.context.MessageContext;
+import org.apache.rampart.policy.RampartPolicyData;
+import org.apache.rampart.policy.model.KerberosConfig;
+import org.apache.rampart.util.RampartUtil;
+import org.apache.ws.security.validate.KerberosTokenDecoder;
+
+import javax.security.auth.Subject;
+import javax.security.auth.callback.CallbackHandler;
+
+public class ServiceHandlerCacheTest extends MessageBuilderTestBase {
+
+    private static final String POLICY = "test-resources/policy/rampart-transport-binding.xml";
+
+    public static class SharedCBHandler extends TestCBHandler implements SharedHandler {
+    }
+
+    public static class SharedKerberosTokenDecoder implements KerberosTokenDecoder, SharedHandler {
+
+        public void setToken(byte[] token) {
+        }
+
+        public void setSubject(Subject subject) {
+        }
+
+        public byte[] getSessionKey() {
+            return null;
+        }
+
+        public void clear() {
+        }
+    }
+
+    public void testSharedHandler() throws Exception {
+        RampartMessageData rmd = getMessageData(SharedCBHandler.class.getName());
+        CallbackHandler handler = RampartUtil.getPasswordCB(rmd);
+
+        assertTrue(handler instanceof SharedCBHandler);
+        assertSame(handler, RampartUtil.getPasswordCB(rmd));
+
+        // Another deployment of the service gets its own instance
+        assertNotSame(handler, RampartUtil.getPasswordCB(getMessageData(SharedCBHandler.class.getName())));
+    }
+
+    public void testHandlerCreatedPerMessage() throws Exception {
+        RampartMessageData rmd = getMessageData(TestCBHandler.class.getName());
+        CallbackHandler handler = RampartUtil.getPasswordCB(rmd);
+
+        assertTrue(handler instanceof TestCBHandler);
+        assertNotSame(handler, RampartUtil.getPasswordCB(rmd));
+    }
+
+    public void testKerberosTokenDecoderCreatedPerMessage() throws Exception {
+        MessageContext ctx = getMsgCtx();
+        KerberosConfig kerberosConfig = new KerberosConfig();
+        kerberosConfig.setKerberosTokenDecoderClass(SharedKerberosTokenDecoder.class.getName());
+
+        // Decoders hold the token being decoded, so they are never shared
+        KerberosTokenDecoder decoder = RampartUtil.getKerberosTokenDecoder(ctx, kerberosConfig);
+        assertTrue(decoder instanceof SharedKerberosTokenDecoder);
+        assertNotSame(decoder, RampartUtil.getKerberosTokenDecoder(ctx, kerberosConfig));
+    }
+
+    private RampartMessageData getMessageData(String pwCbClass) throws Exception {
+        MessageContext ctx = getMsgCtx();
+        ctx.setProperty(RampartMessageData.KEY_RAMPART_POLICY, loadPolicy(POLICY));
+
+        RampartMessageData rmd = new RampartMessageData(ctx, true);
+        RampartPolicyData rpd = rmd.getPolicyData();
+        rpd.getRampartConfig().setPwCbClass(pwCbClass);
+        return rmd;
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rampart;
+
+import org.apache.axis2.context.MessageContext;
+import org.apache.rahas.IndexedTokenStore;
+import org.apache.rampart.policy.model.RampartConfig;
+
+/**
+ * Checks that the token store configured in the Rampart Configuration is set up from it.
+ */
+public class TokenStorageTest extends MessageBuilderTestBase {
+
+    private static final String POLICY = "test-resources/policy/rampart-transport-binding.xml";
+
+    public void testIndexedTokenStoreConfiguration() throws Exception {
+        RampartMessageData rmd = getMessageData("500", "REJECT");
+
+        IndexedTokenStore store = (IndexedTokenStore) rmd.getTokenStorage();
+        assertEquals(500, store.getMaxTokens());
+        assertEquals(IndexedTokenStore.EvictionPolicy.REJECT, store.getEvictionPolicy());
+    }
+
+    public void testDefaultEvictionPolicy() throws Exception {
+        IndexedTokenStore store = (IndexedTokenStore) getMessageData(null, null).getTokenStorage();
+
+        assertEquals(IndexedTokenStore.DEFAULT_MAX_TOKENS, store.getMaxTokens());
+        assertEquals(IndexedTokenStore.EvictionPolicy.EARLIEST_EXPIRY, store.getEvictionPolicy());
+    }
+
+    public void testInvalidEvictionPolicy() throws Exception {
+        try {
+            getMessageData(null, "OLDEST").getTokenStorage();
+            fail("An unknown eviction policy must be rejected");
+        } catch (RampartException e) {
+            assertEquals(RampartException.getMessage("invalidTokenStoreEvictionPolicy",
+                    new String[]{"OLDEST"}), e.getMessage());
+        }
+    }
+
+    private RampartMessageData getMessageData(String capacity, String evictionPolicy) throws Exception {
+        MessageContext ctx = getMsgCtx();
+        ctx.setProperty(RampartMessageData.KEY_RAMPART_POLICY, loadPolicy(POLICY));
+
+        RampartMessageData rmd = new RampartMessageData(ctx, false);
+        RampartConfig rampartConfig = rmd.getPolicyData().getRampartConfig();
+        rampartConfig.setTokenStoreClass(IndexedTokenStore.class.getName());
+        rampartConfig.setTokenStoreCapacity(capacity);
+        rampartConfig.setTokenStoreEvictionPolicy(evictionPolicy);
+        return rmd;
+    }
+}
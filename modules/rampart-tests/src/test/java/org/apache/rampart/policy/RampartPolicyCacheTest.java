@@ -0,0 +1,81 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rampart.policy;
+
+import org.apache.axiom.om.OMXMLBuilderFactory;
+import org.apache.neethi.Policy;
+import org.apache.neethi.PolicyEngine;
+
+import java.io.FileInputStream;
+
+import junit.framework.TestCase;
+
+public class RampartPolicyCacheTest extends TestCase {
+
+    public void testPolicyDataIsCompiledOnce() throws Exception {
+        Policy policy = loadPolicy("test-resources/policy/rampart-asymm-binding-1.xml");
+
+        RampartPolicyData first = RampartPolicyCache.getPolicyData(policy);
+        RampartPolicyData second = RampartPolicyCache.getPolicyData(policy);
+
+        assertNotSame("Each caller must get its own policy data", first, second);
+        assertTrue(first.isAsymmetricBinding());
+        assertSame("Compiled policy state must be shared",
+                first.getDeclaredNamespaces(), second.getDeclaredNamespaces());
+    }
+
+    public void testPerMessageStateIsNotShared() throws Exception {
+        Policy policy = loadPolicy("test-resources/policy/rampart-asymm-binding-1.xml");
+
+        RampartPolicyData first = RampartPolicyCache.getPolicyData(policy);
+        int signedParts = first.getSignedParts().size();
+        first.addSignedPart("urn:test", "Header");
+
+        RampartPolicyData second = RampartPolicyCache.getPolicyData(policy);
+        assertEquals(signedParts, second.getSignedParts().size());
+    }
+
+    public void testMergedPolicyIsStable() throws Exception {
+        Policy policy = loadPolicy("test-resources/policy/rampart-asymm-binding-1.xml");
+        Policy flowPolicy = loadPolicy("test-resources/policy/rampart-policy-1.xml");
+
+        Policy merged = RampartPolicyCache.getMergedPolicy(policy, flowPolicy);
+        assertSame(merged, RampartPolicyCache.getMergedPolicy(policy, flowPolicy));
+
+        RampartPolicyData rpd = RampartPolicyCache.getPolicyData(merged);
+        assertNotNull("RampartConfig from the flow policy missing", rpd.getRampartConfig());
+    }
+
+    public void testInvalidate() throws Exception {
+        Policy policy = loadPolicy("test-resources/policy/rampart-asymm-binding-1.xml");
+
+        RampartPolicyData first = RampartPolicyCache.getPolicyData(policy);
+        RampartPolicyCache.invalidate(policy);
+        RampartPolicyData second = RampartPolicyCache.getPolicyData(policy);
+
+        assertNotSame("Policy must be recompiled after invalidation",
+                first.getDeclaredNamespaces(), second.getDeclaredNamespaces());
+    }
+
+    private Policy loadPolicy(String xmlPath) throws Exception {
+        return PolicyEngine.getPolicy(OMXMLBuilderFactory.createOMBuilder(
+                new FileInputStream(xmlPath)).getDocumentElement());
+    }
+}
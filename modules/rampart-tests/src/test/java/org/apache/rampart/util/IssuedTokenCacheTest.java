@@ -0,0 +1,109 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rampart.util;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.rahas.SimpleTokenStore;
+import org.apache.rahas.Token;
+import org.apache.rahas.TokenStorage;
+import org.apache.rampart.RampartException;
+
+import junit.framework.TestCase;
+
+public class IssuedTokenCacheTest extends TestCase {
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    public void testTokenIsReused() throws Exception {
+
+        TokenStorage storage = new SimpleTokenStore();
+        IssuedTokenCache cache = new IssuedTokenCache();
+        String key = IssuedTokenCache.createKey("http://sts", "http://service", null, "alice");
+
+        String id = cache.getToken(key, storage, 1000, requester(storage, 60000));
+        assertEquals(id, cache.getToken(key, storage, 1000, requester(storage, 60000)));
+        assertEquals(1, requests.get());
+
+        String otherKey = IssuedTokenCache.createKey("http://sts", "http://service", null, "bob");
+        assertFalse(id.equals(cache.getToken(otherKey, storage, 1000, requester(storage, 60000))));
+        assertEquals(2, requests.get());
+    }
+
+    public void testTokenIsRefreshedBeforeExpiry() throws Exception {
+
+        TokenStorage storage = new SimpleTokenStore();
+        IssuedTokenCache cache = new IssuedTokenCache();
+        String key = IssuedTokenCache.createKey("http://sts", "http://service", null, "alice");
+
+        String id = cache.getToken(key, storage, 10000, requester(storage, 5000));
+        assertFalse("Token within the refresh margin must not be reused",
+                id.equals(cache.getToken(key, storage, 10000, requester(storage, 60000))));
+
+        String cancelled = cache.getToken(key, storage, 10000, requester(storage, 60000));
+        storage.getToken(cancelled).setState(Token.CANCELLED);
+        assertFalse(cancelled.equals(cache.getToken(key, storage, 10000, requester(storage, 60000))));
+        assertEquals(3, requests.get());
+    }
+
+    public void testConcurrentRequestsAreCoalesced() throws Exception {
+
+        final TokenStorage storage = new SimpleTokenStore();
+        final IssuedTokenCache cache = new IssuedTokenCache();
+        final String key = IssuedTokenCache.createKey("http://sts", "http://service", null, "alice");
+        final CountDownLatch start = new CountDownLatch(1);
+
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        start.await();
+                        cache.getToken(key, storage, 1000, requester(storage, 60000));
+                    } catch (Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+
+        start.countDown();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals("Only one token must be requested", 1, requests.get());
+    }
+
+    private IssuedTokenCache.TokenRequester requester(final TokenStorage storage, final long lifeTime) {
+        return new IssuedTokenCache.TokenRequester() {
+            public String requestToken() throws RampartException {
+                try {
+                    Thread.sleep(50);
+                    Token token = new Token("token-" + requests.incrementAndGet(), new Date(),
+                            new Date(System.currentTimeMillis() + lifeTime));
+                    token.setState(Token.ISSUED);
+                    storage.add(token);
+                    return token.getId();
+                } catch (Exception e) {
+                    throw new RampartException("errorInObtainingToken", e);
+                }
+            }
+        };
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rampart.util;
+
+import java.util.Date;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.rahas.Token;
+
+import junit.framework.TestCase;
+
+public class TokenRefresherTest extends TestCase {
+
+    private final AtomicInteger requests = new AtomicInteger();
+
+    private final BlockingQueue<String> refreshed = new LinkedBlockingQueue<String>();
+
+    public void testTokenInUseIsRefreshed() throws Exception {
+
+        TokenRefresher refresher = new TokenRefresher();
+
+        refresher.schedule("key", newToken(2000), 1000, source(2000), holder());
+        refresher.touch("key");
+
+        assertEquals("token-1>token-2", refreshed.poll(5, TimeUnit.SECONDS));
+        assertEquals(2, requests.get());
+
+        // The replacement is only refreshed if it is used as well
+        Thread.sleep(1500);
+        assertTrue(refreshed.isEmpty());
+        assertEquals(2, requests.get());
+    }
+
+    public void testCancel() throws Exception {
+
+        TokenRefresher refresher = new TokenRefresher();
+
+        refresher.schedule("key", newToken(1200), 1000, source(2000), holder());
+        refresher.touch("key");
+        refresher.cancel("key");
+
+        Thread.sleep(500);
+        assertTrue(refreshed.isEmpty());
+        assertEquals(1, requests.get());
+    }
+
+    private Token newToken(long lifeTime) {
+        Token token = new Token("token-" + requests.incrementAndGet(), new Date(),
+                new Date(System.currentTimeMillis() + lifeTime));
+        token.setState(Token.ISSUED);
+        return token;
+    }
+
+    private TokenRefresher.TokenSource source(final long lifeTime) {
+        return new TokenRefresher.TokenSource() {
+            public Token requestToken() {
+                return newToken(lifeTime);
+            }
+        };
+    }
+
+    private TokenRefresher.TokenHolder holder() {
+        return new TokenRefresher.TokenHolder() {
+            public void tokenRefreshed(String oldId, String newId) {
+                refreshed.add(oldId + ">" + newId);
+            }
+        };
+    }
+}
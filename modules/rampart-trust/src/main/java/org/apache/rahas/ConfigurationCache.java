@@ -0,0 +1,136 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rahas;
+
+import org.apache.axiom.om.OMElement;
+
+import java.io.File;
+import java.lang.ref.SoftReference;
+import java.util.Map;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of configurations built from configuration elements and files, so that the STS does not
+ * parse the configuration of the token dispatcher and its issuers, validators, renewers and
+ * cancelers for every request.
+ * <p>
+ * A configuration built from an element is kept while the element is in use. A configuration
+ * built from a file is built again when the file is modified. Cached configurations are shared
+ * between requests and must not be modified.
+ */
+public class ConfigurationCache<T> {
+
+    /**
+     * Builds configurations.
+     */
+    public interface Factory<T> {
+        /**
+         * @param element The configuration element
+         * @return The configuration built from the element
+         * @throws TrustException
+         */
+        T create(OMElement element) throws TrustException;
+
+        /**
+         * @param configFilePath Path to the configuration file
+         * @return The configuration built from the file
+         * @throws TrustException
+         */
+        T create(String configFilePath) throws TrustException;
+    }
+
+    private static class FileEntry<T> {
+        final T config;
+        final long lastModified;
+        final long length;
+
+        FileEntry(T config, long lastModified, long length) {
+            this.config = config;
+            this.lastModified = lastModified;
+            this.length = length;
+        }
+    }
+
+    private final Factory<T> factory;
+
+    // Configurations usually refer to parts of their element, hence the soft references
+    private final Map<OMElement, SoftReference<T>> elementConfigs =
+            new WeakHashMap<OMElement, SoftReference<T>>();
+
+    private final ConcurrentMap<String, FileEntry<T>> fileConfigs =
+            new ConcurrentHashMap<String, FileEntry<T>>();
+
+    public ConfigurationCache(Factory<T> factory) {
+        this.factory = factory;
+    }
+
+    /**
+     * Returns the configuration built from the given element.
+     * @param element The configuration element
+     * @return The configuration
+     * @throws TrustException
+     */
+    public T get(OMElement element) throws TrustException {
+
+        if (element == null) {
+            return factory.create(element);
+        }
+
+        synchronized (elementConfigs) {
+            SoftReference<T> ref = elementConfigs.get(element);
+            T config = ref != null ? ref.get() : null;
+            if (config != null) {
+                return config;
+            }
+        }
+
+        T config = factory.create(element);
+        synchronized (elementConfigs) {
+            elementConfigs.put(element, new SoftReference<T>(config));
+        }
+        return config;
+    }
+
+    /**
+     * Returns the configuration built from the given file, building it again if the file was
+     * modified since it was last built.
+     * @param configFilePath Path to the configuration file
+     * @return The configuration
+     * @throws TrustException
+     */
+    public T get(String configFilePath) throws TrustException {
+
+        if (configFilePath == null) {
+            return factory.create(configFilePath);
+        }
+
+        File file = new File(configFilePath);
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        FileEntry<T> entry = fileConfigs.get(configFilePath);
+        if (entry != null && entry.lastModified == lastModified && entry.length == length) {
+            return entry.config;
+        }
+
+        T config = factory.create(configFilePath);
+        fileConfigs.put(configFilePath, new FileEntry<T>(config, lastModified, length));
+        return config;
+    }
+}
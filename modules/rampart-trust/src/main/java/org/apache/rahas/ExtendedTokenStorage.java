@@ -0,0 +1,40 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rahas;
+
+/**
+ * Token storage which indexes tokens by keys other than their identifier, so that
+ * they can be looked up without going through all the tokens in the store.
+ * Implementations should also use an index to find tokens by their attached and
+ * unattached references in {@link #getToken(String)}.
+ */
+public interface ExtendedTokenStorage extends TokenStorage {
+
+    /**
+     * Returns the <code>EncryptedKeyToken</code> with the given SHA1 value
+     * @param sha1 Base64 encoded SHA1 value of the encrypted key
+     * @return The requested <code>Token</code> or <code>null</code> if there is none
+     * @throws TrustException
+     */
+    Token getTokenBySHA1(String sha1) throws TrustException;
+
+    /**
+     * @return The number of tokens in the store, whatever their state
+     */
+    int size();
+
+}
@@ -0,0 +1,428 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rahas;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * In-memory token storage which removes tokens once they are no longer usable.
+ * <p>
+ * Tokens are held in a concurrent map, indexed by the id of their references and by the SHA1 of
+ * encrypted keys, and, if they have an expiry time, in an index ordered by the time they are to
+ * be evicted. A background task periodically removes tokens which have
+ * expired, and tokens which were cancelled through {@link #update(Token)}, once they are older
+ * than the retention period. Until then they are reported by {@link #getExpiredTokens()} and
+ * {@link #getCancelledTokens()} like in {@link SimpleTokenStore}.
+ * <p>
+ * The number of tokens is bounded. When the store is full, expired tokens are removed first and
+ * then, depending on the {@link EvictionPolicy}, either the token closest to expiry is evicted or
+ * the new token is rejected. Tokens without an expiry time are never evicted.
+ * <p>
+ * This store can be used in place of the default {@link SimpleTokenStore} by naming it as the
+ * <code>tokenStoreClass</code> of the Rampart configuration, whose
+ * <code>tokenStoreCapacity</code> then sets the maximum number of tokens.
+ */
+public class IndexedTokenStore implements ExtendedTokenStorage, Serializable {
+
+    private static final long serialVersionUID = 3495614315628379813L;
+
+    private static Log log = LogFactory.getLog(IndexedTokenStore.class);
+
+    /**
+     * What to do when a token is added to a store which is full.
+     */
+    public enum EvictionPolicy {
+        /** Evict the token which expires first. */
+        EARLIEST_EXPIRY,
+        /** Reject the new token. */
+        REJECT
+    }
+
+    public static final int DEFAULT_MAX_TOKENS = 100000;
+
+    /** Default retention period of expired and cancelled tokens, in milliseconds. */
+    public static final long DEFAULT_RETENTION_PERIOD = 60 * 1000;
+
+    /** Interval between background evictions, in milliseconds. */
+    public static final long SWEEP_INTERVAL = 30 * 1000;
+
+    private static ScheduledExecutorService sweeper;
+
+    private final ConcurrentMap<String, Token> tokens = new ConcurrentHashMap<String, Token>();
+
+    private transient ConcurrentMap<String, Token> referenceIndex = new ConcurrentHashMap<String, Token>();
+
+    private transient ConcurrentMap<String, Token> sha1Index = new ConcurrentHashMap<String, Token>();
+
+    private transient PriorityBlockingQueue<Eviction> evictions = new PriorityBlockingQueue<Eviction>();
+
+    private volatile int maxTokens;
+
+    private volatile EvictionPolicy evictionPolicy;
+
+    private final long retentionPeriod;
+
+    public IndexedTokenStore() {
+        this(DEFAULT_MAX_TOKENS, EvictionPolicy.EARLIEST_EXPIRY, DEFAULT_RETENTION_PERIOD);
+    }
+
+    /**
+     * @param maxTokens Maximum number of tokens in the store.
+     * @param evictionPolicy What to do when the store is full.
+     * @param retentionPeriod Time in milliseconds expired and cancelled tokens are kept.
+     */
+    public IndexedTokenStore(int maxTokens, EvictionPolicy evictionPolicy, long retentionPeriod) {
+        this.maxTokens = maxTokens;
+        this.evictionPolicy = evictionPolicy;
+        this.retentionPeriod = retentionPeriod;
+        scheduleSweep();
+    }
+
+    public void add(Token token) throws TrustException {
+
+        if (token != null && !"".equals(token.getId()) && token.getId() != null) {
+
+            // Adds are serialized so that concurrent adds cannot exceed the bound, removals
+            // and lookups do not take the lock
+            synchronized (tokens) {
+                if (tokens.containsKey(token.getId())) {
+                    throw new TrustException("tokenAlreadyExists",
+                                            new String[]{token.getId()});
+                }
+                if (tokens.size() >= maxTokens) {
+                    makeRoom(token.getId());
+                }
+                tokens.put(token.getId(), token);
+            }
+            indexToken(token);
+            scheduleEviction(token);
+        }
+    }
+
+    public void update(Token token) throws TrustException {
+
+        if (token != null && token.getId() != null && token.getId().trim().length() != 0) {
+
+            Token previous = tokens.replace(token.getId(), token);
+            if (previous == null) {
+                throw new TrustException("noTokenToUpdate", new String[]{token.getId()});
+            }
+            unindexToken(previous);
+            indexToken(token);
+            scheduleEviction(token);
+        }
+    }
+
+    public String[] getTokenIdentifiers() throws TrustException {
+        Set<String> identifiers = tokens.keySet();
+        return identifiers.toArray(new String[identifiers.size()]);
+    }
+
+    public Token[] getValidTokens() throws TrustException {
+        return getTokens(new int[]{Token.ISSUED, Token.RENEWED});
+    }
+
+    public Token[] getRenewedTokens() throws TrustException {
+        return getTokens(Token.RENEWED);
+    }
+
+    public Token[] getCancelledTokens() throws TrustException {
+        return getTokens(Token.CANCELLED);
+    }
+
+    public Token[] getExpiredTokens() throws TrustException {
+        return getTokens(Token.EXPIRED);
+    }
+
+    private Token[] getTokens(int... states) throws TrustException {
+        List<Token> result = new ArrayList<Token>();
+
+        for (Token token : tokens.values()) {
+            processTokenExpiry(token);
+            for (int i = 0; i < states.length; i++) {
+                if (token.getState() == states[i]) {
+                    result.add(token);
+                    break;
+                }
+            }
+        }
+        return result.toArray(new Token[result.size()]);
+    }
+
+    public Token getToken(String id) throws TrustException {
+
+        Token token = tokens.get(id);
+
+        if (token == null) {
+            //Try to find the token using attached refs & unattached refs
+            token = referenceIndex.get(id);
+        }
+
+        if (token != null) {
+            processTokenExpiry(token);
+        }
+
+        return token;
+    }
+
+    public Token getTokenBySHA1(String sha1) throws TrustException {
+
+        Token token = sha1Index.get(sha1);
+
+        if (token != null) {
+            processTokenExpiry(token);
+        }
+
+        return token;
+    }
+
+    public void removeToken(String id) {
+        unindexToken(tokens.remove(id));
+    }
+
+    /**
+     * @return The maximum number of tokens in the store.
+     */
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    /**
+     * @param maxTokens The maximum number of tokens in the store. Tokens already stored beyond
+     *                  it are only evicted as new tokens are added.
+     */
+    public void setMaxTokens(int maxTokens) {
+        this.maxTokens = maxTokens;
+    }
+
+    /**
+     * @return What to do when a token is added to the store while it is full.
+     */
+    public EvictionPolicy getEvictionPolicy() {
+        return evictionPolicy;
+    }
+
+    /**
+     * @param evictionPolicy What to do when a token is added to the store while it is full.
+     */
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy) {
+        this.evictionPolicy = evictionPolicy;
+    }
+
+    /**
+     * @return The number of tokens in the store, whatever their state
+     */
+    public int size() {
+        return tokens.size();
+    }
+
+    /**
+     * Removes the tokens which expired or were cancelled more than the retention period ago.
+     * This is done periodically in the background.
+     */
+    public void evictExpiredTokens() {
+
+        long now = System.currentTimeMillis();
+        Eviction eviction;
+        while ((eviction = evictions.poll()) != null) {
+            if (eviction.time > now) {
+                evictions.add(eviction);
+                break;
+            }
+            evict(eviction, now);
+        }
+    }
+
+    protected void processTokenExpiry(Token token) throws TrustException {
+        if (token.getExpires() != null &&
+            token.getExpires().getTime() < System.currentTimeMillis()) {
+            token.setState(Token.EXPIRED);
+        }
+    }
+
+    private void makeRoom(String id) throws TrustException {
+
+        evictExpiredTokens();
+
+        while (tokens.size() >= maxTokens) {
+            Eviction eviction = evictionPolicy == EvictionPolicy.EARLIEST_EXPIRY ? evictions.poll() : null;
+            if (eviction == null) {
+                throw new TrustException("tokenStoreFull", new String[]{id});
+            }
+            if (remove(eviction.id, eviction.token) && log.isDebugEnabled()) {
+                log.debug("Token store is full, evicted token " + eviction.id);
+            }
+        }
+    }
+
+    private void evict(Eviction eviction, long now) {
+
+        Token token = eviction.token;
+        if (tokens.get(eviction.id) != token) {
+            // The token was removed or replaced
+            return;
+        }
+
+        long time = token.getState() == Token.CANCELLED ? now : getEvictionTime(token, now);
+        if (time <= now) {
+            remove(eviction.id, token);
+        } else if (time != Long.MAX_VALUE) {
+            // The token was renewed
+            evictions.add(new Eviction(eviction.id, token, time));
+        }
+    }
+
+    private boolean remove(String id, Token token) {
+        if (tokens.remove(id, token)) {
+            unindexToken(token);
+            return true;
+        }
+        return false;
+    }
+
+    private void indexToken(Token token) {
+        for (String key : SimpleTokenStore.getReferenceIds(token)) {
+            referenceIndex.put(key, token);
+        }
+        if (token instanceof EncryptedKeyToken && ((EncryptedKeyToken) token).getSHA1() != null) {
+            sha1Index.put(((EncryptedKeyToken) token).getSHA1(), token);
+        }
+    }
+
+    private void unindexToken(Token token) {
+        if (token == null) {
+            return;
+        }
+        for (String key : SimpleTokenStore.getReferenceIds(token)) {
+            referenceIndex.remove(key, token);
+        }
+        if (token instanceof EncryptedKeyToken && ((EncryptedKeyToken) token).getSHA1() != null) {
+            sha1Index.remove(((EncryptedKeyToken) token).getSHA1(), token);
+        }
+    }
+
+    private void scheduleEviction(Token token) {
+
+        long time = getEvictionTime(token, System.currentTimeMillis());
+        if (time != Long.MAX_VALUE) {
+            evictions.add(new Eviction(token.getId(), token, time));
+        }
+    }
+
+    private long getEvictionTime(Token token, long now) {
+
+        if (token.getState() == Token.CANCELLED) {
+            return now + retentionPeriod;
+        }
+        if (token.getExpires() != null) {
+            return token.getExpires().getTime() + retentionPeriod;
+        }
+        return Long.MAX_VALUE;
+    }
+
+    private void scheduleSweep() {
+        getSweeper().scheduleWithFixedDelay(new Sweep(this),
+                SWEEP_INTERVAL, SWEEP_INTERVAL, TimeUnit.MILLISECONDS);
+    }
+
+    private static synchronized ScheduledExecutorService getSweeper() {
+        if (sweeper == null) {
+            sweeper = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+                public Thread newThread(Runnable r) {
+                    Thread thread = new Thread(r, "rampart-token-store-sweeper");
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return sweeper;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        referenceIndex = new ConcurrentHashMap<String, Token>();
+        sha1Index = new ConcurrentHashMap<String, Token>();
+        evictions = new PriorityBlockingQueue<Eviction>();
+        for (Token token : tokens.values()) {
+            indexToken(token);
+            scheduleEviction(token);
+        }
+        scheduleSweep();
+    }
+
+    /**
+     * Entry of the eviction index, ordered by eviction time.
+     */
+    private static class Eviction implements Comparable<Eviction> {
+
+        final String id;
+        final Token token;
+        final long time;
+
+        Eviction(String id, Token token, long time) {
+            this.id = id;
+            this.token = token;
+            this.time = time;
+        }
+
+        public int compareTo(Eviction other) {
+            return time < other.time ? -1 : (time == other.time ? 0 : 1);
+        }
+    }
+
+    /**
+     * Periodic eviction task. It only weakly refers to the store, so that an unused store can be
+     * garbage collected, and then cancels itself.
+     */
+    private static class Sweep implements Runnable {
+
+        private final WeakReference<IndexedTokenStore> store;
+
+        Sweep(IndexedTokenStore store) {
+            this.store = new WeakReference<IndexedTokenStore>(store);
+        }
+
+        public void run() {
+            IndexedTokenStore tokenStore = store.get();
+            if (tokenStore == null) {
+                // An exception suppresses further executions of this task
+                throw new IllegalStateException("Token store was garbage collected");
+            }
+            try {
+                tokenStore.evictExpiredTokens();
+            } catch (RuntimeException e) {
+                log.error("Error evicting expired tokens", e);
+            }
+        }
+    }
+}
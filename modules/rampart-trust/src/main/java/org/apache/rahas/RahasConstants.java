@@ -39,6 +39,8 @@ public class RahasConstants {
 
     public static class LocalNames {
         public static final String REQUEST_SECURITY_TOKEN = "RequestSecurityToken";
+        public static final String
+                REQUEST_SECURITY_TOKEN_COLLECTION = "RequestSecurityTokenCollection";
         public static final String REQUEST_SECURITY_TOKEN_RESPONSE = "RequestSecurityTokenResponse";
         public static final String REQUEST_TYPE = "RequestType";
         public static final String TOKEN_TYPE = "TokenType";
@@ -98,6 +98,19 @@ public class RahasData {
      * @throws TrustException <code>RequestSecurityToken</code> element is invalid.
      */
     public RahasData(MessageContext inMessageContext) throws TrustException {
+        this(inMessageContext, inMessageContext.getEnvelope().getBody().getFirstElement());
+    }
+
+    /**
+     * Create a new RahasData instance for one request of the message, such as a
+     * <code>RequestSecurityToken</code> of a <code>RequestSecurityTokenCollection</code>.
+     *
+     * @param inMessageContext The message carrying the request
+     * @param rstElement The <code>RequestSecurityToken</code> element
+     * @throws TrustException <code>RequestSecurityToken</code> element is invalid.
+     */
+    public RahasData(MessageContext inMessageContext, OMElement rstElement)
+            throws TrustException {
 
         this.inMessageContext = inMessageContext;
 
@@ -108,8 +121,7 @@ public class RahasData {
         this.addressingNs = (String) this.inMessageContext
                 .getProperty(AddressingConstants.WS_ADDRESSING_VERSION);
 
-        this.rstElement = this.inMessageContext.getEnvelope().getBody()
-                .getFirstElement();
+        this.rstElement = rstElement;
 
         this.soapNs = this.inMessageContext.getEnvelope().getNamespace()
                 .getNamespaceURI();
@@ -445,6 +457,9 @@ public class RahasData {
      */
     public void setInMessageContext(MessageContext context) {
         this.inMessageContext = context;
+        if (this.soapNs == null && context != null && context.getEnvelope() != null) {
+            this.soapNs = context.getEnvelope().getNamespace().getNamespaceURI();
+        }
     }
 
     /**
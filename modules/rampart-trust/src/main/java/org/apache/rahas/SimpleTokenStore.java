@@ -22,8 +22,11 @@ import org.apache.ws.security.message.token.Reference;
 
 import javax.xml.namespace.QName;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.List;
@@ -36,9 +39,25 @@ import java.util.concurrent.locks.ReentrantReadWriteLock;
 /**
  * In-memory implementation of the token storage
  */
-public class SimpleTokenStore implements TokenStorage, Serializable {
+public class SimpleTokenStore implements ExtendedTokenStorage, Serializable {
+
+    private static final long serialVersionUID = -4838350766351997103L;
+
+    private static final QName KEY_INFO = new QName(WSConstants.SIG_NS, "KeyInfo");
+
+    private static final QName URI = new QName("URI");
 
     protected Map tokens = new Hashtable();
+
+    /**
+     * Secondary indexes of the tokens, by the id of their attached and unattached
+     * references and by the SHA1 of encrypted keys. These are maintained by add, update
+     * and removeToken, so subclasses modifying <code>tokens</code> directly must do the
+     * same through {@link #indexToken(Token)} and {@link #unindexToken(Token)}.
+     */
+    private transient Map<String, Token> referenceIndex = new HashMap<String, Token>();
+
+    private transient Map<String, Token> sha1Index = new HashMap<String, Token>();
     
     /**
      * We use a read write lock to improve concurrency while avoiding concurrent modification 
@@ -62,6 +81,7 @@ public class SimpleTokenStore implements TokenStorage, Serializable {
                     || (this.tokens.keySet().size() > 0 && !this.tokens
                         .keySet().contains(token.getId()))) {
                     tokens.put(token.getId(), token);
+                    indexToken(token);
                 } else {
                     throw new TrustException("tokenAlreadyExists",
                                             new String[]{token.getId()});
@@ -82,7 +102,8 @@ public class SimpleTokenStore implements TokenStorage, Serializable {
                 if (!this.tokens.keySet().contains(token.getId())) {
                     throw new TrustException("noTokenToUpdate", new String[]{token.getId()});
                 }
-                this.tokens.put(token.getId(), token);
+                unindexToken((Token) this.tokens.put(token.getId(), token));
+                indexToken(token);
             } finally {
                 writeLock.unlock();
             }
@@ -100,6 +121,13 @@ public class SimpleTokenStore implements TokenStorage, Serializable {
         }
     }
 
+    /**
+     * @return The number of tokens in the store, whatever their state
+     */
+    public int size() {
+        return tokens.size();
+    }
+
     public Token[] getValidTokens() throws TrustException {
         return getTokens(new int[]{Token.ISSUED, Token.RENEWED});
     }
@@ -150,20 +178,10 @@ public class SimpleTokenStore implements TokenStorage, Serializable {
             
             if(token == null) {
                 //Try to find the token using attached refs & unattached refs
-                for (Iterator iterator = this.tokens.values().iterator(); iterator.hasNext();) {
-                    Token tempToken = (Token) iterator.next();
-                    processTokenExpiry(tempToken);
-                    OMElement elem = tempToken.getAttachedReference();
-                    if(elem != null && id.equals(this.getIdFromSTR(elem))) {
-                        token = tempToken;
-                    }
-                    elem = tempToken.getUnattachedReference();
-                    if(elem != null && id.equals(this.getIdFromSTR(elem))) {
-                        token = tempToken;
-                    }
-                    
-                }
-            } else {
+                token = this.referenceIndex.get(id);
+            }
+
+            if (token != null) {
                 processTokenExpiry(token);
             }
         
@@ -173,16 +191,93 @@ public class SimpleTokenStore implements TokenStorage, Serializable {
         return token;
     }
 
+    public Token getTokenBySHA1(String sha1) throws TrustException {
+        readLock.lock();
+
+        Token token;
+
+        try {
+            token = this.sha1Index.get(sha1);
+
+            if (token != null) {
+                processTokenExpiry(token);
+            }
+        } finally {
+            readLock.unlock();
+        }
+        return token;
+    }
+
     public void removeToken(String id){
 
         writeLock.lock();
 
         try {
-            this.tokens.remove(id);
+            unindexToken((Token) this.tokens.remove(id));
         } finally {
             writeLock.unlock();
         }        
     }
+
+    /**
+     * Adds the given token to the secondary indexes. Must be called holding the write lock.
+     * @param token The token to index
+     */
+    protected void indexToken(Token token) {
+        for (String key : getReferenceIds(token)) {
+            this.referenceIndex.put(key, token);
+        }
+        if (token instanceof EncryptedKeyToken && ((EncryptedKeyToken) token).getSHA1() != null) {
+            this.sha1Index.put(((EncryptedKeyToken) token).getSHA1(), token);
+        }
+    }
+
+    /**
+     * Removes the given token from the secondary indexes. Must be called holding the write lock.
+     * @param token The token to remove, may be <code>null</code>
+     */
+    protected void unindexToken(Token token) {
+        if (token == null) {
+            return;
+        }
+        for (String key : getReferenceIds(token)) {
+            if (this.referenceIndex.get(key) == token) {
+                this.referenceIndex.remove(key);
+            }
+        }
+        if (token instanceof EncryptedKeyToken && ((EncryptedKeyToken) token).getSHA1() != null
+                && this.sha1Index.get(((EncryptedKeyToken) token).getSHA1()) == token) {
+            this.sha1Index.remove(((EncryptedKeyToken) token).getSHA1());
+        }
+    }
+
+    /**
+     * Returns the ids of the attached and unattached references of the given token.
+     * @param token The token
+     * @return A list of up to two reference ids
+     */
+    static List<String> getReferenceIds(Token token) {
+        List<String> ids = new ArrayList<String>(2);
+        String id;
+        if (token.getAttachedReference() != null
+                && (id = getIdFromSTR(token.getAttachedReference())) != null) {
+            ids.add(id);
+        }
+        if (token.getUnattachedReference() != null
+                && (id = getIdFromSTR(token.getUnattachedReference())) != null) {
+            ids.add(id);
+        }
+        return ids;
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.referenceIndex = new HashMap<String, Token>();
+        this.sha1Index = new HashMap<String, Token>();
+        for (Iterator iterator = this.tokens.values().iterator(); iterator.hasNext();) {
+            indexToken((Token) iterator.next());
+        }
+    }
     
     protected void processTokenExpiry(Token token) throws TrustException {
         if (token.getExpires() != null &&
@@ -198,10 +293,13 @@ public class SimpleTokenStore implements TokenStorage, Serializable {
             return null;
         }
         
-        if (child.getQName().equals(new QName(WSConstants.SIG_NS, "KeyInfo"))) {
+        if (child.getQName().equals(KEY_INFO)) {
             return child.getText();
         } else if(child.getQName().equals(Reference.TOKEN)) {
-            String uri = child.getAttributeValue(new QName("URI"));
+            String uri = child.getAttributeValue(URI);
+            if (uri == null || uri.length() == 0) {
+                return null;
+            }
             if (uri.charAt(0) == '#') {
                 uri = uri.substring(1);
             }
@@ -21,6 +21,23 @@ import org.apache.axis2.context.MessageContext;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 
+import javax.xml.namespace.QName;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 public class TokenRequestDispatcher {
 
     private TokenRequestDispatcherConfig config;
@@ -28,6 +45,14 @@ public class TokenRequestDispatcher {
     private static Log mlog = LogFactory.getLog("org.apache.rampart.messages");
     private static Log log = LogFactory.getLog(TokenRequestDispatcher.class.getName());
 
+    /**
+     * Number of threads issuing the tokens of collections, when parallel batch issuance is
+     * enabled.
+     */
+    private static final int BATCH_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static volatile ExecutorService batchExecutor;
+
     public TokenRequestDispatcher(TokenRequestDispatcherConfig config) throws TrustException {
         this.config = config;
     }
@@ -52,19 +77,19 @@ public class TokenRequestDispatcher {
         if(mlog.isDebugEnabled()){
             mlog.debug("*********************** TokenRequestDispatcher received \n"+inMsgCtx.getEnvelope());
         }
+        OMElement requestElem = inMsgCtx.getEnvelope().getBody().getFirstElement();
+        if (requestElem != null && RahasConstants.LocalNames.REQUEST_SECURITY_TOKEN_COLLECTION
+                .equals(requestElem.getLocalName())) {
+            return handleCollection(inMsgCtx, outMsgCtx, requestElem);
+        }
+
         RahasData data = new RahasData(inMsgCtx);
         
         String reqType = data.getRequestType();
         String tokenType = data.getTokenType();
-        if ((RahasConstants.WST_NS_05_02 + RahasConstants.REQ_TYPE_ISSUE).equals(reqType) ||
-                (RahasConstants.WST_NS_05_12 + RahasConstants.REQ_TYPE_ISSUE).equals(reqType)) {
+        if (isIssueRequest(reqType)) {
             log.debug("issue");
-            TokenIssuer issuer;
-            if (tokenType == null ||  tokenType.trim().length() == 0) {
-                issuer = config.getDefaultIssuerInstace();
-            } else {
-                issuer = config.getIssuer(tokenType);
-            }
+            TokenIssuer issuer = getIssuer(tokenType);
             
             SOAPEnvelope response = issuer.issue(data);
             
@@ -133,7 +158,207 @@ public class TokenRequestDispatcher {
 
         
     }
-    
-    
+
+    /**
+     * Processes a <code>RequestSecurityTokenCollection</code>. The security header of the
+     * message has been processed once for all the requests, which must be issue requests. The
+     * tokens are issued in the order of the requests, or concurrently if enabled in the
+     * configuration, and all returned in one <code>RequestSecurityTokenResponseCollection</code>.
+     * @param inMsgCtx The incoming message
+     * @param outMsgCtx The outgoing message
+     * @param rstcElem The <code>RequestSecurityTokenCollection</code> element
+     * @return The response SOAPEnvelope
+     * @throws TrustException
+     */
+    private SOAPEnvelope handleCollection(MessageContext inMsgCtx, MessageContext outMsgCtx,
+                                          OMElement rstcElem) throws TrustException {
+        log.debug("issue collection");
+
+        String wstNs = rstcElem.getNamespace() == null ? null
+                : rstcElem.getNamespace().getNamespaceURI();
+        int version = TrustUtil.getWSTVersion(wstNs);
+        if (version == -1) {
+            throw new TrustException(TrustException.INVALID_REQUEST);
+        }
+
+        List<OMElement> rstElems = new ArrayList<OMElement>();
+        Iterator children = rstcElem.getChildrenWithName(
+                new QName(wstNs, RahasConstants.LocalNames.REQUEST_SECURITY_TOKEN));
+        while (children.hasNext()) {
+            if (rstElems.size() >= config.getMaxCollectionSize()) {
+                throw new TrustException(TrustException.INVALID_REQUEST, new String[]{
+                        "More than " + config.getMaxCollectionSize() + " requests in the collection"});
+            }
+            rstElems.add((OMElement) children.next());
+        }
+        boolean parallel = config.isParallelBatchIssuance() && rstElems.size() > 1;
+
+        List<RahasData> requests = new ArrayList<RahasData>();
+        List<TokenIssuer> issuers = new ArrayList<TokenIssuer>();
+        for (OMElement rstElem : rstElems) {
+            // Axiom trees are not thread safe, an issuer run on another thread reads a copy
+            // of its own request
+            RahasData data = new RahasData(inMsgCtx, parallel ? copy(rstElem) : rstElem);
+            if (!isIssueRequest(data.getRequestType())) {
+                throw new TrustException(TrustException.INVALID_REQUEST);
+            }
+            requests.add(data);
+            issuers.add(getIssuer(data.getTokenType()));
+        }
+        if (requests.isEmpty()) {
+            throw new TrustException(TrustException.INVALID_REQUEST);
+        }
+
+        List<SOAPEnvelope> responses;
+        if (parallel) {
+            responses = issueConcurrently(inMsgCtx, issuers, requests);
+        } else {
+            responses = new ArrayList<SOAPEnvelope>(requests.size());
+            for (int i = 0; i < requests.size(); i++) {
+                responses.add(issuers.get(i).issue(requests.get(i)));
+            }
+        }
+
+        SOAPEnvelope response = TrustUtil.createSOAPEnvelope(
+                inMsgCtx.getEnvelope().getNamespace().getNamespaceURI());
+        OMElement rstrcElem = TrustUtil.createRequestSecurityTokenResponseCollectionElement(
+                version, response.getBody());
+        for (SOAPEnvelope itemResponse : responses) {
+            OMElement itemElem = itemResponse.getBody().getFirstElement();
+            Iterator rstrElems;
+            if (RahasConstants.LocalNames.REQUEST_SECURITY_TOKEN_RESPONSE_COLLECTION
+                    .equals(itemElem.getLocalName())) {
+                rstrElems = itemElem.getChildElements();
+            } else {
+                rstrElems = Collections.singletonList(itemElem).iterator();
+            }
+            while (rstrElems.hasNext()) {
+                rstrcElem.addChild((OMElement) rstrcElem.getOMFactory()
+                        .importInformationItem((OMElement) rstrElems.next()));
+            }
+        }
+
+        //set the response wsa/soap action in the out message context
+        outMsgCtx.getOptions().setAction(issuers.get(0).getResponseAction(requests.get(0)));
+
+        if(mlog.isDebugEnabled()){
+            mlog.debug("*********************** TokenRequestDispatcher sent out \n"+response);
+        }
+
+        return response;
+    }
+
+    /**
+     * Returns a fully built copy of the given element, which does not share any node with the
+     * message.
+     */
+    private static OMElement copy(OMElement element) {
+        OMElement copy = element.cloneOMElement();
+        copy.build();
+        return copy;
+    }
+
+    private List<SOAPEnvelope> issueConcurrently(MessageContext inMsgCtx,
+                                                 List<TokenIssuer> issuers,
+                                                 List<RahasData> requests) throws TrustException {
+        // Created here rather than by the first issuer, the issuers only read it
+        TrustUtil.getTokenStore(inMsgCtx);
+
+        ExecutorService executor = getBatchExecutor();
+        List<Future<SOAPEnvelope>> futures = new ArrayList<Future<SOAPEnvelope>>(requests.size());
+        for (int i = 0; i < requests.size(); i++) {
+            final TokenIssuer issuer = issuers.get(i);
+            final RahasData data = requests.get(i);
+            futures.add(executor.submit(new Callable<SOAPEnvelope>() {
+                public SOAPEnvelope call() throws Exception {
+                    return issuer.issue(data);
+                }
+            }));
+        }
+
+        List<SOAPEnvelope> responses = new ArrayList<SOAPEnvelope>(futures.size());
+        try {
+            for (Future<SOAPEnvelope> future : futures) {
+                responses.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TrustException("errorInBatchIssuance", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TrustException) {
+                throw (TrustException) e.getCause();
+            }
+            throw new TrustException("errorInBatchIssuance", e.getCause());
+        } finally {
+            for (Future<SOAPEnvelope> future : futures) {
+                future.cancel(true);
+            }
+        }
+        return responses;
+    }
+
+    private TokenIssuer getIssuer(String tokenType) throws TrustException {
+        if (tokenType == null ||  tokenType.trim().length() == 0) {
+            return config.getDefaultIssuerInstace();
+        } else {
+            return config.getIssuer(tokenType);
+        }
+    }
+
+    private static boolean isIssueRequest(String reqType) {
+        return (RahasConstants.WST_NS_05_02 + RahasConstants.REQ_TYPE_ISSUE).equals(reqType) ||
+                (RahasConstants.WST_NS_05_12 + RahasConstants.REQ_TYPE_ISSUE).equals(reqType);
+    }
+
+    /**
+     * Stops the threads issuing the tokens of collections once their requests are done. They
+     * are started again if needed.
+     */
+    public static synchronized void shutdown() {
+        if (batchExecutor != null) {
+            batchExecutor.shutdown();
+            batchExecutor = null;
+        }
+    }
+
+    /**
+     * Returns the executor issuing the tokens of collections. Its threads are daemon threads
+     * that stop when idle, and a request is issued by the calling thread when the queue is
+     * full or the executor has been shut down, so a burst of collections cannot queue up work
+     * without bound.
+     */
+    private static ExecutorService getBatchExecutor() {
+        ExecutorService current = batchExecutor;
+        if (current == null) {
+            synchronized (TokenRequestDispatcher.class) {
+                current = batchExecutor;
+                if (current == null) {
+                    ThreadPoolExecutor executor = new ThreadPoolExecutor(BATCH_THREADS,
+                            BATCH_THREADS, 60, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(BATCH_THREADS * 16),
+                            new ThreadFactory() {
+                                private final AtomicInteger count = new AtomicInteger();
+
+                                public Thread newThread(Runnable r) {
+                                    Thread thread = new Thread(r,
+                                            "rahas-batch-issuer-" + count.incrementAndGet());
+                                    thread.setDaemon(true);
+                                    return thread;
+                                }
+                            },
+                            new RejectedExecutionHandler() {
+                                public void rejectedExecution(Runnable r,
+                                                              ThreadPoolExecutor e) {
+                                    r.run();
+                                }
+                            });
+                    executor.allowCoreThreadTimeOut(true);
+                    batchExecutor = executor;
+                    current = executor;
+                }
+            }
+        }
+        return current;
+    }
     
 }
@@ -26,6 +26,7 @@ import java.io.FileInputStream;
 import java.util.Hashtable;
 import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class TokenRequestDispatcherConfig {
 
@@ -41,6 +42,13 @@ public class TokenRequestDispatcherConfig {
     private final static QName CLASS_ATTR = new QName("class");
     private final static QName DEFAULT_ATTR = new QName("default");
     private final static QName CONFIGURATION_ELEMENT = new QName("configuration");
+    private final static QName PARALLEL_BATCH_ISSUANCE_ATTR = new QName("parallelBatchIssuance");
+    private final static QName MAX_COLLECTION_SIZE_ATTR = new QName("maxCollectionSize");
+
+    /**
+     * Default maximum number of requests in a <code>RequestSecurityTokenCollection</code>.
+     */
+    public static final int DEFAULT_MAX_COLLECTION_SIZE = 100;
 
     private Map issuers;
     private Map validators;
@@ -54,13 +62,57 @@ public class TokenRequestDispatcherConfig {
     private String defaultValidatorClassName;
     private String defaultRenewerClassName;
 
+    private boolean parallelBatchIssuance;
+
+    private int maxCollectionSize = DEFAULT_MAX_COLLECTION_SIZE;
+
+    private Map<String, Class> handlerClasses = new ConcurrentHashMap<String, Class>();
+
+    private static ConfigurationCache<TokenRequestDispatcherConfig> configCache =
+            new ConfigurationCache<TokenRequestDispatcherConfig>(
+                    new ConfigurationCache.Factory<TokenRequestDispatcherConfig>() {
+                        public TokenRequestDispatcherConfig create(OMElement element)
+                                throws TrustException {
+                            return build(element);
+                        }
+
+                        public TokenRequestDispatcherConfig create(String configFilePath)
+                                throws TrustException {
+                            return build(configFilePath);
+                        }
+                    });
+
+    /**
+     * Returns the dispatcher configuration of the given element. The configuration is only
+     * built the first time, and shared by subsequent calls with the same element.
+     * @param configElem The <code>token-dispatcher-configuration</code> element
+     * @return The dispatcher configuration
+     * @throws TrustException
+     */
     public static TokenRequestDispatcherConfig load(OMElement configElem) throws TrustException {
+        return configCache.get(configElem);
+    }
+
+    private static TokenRequestDispatcherConfig build(OMElement configElem) throws TrustException {
 
         if (!DISPATCHER_CONFIG.equals(configElem.getQName())) {
             throw new TrustException("incorrectConfiguration");
         }
         TokenRequestDispatcherConfig conf = new TokenRequestDispatcherConfig();
 
+        conf.parallelBatchIssuance = "true".equalsIgnoreCase(
+                configElem.getAttributeValue(PARALLEL_BATCH_ISSUANCE_ATTR));
+
+        String maxCollectionSize = configElem.getAttributeValue(MAX_COLLECTION_SIZE_ATTR);
+        if (maxCollectionSize != null) {
+            try {
+                conf.maxCollectionSize = Integer.parseInt(maxCollectionSize.trim());
+            } catch (NumberFormatException e) {
+                throw new TrustException("invalidMaxCollectionSize",
+                        new String[]{maxCollectionSize}, e);
+            }
+        }
+
         // Issuers
         handleIssuers(configElem, conf);
         
@@ -260,7 +312,18 @@ public class TokenRequestDispatcherConfig {
         }
     }
 
+    /**
+     * Returns the dispatcher configuration of the given file. The configuration is only built
+     * again when the file is modified.
+     * @param configFilePath Path to the configuration file
+     * @return The dispatcher configuration
+     * @throws TrustException
+     */
     public static TokenRequestDispatcherConfig load(String configFilePath) throws TrustException {
+        return configCache.get(configFilePath);
+    }
+
+    private static TokenRequestDispatcherConfig build(String configFilePath) throws TrustException {
         FileInputStream fis;
         OMXMLParserWrapper builder;
         try {
@@ -269,7 +332,7 @@ public class TokenRequestDispatcherConfig {
         } catch (Exception e) {
             throw new TrustException("errorLoadingConfigFile", new String[]{configFilePath}, e);
         }
-        return load(builder.getDocumentElement());
+        return build(builder.getDocumentElement());
     }
 
     public TokenIssuer getDefaultIssuerInstace() throws TrustException {
@@ -329,6 +392,27 @@ public class TokenRequestDispatcherConfig {
         return this.defaultIssuerClassName;
     }
 
+    /**
+     * Tells whether the tokens of a <code>RequestSecurityTokenCollection</code> are issued
+     * concurrently, which is enabled by a <code>parallelBatchIssuance="true"</code> attribute
+     * of the configuration element. The issuers must then tolerate concurrent calls for the
+     * same message.
+     * @return true if the tokens of a collection are issued concurrently
+     */
+    public boolean isParallelBatchIssuance() {
+        return this.parallelBatchIssuance;
+    }
+
+    /**
+     * Returns the maximum number of requests in a <code>RequestSecurityTokenCollection</code>,
+     * set by a <code>maxCollectionSize</code> attribute of the configuration element. Larger
+     * collections are rejected.
+     * @return The maximum number of requests in a collection
+     */
+    public int getMaxCollectionSize() {
+        return this.maxCollectionSize;
+    }
+
 
     public TokenIssuer getIssuer(String tokenType) throws TrustException {
         String issuerClassName = null;
@@ -384,13 +468,30 @@ public class TokenRequestDispatcherConfig {
         }
     }
 
+    /**
+     * Loads the given handler class, only the first time it is needed.
+     * <p>
+     * Handlers are still instantiated for each request, since they are not required to be
+     * thread safe. Their configurations are cached by the handlers instead.
+     * @param className Name of the handler class
+     * @return The handler class
+     * @throws ClassNotFoundException
+     */
+    private Class getHandlerClass(String className) throws ClassNotFoundException {
+        Class handlerClass = this.handlerClasses.get(className);
+        if (handlerClass == null) {
+            handlerClass = Loader.loadClass(this.getClass().getClassLoader(), className);
+            this.handlerClasses.put(className, handlerClass);
+        }
+        return handlerClass;
+    }
+
     /**
      * @param issuerClassName
      * @return TokenIssuer
      */
     private TokenIssuer createIssuer(String issuerClassName) throws Exception {
-        TokenIssuer issuer = (TokenIssuer) Loader.loadClass(this.getClass().getClassLoader(), 
-                                                                    issuerClassName).newInstance();
+        TokenIssuer issuer = (TokenIssuer) getHandlerClass(issuerClassName).newInstance();
         issuer.setConfigurationElement((OMElement) this.configElements.get(issuerClassName));
         issuer.setConfigurationFile((String) this.configFiles.get(issuerClassName));
         issuer.setConfigurationParamName((String) this.configParamNames.get(issuerClassName));
@@ -398,8 +499,7 @@ public class TokenRequestDispatcherConfig {
     }
 
     private TokenCanceler createCanceler(String cancelerClassName) throws Exception {
-        TokenCanceler canceler = (TokenCanceler) Loader.loadClass(this.getClass().getClassLoader(),
-                                                                   cancelerClassName).newInstance();
+        TokenCanceler canceler = (TokenCanceler) getHandlerClass(cancelerClassName).newInstance();
         canceler.setConfigurationElement((OMElement) this.configElements.get(cancelerClassName));
         canceler.setConfigurationFile((String) this.configFiles.get(cancelerClassName));
         canceler.setConfigurationParamName((String) this.configParamNames.get(cancelerClassName));
@@ -407,8 +507,7 @@ public class TokenRequestDispatcherConfig {
     }
     
     private TokenValidator createValidator(String validatorClassName) throws Exception {
-        TokenValidator validator = (TokenValidator) Loader.loadClass(this.getClass().getClassLoader(),
-                                                                validatorClassName).newInstance();
+        TokenValidator validator = (TokenValidator) getHandlerClass(validatorClassName).newInstance();
         validator.setConfigurationElement((OMElement) this.configElements.get(validatorClassName));
         validator.setConfigurationFile((String) this.configFiles.get(validatorClassName));
         validator.setConfigurationParamName((String) this.configParamNames.get(validatorClassName));
@@ -416,8 +515,7 @@ public class TokenRequestDispatcherConfig {
     }
     
     private TokenRenewer createRenewer (String renewerClassName) throws Exception {
-        TokenRenewer renewer = (TokenRenewer) Loader.loadClass(this.getClass().getClassLoader(),
-                                                                    renewerClassName).newInstance();
+        TokenRenewer renewer = (TokenRenewer) getHandlerClass(renewerClassName).newInstance();
         renewer.setConfigurationElement((OMElement) this.configElements.get(renewerClassName));
         renewer.setConfigurationFile((String) this.configFiles.get(renewerClassName));
         renewer.setConfigurationParamName((String) this.configParamNames.get(renewerClassName));
@@ -16,7 +16,6 @@
 
 package org.apache.rahas;
 
-import java.security.SecureRandom;
 import java.text.DateFormat;
 import java.util.Date;
 import java.util.Iterator;
@@ -35,6 +34,7 @@ import org.apache.axis2.addressing.AddressingConstants;
 import org.apache.axis2.context.ConfigurationContext;
 import org.apache.axis2.context.MessageContext;
 import org.apache.rahas.impl.AbstractIssuerConfig;
+import org.apache.rahas.impl.util.KeyGenerationUtil;
 import org.apache.ws.security.WSConstants;
 import org.apache.ws.security.message.token.Reference;
 import org.apache.ws.security.message.token.SecurityTokenReference;
@@ -104,6 +104,16 @@ public class TrustUtil {
                                 RahasConstants.WST_PREFIX);
     }
 
+    public static OMElement createRequestSecurityTokenCollectionElement(int version)
+            throws TrustException {
+        String ns = getWSTNamespace(version);
+        OMFactory fac = OMAbstractFactory.getOMFactory();
+        return fac.
+                createOMElement(RahasConstants.LocalNames.REQUEST_SECURITY_TOKEN_COLLECTION,
+                                ns,
+                                RahasConstants.WST_PREFIX);
+    }
+
     public static OMElement createRequestedProofTokenElement(
             int version, OMElement parent) throws TrustException {
         String ns = getWSTNamespace(version);
@@ -501,10 +511,7 @@ public class TrustUtil {
      */
     protected byte[] generateEphemeralKey(int keySize) throws TrustException {
         try {
-            SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
-            byte[] temp = new byte[keySize / 8];
-            random.nextBytes(temp);
-            return temp;
+            return KeyGenerationUtil.generateRandomBytes(keySize / 8);
         } catch (Exception e) {
             throw new TrustException("Error in creating the ephemeral key", e);
         }
@@ -521,10 +528,7 @@ public class TrustUtil {
                                           String algo,
                                           int keySize) throws TrustException {
         try {
-            SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
-            byte[] temp = new byte[keySize / 8];
-            random.nextBytes(temp);
-            return temp;
+            return KeyGenerationUtil.generateRandomBytes(keySize / 8);
         } catch (Exception e) {
             throw new TrustException("Error in creating the ephemeral key", e);
         }
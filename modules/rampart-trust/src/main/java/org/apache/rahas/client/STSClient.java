@@ -33,6 +33,7 @@ import org.apache.axis2.description.AxisOperation;
 import org.apache.axis2.description.AxisService;
 import org.apache.axis2.description.OutInAxisOperation;
 import org.apache.axis2.description.Parameter;
+import org.apache.axis2.transport.http.HTTPConstants;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
 import org.apache.neethi.Assertion;
@@ -75,6 +76,10 @@ public class STSClient {
 
     private static final String RAMPART_POLICY = "rampartPolicy";
 
+    static final QName RST_OPERATION = new QName("requestSecurityToken");
+
+    static final QName CANCEL_OPERATION = new QName("cancelSecurityToken");
+
     private static Log log = LogFactory.getLog(STSClient.class);
 
     private String action;
@@ -109,6 +114,7 @@ public class STSClient {
     private Crypto crypto;
     private CallbackHandler cbHandler;
     private ConfigurationContext configCtx;
+    private ServiceClientPool serviceClientPool;
 
     public STSClient(ConfigurationContext configCtx) throws TrustException {
         if (configCtx != null) {
@@ -119,38 +125,90 @@ public class STSClient {
     }
 
     public Token requestSecurityToken(Policy servicePolicy,
-                                      String issuerAddress,
+                                      final String issuerAddress,
                                       Policy issuerPolicy,
-                                      String appliesTo) throws TrustException {
-        try {
-            QName rstQn = new QName("requestSecurityToken");
+                                      final String appliesTo) throws TrustException {
+        return issue(servicePolicy, issuerAddress, issuerPolicy, new IssueExchange<Token>() {
+            public OMElement createRequest() throws TrustException {
+                return createIssueRequest(appliesTo);
+            }
 
-            ServiceClient client = getServiceClient(rstQn, issuerAddress);
-            
-            for (int i = 0; i < parameters.size(); i++) {
-                Parameter param = (Parameter)parameters.get(i);
-                client.getAxisService().addParameter(param.getName(), param.getValue());
+            public Token processResponse(OMElement response) throws TrustException {
+                return processIssueResponse(version, response, issuerAddress);
             }
-            
-            client.getServiceContext().setProperty(RAMPART_POLICY, issuerPolicy);
-            client.getOptions().setSoapVersionURI(this.soapVersion);
+        });
+    }
 
-            if(this.addressingNs != null) {
-                client.getOptions().setProperty(AddressingConstants.WS_ADDRESSING_VERSION, this.addressingNs);
+    /**
+     * Requests a token for each of the given targets in a single
+     * <code>RequestSecurityTokenCollection</code>, so that the exchange with the issuer and
+     * the processing of its security header are done once for all of them.
+     * @param servicePolicy The policy of the service the tokens are used with
+     * @param issuerAddress The address of the issuer
+     * @param issuerPolicy The policy of the issuer
+     * @param appliesTo The addresses the tokens are applicable to, <code>null</code> entries
+     *                  for requests without <code>AppliesTo</code>
+     * @return The issued tokens, in the order of the targets
+     * @throws TrustException If the tokens cannot be obtained
+     */
+    public List<Token> requestSecurityTokens(Policy servicePolicy,
+                                             final String issuerAddress,
+                                             Policy issuerPolicy,
+                                             final List<String> appliesTo) throws TrustException {
+        final List<IssueRequest> requests = new ArrayList<IssueRequest>(appliesTo.size());
+        return issue(servicePolicy, issuerAddress, issuerPolicy, new IssueExchange<List<Token>>() {
+            public OMElement createRequest() throws TrustException {
+                return createIssueRequestCollection(appliesTo, requests);
             }
-            client.engageModule("addressing");
-            client.engageModule("rampart");
 
-            //Process the STS and service policy policy
-            this.processPolicy(issuerPolicy, servicePolicy);
-            
+            public List<Token> processResponse(OMElement response) throws TrustException {
+                return processIssueResponseCollection(response, issuerAddress, requests);
+            }
+        });
+    }
+
+    /**
+     * Builds an issue request and processes its response, once the client is set up for the
+     * issuer.
+     */
+    private interface IssueExchange<T> {
+
+        OMElement createRequest() throws TrustException;
+
+        T processResponse(OMElement response) throws TrustException;
+    }
+
+    /**
+     * Sends an issue request to the issuer and processes its response.
+     */
+    private <T> T issue(Policy servicePolicy, String issuerAddress, Policy issuerPolicy,
+                        IssueExchange<T> exchange) throws TrustException {
+        try {
+            QName rstQn = RST_OPERATION;
+
+            ServiceClient client = getServiceClient(rstQn, issuerAddress, true);
             try {
-                OMElement response = client.sendReceive(rstQn,
-                                                        createIssueRequest(appliesTo));
-    
-                return processIssueResponse(version, response, issuerAddress);
+                for (int i = 0; i < parameters.size(); i++) {
+                    Parameter param = (Parameter)parameters.get(i);
+                    client.getAxisService().addParameter(param.getName(), param.getValue());
+                }
+
+                client.getServiceContext().setProperty(RAMPART_POLICY, issuerPolicy);
+                client.getOptions().setSoapVersionURI(this.soapVersion);
+
+                if(this.addressingNs != null) {
+                    client.getOptions().setProperty(AddressingConstants.WS_ADDRESSING_VERSION, this.addressingNs);
+                }
+
+                //Process the STS and service policy policy
+                this.processPolicy(issuerPolicy, servicePolicy);
+
+                OMElement response = client.sendReceive(rstQn, exchange.createRequest());
+
+                return exchange.processResponse(response);
             } finally {
                 client.cleanupTransport();
+                releaseServiceClient(client, issuerAddress, true);
             }
         } catch (AxisFault e) {
             log.error("errorInObtainingToken", e);
@@ -158,6 +216,57 @@ public class STSClient {
         }
     }
 
+    /**
+     * Creates a <code>RequestSecurityTokenCollection</code> with an issue request for each of
+     * the given targets.
+     * @param appliesTo The addresses the tokens are applicable to
+     * @param requests Receives the requests, to process their responses
+     * @return The request collection
+     * @throws TrustException If a request cannot be created
+     */
+    OMElement createIssueRequestCollection(List<String> appliesTo,
+                                           List<IssueRequest> requests) throws TrustException {
+        OMElement rstc = TrustUtil.createRequestSecurityTokenCollectionElement(version);
+        for (String target : appliesTo) {
+            IssueRequest request = newIssueRequest(target);
+            rstc.addChild(request.rst);
+            requests.add(request);
+        }
+        return rstc;
+    }
+
+    /**
+     * Extracts the tokens of a <code>RequestSecurityTokenResponseCollection</code>, each with
+     * the requestor entropy and key size of the request it answers.
+     * @param response The response collection
+     * @param issuerAddress The address of the issuer
+     * @param requests The requests of the collection, in order
+     * @return The issued tokens, in the order of the requests
+     * @throws TrustException If there is not one token per request, or a token cannot be
+     *                        extracted
+     */
+    List<Token> processIssueResponseCollection(OMElement response, String issuerAddress,
+                                               List<IssueRequest> requests) throws TrustException {
+        List<Token> tokens = new ArrayList<Token>(requests.size());
+        Iterator rstrs = response.getChildrenWithName(new QName(
+                TrustUtil.getWSTNamespace(version),
+                RahasConstants.LocalNames.REQUEST_SECURITY_TOKEN_RESPONSE));
+        while (rstrs.hasNext()) {
+            if (tokens.size() == requests.size()) {
+                throw new TrustException("unexpectedNumberOfTokens",
+                        new String[]{String.valueOf(requests.size())});
+            }
+            IssueRequest request = requests.get(tokens.size());
+            tokens.add(processIssuedToken(version, (OMElement) rstrs.next(), issuerAddress,
+                    request.requestorEntropy, request.keySize));
+        }
+        if (tokens.size() != requests.size()) {
+            throw new TrustException("unexpectedNumberOfTokens",
+                    new String[]{String.valueOf(requests.size())});
+        }
+        return tokens;
+    }
+
     /**
      * Cancel a particular security token
      *
@@ -170,14 +279,18 @@ public class STSClient {
                                String tokenId,
                                String action) throws TrustException {
         try {
-            QName rstQn = new QName("cancelSecurityToken");
-            ServiceClient client = getServiceClient(rstQn, issuerAddress);
-            if(action != null) {
-                client.getOptions().setAction(action);
+            QName rstQn = CANCEL_OPERATION;
+            ServiceClient client = getServiceClient(rstQn, issuerAddress, false);
+            try {
+                if(action != null) {
+                    client.getOptions().setAction(action);
+                }
+
+                return processCancelResponse(client.sendReceive(rstQn,
+                                                                createCancelRequest(tokenId)));
+            } finally {
+                releaseServiceClient(client, issuerAddress, false);
             }
-            
-            return processCancelResponse(client.sendReceive(rstQn,
-                                                            createCancelRequest(tokenId)));
         } catch (AxisFault e) {
             log.error("errorInCancelingToken", e);
             throw new TrustException("errorInCancelingToken", e);
@@ -188,27 +301,27 @@ public class STSClient {
                                  String issuerAddress,
                                  Policy issuerPolicy) throws TrustException {
         try {
-            QName rstQn = new QName("requestSecurityToken");
+            QName rstQn = RST_OPERATION;
             String requestType =
                     TrustUtil.getWSTNamespace(version) + RahasConstants.REQ_TYPE_VALIDATE;
             
-            ServiceClient client = getServiceClient(rstQn, issuerAddress);
-            
-            client.getServiceContext().setProperty(RAMPART_POLICY, issuerPolicy);
-            client.getOptions().setSoapVersionURI(this.soapVersion);
-            if(this.addressingNs != null) {
-                client.getOptions().setProperty(AddressingConstants.WS_ADDRESSING_VERSION, this.addressingNs);
-            }
-            client.engageModule("addressing");
-            client.engageModule("rampart");
+            ServiceClient client = getServiceClient(rstQn, issuerAddress, true);
+            try {
+                client.getServiceContext().setProperty(RAMPART_POLICY, issuerPolicy);
+                client.getOptions().setSoapVersionURI(this.soapVersion);
+                if(this.addressingNs != null) {
+                    client.getOptions().setProperty(AddressingConstants.WS_ADDRESSING_VERSION, this.addressingNs);
+                }
 
-            this.processPolicy(issuerPolicy, null);
-            
-            OMElement response = client.sendReceive(rstQn,
-                                                    createValidateRequest(requestType,tokenId));
-            
-            return true;
-            
+                this.processPolicy(issuerPolicy, null);
+
+                OMElement response = client.sendReceive(rstQn,
+                                                        createValidateRequest(requestType,tokenId));
+
+                return true;
+            } finally {
+                releaseServiceClient(client, issuerAddress, true);
+            }
             
         } catch (AxisFault e) {
             log.error("errorInValidatingToken", e);
@@ -222,26 +335,27 @@ public class STSClient {
                               Policy issuerPolicy) throws TrustException {
         
         try {
-        QName rstQn = new QName("requestSecurityToken");
-        
-        ServiceClient client = getServiceClient(rstQn, issuerAddress);
+        QName rstQn = RST_OPERATION;
         
-        client.getServiceContext().setProperty(RAMPART_POLICY, issuerPolicy);
-        client.getOptions().setSoapVersionURI(this.soapVersion);
-        if(this.addressingNs != null) {
-            client.getOptions().setProperty(AddressingConstants.WS_ADDRESSING_VERSION, this.addressingNs);
-        }
-        client.engageModule("addressing");
-        client.engageModule("rampart");
+        ServiceClient client = getServiceClient(rstQn, issuerAddress, true);
+        try {
+            client.getServiceContext().setProperty(RAMPART_POLICY, issuerPolicy);
+            client.getOptions().setSoapVersionURI(this.soapVersion);
+            if(this.addressingNs != null) {
+                client.getOptions().setProperty(AddressingConstants.WS_ADDRESSING_VERSION, this.addressingNs);
+            }
 
-        this.processPolicy(issuerPolicy, null);
-        
-        String tokenType = RahasConstants.TOK_TYPE_SAML_10;
-        
-        OMElement response = client.sendReceive(rstQn,
-                                                createRenewRequest(tokenType,tokenId));
-        
-        return true;
+            this.processPolicy(issuerPolicy, null);
+
+            String tokenType = RahasConstants.TOK_TYPE_SAML_10;
+
+            OMElement response = client.sendReceive(rstQn,
+                                                    createRenewRequest(tokenType,tokenId));
+
+            return true;
+        } finally {
+            releaseServiceClient(client, issuerAddress, true);
+        }
         
         } catch (AxisFault e) {
             log.error("errorInRenewingToken", e);
@@ -264,27 +378,28 @@ public class STSClient {
                               Policy issuerPolicy, TokenStorage store) throws TrustException {
 
         try {
-            QName rstQn = new QName("requestSecurityToken");
-
-            ServiceClient client = getServiceClient(rstQn, issuerAddress);
+            QName rstQn = RST_OPERATION;
 
-            client.getServiceContext().setProperty(RAMPART_POLICY, issuerPolicy);
-            client.getOptions().setSoapVersionURI(this.soapVersion);
-            if (this.addressingNs != null) {
-                client.getOptions().setProperty(AddressingConstants.WS_ADDRESSING_VERSION, this.addressingNs);
-            }
-            client.engageModule("addressing");
-            client.engageModule("rampart");
+            ServiceClient client = getServiceClient(rstQn, issuerAddress, true);
+            try {
+                client.getServiceContext().setProperty(RAMPART_POLICY, issuerPolicy);
+                client.getOptions().setSoapVersionURI(this.soapVersion);
+                if (this.addressingNs != null) {
+                    client.getOptions().setProperty(AddressingConstants.WS_ADDRESSING_VERSION, this.addressingNs);
+                }
 
-            this.processPolicy(issuerPolicy, null);
+                this.processPolicy(issuerPolicy, null);
 
-            String tokenType = RahasConstants.TOK_TYPE_SAML_10;
+                String tokenType = RahasConstants.TOK_TYPE_SAML_10;
 
-            OMElement response = client.sendReceive(rstQn,
-                    createRenewRequest(tokenType, tokenId));
-            store.update(processRenewResponse(version, response, store, tokenId));
+                OMElement response = client.sendReceive(rstQn,
+                        createRenewRequest(tokenType, tokenId));
+                store.update(processRenewResponse(version, response, store, tokenId));
 
-            return true;
+                return true;
+            } finally {
+                releaseServiceClient(client, issuerAddress, true);
+            }
 
         } catch (AxisFault e) {
             log.error("errorInRenewingToken", e);
@@ -364,25 +479,60 @@ public class STSClient {
 
 
     private ServiceClient getServiceClient(QName rstQn,
-                                           String issuerAddress) throws AxisFault {
-        AxisService axisService =
-                new AxisService("SecurityTokenService" + UUIDGenerator.getUUID());
-        axisService.setClientSide(true);
-        AxisOperation operation = new OutInAxisOperation(rstQn);
-        axisService.addOperation(operation);
-        ServiceClient client = new ServiceClient(this.configCtx, axisService);
-
-        if (this.options != null) {
-            client.setOptions(options);
+                                           String issuerAddress,
+                                           boolean addressing) throws AxisFault {
+        ServiceClient client;
+        if (this.serviceClientPool != null) {
+            client = this.serviceClientPool.borrow(issuerAddress, addressing);
+
+            // The options of the previous exchange must not be used
+            client.setOptions(this.options != null ? this.options : new Options());
+
+            // The client is put back in the pool after the exchange, while the response is
+            // still in use, so it has to be read before that
+            client.getOptions().setCallTransportCleanup(true);
+            if (client.getOptions().getProperty(HTTPConstants.REUSE_HTTP_CLIENT) == null) {
+                client.getOptions().setProperty(HTTPConstants.REUSE_HTTP_CLIENT, Boolean.TRUE);
+            }
+        } else {
+            AxisService axisService =
+                    new AxisService("SecurityTokenService" + UUIDGenerator.getUUID());
+            axisService.setClientSide(true);
+            AxisOperation operation = new OutInAxisOperation(rstQn);
+            axisService.addOperation(operation);
+            client = new ServiceClient(this.configCtx, axisService);
+
+            if (this.options != null) {
+                client.setOptions(options);
+            }
+            client.engageModule("rampart");
+            if (addressing) {
+                client.engageModule("addressing");
+            }
         }
 
         //Set the action
         client.getOptions().setAction(action);
         client.getOptions().setTo(new EndpointReference(issuerAddress));
-        client.engageModule("rampart");
         return client;
     }
 
+    private void releaseServiceClient(ServiceClient client, String issuerAddress,
+                                      boolean addressing) throws AxisFault {
+        if (this.serviceClientPool == null) {
+            return;
+        }
+
+        // Nothing of this exchange may be left for the next one
+        client.cleanupTransport();
+        client.getServiceContext().removeProperty(RAMPART_POLICY);
+        for (int i = 0; i < parameters.size(); i++) {
+            Parameter param = (Parameter) parameters.get(i);
+            client.getAxisService().removeParameter(param);
+        }
+        this.serviceClientPool.release(issuerAddress, addressing, client);
+    }
+
     /**
      * Processes the response from Token issuer.
      * @param version The supported version.
@@ -415,6 +565,17 @@ public class STSClient {
             rstr = result.getFirstElement();
         }
 
+        return processIssuedToken(version, rstr, issuerAddress, this.requestorEntropy,
+                this.keySize);
+    }
+
+    /**
+     * Extracts the issued token from a <code>RequestSecurityTokenResponse</code>, using the
+     * requestor entropy and key size of the request it answers.
+     */
+    private Token processIssuedToken(int version, OMElement rstr, String issuerAddress,
+            byte[] requestorEntropy, int keySize) throws TrustException {
+
         String ns = TrustUtil.getWSTNamespace(version);
 
         //Get the RequestedAttachedReference
@@ -510,11 +671,11 @@ public class STSClient {
                     //Right now we only use PSHA1 as the computed key algo                    
                     P_SHA1 p_sha1 = new P_SHA1();
 
-                    int length = (this.keySize > 0) ? keySize
+                    int length = (keySize > 0) ? keySize
                                  : this.algorithmSuite
                             .getMaximumSymmetricKeyLength();
                     try {
-                        secret = p_sha1.createKey(this.requestorEntropy, serviceEntr, 0, length/8);
+                        secret = p_sha1.createKey(requestorEntropy, serviceEntr, 0, length/8);
                     } catch (ConversationException e) {
                         throw new TrustException("keyDerivationError", e);
                     }
@@ -525,9 +686,9 @@ public class STSClient {
             }
 
         } else {
-            if (this.requestorEntropy != null) {
+            if (requestorEntropy != null) {
                 //Use requester entropy as the key
-                secret = this.requestorEntropy;
+                secret = requestorEntropy;
             }
         }
         token.setSecret(secret);
@@ -649,12 +810,52 @@ public class STSClient {
     }
 
     /**
-     * This creates a request security token (RST) message.
+     * This creates a request security token (RST) message. The requestor entropy and key size
+     * of the request are kept to process its response with {@link #processIssueResponse}.
      * @param appliesTo The address which token is applicable to.
      * @return The axiom object representation of RST.
      * @throws TrustException If an error occurred while creating the RST.
      */
     protected OMElement createIssueRequest(String appliesTo) throws TrustException {
+        IssueRequest request = newIssueRequest(appliesTo);
+        if (request.requestorEntropy != null) {
+            this.requestorEntropy = request.requestorEntropy;
+        }
+        if (request.keySize != 0) {
+            this.keySize = request.keySize;
+        }
+        return request.rst;
+    }
+
+    /**
+     * An issue request, with the requestor entropy and key size needed to process its
+     * response.
+     */
+    static class IssueRequest {
+
+        final OMElement rst;
+
+        final byte[] requestorEntropy;
+
+        final int keySize;
+
+        IssueRequest(OMElement rst, byte[] requestorEntropy, int keySize) {
+            this.rst = rst;
+            this.requestorEntropy = requestorEntropy;
+            this.keySize = keySize;
+        }
+    }
+
+    /**
+     * Creates an issue request without changing the state of the client.
+     * @param appliesTo The address which token is applicable to.
+     * @return The request with its requestor entropy and key size.
+     * @throws TrustException If an error occurred while creating the RST.
+     */
+    private IssueRequest newIssueRequest(String appliesTo) throws TrustException {
+
+        byte[] requestorEntropy = null;
+        int keySize = 0;
 
         String requestType =
                     TrustUtil.getWSTNamespace(version) + RahasConstants.REQ_TYPE_ISSUE;
@@ -688,12 +889,12 @@ public class STSClient {
                         new QName(TrustUtil.getWSTNamespace(this.version),
                                   RahasConstants.IssuanceBindingLocalNames.KEY_SIZE))) {
                     log.debug("Extracting key size from the RSTTemplate: ");
-                    this.keySize =
+                    keySize =
                             (child.getText() != null && !"".equals(child.getText())) ?
                             Integer.parseInt(child.getText()) :
                             -1;
                     if (log.isDebugEnabled()) {
-                        log.debug("Key size from RSTTemplate: " + this.keySize);
+                        log.debug("Key size from RSTTemplate: " + keySize);
                     }
                 }
             }
@@ -715,13 +916,13 @@ public class STSClient {
                             TrustUtil.createBinarySecretElement(this.version,
                                                                 ent,
                                                                 RahasConstants.BIN_SEC_TYPE_NONCE);
-                    this.requestorEntropy =
+                    requestorEntropy =
                             WSSecurityUtil.generateNonce(this.algorithmSuite.
                                     getMaximumSymmetricKeyLength()/8);
-                    binSec.setText(Base64Utils.encode(this.requestorEntropy));
+                    binSec.setText(Base64Utils.encode(requestorEntropy));
 
                     if (log.isDebugEnabled()) {
-                        log.debug("Clien entropy : " + Base64Utils.encode(this.requestorEntropy));
+                        log.debug("Clien entropy : " + Base64Utils.encode(requestorEntropy));
                     }
 
                     // Add the ComputedKey element
@@ -741,13 +942,13 @@ public class STSClient {
                             TrustUtil.createBinarySecretElement(this.version,
                                                                 ent,
                                                                 RahasConstants.BIN_SEC_TYPE_NONCE);
-                    this.requestorEntropy =
+                    requestorEntropy =
                             WSSecurityUtil.generateNonce(this.algorithmSuite.
                                     getMaximumSymmetricKeyLength()/8);
-                    binSec.setText(Base64Utils.encode(this.requestorEntropy));
+                    binSec.setText(Base64Utils.encode(requestorEntropy));
 
                     if (log.isDebugEnabled()) {
-                        log.debug("Clien entropy : " + Base64Utils.encode(this.requestorEntropy));
+                        log.debug("Clien entropy : " + Base64Utils.encode(requestorEntropy));
                     }
 
                     // Add the ComputedKey element
@@ -765,7 +966,7 @@ public class STSClient {
         }
 
         
-        return rst;
+        return new IssueRequest(rst, requestorEntropy, keySize);
         
     }
     
@@ -936,6 +1137,15 @@ public class STSClient {
         this.options = options;
     }
 
+    /**
+     * Sets the pool to take the service clients for the exchanges with the STS from. Without
+     * a pool a service client is created for every exchange.
+     * @param serviceClientPool The pool, may be <code>null</code>
+     */
+    public void setServiceClientPool(ServiceClientPool serviceClientPool) {
+        this.serviceClientPool = serviceClientPool;
+    }
+
     /**
      * @param rstTemplate The rstTemplate to set.
      */
@@ -0,0 +1,185 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rahas.client;
+
+import org.apache.axis2.AxisFault;
+import org.apache.axis2.client.ServiceClient;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.description.AxisService;
+import org.apache.axis2.description.OutInAxisOperation;
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ws.security.util.UUIDGenerator;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Keeps the service clients of {@link STSClient}s configured per issuer, so that a token
+ * exchange does not create, register and engage modules on a new <code>AxisService</code>.
+ * <p>
+ * A client is used by one exchange at a time: it is taken from the pool for the exchange and
+ * put back afterwards, so concurrent exchanges with the same issuer use different clients. Up
+ * to {@link #DEFAULT_MAX_IDLE} clients are kept per issuer, the others are cleaned up. The
+ * clients have the <code>rampart</code> module engaged, and <code>addressing</code> if asked
+ * for; everything else, such as the options and the policy, is set for each exchange.
+ */
+public class ServiceClientPool {
+
+    private static Log log = LogFactory.getLog(ServiceClientPool.class);
+
+    public static final String SERVICE_CLIENT_POOL_KEY = "org.apache.rahas.client.ServiceClientPool";
+
+    /**
+     * Number of idle clients kept per issuer.
+     */
+    public static final int DEFAULT_MAX_IDLE = 8;
+
+    private final ConfigurationContext configCtx;
+
+    private final ConcurrentMap<String, BlockingQueue<ServiceClient>> idleClients =
+            new ConcurrentHashMap<String, BlockingQueue<ServiceClient>>();
+
+    private volatile boolean closed;
+
+    ServiceClientPool(ConfigurationContext configCtx) {
+        this.configCtx = configCtx;
+    }
+
+    /**
+     * Returns the pool of the given configuration context, creating it if needed.
+     * @param configCtx The configuration context
+     * @return The pool
+     */
+    public static ServiceClientPool getInstance(ConfigurationContext configCtx) {
+        synchronized (configCtx) {
+            ServiceClientPool pool = (ServiceClientPool) configCtx.getProperty(SERVICE_CLIENT_POOL_KEY);
+            if (pool == null) {
+                pool = new ServiceClientPool(configCtx);
+                configCtx.setProperty(SERVICE_CLIENT_POOL_KEY, pool);
+            }
+            return pool;
+        }
+    }
+
+    /**
+     * Cleans up the pool of the given configuration context, if it has one.
+     * @param configCtx The configuration context
+     */
+    public static void shutdown(ConfigurationContext configCtx) {
+        ServiceClientPool pool;
+        synchronized (configCtx) {
+            pool = (ServiceClientPool) configCtx.getProperty(SERVICE_CLIENT_POOL_KEY);
+            configCtx.removeProperty(SERVICE_CLIENT_POOL_KEY);
+        }
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    /**
+     * Takes a client for an exchange with the given issuer from the pool, or creates one.
+     * @param issuerAddress The address of the issuer
+     * @param addressing Whether the client has the addressing module engaged
+     * @return The client, which has to be {@link #release released} after the exchange
+     * @throws AxisFault If the client cannot be created
+     */
+    ServiceClient borrow(String issuerAddress, boolean addressing) throws AxisFault {
+        BlockingQueue<ServiceClient> idle = idleClients.get(getKey(issuerAddress, addressing));
+        ServiceClient client = idle == null ? null : idle.poll();
+        if (client != null) {
+            return client;
+        }
+
+        AxisService axisService =
+                new AxisService("SecurityTokenService" + UUIDGenerator.getUUID());
+        axisService.setClientSide(true);
+        axisService.addOperation(new OutInAxisOperation(STSClient.RST_OPERATION));
+        axisService.addOperation(new OutInAxisOperation(STSClient.CANCEL_OPERATION));
+        client = new ServiceClient(configCtx, axisService);
+        client.engageModule("rampart");
+        if (addressing) {
+            client.engageModule("addressing");
+        }
+
+        if (log.isDebugEnabled()) {
+            log.debug("Created service client " + axisService.getName() + " for " + issuerAddress);
+        }
+        return client;
+    }
+
+    /**
+     * Puts a client back in the pool after an exchange.
+     * @param issuerAddress The address of the issuer
+     * @param addressing Whether the client has the addressing module engaged
+     * @param client The client
+     */
+    void release(String issuerAddress, boolean addressing, ServiceClient client) {
+        String key = getKey(issuerAddress, addressing);
+        BlockingQueue<ServiceClient> idle = idleClients.get(key);
+        if (idle == null) {
+            BlockingQueue<ServiceClient> created =
+                    new LinkedBlockingQueue<ServiceClient>(DEFAULT_MAX_IDLE);
+            idle = idleClients.putIfAbsent(key, created);
+            if (idle == null) {
+                idle = created;
+            }
+        }
+
+        if (closed || !idle.offer(client)) {
+            cleanup(client);
+        } else if (closed && idle.remove(client)) {
+            // The pool was closed while the client was put back, after close() emptied it
+            cleanup(client);
+        }
+    }
+
+    /**
+     * Cleans up the idle clients; clients in use are cleaned up when they are released.
+     */
+    public void close() {
+        closed = true;
+        for (BlockingQueue<ServiceClient> idle : idleClients.values()) {
+            ServiceClient client;
+            while ((client = idle.poll()) != null) {
+                cleanup(client);
+            }
+        }
+    }
+
+    int getIdleCount(String issuerAddress, boolean addressing) {
+        BlockingQueue<ServiceClient> idle = idleClients.get(getKey(issuerAddress, addressing));
+        return idle == null ? 0 : idle.size();
+    }
+
+    private static String getKey(String issuerAddress, boolean addressing) {
+        return (addressing ? "wsa|" : "|") + issuerAddress;
+    }
+
+    private static void cleanup(ServiceClient client) {
+        try {
+            client.cleanup();
+        } catch (AxisFault e) {
+            log.debug("Cannot clean up service client", e);
+        }
+    }
+}
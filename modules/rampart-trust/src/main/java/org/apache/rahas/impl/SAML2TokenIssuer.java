@@ -27,7 +27,6 @@ import org.apache.rahas.impl.util.*;
 import org.apache.ws.security.components.crypto.Crypto;
 import org.apache.ws.security.util.XmlSchemaDateFormat;
 import org.apache.xml.security.c14n.Canonicalizer;
-import org.apache.xml.security.signature.XMLSignature;
 import org.joda.time.DateTime;
 import org.opensaml.Configuration;
 import org.opensaml.common.SAMLException;
@@ -41,13 +40,13 @@ import org.opensaml.xml.signature.*;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 
-import java.security.PrivateKey;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * WS-Trust based SAML2 token issuer. This issuer will generate request security token responses with SAML2
@@ -104,8 +103,7 @@ public class SAML2TokenIssuer implements TokenIssuer {
             throw new TrustException("configurationIsNull");
         }
 
-        SOAPEnvelope env = TrustUtil.createSOAPEnvelope(inMsgCtx
-                .getEnvelope().getNamespace().getNamespaceURI());
+        SOAPEnvelope env = TrustUtil.createSOAPEnvelope(data.getSoapNs());
 
         Crypto crypto = tokenIssuerConfiguration.getIssuerCrypto(inMsgCtx
                 .getAxisService().getClassLoader());
@@ -483,7 +481,8 @@ public class SAML2TokenIssuer implements TokenIssuer {
      * @return The signed assertion.
      * @throws TrustException If an error occurred while signing the assertion.
      */
-    protected Assertion signAssertion(Document document, Assertion assertion, Crypto crypto) throws TrustException {
+    protected Assertion signAssertion(final Document document, final Assertion assertion, Crypto crypto)
+            throws TrustException {
 
         // Create a SignKeyHolder to hold the crypto objects that are used to sign the assertion
         SignKeyHolder signKeyHolder = createSignKeyHolder(crypto);
@@ -514,21 +513,28 @@ public class SAML2TokenIssuer implements TokenIssuer {
 
             signatureList.add(signature);
 
-            //Marshall and Sign
-            MarshallerFactory marshallerFactory = org.opensaml.xml.Configuration.getMarshallerFactory();
-            Marshaller marshaller = marshallerFactory.getMarshaller(assertion);
-            marshaller.marshall(assertion, document);
-
-            Signer.signObjects(signatureList);
-
         } catch (CertificateEncodingException e) {
             throw new TrustException("Error in setting the signature", e);
-        } catch (SignatureException e) {
-            throw new TrustException("errorSigningAssertion", e);
-        } catch (MarshallingException e) {
-            throw new TrustException("errorMarshallingAssertion", e);
         }
 
+        SigningExecutor.call(new Callable<Object>() {
+            public Object call() throws TrustException {
+                try {
+                    //Marshall and Sign
+                    MarshallerFactory marshallerFactory = org.opensaml.xml.Configuration.getMarshallerFactory();
+                    Marshaller marshaller = marshallerFactory.getMarshaller(assertion);
+                    marshaller.marshall(assertion, document);
+
+                    Signer.signObjects(signatureList);
+                } catch (SignatureException e) {
+                    throw new TrustException("errorSigningAssertion", e);
+                } catch (MarshallingException e) {
+                    throw new TrustException("errorMarshallingAssertion", e);
+                }
+                return null;
+            }
+        }, tokenIssuerConfiguration.isUseSigningExecutor());
+
         log.debug("SAML2.0 assertion is marshalled and signed..");
 
         return assertion;
@@ -543,31 +549,17 @@ public class SAML2TokenIssuer implements TokenIssuer {
      */
     private SignKeyHolder createSignKeyHolder(Crypto crypto) throws TrustException {
 
-        SignKeyHolder signKeyHolder = new SignKeyHolder();
+        SignKeyHolder signKeyHolder;
 
         try {
-            X509Certificate[] issuerCerts = CommonUtil.getCertificatesByAlias(crypto,
-                    this.tokenIssuerConfiguration.getIssuerKeyAlias());
-
-            String sigAlgo = XMLSignature.ALGO_ID_SIGNATURE_RSA;
-            String pubKeyAlgo = issuerCerts[0].getPublicKey().getAlgorithm();
-            if (pubKeyAlgo.equalsIgnoreCase("DSA")) {
-                sigAlgo = XMLSignature.ALGO_ID_SIGNATURE_DSA;
-            }
-
-            java.security.Key issuerPK = crypto.getPrivateKey(
+            signKeyHolder = CommonUtil.getSignKeyHolder(crypto,
                     this.tokenIssuerConfiguration.getIssuerKeyAlias(),
                     this.tokenIssuerConfiguration.getIssuerKeyPassword());
-
-            signKeyHolder.setIssuerCerts(issuerCerts);
-            signKeyHolder.setIssuerPK((PrivateKey) issuerPK);
-            signKeyHolder.setSignatureAlgorithm(sigAlgo);
-
         } catch (Exception e) {
-            throw new TrustException("Error creating issuer signature");
+            throw new TrustException("Error creating issuer signature", e);
         }
 
-        log.debug("SignKeyHolder object is created with the credentials..");
+        log.debug("SignKeyHolder object is obtained with the credentials..");
 
         return signKeyHolder;
     }
@@ -717,7 +709,7 @@ public class SAML2TokenIssuer implements TokenIssuer {
      * @return OpenSAML representation of KeyInfo.
      * @throws TrustException If an error occurred while creating the KeyInfo object.
      */
-    protected KeyInfo createKeyInfo(Document doc, Crypto crypto, RahasData data)
+    protected KeyInfo createKeyInfo(final Document doc, final Crypto crypto, final RahasData data)
             throws TrustException {
 
         KeyInfo keyInfo;
@@ -733,8 +725,13 @@ public class SAML2TokenIssuer implements TokenIssuer {
                 // for
                 serviceCert = this.tokenIssuerConfiguration.getServiceCert(crypto, data.getAppliesToAddress());
 
-                keyInfo = CommonUtil.getSymmetricKeyBasedKeyInfo(doc, data, serviceCert, data.getKeySize(), crypto,
-                        tokenIssuerConfiguration.getKeyComputation());
+                final X509Certificate encryptionCert = serviceCert;
+                keyInfo = SigningExecutor.call(new Callable<KeyInfo>() {
+                    public KeyInfo call() throws Exception {
+                        return CommonUtil.getSymmetricKeyBasedKeyInfo(doc, data, encryptionCert,
+                                data.getKeySize(), crypto, tokenIssuerConfiguration.getKeyComputation());
+                    }
+                }, tokenIssuerConfiguration.isUseSigningExecutor());
 
             } catch (Exception e) {
                 if (serviceCert != null) {
@@ -44,12 +44,12 @@ import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 
 import java.security.Principal;
-import java.security.SecureRandom;
 import java.security.cert.X509Certificate;
 import java.text.DateFormat;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * Issuer to issue SAMl tokens
@@ -90,8 +90,7 @@ public class SAMLTokenIssuer implements TokenIssuer {
             throw new TrustException("configurationIsNull");
         }
 
-        SOAPEnvelope env = TrustUtil.createSOAPEnvelope(inMsgCtx
-                .getEnvelope().getNamespace().getNamespaceURI());
+        SOAPEnvelope env = TrustUtil.createSOAPEnvelope(data.getSoapNs());
 
         Crypto crypto = tokenIssuerConfiguration.getIssuerCrypto(inMsgCtx
                     .getAxisService().getClassLoader());
@@ -248,63 +247,61 @@ public class SAMLTokenIssuer implements TokenIssuer {
         }
     }
 
-    private Assertion createHoKAssertion(SAMLTokenIssuerConfig config,
-            Document doc, Crypto crypto, DateTime creationTime,
-            DateTime expirationTime, RahasData data) throws TrustException {
+    private Assertion createHoKAssertion(final SAMLTokenIssuerConfig config,
+            final Document doc, final Crypto crypto, DateTime creationTime,
+            DateTime expirationTime, final RahasData data) throws TrustException {
 
         if (data.getKeyType().endsWith(RahasConstants.KEY_TYPE_SYMM_KEY)) {
-            X509Certificate serviceCert = null;
-            try {
-
-                // TODO what if principal is null ?
-                NameIdentifier nameIdentifier = null;
-                if (data.getPrincipal() != null) {
-                    String subjectNameId = data.getPrincipal().getName();
-                    nameIdentifier =SAMLUtils.createNamedIdentifier(subjectNameId, NameIdentifier.EMAIL);
-                }
-
-                /**
-                 * In this case we need to create a KeyInfo similar to following,
-                 * *  <KeyInfo xmlns="http://www.w3.org/2000/09/xmldsig#">
-                 *     <xenc:EncryptedKey xmlns:xenc="http://www.w3.org/2001/04/xmlenc#"
-                 *           ....
-                 *     </xenc:EncryptedKey>
-                 *   </ds:KeyInfo>
-                 */
-
-                // Get ApliesTo to figure out which service to issue the token
-                // for
-                serviceCert = getServiceCert(config, crypto, data
-                        .getAppliesToAddress());
-
-                // set keySize
-                int keySize = data.getKeysize();
-                keySize = (keySize != -1) ? keySize : config.getKeySize();
-
-                // Create the encrypted key
-                KeyInfo encryptedKeyInfoElement
-                        = CommonUtil.getSymmetricKeyBasedKeyInfo(doc, data, serviceCert, keySize,
-                        crypto, config.getKeyComputation());
-
-                return this.createAttributeAssertion(data, encryptedKeyInfoElement, nameIdentifier, config,
-                    crypto, creationTime, expirationTime);
 
+            // TODO what if principal is null ?
+            NameIdentifier nameIdentifier = null;
+            if (data.getPrincipal() != null) {
+                String subjectNameId = data.getPrincipal().getName();
+                nameIdentifier =SAMLUtils.createNamedIdentifier(subjectNameId, NameIdentifier.EMAIL);
+            }
 
-            } catch (WSSecurityException e) {
-
-                if (serviceCert != null) {
-                    throw new TrustException(
-                            "errorInBuildingTheEncryptedKeyForPrincipal",
-                            new String[]{serviceCert.getSubjectDN().getName()},
-                            e);
-                } else {
-                    throw new TrustException(
-                            "trustedCertNotFoundForEPR",
-                            new String[]{data.getAppliesToAddress()},
-                            e);
+            /**
+             * In this case we need to create a KeyInfo similar to following,
+             * *  <KeyInfo xmlns="http://www.w3.org/2000/09/xmldsig#">
+             *     <xenc:EncryptedKey xmlns:xenc="http://www.w3.org/2001/04/xmlenc#"
+             *           ....
+             *     </xenc:EncryptedKey>
+             *   </ds:KeyInfo>
+             */
+
+            // Get ApliesTo to figure out which service to issue the token
+            // for
+            final X509Certificate serviceCert = getServiceCert(config, crypto, data
+                    .getAppliesToAddress());
+
+            // set keySize
+            int size = data.getKeysize();
+            final int keySize = (size != -1) ? size : config.getKeySize();
+
+            // Create the encrypted key
+            KeyInfo encryptedKeyInfoElement = SigningExecutor.call(new Callable<KeyInfo>() {
+                public KeyInfo call() throws TrustException {
+                    try {
+                        return CommonUtil.getSymmetricKeyBasedKeyInfo(doc, data, serviceCert,
+                                keySize, crypto, config.getKeyComputation());
+                    } catch (WSSecurityException e) {
+                        if (serviceCert != null) {
+                            throw new TrustException(
+                                    "errorInBuildingTheEncryptedKeyForPrincipal",
+                                    new String[]{serviceCert.getSubjectDN().getName()},
+                                    e);
+                        } else {
+                            throw new TrustException(
+                                    "trustedCertNotFoundForEPR",
+                                    new String[]{data.getAppliesToAddress()},
+                                    e);
+                        }
+                    }
                 }
+            }, config.isUseSigningExecutor());
 
-            }
+            return this.createAttributeAssertion(data, encryptedKeyInfoElement, nameIdentifier, config,
+                crypto, creationTime, expirationTime);
         } else {
             try {
 
@@ -417,7 +414,7 @@ public class SAMLTokenIssuer implements TokenIssuer {
             Assertion assertion = SAMLUtils.createAssertion(config.getIssuerName(), notBefore,
                     notAfter, attributeStatements);
 
-            SAMLUtils.signAssertion(assertion, crypto, config.getIssuerKeyAlias(), config.getIssuerKeyPassword());
+            signAssertion(assertion, crypto, config);
 
             return assertion;
         } catch (Exception e) {
@@ -425,6 +422,20 @@ public class SAMLTokenIssuer implements TokenIssuer {
         }
     }
 
+    /**
+     * Signs the assertion with the issuer's private key, on the signing threads if configured.
+     */
+    private void signAssertion(final Assertion assertion, final Crypto crypto,
+                               final SAMLTokenIssuerConfig config) throws TrustException {
+        SigningExecutor.call(new Callable<Object>() {
+            public Object call() throws TrustException {
+                SAMLUtils.signAssertion(assertion, crypto, config.getIssuerKeyAlias(),
+                        config.getIssuerKeyPassword());
+                return null;
+            }
+        }, config.isUseSigningExecutor());
+    }
+
     /**
      * Creates an authentication assertion.
      * @param confirmationMethod The confirmation method. (HOK, Bearer ...)
@@ -466,7 +477,7 @@ public class SAMLTokenIssuer implements TokenIssuer {
             // Signing the assertion
             // The <ds:Signature>...</ds:Signature> element appears only after
             // signing.
-            SAMLUtils.signAssertion(assertion, crypto, config.getIssuerKeyAlias(), config.getIssuerKeyPassword());
+            signAssertion(assertion, crypto, config);
 
             return assertion;
         } catch (Exception e) {
@@ -490,10 +501,7 @@ public class SAMLTokenIssuer implements TokenIssuer {
      */
     protected byte[] generateEphemeralKey(int keySize) throws TrustException {
         try {
-            SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
-            byte[] temp = new byte[keySize / 8];
-            random.nextBytes(temp);
-            return temp;
+            return KeyGenerationUtil.generateRandomBytes(keySize / 8);
         } catch (Exception e) {
             throw new TrustException("Error in creating the ephemeral key", e);
         }
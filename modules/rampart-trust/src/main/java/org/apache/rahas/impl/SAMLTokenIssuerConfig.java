@@ -25,13 +25,12 @@ import org.apache.axiom.om.OMXMLParserWrapper;
 import org.apache.axis2.description.Parameter;
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.apache.rahas.ConfigurationCache;
 import org.apache.rahas.TrustException;
 import org.apache.rahas.TrustUtil;
 import org.apache.rahas.impl.util.CommonUtil;
 import org.apache.rahas.impl.util.SAMLCallbackHandler;
-import org.apache.ws.security.WSSecurityException;
 import org.apache.ws.security.components.crypto.Crypto;
-import org.apache.ws.security.components.crypto.CryptoFactory;
 
 import javax.xml.namespace.QName;
 import java.io.FileInputStream;
@@ -96,6 +95,8 @@ public class SAMLTokenIssuerConfig extends AbstractIssuerConfig {
     
     public final static QName SAML_CALLBACK_CLASS = new QName("dataCallbackHandlerClass");
 
+    public final static QName USE_SIGNING_EXECUTOR = new QName("useSigningExecutor");
+
     protected String issuerKeyAlias;
     protected String issuerKeyPassword;
     protected String issuerName;
@@ -105,6 +106,19 @@ public class SAMLTokenIssuerConfig extends AbstractIssuerConfig {
     protected String trustStorePropFile;
     protected SAMLCallbackHandler callbackHandler;
     protected String callbackHandlerName;
+    protected boolean useSigningExecutor;
+
+    private static ConfigurationCache<SAMLTokenIssuerConfig> configCache =
+            new ConfigurationCache<SAMLTokenIssuerConfig>(
+                    new ConfigurationCache.Factory<SAMLTokenIssuerConfig>() {
+                        public SAMLTokenIssuerConfig create(OMElement element) throws TrustException {
+                            return new SAMLTokenIssuerConfig(element);
+                        }
+
+                        public SAMLTokenIssuerConfig create(String configFilePath) throws TrustException {
+                            return new SAMLTokenIssuerConfig(configFilePath);
+                        }
+                    });
   
     /**
      * Create a new configuration with issuer name and crypto information
@@ -145,6 +159,29 @@ public class SAMLTokenIssuerConfig extends AbstractIssuerConfig {
         this.load(elem);
     }
 
+    /**
+     * Returns the SAMLTokenIssuer configuration of the given config element, which is only
+     * created the first time. The configuration is shared and must not be modified.
+     * @param elem Configuration element as an <code>OMElement</code>
+     * @return The configuration
+     * @throws TrustException
+     */
+    public static SAMLTokenIssuerConfig getInstance(OMElement elem) throws TrustException {
+        return configCache.get(elem);
+    }
+
+    /**
+     * Returns the SAMLTokenIssuer configuration of the given config file, which is only
+     * created again when the file is modified. The configuration is shared and must not be
+     * modified.
+     * @param configFilePath Path to the config file
+     * @return The configuration
+     * @throws TrustException
+     */
+    public static SAMLTokenIssuerConfig getInstance(String configFilePath) throws TrustException {
+        return configCache.get(configFilePath);
+    }
+
     private void load(OMElement elem) throws TrustException {
         OMElement proofKeyElem = elem.getFirstChildWithName(PROOF_KEY_TYPE);
         if (proofKeyElem != null) {
@@ -222,6 +259,8 @@ public class SAMLTokenIssuerConfig extends AbstractIssuerConfig {
                 .getFirstChildWithName(ADD_REQUESTED_ATTACHED_REF) != null;
         this.addRequestedUnattachedRef = elem
                 .getFirstChildWithName(ADD_REQUESTED_UNATTACHED_REF) != null;
+        this.useSigningExecutor = elem
+                .getFirstChildWithName(USE_SIGNING_EXECUTOR) != null;
 
         //Process trusted services
         OMElement trustedServices = elem.getFirstChildWithName(TRUSTED_SERVICES);
@@ -431,6 +470,23 @@ public class SAMLTokenIssuerConfig extends AbstractIssuerConfig {
         return issuerName;
     }
 
+    /**
+     * Tells whether the proof keys are encrypted and the assertions signed by the
+     * {@link org.apache.rahas.impl.util.SigningExecutor} rather than by the request thread.
+     * <p>
+     * This bounds the number of key operations run at once across all requests. It does not
+     * make a token faster: every token is handed to a signing thread and back, and the
+     * operations of one request still run one after the other while the request thread waits.
+     * @return true if the <code>useSigningExecutor</code> element is present
+     */
+    public boolean isUseSigningExecutor() {
+        return useSigningExecutor;
+    }
+
+    public void setUseSigningExecutor(boolean useSigningExecutor) {
+        this.useSigningExecutor = useSigningExecutor;
+    }
+
     public String getTrustStorePropFile() {
         return trustStorePropFile;
     }
@@ -493,19 +549,14 @@ public class SAMLTokenIssuerConfig extends AbstractIssuerConfig {
      */
     public Crypto getIssuerCrypto(ClassLoader classLoader) throws TrustException {
 
-        try {
-            if (this.cryptoElement != null) {
-                // crypto props defined as elements
-                return CryptoFactory.getInstance(TrustUtil
-                        .toProperties(this.cryptoElement), classLoader);
-            } else {
-                // crypto props defined in a properties file
-                return CryptoFactory.getInstance(this.cryptoPropertiesFile,
-                        classLoader);
-            }
-
-        } catch (WSSecurityException e) {
-            throw new TrustException("errorLoadingCryptoProperties", e);
+        if (this.cryptoElement != null) {
+            // crypto props defined as elements
+            return CommonUtil.getCrypto(TrustUtil
+                    .toProperties(this.cryptoElement), classLoader);
+        } else {
+            // crypto props defined in a properties file
+            return CommonUtil.getCrypto(this.cryptoPropertiesFile,
+                    classLoader);
         }
 
     }
@@ -41,20 +41,20 @@ public class SAMLTokenRenewer implements TokenRenewer {
 
         SAMLTokenIssuerConfig config = null;
         if (this.configElement != null) {
-            config = new SAMLTokenIssuerConfig(configElement
+            config = SAMLTokenIssuerConfig.getInstance(configElement
                     .getFirstChildWithName(SAMLTokenIssuerConfig.SAML_ISSUER_CONFIG));
         }
 
         // Look for the file
         if (config == null && this.configFile != null) {
-            config = new SAMLTokenIssuerConfig(this.configFile);
+            config = SAMLTokenIssuerConfig.getInstance(this.configFile);
         }
 
         // Look for the param
         if (config == null && this.configParamName != null) {
             Parameter param = inMsgCtx.getParameter(this.configParamName);
             if (param != null && param.getParameterElement() != null) {
-                config = new SAMLTokenIssuerConfig(param
+                config = SAMLTokenIssuerConfig.getInstance(param
                         .getParameterElement().getFirstChildWithName(
                                 SAMLTokenIssuerConfig.SAML_ISSUER_CONFIG));
             } else {
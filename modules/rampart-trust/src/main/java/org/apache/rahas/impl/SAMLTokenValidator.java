@@ -21,7 +21,6 @@ import org.apache.rahas.TrustUtil;
 import org.apache.rahas.impl.util.CommonUtil;
 import org.apache.rahas.impl.util.SAMLUtils;
 import org.apache.ws.security.components.crypto.Crypto;
-import org.apache.ws.security.components.crypto.CryptoFactory;
 import org.opensaml.saml1.core.Assertion;
 import org.opensaml.xml.signature.SignatureValidator;
 import org.opensaml.xml.validation.ValidationException;
@@ -145,21 +144,21 @@ public class SAMLTokenValidator implements TokenValidator {
 
         try {
             if (configElement != null) {
-                config = new SAMLTokenIssuerConfig(
+                config = SAMLTokenIssuerConfig.getInstance(
                         configElement
                                 .getFirstChildWithName(SAMLTokenIssuerConfig.SAML_ISSUER_CONFIG));
             }
 
             // Look for the file
             if ((config == null) && (configFile != null)) {
-                config = new SAMLTokenIssuerConfig(configFile);
+                config = SAMLTokenIssuerConfig.getInstance(configFile);
             }
 
             // Look for the param
             if ((config == null) && (configParamName != null)) {
                 Parameter param = inMsgCtx.getParameter(configParamName);
                 if ((param != null) && (param.getParameterElement() != null)) {
-                    config = new SAMLTokenIssuerConfig(param
+                    config = SAMLTokenIssuerConfig.getInstance(param
                             .getParameterElement().getFirstChildWithName(
                                     SAMLTokenIssuerConfig.SAML_ISSUER_CONFIG));
                 } else {
@@ -176,11 +175,11 @@ public class SAMLTokenValidator implements TokenValidator {
             if (config.cryptoElement != null) { // crypto props
                 // defined as
                 // elements
-                crypto = CryptoFactory.getInstance(TrustUtil
+                crypto = CommonUtil.getCrypto(TrustUtil
                         .toProperties(config.cryptoElement), inMsgCtx
                         .getAxisService().getClassLoader());
             } else { // crypto props defined in a properties file
-                crypto = CryptoFactory.getInstance(config.cryptoPropertiesFile,
+                crypto = CommonUtil.getCrypto(config.cryptoPropertiesFile,
                         inMsgCtx.getAxisService().getClassLoader());
             }
 
@@ -19,6 +19,7 @@ package org.apache.rahas.impl;
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.om.OMXMLBuilderFactory;
 import org.apache.axiom.om.OMXMLParserWrapper;
+import org.apache.rahas.ConfigurationCache;
 import org.apache.rahas.TrustException;
 
 import javax.xml.namespace.QName;
@@ -33,6 +34,17 @@ public class SCTIssuerConfig extends AbstractIssuerConfig{
     public final static QName SCT_ISSUER_CONFIG = new QName("sct-issuer-config");
     protected byte[] requesterEntropy;
 
+    private static ConfigurationCache<SCTIssuerConfig> configCache =
+            new ConfigurationCache<SCTIssuerConfig>(new ConfigurationCache.Factory<SCTIssuerConfig>() {
+                public SCTIssuerConfig create(OMElement element) throws TrustException {
+                    return new SCTIssuerConfig(element);
+                }
+
+                public SCTIssuerConfig create(String configFilePath) throws TrustException {
+                    return build(configFilePath);
+                }
+            });
+
     private SCTIssuerConfig(OMElement elem) throws TrustException {
         OMElement proofKeyElem = elem.getFirstChildWithName(PROOF_KEY_TYPE);
         if (proofKeyElem != null) {
@@ -62,11 +74,28 @@ public class SCTIssuerConfig extends AbstractIssuerConfig{
         }
     }
 
+    /**
+     * Returns the configuration of the given element, which is only built the first time.
+     * @param elem The <code>sct-issuer-config</code> element
+     * @return The configuration
+     * @throws TrustException
+     */
     public static SCTIssuerConfig load(OMElement elem) throws TrustException {
-        return new SCTIssuerConfig(elem);
+        return configCache.get(elem);
+    }
+
+    /**
+     * Returns the configuration of the given file, which is only built again when the file
+     * is modified.
+     * @param configFilePath Path to the configuration file
+     * @return The configuration
+     * @throws TrustException
+     */
+    public static SCTIssuerConfig load(String configFilePath) throws TrustException {
+        return configCache.get(configFilePath);
     }
 
-    public static SCTIssuerConfig load(String configFilePath)
+    private static SCTIssuerConfig build(String configFilePath)
             throws TrustException {
         FileInputStream fis;
         OMXMLParserWrapper builder;
@@ -78,6 +107,6 @@ public class SCTIssuerConfig extends AbstractIssuerConfig{
                     new String[] { configFilePath });
         }
 
-        return load(builder.getDocumentElement());
+        return new SCTIssuerConfig(builder.getDocumentElement());
     }
 }
\ No newline at end of file
@@ -15,7 +15,6 @@
  */
 package org.apache.rahas.impl;
 
-import java.security.SecureRandom;
 
 import org.apache.axiom.om.OMElement;
 import org.apache.axiom.util.base64.Base64Utils;
@@ -25,6 +24,7 @@ import org.apache.rahas.Token;
 import org.apache.rahas.TrustException;
 import org.apache.rahas.TrustUtil;
 import org.apache.rahas.impl.util.CommonUtil;
+import org.apache.rahas.impl.util.KeyGenerationUtil;
 import org.apache.ws.security.WSConstants;
 import org.apache.ws.security.WSSecurityException;
 import org.apache.ws.security.components.crypto.Crypto;
@@ -151,10 +151,7 @@ public class TokenIssuerUtil {
 
     private static byte[] generateEphemeralKey(int keySize) throws TrustException {
         try {
-            SecureRandom random = SecureRandom.getInstance("SHA1PRNG");
-            byte[] temp = new byte[keySize / 8];
-            random.nextBytes(temp);
-            return temp;
+            return KeyGenerationUtil.generateRandomBytes(keySize / 8);
         } catch (Exception e) {
             throw new TrustException("errorCreatingSymmKey", e);
         }
@@ -29,13 +29,13 @@ import org.apache.rahas.impl.SAMLTokenIssuerConfig;
 import org.apache.rahas.impl.TokenIssuerUtil;
 import org.apache.ws.security.*;
 import org.apache.ws.security.components.crypto.Crypto;
-import org.apache.ws.security.components.crypto.CryptoFactory;
 import org.apache.ws.security.components.crypto.CryptoType;
 import org.apache.ws.security.handler.RequestData;
 import org.apache.ws.security.message.WSSecEncryptedKey;
 import org.apache.ws.security.processor.EncryptedKeyProcessor;
 import org.apache.ws.security.util.Base64;
 import org.apache.ws.security.util.Loader;
+import org.apache.xml.security.signature.XMLSignature;
 import org.apache.xml.security.utils.EncryptionConstants;
 import org.opensaml.Configuration;
 import org.opensaml.xml.XMLObject;
@@ -52,10 +52,18 @@ import javax.xml.namespace.QName;
 import javax.xml.parsers.DocumentBuilderFactory;
 import javax.xml.parsers.ParserConfigurationException;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.SecureRandom;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.WeakHashMap;
 
 import static org.apache.axiom.om.OMAbstractFactory.FEATURE_DOM;
 
@@ -66,6 +74,17 @@ public class CommonUtil {
 
     private static Log log = LogFactory.getLog(CommonUtil.class);
 
+    // Signing credentials of the issuers, dropped along with the crypto when the key store is reloaded
+    private static final Map<Crypto, Map<String, SignKeyHolder>> signKeyHolders =
+            new WeakHashMap<Crypto, Map<String, SignKeyHolder>>();
+
+    // Salt of the digests of the key passwords in the cache keys
+    private static final byte[] signKeySalt = new byte[16];
+
+    static {
+        new SecureRandom().nextBytes(signKeySalt);
+    }
+
     /**
      * This method creates a DOM compatible Axiom document.
      * @return DOM compatible Axiom document
@@ -101,6 +120,80 @@ public class CommonUtil {
         return certificates[0];
     }
 
+    /**
+     * Gets the credentials to sign assertions with the given key. The credentials are resolved
+     * once per crypto object, so that the private key is only recovered from the key store the
+     * first time. The credentials are cached by alias and by a salted digest of the password, the
+     * password itself is not kept.
+     * @param crypto Crypto holding the issuer key.
+     * @param alias Alias of the issuer key.
+     * @param password Password of the issuer key.
+     * @return The signing credentials.
+     * @throws org.apache.rahas.TrustException If the certificate or the private key of the issuer
+     *                                          can not be found.
+     */
+    public static SignKeyHolder getSignKeyHolder(Crypto crypto, String alias, String password)
+            throws TrustException {
+
+        String key = getSignKeyHolderKey(alias, password);
+        synchronized (signKeyHolders) {
+            Map<String, SignKeyHolder> holders = signKeyHolders.get(crypto);
+            if (holders != null && holders.containsKey(key)) {
+                return holders.get(key);
+            }
+        }
+
+        X509Certificate[] issuerCerts = getCertificatesByAlias(crypto, alias);
+        if (issuerCerts.length == 0) {
+            log.error("Unable to retrieve certificate for alias " + alias);
+            throw new TrustException("issuerCertificateNotFound");
+        }
+
+        String signatureAlgorithm = XMLSignature.ALGO_ID_SIGNATURE_RSA;
+        if (issuerCerts[0].getPublicKey().getAlgorithm().equalsIgnoreCase("DSA")) {
+            signatureAlgorithm = XMLSignature.ALGO_ID_SIGNATURE_DSA;
+        }
+
+        PrivateKey issuerPK;
+        try {
+            issuerPK = crypto.getPrivateKey(alias, password);
+        } catch (Exception e) {
+            log.debug("Unable to get issuer private key for issuer alias " + alias);
+            throw new TrustException("issuerPrivateKeyNotFound", new Object[]{alias});
+        }
+
+        SignKeyHolder signKeyHolder = new SignKeyHolder();
+        signKeyHolder.setIssuerCerts(issuerCerts);
+        signKeyHolder.setIssuerPK(issuerPK);
+        signKeyHolder.setSignatureAlgorithm(signatureAlgorithm);
+
+        synchronized (signKeyHolders) {
+            Map<String, SignKeyHolder> holders = signKeyHolders.get(crypto);
+            if (holders == null) {
+                holders = new HashMap<String, SignKeyHolder>();
+                signKeyHolders.put(crypto, holders);
+            }
+            holders.put(key, signKeyHolder);
+        }
+        return signKeyHolder;
+    }
+
+    private static String getSignKeyHolderKey(String alias, String password) throws TrustException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(signKeySalt);
+            if (password != null) {
+                digest.update((byte) 1);
+                digest.update(password.getBytes("UTF-8"));
+            }
+            return alias + "#" + Base64.encode(digest.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new TrustException("issuerPrivateKeyNotFound", new Object[]{alias}, e);
+        } catch (UnsupportedEncodingException e) {
+            throw new TrustException("issuerPrivateKeyNotFound", new Object[]{alias}, e);
+        }
+    }
+
     /**
      * Gets the certificates chain by alias. If no certificates are found return an empty array.
      * @param crypto Crypto to lookup certificate.
@@ -163,7 +256,7 @@ public class CommonUtil {
 
     /**
      * Constructs crypto configuration based on the given properties. Provider is instantiated using
-     * given class loader.
+     * given class loader. The crypto object is cached until the key store is modified.
      * @param properties Crypto configuration properties.
      * @param classLoader Class loader used to create provider.
      * @return A crypto object.
@@ -171,7 +264,7 @@ public class CommonUtil {
      */
     public static Crypto getCrypto(Properties properties, ClassLoader classLoader) throws TrustException {
         try {
-            return CryptoFactory.getInstance(properties, classLoader);
+            return CryptoCache.getCrypto(properties, classLoader);
         } catch (WSSecurityException e) {
             log.error("An error occurred while loading crypto properties", e);
             throw new TrustException("errorLoadingCryptoProperties", e);
@@ -181,7 +274,8 @@ public class CommonUtil {
 
     /**
      * Constructs crypto configuration based on the given properties. Provider is instantiated using
-     * given class loader.
+     * given class loader. The crypto object is cached until the properties file or the key store
+     * is modified.
      * @param propertiesFile Crypto configuration properties file name.
      * @param classLoader Class loader used to create provider.
      * @return A crypto object.
@@ -189,7 +283,7 @@ public class CommonUtil {
      */
     public static Crypto getCrypto(String propertiesFile, ClassLoader classLoader) throws TrustException {
         try {
-            return CryptoFactory.getInstance(propertiesFile, classLoader);
+            return CryptoCache.getCrypto(propertiesFile, classLoader);
         } catch (WSSecurityException e) {
             log.error("An error occurred while loading crypto properties with property file " + propertiesFile, e);
             throw new TrustException("errorLoadingCryptoProperties", new Object[]{propertiesFile}, e);
@@ -229,35 +323,32 @@ public class CommonUtil {
      * @param configElement Configuration as an OMElement.
      * @param configFile Configuration as a file.
      * @param messageContextParameter Configuration as a message context parameter.
-     * @return  Token issuer configuration as a SAMLTokenIssuerConfig object.
+     * @return  Token issuer configuration as a SAMLTokenIssuerConfig object. The configuration is cached
+     *          and shared, it must not be modified.
      * @throws TrustException If an error occurred while creating SAMLTokenIssuerConfig object.
      */
     public static SAMLTokenIssuerConfig getTokenIssuerConfiguration(OMElement configElement, String configFile,
                                                                Parameter messageContextParameter) throws TrustException {
 
         // First try using configuration element
-        SAMLTokenIssuerConfig tokenIssuerConfiguration = createTokenIssuerConfiguration(configElement);
-
-        if (tokenIssuerConfiguration == null) {
-
-            // Now try file
-            tokenIssuerConfiguration = createTokenIssuerConfiguration(configFile);
-
-            if (tokenIssuerConfiguration == null) {
-
-                // Finally try using the parameter
-                if (messageContextParameter != null) {
-                    tokenIssuerConfiguration = createTokenIssuerConfiguration(messageContextParameter);
-                }
+        if (configElement != null) {
+            return SAMLTokenIssuerConfig.getInstance(configElement
+                    .getFirstChildWithName(SAMLTokenIssuerConfig.SAML_ISSUER_CONFIG));
+        }
 
-                return tokenIssuerConfiguration;
-            } else {
-                return tokenIssuerConfiguration;
-            }
+        // Now try file
+        if (configFile != null) {
+            return SAMLTokenIssuerConfig.getInstance(configFile);
+        }
 
-        } else {
-            return tokenIssuerConfiguration;
+        // Finally try using the parameter
+        if (messageContextParameter != null && messageContextParameter.getParameterElement() != null) {
+            return SAMLTokenIssuerConfig.getInstance(messageContextParameter
+                    .getParameterElement().getFirstChildWithName(
+                            SAMLTokenIssuerConfig.SAML_ISSUER_CONFIG));
         }
+
+        return null;
     }
 
     protected static SAMLTokenIssuerConfig createTokenIssuerConfiguration(OMElement configElement)
@@ -0,0 +1,204 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rahas.impl.util;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.ws.security.WSSecurityException;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.CryptoFactory;
+import org.apache.ws.security.components.crypto.Merlin;
+import org.apache.ws.security.util.Loader;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.WeakHashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Cache of the <code>Crypto</code> objects of the STS issuers, renewers and validators, so that
+ * key stores are not loaded for every request.
+ * <p>
+ * Crypto objects are cached per class loader, by their crypto properties or properties file
+ * name. Class loaders are only weakly referenced, so that the crypto objects of a redeployed
+ * service are released with its class loader. A crypto object is created again when its
+ * properties file, key store or trust store is modified.
+ */
+public class CryptoCache {
+
+    private static Log log = LogFactory.getLog(CryptoCache.class);
+
+    private static final String[] STORE_FILE_PROPERTIES = {
+            Merlin.KEYSTORE_FILE, Merlin.OLD_KEYSTORE_FILE, Merlin.TRUSTSTORE_FILE };
+
+    private static class Entry {
+        final Crypto crypto;
+        final File[] files;
+        final long[] lastModified;
+
+        Entry(Crypto crypto, List<File> files) {
+            this.crypto = crypto;
+            this.files = files.toArray(new File[files.size()]);
+            this.lastModified = new long[this.files.length];
+            for (int i = 0; i < this.files.length; i++) {
+                this.lastModified[i] = this.files[i].lastModified();
+            }
+        }
+
+        boolean isModified() {
+            for (int i = 0; i < files.length; i++) {
+                if (files[i].lastModified() != lastModified[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final Map<ClassLoader, ConcurrentMap<Object, Entry>> caches =
+            new WeakHashMap<ClassLoader, ConcurrentMap<Object, Entry>>();
+
+    private CryptoCache() {
+    }
+
+    /**
+     * Returns the crypto object of the given crypto properties.
+     * @param properties Crypto configuration properties.
+     * @param classLoader Class loader used to create provider.
+     * @return A crypto object.
+     * @throws WSSecurityException If an error occurred while creating the Crypto object.
+     */
+    public static Crypto getCrypto(Properties properties, ClassLoader classLoader)
+            throws WSSecurityException {
+
+        Properties key = new Properties();
+        key.putAll(properties);
+        ConcurrentMap<Object, Entry> cache = getCache(classLoader);
+
+        Entry entry = cache.get(key);
+        if (entry != null && !entry.isModified()) {
+            return entry.crypto;
+        }
+
+        Crypto crypto = CryptoFactory.getInstance(properties, classLoader);
+        cache.put(key, new Entry(crypto, getStoreFiles(properties, classLoader)));
+        return crypto;
+    }
+
+    /**
+     * Returns the crypto object of the given crypto properties file.
+     * @param propertiesFile Crypto configuration properties file name.
+     * @param classLoader Class loader used to create provider.
+     * @return A crypto object.
+     * @throws WSSecurityException If an error occurred while creating the Crypto object.
+     */
+    public static Crypto getCrypto(String propertiesFile, ClassLoader classLoader)
+            throws WSSecurityException {
+
+        ConcurrentMap<Object, Entry> cache = getCache(classLoader);
+
+        Entry entry = cache.get(propertiesFile);
+        if (entry != null && !entry.isModified()) {
+            return entry.crypto;
+        }
+
+        Crypto crypto = CryptoFactory.getInstance(propertiesFile, classLoader);
+
+        List<File> files = new ArrayList<File>();
+        URL url = getURL(propertiesFile, classLoader);
+        File file = toFile(url);
+        if (file != null) {
+            files.add(file);
+        }
+        if (url != null) {
+            Properties properties = new Properties();
+            try {
+                InputStream in = url.openStream();
+                try {
+                    properties.load(in);
+                } finally {
+                    in.close();
+                }
+                files.addAll(getStoreFiles(properties, classLoader));
+            } catch (IOException e) {
+                // The stores are not watched for modifications then
+                log.debug("Unable to read crypto properties " + propertiesFile, e);
+            }
+        }
+
+        cache.put(propertiesFile, new Entry(crypto, files));
+        return crypto;
+    }
+
+    private static ConcurrentMap<Object, Entry> getCache(ClassLoader classLoader) {
+        synchronized (caches) {
+            ConcurrentMap<Object, Entry> cache = caches.get(classLoader);
+            if (cache == null) {
+                cache = new ConcurrentHashMap<Object, Entry>();
+                caches.put(classLoader, cache);
+            }
+            return cache;
+        }
+    }
+
+    private static List<File> getStoreFiles(Properties properties, ClassLoader classLoader) {
+        List<File> files = new ArrayList<File>();
+        for (String name : STORE_FILE_PROPERTIES) {
+            String location = properties.getProperty(name);
+            if (location != null) {
+                File file = toFile(getURL(location.trim(), classLoader));
+                if (file != null) {
+                    files.add(file);
+                }
+            }
+        }
+        return files;
+    }
+
+    private static URL getURL(String location, ClassLoader classLoader) {
+        File file = new File(location);
+        if (file.exists()) {
+            try {
+                return file.toURI().toURL();
+            } catch (IOException e) {
+                return null;
+            }
+        }
+        return Loader.getResource(classLoader, location);
+    }
+
+    private static File toFile(URL url) {
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return new File(url.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rahas.impl.util;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Generates key material with random number generators which are seeded once and shared, so
+ * that a generator is not created and seeded again for every key.
+ * <p>
+ * The generators are striped by thread, so that concurrent requests seldom wait for each other.
+ * They are held by this class only, not by the threads, and are released along with it.
+ */
+public class KeyGenerationUtil {
+
+    private static final String RANDOM_ALGORITHM = "SHA1PRNG";
+
+    private static final AtomicReferenceArray<SecureRandom> randoms =
+            new AtomicReferenceArray<SecureRandom>(Runtime.getRuntime().availableProcessors() * 2);
+
+    private KeyGenerationUtil() {
+    }
+
+    /**
+     * Returns a secure random number generator for the calling thread. The generator may be
+     * shared with other threads.
+     * @return The random number generator
+     * @throws NoSuchAlgorithmException If SHA1PRNG is not available
+     */
+    public static SecureRandom getSecureRandom() throws NoSuchAlgorithmException {
+        int index = (int) (Thread.currentThread().getId() % randoms.length());
+        SecureRandom random = randoms.get(index);
+        if (random == null) {
+            randoms.compareAndSet(index, null, SecureRandom.getInstance(RANDOM_ALGORITHM));
+            random = randoms.get(index);
+        }
+        return random;
+    }
+
+    /**
+     * Generates random key material, for example an ephemeral key.
+     * @param length Number of bytes
+     * @return The random bytes
+     * @throws NoSuchAlgorithmException If SHA1PRNG is not available
+     */
+    public static byte[] generateRandomBytes(int length) throws NoSuchAlgorithmException {
+        byte[] bytes = new byte[length];
+        getSecureRandom().nextBytes(bytes);
+        return bytes;
+    }
+}
@@ -8,7 +8,6 @@ import org.apache.rahas.TrustException;
 import org.apache.ws.security.components.crypto.Crypto;
 import org.apache.ws.security.message.WSSecEncryptedKey;
 import org.apache.ws.security.util.Base64;
-import org.apache.xml.security.signature.XMLSignature;
 import org.apache.xml.security.utils.EncryptionConstants;
 import org.joda.time.DateTime;
 import org.opensaml.Configuration;
@@ -31,8 +30,6 @@ import org.w3c.dom.Element;
 
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
-import java.security.PrivateKey;
-import java.security.PublicKey;
 import java.security.cert.CertificateEncodingException;
 import java.security.cert.X509Certificate;
 import java.util.*;
@@ -91,27 +88,13 @@ public class SAMLUtils {
                                      String issuerKeyAlias, String issuerKeyPassword)
             throws TrustException {
 
-        X509Certificate issuerCerts = CommonUtil.getCertificateByAlias(crypto, issuerKeyAlias);
+        SignKeyHolder signKeyHolder = CommonUtil.getSignKeyHolder(crypto, issuerKeyAlias, issuerKeyPassword);
 
-        String signatureAlgorithm = XMLSignature.ALGO_ID_SIGNATURE_RSA;
+        X509Certificate issuerCerts = signKeyHolder.getEntityCertificate();
+        String signatureAlgorithm = signKeyHolder.getSignatureAlgorithm();
 
-        PublicKey issuerPublicKey = issuerCerts.getPublicKey();
-
-        String publicKeyAlgorithm = issuerPublicKey.getAlgorithm();
-        if (publicKeyAlgorithm.equalsIgnoreCase("DSA")) {
-            signatureAlgorithm = XMLSignature.ALGO_ID_SIGNATURE_DSA;
-        }
-
-        PrivateKey issuerPrivateKey;
-        try {
-            issuerPrivateKey = crypto.getPrivateKey(
-                    issuerKeyAlias, issuerKeyPassword);
-        } catch (Exception e) {
-            log.debug("Unable to get issuer private key for issuer alias " + issuerKeyAlias);
-            throw new TrustException("issuerPrivateKeyNotFound", new Object[]{issuerKeyAlias});
-        }
-
-        Credential signingCredential = SecurityHelper.getSimpleCredential(issuerPublicKey, issuerPrivateKey);
+        Credential signingCredential = SecurityHelper.getSimpleCredential(issuerCerts.getPublicKey(),
+                signKeyHolder.getPrivateKey());
 
         Signature signature = (Signature) CommonUtil.buildXMLObject(Signature.DEFAULT_ELEMENT_NAME);
         signature.setCanonicalizationAlgorithm(SignatureConstants.ALGO_ID_C14N_EXCL_OMIT_COMMENTS);
@@ -0,0 +1,150 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rahas.impl.util;
+
+import org.apache.rahas.TrustException;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the key operations of the SAML token issuers, i.e. the encryption of holder-of-key
+ * proof keys and the signing of assertions, on a pool of threads sized to the cores, when
+ * enabled with <code>useSigningExecutor</code> in the issuer configuration.
+ * <p>
+ * The number of concurrent key operations is then bounded independently of the number of
+ * request threads, and the pending operations can be observed with
+ * {@link #getQueuedTaskCount()} and {@link #getActiveCount()}. The request thread waits for its
+ * operation; when the queue is full it runs the operation itself.
+ */
+public class SigningExecutor {
+
+    /**
+     * Number of signing threads.
+     */
+    public static final int DEFAULT_THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static final int QUEUE_CAPACITY = DEFAULT_THREADS * 64;
+
+    private static volatile ThreadPoolExecutor executor;
+
+    /**
+     * Runs the given key operation, on the signing threads if asked for.
+     * @param task The operation
+     * @param useExecutor Whether to run the operation on the signing threads or on the calling
+     *                    thread
+     * @return The result of the operation
+     * @throws TrustException If the operation fails
+     */
+    public static <T> T call(Callable<T> task, boolean useExecutor) throws TrustException {
+        try {
+            if (!useExecutor) {
+                return task.call();
+            }
+            Future<T> future = getExecutor().submit(task);
+            try {
+                return future.get();
+            } catch (InterruptedException e) {
+                future.cancel(true);
+                Thread.currentThread().interrupt();
+                throw new TrustException("signingTaskFailed", e);
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof Exception) {
+                    throw (Exception) e.getCause();
+                }
+                throw new TrustException("signingTaskFailed", e.getCause());
+            }
+        } catch (TrustException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new TrustException("signingTaskFailed", e);
+        }
+    }
+
+    /**
+     * @return The number of key operations waiting for a signing thread
+     */
+    public static int getQueuedTaskCount() {
+        ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getQueue().size();
+    }
+
+    /**
+     * @return The number of key operations being run by the signing threads
+     */
+    public static int getActiveCount() {
+        ThreadPoolExecutor current = executor;
+        return current == null ? 0 : current.getActiveCount();
+    }
+
+    /**
+     * Stops the signing threads once their operations are done. They are started again if
+     * needed.
+     */
+    public static synchronized void shutdown() {
+        if (executor != null) {
+            executor.shutdown();
+            executor = null;
+        }
+    }
+
+    private static ThreadPoolExecutor getExecutor() {
+        ThreadPoolExecutor current = executor;
+        if (current == null) {
+            synchronized (SigningExecutor.class) {
+                current = executor;
+                if (current == null) {
+                    current = new ThreadPoolExecutor(DEFAULT_THREADS, DEFAULT_THREADS,
+                            60, TimeUnit.SECONDS,
+                            new LinkedBlockingQueue<Runnable>(QUEUE_CAPACITY),
+                            new ThreadFactory() {
+                                private final AtomicInteger count = new AtomicInteger();
+
+                                public Thread newThread(Runnable r) {
+                                    Thread thread = new Thread(r,
+                                            "rahas-signer-" + count.incrementAndGet());
+                                    thread.setDaemon(true);
+                                    return thread;
+                                }
+                            },
+                            // Also run by the caller after a shutdown, the caller waits for it
+                            new RejectedExecutionHandler() {
+                                public void rejectedExecution(Runnable r,
+                                                              ThreadPoolExecutor e) {
+                                    r.run();
+                                }
+                            });
+                    current.allowCoreThreadTimeOut(true);
+                    executor = current;
+                }
+            }
+        }
+        return current;
+    }
+}
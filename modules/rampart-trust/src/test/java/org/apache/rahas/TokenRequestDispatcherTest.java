@@ -0,0 +1,199 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rahas;
+
+import junit.framework.TestCase;
+
+import org.apache.axiom.om.OMAbstractFactory;
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.om.util.AXIOMUtil;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.context.MessageContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.ws.security.WSConstants;
+import org.apache.ws.security.WSSecurityEngineResult;
+import org.apache.ws.security.WSUsernameTokenPrincipal;
+import org.apache.ws.security.handler.WSHandlerConstants;
+import org.apache.ws.security.handler.WSHandlerResult;
+
+import javax.xml.namespace.QName;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+public class TokenRequestDispatcherTest extends TestCase {
+
+    private static final int TOKENS = 5;
+
+    public void testSequentialCollection() throws Exception {
+        assertCollectionIssued(false);
+    }
+
+    public void testParallelCollection() throws Exception {
+        assertCollectionIssued(true);
+    }
+
+    public void testCollectionOfOtherRequests() throws Exception {
+        TokenRequestDispatcher dispatcher = createDispatcher(false);
+        OMElement rstc = TrustUtil.createRequestSecurityTokenCollectionElement(
+                RahasConstants.VERSION_05_12);
+        OMElement rst = TrustUtil.createRequestSecurityTokenElement(RahasConstants.VERSION_05_12);
+        TrustUtil.createRequestTypeElement(RahasConstants.VERSION_05_12, rst,
+                RahasConstants.WST_NS_05_12 + RahasConstants.REQ_TYPE_CANCEL);
+        rstc.addChild(rst);
+
+        try {
+            dispatcher.handle(createMessageContext(rstc), new MessageContext());
+            fail("Only issue requests can be collected");
+        } catch (TrustException e) {
+            // expected
+        }
+    }
+
+    public void testCollectionTooLarge() throws Exception {
+        TokenRequestDispatcher dispatcher = new TokenRequestDispatcher(AXIOMUtil.stringToOM(
+                "<token-dispatcher-configuration maxCollectionSize=\"" + (TOKENS - 1) + "\">"
+                + "<issuer class=\"" + EchoIssuer.class.getName() + "\" default=\"true\"/>"
+                + "</token-dispatcher-configuration>"));
+        EchoIssuer.requests.clear();
+
+        try {
+            dispatcher.handle(createMessageContext(createCollection()), new MessageContext());
+            fail("Collections beyond the maximum size must be rejected");
+        } catch (TrustException e) {
+            assertEquals(new TrustException(TrustException.INVALID_REQUEST, new String[]{
+                    "More than " + (TOKENS - 1) + " requests in the collection"}).getMessage(),
+                    e.getMessage());
+        }
+        assertTrue(EchoIssuer.requests.isEmpty());
+    }
+
+    private void assertCollectionIssued(boolean parallel) throws Exception {
+        TokenRequestDispatcher dispatcher = createDispatcher(parallel);
+        EchoIssuer.requests.clear();
+
+        OMElement rstc = createCollection();
+
+        MessageContext outMsgCtx = new MessageContext();
+        SOAPEnvelope response = dispatcher.handle(createMessageContext(rstc), outMsgCtx);
+
+        OMElement rstrc = response.getBody().getFirstElement();
+        assertEquals(RahasConstants.LocalNames.REQUEST_SECURITY_TOKEN_RESPONSE_COLLECTION,
+                rstrc.getLocalName());
+
+        // One response per request, in the order of the requests
+        Iterator rstrs = rstrc.getChildElements();
+        for (int i = 0; i < TOKENS; i++) {
+            OMElement rstr = (OMElement) rstrs.next();
+            assertEquals(RahasConstants.LocalNames.REQUEST_SECURITY_TOKEN_RESPONSE,
+                    rstr.getLocalName());
+            assertEquals("urn:token:" + i, rstr.getFirstChildWithName(new QName(
+                    RahasConstants.WST_NS_05_12, RahasConstants.LocalNames.TOKEN_TYPE)).getText());
+        }
+        assertFalse(rstrs.hasNext());
+
+        // An issuer run on another thread reads a copy of its request
+        assertEquals(TOKENS, EchoIssuer.requests.size());
+        for (OMElement request : EchoIssuer.requests) {
+            assertEquals(!parallel, request.getParent() == rstc);
+        }
+
+        assertEquals(TrustUtil.getActionValue(RahasConstants.VERSION_05_12,
+                RahasConstants.RSTR_ACTION_ISSUE), outMsgCtx.getOptions().getAction());
+    }
+
+    private OMElement createCollection() throws Exception {
+        OMElement rstc = TrustUtil.createRequestSecurityTokenCollectionElement(
+                RahasConstants.VERSION_05_12);
+        for (int i = 0; i < TOKENS; i++) {
+            OMElement rst = TrustUtil.createRequestSecurityTokenElement(
+                    RahasConstants.VERSION_05_12);
+            TrustUtil.createRequestTypeElement(RahasConstants.VERSION_05_12, rst,
+                    RahasConstants.WST_NS_05_12 + RahasConstants.REQ_TYPE_ISSUE);
+            TrustUtil.createTokenTypeElement(RahasConstants.VERSION_05_12, rst)
+                    .setText("urn:token:" + i);
+            rstc.addChild(rst);
+        }
+        return rstc;
+    }
+
+    private TokenRequestDispatcher createDispatcher(boolean parallel) throws Exception {
+        return new TokenRequestDispatcher(AXIOMUtil.stringToOM(
+                "<token-dispatcher-configuration parallelBatchIssuance=\"" + parallel + "\">"
+                + "<issuer class=\"" + EchoIssuer.class.getName() + "\" default=\"true\"/>"
+                + "</token-dispatcher-configuration>"));
+    }
+
+    private MessageContext createMessageContext(OMElement request) throws Exception {
+        MessageContext msgCtx = new MessageContext();
+        msgCtx.setConfigurationContext(new ConfigurationContext(new AxisConfiguration()));
+
+        // The requestor authenticated with a UsernameToken
+        WSSecurityEngineResult result = new WSSecurityEngineResult(WSConstants.UT);
+        result.put(WSSecurityEngineResult.TAG_PRINCIPAL, new WSUsernameTokenPrincipal("alice", false));
+        List<WSSecurityEngineResult> engineResults = new ArrayList<WSSecurityEngineResult>();
+        engineResults.add(result);
+        List<WSHandlerResult> results = new ArrayList<WSHandlerResult>();
+        results.add(new WSHandlerResult(null, engineResults));
+        msgCtx.setProperty(WSHandlerConstants.RECV_RESULTS, results);
+
+        SOAPEnvelope envelope = OMAbstractFactory.getSOAP11Factory().getDefaultEnvelope();
+        envelope.getBody().addChild(request);
+        msgCtx.setEnvelope(envelope);
+        return msgCtx;
+    }
+
+    /**
+     * Answers with a response carrying the token type of the request, wrapped in a
+     * <code>RequestSecurityTokenResponseCollection</code> as the WS-SX issuers do.
+     */
+    public static class EchoIssuer implements TokenIssuer {
+
+        static final List<OMElement> requests =
+                Collections.synchronizedList(new ArrayList<OMElement>());
+
+        public SOAPEnvelope issue(RahasData data) throws TrustException {
+            requests.add(data.getRstElement());
+            SOAPEnvelope env = TrustUtil.createSOAPEnvelope(data.getSoapNs());
+            OMElement rstrc = TrustUtil.createRequestSecurityTokenResponseCollectionElement(
+                    data.getVersion(), env.getBody());
+            OMElement rstr = TrustUtil.createRequestSecurityTokenResponseElement(
+                    data.getVersion(), rstrc);
+            TrustUtil.createTokenTypeElement(data.getVersion(), rstr).setText(data.getTokenType());
+            return env;
+        }
+
+        public String getResponseAction(RahasData data) throws TrustException {
+            return TrustUtil.getActionValue(data.getVersion(), RahasConstants.RSTR_ACTION_ISSUE);
+        }
+
+        public void setConfigurationFile(String configFile) {
+        }
+
+        public void setConfigurationElement(OMElement configElement) {
+        }
+
+        public void setConfigurationParamName(String configParamName) {
+        }
+    }
+}
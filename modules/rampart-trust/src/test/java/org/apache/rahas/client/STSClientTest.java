@@ -0,0 +1,135 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rahas.client;
+
+import junit.framework.TestCase;
+
+import org.apache.axiom.om.OMElement;
+import org.apache.axiom.soap.SOAP11Constants;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.engine.AxisConfiguration;
+import org.apache.rahas.RahasConstants;
+import org.apache.rahas.Token;
+import org.apache.rahas.TrustException;
+import org.apache.rahas.TrustUtil;
+import org.apache.ws.security.WSConstants;
+
+import javax.xml.namespace.QName;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+
+public class STSClientTest extends TestCase {
+
+    private static final String ISSUER = "http://localhost:8080/axis2/services/STS";
+
+    private static final List<String> TARGETS = Arrays.asList(
+            "http://localhost:8080/axis2/services/first",
+            "http://localhost:8080/axis2/services/second");
+
+    private STSClient client;
+
+    protected void setUp() throws Exception {
+        client = new STSClient(new ConfigurationContext(new AxisConfiguration()));
+        client.setVersion(RahasConstants.VERSION_05_12);
+    }
+
+    public void testRequestCollection() throws Exception {
+        List<STSClient.IssueRequest> requests = new ArrayList<STSClient.IssueRequest>();
+        OMElement rstc = client.createIssueRequestCollection(TARGETS, requests);
+
+        assertEquals(RahasConstants.LocalNames.REQUEST_SECURITY_TOKEN_COLLECTION,
+                rstc.getLocalName());
+        assertEquals(TARGETS.size(), requests.size());
+        Iterator rsts = rstc.getChildElements();
+        for (STSClient.IssueRequest request : requests) {
+            assertSame(request.rst, rsts.next());
+        }
+        assertFalse(rsts.hasNext());
+    }
+
+    public void testResponseCollection() throws Exception {
+        List<STSClient.IssueRequest> requests = createRequests();
+
+        List<Token> tokens = client.processIssueResponseCollection(
+                createResponse(TARGETS.size()), ISSUER, requests);
+
+        // Each token is matched with the entropy of its own request
+        assertEquals(TARGETS.size(), tokens.size());
+        for (int i = 0; i < tokens.size(); i++) {
+            assertEquals("token-" + i, tokens.get(i).getId());
+            assertEquals(ISSUER, tokens.get(i).getIssuerAddress());
+            assertTrue(Arrays.equals(requests.get(i).requestorEntropy, tokens.get(i).getSecret()));
+        }
+    }
+
+    public void testMissingToken() throws Exception {
+        assertUnexpectedNumberOfTokens(TARGETS.size() - 1);
+    }
+
+    public void testExtraToken() throws Exception {
+        assertUnexpectedNumberOfTokens(TARGETS.size() + 1);
+    }
+
+    private void assertUnexpectedNumberOfTokens(int tokens) throws Exception {
+        try {
+            client.processIssueResponseCollection(createResponse(tokens), ISSUER,
+                    createRequests());
+            fail("One token per request is expected");
+        } catch (TrustException e) {
+            assertEquals(new TrustException("unexpectedNumberOfTokens",
+                    new String[]{String.valueOf(TARGETS.size())}).getMessage(), e.getMessage());
+        }
+    }
+
+    private List<STSClient.IssueRequest> createRequests() throws Exception {
+        List<STSClient.IssueRequest> requests = new ArrayList<STSClient.IssueRequest>();
+        for (int i = 0; i < TARGETS.size(); i++) {
+            OMElement rst = TrustUtil.createRequestSecurityTokenElement(
+                    RahasConstants.VERSION_05_12);
+            requests.add(new STSClient.IssueRequest(rst, new byte[]{(byte) i, 1, 2, 3}, 256));
+        }
+        return requests;
+    }
+
+    /**
+     * Creates a response collection of the given number of tokens, without proof tokens, so
+     * that the secret of each token is the entropy of its request.
+     */
+    private OMElement createResponse(int tokens) throws Exception {
+        SOAPEnvelope env = TrustUtil.createSOAPEnvelope(SOAP11Constants.SOAP_ENVELOPE_NAMESPACE_URI);
+        OMElement rstrc = TrustUtil.createRequestSecurityTokenResponseCollectionElement(
+                RahasConstants.VERSION_05_12, env.getBody());
+        for (int i = 0; i < tokens; i++) {
+            OMElement rstr = TrustUtil.createRequestSecurityTokenResponseElement(
+                    RahasConstants.VERSION_05_12, rstrc);
+            OMElement rst = TrustUtil.createRequestedSecurityTokenElement(
+                    RahasConstants.VERSION_05_12, rstr);
+            OMElement token = rst.getOMFactory().createOMElement(new QName("urn:test", "Token"), rst);
+            token.addAttribute("Id", "token-" + i, token.getOMFactory().createOMNamespace(
+                    WSConstants.WSU_NS, WSConstants.WSU_PREFIX));
+            TrustUtil.createLifetimeElement(RahasConstants.VERSION_05_12, rstr, 300000);
+        }
+        return rstrc;
+    }
+}
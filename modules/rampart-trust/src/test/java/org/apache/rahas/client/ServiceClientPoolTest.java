@@ -0,0 +1,105 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rahas.client;
+
+import junit.framework.TestCase;
+
+import org.apache.axis2.client.ServiceClient;
+import org.apache.axis2.context.ConfigurationContext;
+import org.apache.axis2.description.AxisModule;
+import org.apache.axis2.engine.AxisConfiguration;
+
+public class ServiceClientPoolTest extends TestCase {
+
+    private static final String ISSUER = "http://localhost:8080/axis2/services/STS";
+
+    private ConfigurationContext configCtx;
+
+    protected void setUp() throws Exception {
+        AxisConfiguration axisConfig = new AxisConfiguration();
+        axisConfig.addModule(new AxisModule("rampart"));
+        axisConfig.addModule(new AxisModule("addressing"));
+        configCtx = new ConfigurationContext(axisConfig);
+    }
+
+    public void testClientsAreReused() throws Exception {
+        ServiceClientPool pool = ServiceClientPool.getInstance(configCtx);
+        assertSame(pool, ServiceClientPool.getInstance(configCtx));
+
+        ServiceClient client = pool.borrow(ISSUER, true);
+        assertTrue(client.getAxisService().isEngaged("rampart"));
+        assertTrue(client.getAxisService().isEngaged("addressing"));
+        assertNotNull(client.getAxisService().getOperation(STSClient.RST_OPERATION));
+        assertNotNull(client.getAxisService().getOperation(STSClient.CANCEL_OPERATION));
+
+        // Concurrent exchanges get different clients
+        ServiceClient other = pool.borrow(ISSUER, true);
+        assertNotSame(client, other);
+
+        pool.release(ISSUER, true, client);
+        pool.release(ISSUER, true, other);
+        assertEquals(2, pool.getIdleCount(ISSUER, true));
+
+        ServiceClient reused = pool.borrow(ISSUER, true);
+        assertTrue(reused == client || reused == other);
+        assertEquals(1, pool.getIdleCount(ISSUER, true));
+    }
+
+    public void testClientsWithoutAddressing() throws Exception {
+        ServiceClientPool pool = ServiceClientPool.getInstance(configCtx);
+
+        ServiceClient client = pool.borrow(ISSUER, false);
+        assertFalse(client.getAxisService().isEngaged("addressing"));
+        pool.release(ISSUER, false, client);
+
+        assertEquals(0, pool.getIdleCount(ISSUER, true));
+        assertNotSame(client, pool.borrow(ISSUER, true));
+        assertSame(client, pool.borrow(ISSUER, false));
+    }
+
+    public void testIdleClientsAreBounded() throws Exception {
+        ServiceClientPool pool = ServiceClientPool.getInstance(configCtx);
+
+        ServiceClient[] clients = new ServiceClient[ServiceClientPool.DEFAULT_MAX_IDLE + 1];
+        for (int i = 0; i < clients.length; i++) {
+            clients[i] = pool.borrow(ISSUER, true);
+        }
+        for (ServiceClient client : clients) {
+            pool.release(ISSUER, true, client);
+        }
+        assertEquals(ServiceClientPool.DEFAULT_MAX_IDLE, pool.getIdleCount(ISSUER, true));
+
+        // The client that was not kept is no longer registered
+        String name = clients[clients.length - 1].getAxisService().getName();
+        assertNull(configCtx.getAxisConfiguration().getServiceForActivation(name));
+    }
+
+    public void testShutdown() throws Exception {
+        ServiceClientPool pool = ServiceClientPool.getInstance(configCtx);
+        ServiceClient client = pool.borrow(ISSUER, true);
+        String name = client.getAxisService().getName();
+        pool.release(ISSUER, true, client);
+
+        ServiceClientPool.shutdown(configCtx);
+        assertEquals(0, pool.getIdleCount(ISSUER, true));
+        assertNull(configCtx.getAxisConfiguration().getServiceForActivation(name));
+        assertNotSame(pool, ServiceClientPool.getInstance(configCtx));
+    }
+}
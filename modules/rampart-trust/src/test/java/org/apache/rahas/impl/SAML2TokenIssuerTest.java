@@ -25,8 +25,12 @@ import org.apache.axis2.context.MessageContext;
 import org.apache.rahas.RahasConstants;
 import org.apache.rahas.RahasData;
 import org.apache.rahas.Token;
+import org.apache.rahas.TokenRequestDispatcher;
+import org.apache.rahas.TrustUtil;
 import org.apache.rahas.client.STSClient;
+import org.apache.rahas.impl.util.SigningExecutor;
 import org.apache.rahas.test.util.AbstractTestCase;
+import org.apache.rahas.test.util.KeyThreadRecordingRahasData;
 import org.apache.rahas.test.util.TestSTSClient;
 import org.apache.rahas.test.util.TestUtil;
 import org.apache.ws.security.components.crypto.Crypto;
@@ -35,6 +39,7 @@ import org.opensaml.common.xml.SAMLConstants;
 import org.w3c.dom.Document;
 
 import java.io.File;
+import java.util.Iterator;
 
 /**
  * Test class for SAML2 token issuer.
@@ -76,6 +81,64 @@ public class SAML2TokenIssuerTest extends AbstractTestCase {
         Assert.assertNotNull(token.getToken());
     }
 
+    public void testIssueWithSigningExecutor() throws Exception {
+
+        KeyThreadRecordingRahasData rahasData = new KeyThreadRecordingRahasData(
+                TestUtil.createDummyMessageContext("http://10.100.3.196:9768/services/echo/"));
+
+        SAML2TokenIssuer tokenIssuer = new SAML2TokenIssuer();
+        tokenIssuer.setConfigurationElement(AXIOMUtil.stringToOM(this.configurationElement.replace(
+                "<keySize>", "<useSigningExecutor /><keySize>")));
+        SOAPEnvelope envelope = tokenIssuer.issue(rahasData);
+
+        TestSTSClient stsClient = TestUtil.createTestSTSClient(SAMLConstants.SAML20_NS);
+
+        Token token = stsClient.processResponse(RahasConstants.VERSION_05_02,
+                envelope.getBody().getFirstElement(), "http://10.100.3.196:9768/services/echo/");
+
+        Assert.assertNotNull(token.getToken());
+        Assert.assertTrue(rahasData.getKeyThreadName(),
+                rahasData.getKeyThreadName().startsWith("rahas-signer-"));
+        Assert.assertEquals(0, SigningExecutor.getQueuedTaskCount());
+    }
+
+    public void testIssueCollectionConcurrently() throws Exception {
+
+        MessageContext msgCtx = TestUtil.createDummyMessageContext(
+                "http://10.100.3.196:9768/services/echo/");
+        OMElement rst = msgCtx.getEnvelope().getBody().getFirstElement();
+        int version = TrustUtil.getWSTVersion(rst.getNamespace().getNamespaceURI());
+
+        // The same request several times in one collection
+        OMElement rstc = TrustUtil.createRequestSecurityTokenCollectionElement(version);
+        for (int i = 0; i < 4; i++) {
+            rstc.addChild((OMElement) rstc.getOMFactory().importInformationItem(rst));
+        }
+        rst.detach();
+        msgCtx.getEnvelope().getBody().addChild((OMElement)
+                msgCtx.getEnvelope().getOMFactory().importInformationItem(rstc));
+
+        TokenRequestDispatcher dispatcher = new TokenRequestDispatcher(AXIOMUtil.stringToOM(
+                "<token-dispatcher-configuration parallelBatchIssuance=\"true\">"
+                + "<issuer class=\"" + SAML2TokenIssuer.class.getName() + "\" default=\"true\">"
+                + this.configurationElement.replace("<configuration>",
+                        "<configuration type=\"element\">")
+                + "</issuer></token-dispatcher-configuration>"));
+        SOAPEnvelope response = dispatcher.handle(msgCtx, new MessageContext());
+
+        TestSTSClient stsClient = TestUtil.createTestSTSClient(SAMLConstants.SAML20_NS);
+
+        Iterator rstrs = response.getBody().getFirstElement().getChildElements();
+        int tokens = 0;
+        while (rstrs.hasNext()) {
+            Token token = stsClient.processResponse(version, (OMElement) rstrs.next(),
+                    "http://10.100.3.196:9768/services/echo/");
+            Assert.assertNotNull(token.getToken());
+            tokens++;
+        }
+        Assert.assertEquals(4, tokens);
+    }
+
     public void testCreateSubjectWithBearerSubjectConfirmation() {
         // TODO
     }
@@ -0,0 +1,94 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rahas.impl;
+
+import junit.framework.Assert;
+import org.apache.axiom.om.util.AXIOMUtil;
+import org.apache.axiom.soap.SOAPEnvelope;
+import org.apache.rahas.RahasConstants;
+import org.apache.rahas.Token;
+import org.apache.rahas.impl.util.SigningExecutor;
+import org.apache.rahas.test.util.AbstractTestCase;
+import org.apache.rahas.test.util.KeyThreadRecordingRahasData;
+import org.apache.rahas.test.util.TestSTSClient;
+import org.apache.rahas.test.util.TestUtil;
+import org.opensaml.common.xml.SAMLConstants;
+
+/**
+ * Test class for the SAML 1.1 token issuer.
+ */
+public class SAMLTokenIssuerTest extends AbstractTestCase {
+
+    private static final String APPLIES_TO = "http://10.100.3.196:9768/services/echo/";
+
+    private String configurationElement = "<configuration><saml-issuer-config>" +
+            "<issuerName>Test_STS</issuerName>" +
+            "<issuerKeyAlias>apache</issuerKeyAlias>" +
+            "<issuerKeyPassword>password</issuerKeyPassword>" +
+            "<cryptoProperties><crypto provider=\"org.apache.ws.security.components.crypto.Merlin\">" +
+            "<property name=\"org.apache.ws.security.crypto.merlin.keystore.type\">JKS</property>" +
+            "<property name=\"org.apache.ws.security.crypto.merlin.file\">src/test/resources/keystore.jks</property>" +
+            "<property name=\"org.apache.ws.security.crypto.merlin.keystore.password\">password</property></crypto>" +
+            "</cryptoProperties>" +
+            "<timeToLive>300000</timeToLive>" +
+            "<keySize>256</keySize>" +
+            "<addRequestedAttachedRef /><addRequestedUnattachedRef />" +
+            "<keyComputation>2</keyComputation>" +
+            "<proofKeyType>BinarySecret</proofKeyType>" +
+            "<trusted-services>" +
+            "<service alias=\"apache\">" + APPLIES_TO + "</service>" +
+            "</trusted-services></saml-issuer-config></configuration>";
+
+    public void testHolderOfKey() throws Exception {
+        Assert.assertEquals(Thread.currentThread().getName(), issueHolderOfKey(false));
+    }
+
+    public void testHolderOfKeyWithSigningExecutor() throws Exception {
+        String keyThreadName = issueHolderOfKey(true);
+        Assert.assertTrue(keyThreadName, keyThreadName.startsWith("rahas-signer-"));
+        Assert.assertEquals(0, SigningExecutor.getQueuedTaskCount());
+    }
+
+    /**
+     * Issues a holder-of-key assertion and returns the name of the thread which encrypted its
+     * proof key.
+     */
+    private String issueHolderOfKey(boolean useSigningExecutor) throws Exception {
+
+        KeyThreadRecordingRahasData rahasData = new KeyThreadRecordingRahasData(
+                TestUtil.createDummyMessageContext(APPLIES_TO));
+        Assert.assertTrue(rahasData.getKeyType().endsWith(RahasConstants.KEY_TYPE_SYMM_KEY));
+
+        SAMLTokenIssuer tokenIssuer = new SAMLTokenIssuer();
+        tokenIssuer.setConfigurationElement(AXIOMUtil.stringToOM(useSigningExecutor
+                ? this.configurationElement.replace("<keySize>", "<useSigningExecutor /><keySize>")
+                : this.configurationElement));
+        SOAPEnvelope envelope = tokenIssuer.issue(rahasData);
+
+        TestSTSClient stsClient = TestUtil.createTestSTSClient(SAMLConstants.SAML1_NS);
+
+        Token token = stsClient.processResponse(RahasConstants.VERSION_05_02,
+                envelope.getBody().getFirstElement(), APPLIES_TO);
+
+        Assert.assertNotNull(token.getToken());
+        Assert.assertNotNull(rahasData.getEphmeralKey());
+        return rahasData.getKeyThreadName();
+    }
+}
@@ -249,6 +249,35 @@ public class CommonUtilTest extends AbstractTestCase {
 
     }
 
+    public void testGetSignKeyHolder() throws Exception {
+
+        Crypto crypto = TestUtil.getCrypto();
+
+        SignKeyHolder signKeyHolder = CommonUtil.getSignKeyHolder(crypto, "apache", "password");
+        Assert.assertNotNull(signKeyHolder.getPrivateKey());
+        Assert.assertEquals(CommonUtil.getCertificateByAlias(crypto, "apache"),
+                signKeyHolder.getEntityCertificate());
+        Assert.assertSame(signKeyHolder, CommonUtil.getSignKeyHolder(crypto, "apache", "password"));
+
+        // Credentials are resolved again for a reloaded key store
+        Assert.assertNotSame(signKeyHolder,
+                CommonUtil.getSignKeyHolder(TestUtil.getCrypto(), "apache", "password"));
+
+        try {
+            CommonUtil.getSignKeyHolder(crypto, "apache", "wrong");
+            Assert.fail("A wrong password must not be served from the cache");
+        } catch (TrustException e) {
+            // expected
+        }
+
+        try {
+            CommonUtil.getSignKeyHolder(crypto, "unknown", "password");
+            Assert.fail("An unknown alias must throw an exception");
+        } catch (TrustException e) {
+            // expected
+        }
+    }
+
     public void testGetSAMLCallbackHandlerWithObject() throws Exception {
 
         RahasData rahasData = new RahasData();
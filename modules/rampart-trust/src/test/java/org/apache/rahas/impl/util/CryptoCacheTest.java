@@ -0,0 +1,95 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rahas.impl.util;
+
+import junit.framework.TestCase;
+import org.apache.ws.security.components.crypto.Crypto;
+import org.apache.ws.security.components.crypto.Merlin;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.lang.ref.WeakReference;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Properties;
+
+public class CryptoCacheTest extends TestCase {
+
+    public void testPropertiesFile() throws Exception {
+        ClassLoader classLoader = getClass().getClassLoader();
+
+        Crypto crypto = CryptoCache.getCrypto("crypto.config", classLoader);
+        assertNotNull(crypto);
+        assertSame(crypto, CryptoCache.getCrypto("crypto.config", classLoader));
+    }
+
+    public void testKeyStoreModified() throws Exception {
+        File keyStore = File.createTempFile("keystore", ".jks");
+        keyStore.deleteOnExit();
+        copy(new File("src/test/resources/keystore.jks"), keyStore);
+
+        Properties properties = new Properties();
+        properties.setProperty("org.apache.ws.security.crypto.provider", Merlin.class.getName());
+        properties.setProperty(Merlin.KEYSTORE_TYPE, "JKS");
+        properties.setProperty(Merlin.KEYSTORE_PASSWORD, "password");
+        properties.setProperty(Merlin.KEYSTORE_FILE, keyStore.getPath());
+
+        ClassLoader classLoader = getClass().getClassLoader();
+        Crypto crypto = CryptoCache.getCrypto(properties, classLoader);
+        assertSame(crypto, CryptoCache.getCrypto((Properties) properties.clone(), classLoader));
+
+        keyStore.setLastModified(keyStore.lastModified() + 2000);
+        Crypto reloaded = CryptoCache.getCrypto(properties, classLoader);
+        assertNotSame(crypto, reloaded);
+        assertSame(reloaded, CryptoCache.getCrypto(properties, classLoader));
+    }
+
+    public void testClassLoaderIsNotRetained() throws Exception {
+        Properties properties = new Properties();
+        properties.setProperty("org.apache.ws.security.crypto.provider", Merlin.class.getName());
+        properties.setProperty(Merlin.KEYSTORE_TYPE, "JKS");
+        properties.setProperty(Merlin.KEYSTORE_PASSWORD, "password");
+        properties.setProperty(Merlin.KEYSTORE_FILE, "src/test/resources/keystore.jks");
+
+        ClassLoader classLoader = new URLClassLoader(new URL[0], getClass().getClassLoader());
+        assertNotNull(CryptoCache.getCrypto(properties, classLoader));
+        WeakReference<ClassLoader> reference = new WeakReference<ClassLoader>(classLoader);
+        classLoader = null;
+
+        for (int i = 0; i < 20 && reference.get() != null; i++) {
+            System.gc();
+            Thread.sleep(50);
+        }
+        assertNull("The class loader must not be retained by the cache", reference.get());
+    }
+
+    private void copy(File from, File to) throws Exception {
+        FileInputStream in = new FileInputStream(from);
+        FileOutputStream out = new FileOutputStream(to);
+        try {
+            byte[] buf = new byte[4096];
+            int len;
+            while ((len = in.read(buf)) != -1) {
+                out.write(buf, 0, len);
+            }
+        } finally {
+            in.close();
+            out.close();
+        }
+    }
+}
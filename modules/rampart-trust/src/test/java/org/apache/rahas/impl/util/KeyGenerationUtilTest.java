@@ -0,0 +1,52 @@
+/*
+ * Copyright 2004,2005 The Apache Software Foundation.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.apache.rahas.impl.util;
+
+import junit.framework.TestCase;
+
+import java.util.Arrays;
+
+public class KeyGenerationUtilTest extends TestCase {
+
+    public void testGenerateRandomBytes() throws Exception {
+        byte[] key1 = KeyGenerationUtil.generateRandomBytes(32);
+        byte[] key2 = KeyGenerationUtil.generateRandomBytes(32);
+
+        assertEquals(32, key1.length);
+        assertFalse(Arrays.equals(key1, key2));
+    }
+
+    public void testSecureRandomIsShared() throws Exception {
+        assertSame(KeyGenerationUtil.getSecureRandom(), KeyGenerationUtil.getSecureRandom());
+
+        final byte[][] other = new byte[1][];
+        Thread thread = new Thread() {
+            public void run() {
+                try {
+                    other[0] = KeyGenerationUtil.generateRandomBytes(16);
+                } catch (Exception e) {
+                    // other[0] stays null
+                }
+            }
+        };
+        thread.start();
+        thread.join();
+
+        assertNotNull(other[0]);
+        assertEquals(16, other[0].length);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rahas.impl.util;
+
+import junit.framework.TestCase;
+
+import org.apache.rahas.TrustException;
+
+import java.util.concurrent.Callable;
+
+public class SigningExecutorTest extends TestCase {
+
+    private static final Callable<String> THREAD_NAME = new Callable<String>() {
+        public String call() {
+            return Thread.currentThread().getName();
+        }
+    };
+
+    public void testCallerThread() throws Exception {
+        assertEquals(Thread.currentThread().getName(), SigningExecutor.call(THREAD_NAME, false));
+    }
+
+    public void testSigningThreads() throws Exception {
+        String name = SigningExecutor.call(THREAD_NAME, true);
+        assertTrue(name, name.startsWith("rahas-signer-"));
+    }
+
+    public void testRestartedAfterShutdown() throws Exception {
+        SigningExecutor.call(THREAD_NAME, true);
+        SigningExecutor.shutdown();
+
+        String name = SigningExecutor.call(THREAD_NAME, true);
+        assertTrue(name, name.startsWith("rahas-signer-"));
+    }
+
+    public void testFailure() throws Exception {
+        try {
+            SigningExecutor.call(new Callable<Object>() {
+                public Object call() throws TrustException {
+                    throw new TrustException("signingTaskFailed");
+                }
+            }, true);
+            fail("The failure of the operation must be thrown");
+        } catch (TrustException e) {
+            assertEquals(new TrustException("signingTaskFailed").getMessage(), e.getMessage());
+        }
+    }
+}
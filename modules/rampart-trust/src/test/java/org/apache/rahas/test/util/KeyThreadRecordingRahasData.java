@@ -0,0 +1,48 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements. See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership. The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package org.apache.rahas.test.util;
+
+import org.apache.axis2.context.MessageContext;
+import org.apache.rahas.RahasData;
+import org.apache.rahas.TrustException;
+
+/**
+ * Request data recording the thread which encrypted the holder-of-key proof key.
+ */
+public class KeyThreadRecordingRahasData extends RahasData {
+
+    private volatile String keyThreadName;
+
+    public KeyThreadRecordingRahasData(MessageContext inMessageContext) throws TrustException {
+        super(inMessageContext);
+    }
+
+    public void setEphmeralKey(byte[] ephmeralKey) {
+        this.keyThreadName = Thread.currentThread().getName();
+        super.setEphmeralKey(ephmeralKey);
+    }
+
+    /**
+     * @return The name of the thread which set the proof key, <code>null</code> if none was set
+     */
+    public String getKeyThreadName() {
+        return keyThreadName;
+    }
+}